@@ -10,6 +10,7 @@ import org.opensearch.Version;
 public class Constants {
 
     public static final Version VERSION_2_19_0 = Version.fromString("2.19.0");
+    public static final Version VERSION_3_8_0 = Version.fromString("3.8.0");
 
     // Legacy versions for backward compatibility
     /** Release builds use build-number 99. */
@@ -21,6 +21,7 @@ import static java.util.Collections.singletonList;
 import static java.util.Collections.unmodifiableList;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -32,9 +33,12 @@ import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.apache.lucene.analysis.core.KeywordTokenizer;
 import org.apache.lucene.analysis.miscellaneous.LengthFilter;
 import org.apache.lucene.analysis.ngram.EdgeNGramTokenFilter;
+import org.apache.lucene.util.SetOnce;
 import org.opensearch.action.ActionRequest;
 import org.opensearch.cluster.metadata.IndexNameExpressionResolver;
 import org.opensearch.cluster.node.DiscoveryNodes;
@@ -45,6 +49,7 @@ import org.opensearch.common.settings.IndexScopedSettings;
 import org.opensearch.common.settings.Setting;
 import org.opensearch.common.settings.Settings;
 import org.opensearch.common.settings.SettingsFilter;
+import org.opensearch.common.unit.TimeValue;
 import org.opensearch.core.ParseField;
 import org.opensearch.core.action.ActionResponse;
 import org.opensearch.core.common.io.stream.NamedWriteableRegistry;
@@ -94,26 +99,37 @@ import com.o19s.es.ltr.action.ClearCachesAction;
 import com.o19s.es.ltr.action.CreateModelFromSetAction;
 import com.o19s.es.ltr.action.FeatureStoreAction;
 import com.o19s.es.ltr.action.ListStoresAction;
+import com.o19s.es.ltr.action.OptimizeModelAction;
+import com.o19s.es.ltr.action.PruneModelAction;
 import com.o19s.es.ltr.action.TransportAddFeatureToSetAction;
 import com.o19s.es.ltr.action.TransportCacheStatsAction;
 import com.o19s.es.ltr.action.TransportClearCachesAction;
 import com.o19s.es.ltr.action.TransportCreateModelFromSetAction;
 import com.o19s.es.ltr.action.TransportFeatureStoreAction;
 import com.o19s.es.ltr.action.TransportListStoresAction;
+import com.o19s.es.ltr.action.TransportOptimizeModelAction;
+import com.o19s.es.ltr.action.TransportPruneModelAction;
 import com.o19s.es.ltr.feature.store.StorableElement;
 import com.o19s.es.ltr.feature.store.StoredFeature;
 import com.o19s.es.ltr.feature.store.StoredFeatureSet;
 import com.o19s.es.ltr.feature.store.StoredLtrModel;
 import com.o19s.es.ltr.feature.store.index.CachedFeatureStore;
 import com.o19s.es.ltr.feature.store.index.Caches;
+import com.o19s.es.ltr.feature.store.index.FeatureVectorCache;
 import com.o19s.es.ltr.feature.store.index.IndexFeatureStore;
 import com.o19s.es.ltr.logging.LoggingFetchSubPhase;
 import com.o19s.es.ltr.logging.LoggingSearchExtBuilder;
 import com.o19s.es.ltr.query.LtrQueryBuilder;
+import com.o19s.es.ltr.query.LtrRescorerBuilder;
 import com.o19s.es.ltr.query.StoredLtrQueryBuilder;
 import com.o19s.es.ltr.query.ValidatingLtrQueryBuilder;
+import com.o19s.es.ltr.ranker.dectree.MappedAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.parser.CatBoostJsonParser;
+import com.o19s.es.ltr.ranker.parser.EnsembleModelParser;
+import com.o19s.es.ltr.ranker.parser.LightGBMModelParser;
 import com.o19s.es.ltr.ranker.parser.LinearRankerParser;
 import com.o19s.es.ltr.ranker.parser.LtrRankerParserFactory;
+import com.o19s.es.ltr.ranker.parser.MlpModelParser;
 import com.o19s.es.ltr.ranker.parser.XGBoostJsonParser;
 import com.o19s.es.ltr.ranker.parser.XGBoostRawJsonParser;
 import com.o19s.es.ltr.ranker.ranklib.RankLibScriptEngine;
@@ -122,6 +138,8 @@ import com.o19s.es.ltr.rest.RestAddFeatureToSet;
 import com.o19s.es.ltr.rest.RestCreateModelFromSet;
 import com.o19s.es.ltr.rest.RestFeatureManager;
 import com.o19s.es.ltr.rest.RestFeatureStoreCaches;
+import com.o19s.es.ltr.rest.RestOptimizeModel;
+import com.o19s.es.ltr.rest.RestPruneModel;
 import com.o19s.es.ltr.rest.RestSearchStoreElements;
 import com.o19s.es.ltr.rest.RestStoreManager;
 import com.o19s.es.ltr.utils.FeatureStoreLoader;
@@ -133,6 +151,9 @@ import ciir.umass.edu.learning.RankerFactory;
 public class LtrQueryParserPlugin extends Plugin implements SearchPlugin, ScriptPlugin, ActionPlugin, AnalysisPlugin, SystemIndexPlugin {
     public static final String LTR_BASE_URI = "/_plugins/_ltr";
     public static final String LTR_LEGACY_BASE_URI = "/_opendistro/_ltr";
+    private static final Logger LOGGER = LogManager.getLogger(LtrQueryParserPlugin.class);
+    // directory of the node data path holding the files of the models using the mapped evaluator
+    private static final String MAPPED_MODELS_DIRECTORY = "ltr-models";
     private final LtrRankerParserFactory parserFactory;
     private final Caches caches;
     private final LTRStats ltrStats;
@@ -141,12 +162,19 @@ public class LtrQueryParserPlugin extends Plugin implements SearchPlugin, Script
         caches = new Caches(settings);
         // Use memoize to Lazy load the RankerFactory as it's a heavy object to construct
         Supplier<RankerFactory> ranklib = Suppliers.memoize(RankerFactory::new);
+        // ensembles parse their models with the factory they are registered in
+        SetOnce<LtrRankerParserFactory> factoryRef = new SetOnce<>();
         parserFactory = new LtrRankerParserFactory.Builder()
             .register(RanklibModelParser.TYPE, () -> new RanklibModelParser(ranklib.get()))
             .register(LinearRankerParser.TYPE, LinearRankerParser::new)
             .register(XGBoostJsonParser.TYPE, XGBoostJsonParser::new)
             .register(XGBoostRawJsonParser.TYPE, XGBoostRawJsonParser::new)
+            .register(LightGBMModelParser.TYPE, LightGBMModelParser::new)
+            .register(CatBoostJsonParser.TYPE, CatBoostJsonParser::new)
+            .register(MlpModelParser.TYPE, MlpModelParser::new)
+            .register(EnsembleModelParser.TYPE, () -> new EnsembleModelParser(factoryRef.get()))
             .build();
+        factoryRef.set(parserFactory);
         ltrStats = getInitialStats();
     }
 
@@ -178,6 +206,11 @@ public class LtrQueryParserPlugin extends Plugin implements SearchPlugin, Script
         );
     }
 
+    @Override
+    public List<RescorerSpec<?>> getRescorers() {
+        return singletonList(new RescorerSpec<>(LtrRescorerBuilder.NAME, LtrRescorerBuilder::new, LtrRescorerBuilder::fromXContent));
+    }
+
     @Override
     public List<FetchSubPhase> getFetchSubPhases(FetchPhaseConstructionContext context) {
         return singletonList(new LoggingFetchSubPhase());
@@ -216,6 +249,8 @@ public class LtrQueryParserPlugin extends Plugin implements SearchPlugin, Script
         list.add(new RestFeatureStoreCaches());
         list.add(new RestCreateModelFromSet());
         list.add(new RestAddFeatureToSet());
+        list.add(new RestOptimizeModel());
+        list.add(new RestPruneModel());
         list.add(new RestStatsLTRAction(ltrStats));
         return unmodifiableList(list);
     }
@@ -230,6 +265,8 @@ public class LtrQueryParserPlugin extends Plugin implements SearchPlugin, Script
                 new ActionHandler<>(AddFeaturesToSetAction.INSTANCE, TransportAddFeatureToSetAction.class),
                 new ActionHandler<>(CreateModelFromSetAction.INSTANCE, TransportCreateModelFromSetAction.class),
                 new ActionHandler<>(ListStoresAction.INSTANCE, TransportListStoresAction.class),
+                new ActionHandler<>(OptimizeModelAction.INSTANCE, TransportOptimizeModelAction.class),
+                new ActionHandler<>(PruneModelAction.INSTANCE, TransportPruneModelAction.class),
                 new ActionHandler<>(LTRStatsAction.INSTANCE, TransportLTRStatsAction.class)
             )
         );
@@ -282,8 +319,10 @@ public class LtrQueryParserPlugin extends Plugin implements SearchPlugin, Script
         List<Setting<?>> list2 = asList(
             IndexFeatureStore.STORE_VERSION_PROP,
             Caches.LTR_CACHE_MEM_SETTING,
+            Caches.LTR_CACHE_MAPPED_MEM_SETTING,
             Caches.LTR_CACHE_EXPIRE_AFTER_READ,
-            Caches.LTR_CACHE_EXPIRE_AFTER_WRITE
+            Caches.LTR_CACHE_EXPIRE_AFTER_WRITE,
+            FeatureVectorCache.MAX_MEM_SETTING
         );
 
         return unmodifiableList(Stream.concat(list1.stream(), list2.stream()).collect(Collectors.toList()));
@@ -314,7 +353,25 @@ public class LtrQueryParserPlugin extends Plugin implements SearchPlugin, Script
         LTRSettings.getInstance().init(clusterService);
 
         caches.setThreadPool(threadPool);
+        try {
+            MappedAdditiveDecisionTree.setDirectory(nodeEnvironment.nodeDataPaths()[0].resolve(MAPPED_MODELS_DIRECTORY));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot initialize the directory of the mapped models", e);
+        }
+        // the files left by the previous run are reused by the models loaded in the meantime
+        TimeValue unusedModelFilesDelay = Caches.LTR_CACHE_EXPIRE_AFTER_READ.get(environment.settings());
+        threadPool.schedule(() -> {
+            try {
+                MappedAdditiveDecisionTree.deleteUnusedFiles();
+            } catch (IOException e) {
+                LOGGER.warn("Cannot delete the unused files of the mapped models", e);
+            }
+        }, unusedModelFilesDelay.nanos() > 0 ? unusedModelFilesDelay : TimeValue.timeValueHours(1), ThreadPool.Names.GENERIC);
         clusterService.getClusterSettings().addSettingsUpdateConsumer(Caches.LTR_CACHE_MEM_SETTING, caches::setMaxMem);
+        clusterService.getClusterSettings().addSettingsUpdateConsumer(Caches.LTR_CACHE_MAPPED_MEM_SETTING, caches::setMaxMappedMem);
+        clusterService
+            .getClusterSettings()
+            .addSettingsUpdateConsumer(FeatureVectorCache.MAX_MEM_SETTING, caches.featureVectorCache()::setMaxMem);
 
         final JvmService jvmService = new JvmService(environment.settings());
         final LTRCircuitBreakerService ltrCircuitBreakerService = new LTRCircuitBreakerService(jvmService).init();
@@ -346,7 +403,7 @@ public class LtrQueryParserPlugin extends Plugin implements SearchPlugin, Script
 
     protected FeatureStoreLoader getFeatureStoreLoader() {
         return (storeName, clientSupplier) -> new CachedFeatureStore(
-            new IndexFeatureStore(storeName, clientSupplier, parserFactory),
+            new IndexFeatureStore(storeName, clientSupplier, parserFactory, caches.internTable()),
             caches
         );
     }
@@ -33,7 +33,9 @@ import org.opensearch.core.rest.RestStatus;
 import org.opensearch.core.xcontent.XContentBuilder;
 import org.opensearch.transport.client.OpenSearchClient;
 
+import com.o19s.es.ltr.Constants;
 import com.o19s.es.ltr.action.CreateModelFromSetAction.CreateModelFromSetResponse;
+import com.o19s.es.ltr.action.FeatureStoreAction.FeatureStoreResponse;
 import com.o19s.es.ltr.feature.FeatureValidation;
 import com.o19s.es.ltr.feature.store.StoredLtrModel;
 
@@ -181,31 +183,56 @@ public class CreateModelFromSetAction extends ActionType<CreateModelFromSetRespo
     public static class CreateModelFromSetResponse extends ActionResponse implements StatusToXContentObject {
         private static final int VERSION = 1;
         private IndexResponse response;
+        private Float quantizationMaxDeviation;
 
         public CreateModelFromSetResponse(StreamInput in) throws IOException {
             super(in);
             int version = in.readVInt();
             assert version == VERSION;
             response = new IndexResponse(in);
+            if (in.getVersion().onOrAfter(Constants.VERSION_3_8_0)) {
+                quantizationMaxDeviation = in.readOptionalFloat();
+            }
         }
 
         public CreateModelFromSetResponse(IndexResponse response) {
+            this(response, null);
+        }
+
+        /**
+         * @param quantizationMaxDeviation the deviation of the scores of the quantized model from its float model,
+         *                                 null if the model is not quantized
+         */
+        public CreateModelFromSetResponse(IndexResponse response, Float quantizationMaxDeviation) {
             this.response = response;
+            this.quantizationMaxDeviation = quantizationMaxDeviation;
         }
 
         @Override
         public void writeTo(StreamOutput out) throws IOException {
             out.writeVInt(VERSION);
             response.writeTo(out);
+            if (out.getVersion().onOrAfter(Constants.VERSION_3_8_0)) {
+                out.writeOptionalFloat(quantizationMaxDeviation);
+            }
         }
 
         public IndexResponse getResponse() {
             return response;
         }
 
+        public Float getQuantizationMaxDeviation() {
+            return quantizationMaxDeviation;
+        }
+
         @Override
         public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
-            return response.toXContent(builder, params);
+            builder.startObject();
+            response.innerToXContent(builder, params);
+            if (quantizationMaxDeviation != null) {
+                builder.field(FeatureStoreResponse.QUANTIZATION_MAX_DEVIATION, quantizationMaxDeviation);
+            }
+            return builder.endObject();
         }
 
         @Override
@@ -35,6 +35,7 @@ import org.opensearch.core.rest.RestStatus;
 import org.opensearch.core.xcontent.XContentBuilder;
 import org.opensearch.transport.client.OpenSearchClient;
 
+import com.o19s.es.ltr.Constants;
 import com.o19s.es.ltr.action.FeatureStoreAction.FeatureStoreResponse;
 import com.o19s.es.ltr.feature.FeatureValidation;
 import com.o19s.es.ltr.feature.store.StorableElement;
@@ -174,24 +175,46 @@ public class FeatureStoreAction extends ActionType<FeatureStoreResponse> {
     }
 
     public static class FeatureStoreResponse extends ActionResponse implements StatusToXContentObject {
+        public static final String QUANTIZATION_MAX_DEVIATION = "quantization_max_deviation";
+
         private IndexResponse response;
+        private Float quantizationMaxDeviation;
 
         public FeatureStoreResponse(StreamInput in) throws IOException {
             super(in);
             response = new IndexResponse(in);
+            if (in.getVersion().onOrAfter(Constants.VERSION_3_8_0)) {
+                quantizationMaxDeviation = in.readOptionalFloat();
+            }
         }
 
         public FeatureStoreResponse(IndexResponse response) {
+            this(response, null);
+        }
+
+        /**
+         * @param quantizationMaxDeviation the deviation of the scores of a stored quantized model from its float model,
+         *                                 null if the element is not a quantized model
+         */
+        public FeatureStoreResponse(IndexResponse response, Float quantizationMaxDeviation) {
             this.response = response;
+            this.quantizationMaxDeviation = quantizationMaxDeviation;
         }
 
         public IndexResponse getResponse() {
             return response;
         }
 
+        public Float getQuantizationMaxDeviation() {
+            return quantizationMaxDeviation;
+        }
+
         @Override
         public void writeTo(StreamOutput out) throws IOException {
             response.writeTo(out);
+            if (out.getVersion().onOrAfter(Constants.VERSION_3_8_0)) {
+                out.writeOptionalFloat(quantizationMaxDeviation);
+            }
         }
 
         /**
@@ -204,7 +227,12 @@ public class FeatureStoreAction extends ActionType<FeatureStoreResponse> {
 
         @Override
         public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
-            return response.toXContent(builder, params);
+            builder.startObject();
+            response.innerToXContent(builder, params);
+            if (quantizationMaxDeviation != null) {
+                builder.field(QUANTIZATION_MAX_DEVIATION, quantizationMaxDeviation);
+            }
+            return builder.endObject();
         }
     }
 }
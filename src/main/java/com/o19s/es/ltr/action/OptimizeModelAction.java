@@ -0,0 +1,177 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.action;
+
+import static org.opensearch.action.ValidateActions.addValidationError;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.opensearch.action.ActionRequest;
+import org.opensearch.action.ActionRequestBuilder;
+import org.opensearch.action.ActionRequestValidationException;
+import org.opensearch.action.ActionType;
+import org.opensearch.action.index.IndexResponse;
+import org.opensearch.common.xcontent.StatusToXContentObject;
+import org.opensearch.core.action.ActionResponse;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+import org.opensearch.core.rest.RestStatus;
+import org.opensearch.core.xcontent.XContentBuilder;
+import org.opensearch.transport.client.OpenSearchClient;
+
+import com.o19s.es.ltr.action.OptimizeModelAction.OptimizeModelResponse;
+
+/**
+ * Store a copy of a tree ensemble model whose nodes are laid out according to the branches taken by a sample of
+ * feature vectors, see {@link com.o19s.es.ltr.ranker.dectree.TreeLayoutOptimizer}.
+ */
+public class OptimizeModelAction extends ActionType<OptimizeModelResponse> {
+    public static final String NAME = "cluster:admin/ltr/store/optimize-model";
+    public static final OptimizeModelAction INSTANCE = new OptimizeModelAction();
+
+    protected OptimizeModelAction() {
+        super(NAME, OptimizeModelResponse::new);
+    }
+
+    public static class OptimizeModelRequestBuilder extends ActionRequestBuilder<OptimizeModelRequest, OptimizeModelResponse> {
+
+        public OptimizeModelRequestBuilder(OpenSearchClient client) {
+            super(client, INSTANCE, new OptimizeModelRequest());
+        }
+
+        public OptimizeModelRequestBuilder optimize(String store, String modelName, String targetName, List<Map<String, Float>> samples) {
+            request.store = store;
+            request.modelName = modelName;
+            request.targetName = targetName;
+            request.samples = samples;
+            return this;
+        }
+
+        public OptimizeModelRequestBuilder routing(String routing) {
+            request.setRouting(routing);
+            return this;
+        }
+    }
+
+    public static class OptimizeModelRequest extends ActionRequest {
+        // every sample is scored by every tree of the model
+        public static final int MAX_SAMPLES = 10_000;
+
+        private String store;
+        private String modelName;
+        private String targetName;
+        // feature name to value
+        private List<Map<String, Float>> samples;
+        private String routing;
+
+        public OptimizeModelRequest() {
+
+        }
+
+        public OptimizeModelRequest(StreamInput in) throws IOException {
+            super(in);
+            store = in.readString();
+            modelName = in.readString();
+            targetName = in.readString();
+            samples = in.readList((i) -> i.readMap(StreamInput::readString, StreamInput::readFloat));
+            routing = in.readOptionalString();
+        }
+
+        @Override
+        public ActionRequestValidationException validate() {
+            ActionRequestValidationException arve = null;
+            if (store == null) {
+                arve = addValidationError("store must be set", null);
+            }
+            if (modelName == null) {
+                arve = addValidationError("modelName must be set", arve);
+            }
+            if (targetName == null) {
+                arve = addValidationError("targetName must be set", arve);
+            } else if (targetName.equals(modelName)) {
+                arve = addValidationError("targetName must differ from modelName, models are not updatable", arve);
+            }
+            if (samples == null || samples.isEmpty()) {
+                arve = addValidationError("samples must not be empty", arve);
+            } else if (samples.size() > MAX_SAMPLES) {
+                arve = addValidationError("samples must not contain more than [" + MAX_SAMPLES + "] samples", arve);
+            }
+            return arve;
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeString(store);
+            out.writeString(modelName);
+            out.writeString(targetName);
+            out.writeCollection(samples, (o, sample) -> o.writeMap(sample, StreamOutput::writeString, StreamOutput::writeFloat));
+            out.writeOptionalString(routing);
+        }
+
+        public String getStore() {
+            return store;
+        }
+
+        public String getModelName() {
+            return modelName;
+        }
+
+        public String getTargetName() {
+            return targetName;
+        }
+
+        public List<Map<String, Float>> getSamples() {
+            return samples;
+        }
+
+        public String getRouting() {
+            return routing;
+        }
+
+        public void setRouting(String routing) {
+            this.routing = routing;
+        }
+    }
+
+    public static class OptimizeModelResponse extends ActionResponse implements StatusToXContentObject {
+        private static final int VERSION = 1;
+        private IndexResponse response;
+
+        public OptimizeModelResponse(StreamInput in) throws IOException {
+            super(in);
+            int version = in.readVInt();
+            assert version == VERSION;
+            response = new IndexResponse(in);
+        }
+
+        public OptimizeModelResponse(IndexResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVInt(VERSION);
+            response.writeTo(out);
+        }
+
+        public IndexResponse getResponse() {
+            return response;
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            return response.toXContent(builder, params);
+        }
+
+        @Override
+        public RestStatus status() {
+            return response.status();
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.action;
+
+import static org.opensearch.action.ValidateActions.addValidationError;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.opensearch.action.ActionRequest;
+import org.opensearch.action.ActionRequestBuilder;
+import org.opensearch.action.ActionRequestValidationException;
+import org.opensearch.action.ActionType;
+import org.opensearch.action.index.IndexResponse;
+import org.opensearch.common.xcontent.StatusToXContentObject;
+import org.opensearch.core.action.ActionResponse;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+import org.opensearch.core.common.io.stream.Writeable;
+import org.opensearch.core.rest.RestStatus;
+import org.opensearch.core.xcontent.ToXContentFragment;
+import org.opensearch.core.xcontent.XContentBuilder;
+import org.opensearch.transport.client.OpenSearchClient;
+
+import com.o19s.es.ltr.action.PruneModelAction.PruneModelResponse;
+
+/**
+ * Store a lite copy of a tree ensemble model, without the trees and the features contributing little to the scores
+ * of a sample of feature vectors, see {@link com.o19s.es.ltr.ranker.dectree.TreeEnsemblePruner}.
+ */
+public class PruneModelAction extends ActionType<PruneModelResponse> {
+    public static final String NAME = "cluster:admin/ltr/store/prune-model";
+    public static final PruneModelAction INSTANCE = new PruneModelAction();
+
+    protected PruneModelAction() {
+        super(NAME, PruneModelResponse::new);
+    }
+
+    public static class PruneModelRequestBuilder extends ActionRequestBuilder<PruneModelRequest, PruneModelResponse> {
+
+        public PruneModelRequestBuilder(OpenSearchClient client) {
+            super(client, INSTANCE, new PruneModelRequest());
+        }
+
+        public PruneModelRequestBuilder prune(String store, String modelName, String targetName, List<Map<String, Float>> samples) {
+            request.store = store;
+            request.modelName = modelName;
+            request.targetName = targetName;
+            request.samples = samples;
+            return this;
+        }
+
+        public PruneModelRequestBuilder maxTrees(int maxTrees) {
+            request.maxTrees = maxTrees;
+            return this;
+        }
+
+        public PruneModelRequestBuilder minTreeContribution(float minTreeContribution) {
+            request.minTreeContribution = minTreeContribution;
+            return this;
+        }
+
+        public PruneModelRequestBuilder minFeatureContribution(float minFeatureContribution) {
+            request.minFeatureContribution = minFeatureContribution;
+            return this;
+        }
+
+        public PruneModelRequestBuilder maxScoreDeviation(float maxScoreDeviation) {
+            request.maxScoreDeviation = maxScoreDeviation;
+            return this;
+        }
+
+        public PruneModelRequestBuilder minRankCorrelation(float minRankCorrelation) {
+            request.minRankCorrelation = minRankCorrelation;
+            return this;
+        }
+
+        public PruneModelRequestBuilder routing(String routing) {
+            request.setRouting(routing);
+            return this;
+        }
+    }
+
+    public static class PruneModelRequest extends ActionRequest {
+        // every sample is scored by every tree of the model, once per feature the model uses
+        public static final int MAX_SAMPLES = 10_000;
+
+        private String store;
+        private String modelName;
+        private String targetName;
+        // feature name to value
+        private List<Map<String, Float>> samples;
+        private int maxTrees = Integer.MAX_VALUE;
+        private float minTreeContribution;
+        private float minFeatureContribution;
+        private float maxScoreDeviation = Float.POSITIVE_INFINITY;
+        private float minRankCorrelation = -1F;
+        private String routing;
+
+        public PruneModelRequest() {
+
+        }
+
+        public PruneModelRequest(StreamInput in) throws IOException {
+            super(in);
+            store = in.readString();
+            modelName = in.readString();
+            targetName = in.readString();
+            samples = in.readList((i) -> i.readMap(StreamInput::readString, StreamInput::readFloat));
+            maxTrees = in.readVInt();
+            minTreeContribution = in.readFloat();
+            minFeatureContribution = in.readFloat();
+            maxScoreDeviation = in.readFloat();
+            minRankCorrelation = in.readFloat();
+            routing = in.readOptionalString();
+        }
+
+        @Override
+        public ActionRequestValidationException validate() {
+            ActionRequestValidationException arve = null;
+            if (store == null) {
+                arve = addValidationError("store must be set", null);
+            }
+            if (modelName == null) {
+                arve = addValidationError("modelName must be set", arve);
+            }
+            if (targetName == null) {
+                arve = addValidationError("targetName must be set", arve);
+            } else if (targetName.equals(modelName)) {
+                arve = addValidationError("targetName must differ from modelName, models are not updatable", arve);
+            }
+            if (samples == null || samples.isEmpty()) {
+                arve = addValidationError("samples must not be empty", arve);
+            } else if (samples.size() > MAX_SAMPLES) {
+                arve = addValidationError("samples must not contain more than [" + MAX_SAMPLES + "] samples", arve);
+            }
+            if (maxTrees < 0) {
+                arve = addValidationError("maxTrees must not be negative", arve);
+            }
+            return arve;
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeString(store);
+            out.writeString(modelName);
+            out.writeString(targetName);
+            out.writeCollection(samples, (o, sample) -> o.writeMap(sample, StreamOutput::writeString, StreamOutput::writeFloat));
+            out.writeVInt(maxTrees);
+            out.writeFloat(minTreeContribution);
+            out.writeFloat(minFeatureContribution);
+            out.writeFloat(maxScoreDeviation);
+            out.writeFloat(minRankCorrelation);
+            out.writeOptionalString(routing);
+        }
+
+        public String getStore() {
+            return store;
+        }
+
+        public String getModelName() {
+            return modelName;
+        }
+
+        public String getTargetName() {
+            return targetName;
+        }
+
+        public List<Map<String, Float>> getSamples() {
+            return samples;
+        }
+
+        public int getMaxTrees() {
+            return maxTrees;
+        }
+
+        public float getMinTreeContribution() {
+            return minTreeContribution;
+        }
+
+        public float getMinFeatureContribution() {
+            return minFeatureContribution;
+        }
+
+        public float getMaxScoreDeviation() {
+            return maxScoreDeviation;
+        }
+
+        public float getMinRankCorrelation() {
+            return minRankCorrelation;
+        }
+
+        public String getRouting() {
+            return routing;
+        }
+
+        public void setRouting(String routing) {
+            this.routing = routing;
+        }
+    }
+
+    /**
+     * How the lite model compares to the model it was derived from
+     */
+    public static class PruningReport implements Writeable, ToXContentFragment {
+        private final int treesBefore;
+        private final int treesAfter;
+        private final int splitsBefore;
+        private final int splitsAfter;
+        private final List<String> droppedFeatures;
+        private final double meanScoreDeviation;
+        private final double maxScoreDeviation;
+        private final double rankCorrelation;
+
+        public PruningReport(
+            int treesBefore,
+            int treesAfter,
+            int splitsBefore,
+            int splitsAfter,
+            List<String> droppedFeatures,
+            double meanScoreDeviation,
+            double maxScoreDeviation,
+            double rankCorrelation
+        ) {
+            this.treesBefore = treesBefore;
+            this.treesAfter = treesAfter;
+            this.splitsBefore = splitsBefore;
+            this.splitsAfter = splitsAfter;
+            this.droppedFeatures = droppedFeatures;
+            this.meanScoreDeviation = meanScoreDeviation;
+            this.maxScoreDeviation = maxScoreDeviation;
+            this.rankCorrelation = rankCorrelation;
+        }
+
+        public PruningReport(StreamInput in) throws IOException {
+            treesBefore = in.readVInt();
+            treesAfter = in.readVInt();
+            splitsBefore = in.readVInt();
+            splitsAfter = in.readVInt();
+            droppedFeatures = in.readList(StreamInput::readString);
+            meanScoreDeviation = in.readDouble();
+            maxScoreDeviation = in.readDouble();
+            rankCorrelation = in.readDouble();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVInt(treesBefore);
+            out.writeVInt(treesAfter);
+            out.writeVInt(splitsBefore);
+            out.writeVInt(splitsAfter);
+            out.writeStringCollection(droppedFeatures);
+            out.writeDouble(meanScoreDeviation);
+            out.writeDouble(maxScoreDeviation);
+            out.writeDouble(rankCorrelation);
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject("trees");
+            builder.field("before", treesBefore);
+            builder.field("after", treesAfter);
+            builder.endObject();
+            builder.startObject("splits");
+            builder.field("before", splitsBefore);
+            builder.field("after", splitsAfter);
+            builder.endObject();
+            builder.field("dropped_features", droppedFeatures);
+            builder.field("mean_score_deviation", meanScoreDeviation);
+            builder.field("max_score_deviation", maxScoreDeviation);
+            builder.field("rank_correlation", rankCorrelation);
+            return builder;
+        }
+
+        public List<String> getDroppedFeatures() {
+            return droppedFeatures;
+        }
+
+        public double getMeanScoreDeviation() {
+            return meanScoreDeviation;
+        }
+
+        public double getMaxScoreDeviation() {
+            return maxScoreDeviation;
+        }
+
+        public double getRankCorrelation() {
+            return rankCorrelation;
+        }
+    }
+
+    public static class PruneModelResponse extends ActionResponse implements StatusToXContentObject {
+        private static final int VERSION = 1;
+        private IndexResponse response;
+        private PruningReport report;
+
+        public PruneModelResponse(StreamInput in) throws IOException {
+            super(in);
+            int version = in.readVInt();
+            assert version == VERSION;
+            response = new IndexResponse(in);
+            report = new PruningReport(in);
+        }
+
+        public PruneModelResponse(IndexResponse response, PruningReport report) {
+            this.response = response;
+            this.report = report;
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVInt(VERSION);
+            response.writeTo(out);
+            report.writeTo(out);
+        }
+
+        public IndexResponse getResponse() {
+            return response;
+        }
+
+        public PruningReport getReport() {
+            return report;
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject();
+            response.innerToXContent(builder, params);
+            builder.startObject("pruning");
+            report.toXContent(builder, params);
+            builder.endObject();
+            return builder.endObject();
+        }
+
+        @Override
+        public RestStatus status() {
+            return response.status();
+        }
+    }
+}
@@ -119,7 +119,11 @@ public class TransportCreateModelFromSetAction extends HandledTransportAction<Cr
         featureStoreAction
             .execute(
                 featureStoreRequest,
-                ActionListener.wrap((r) -> listener.onResponse(new CreateModelFromSetResponse(r.getResponse())), listener::onFailure)
+                ActionListener
+                    .wrap(
+                        (r) -> listener.onResponse(new CreateModelFromSetResponse(r.getResponse(), r.getQuantizationMaxDeviation())),
+                        listener::onFailure
+                    )
             );
 
     }
@@ -51,6 +51,7 @@ import com.o19s.es.ltr.feature.store.StoredFeatureSet;
 import com.o19s.es.ltr.feature.store.StoredLtrModel;
 import com.o19s.es.ltr.feature.store.index.IndexFeatureStore;
 import com.o19s.es.ltr.query.ValidatingLtrQueryBuilder;
+import com.o19s.es.ltr.ranker.dectree.QuantizedAdditiveDecisionTree;
 import com.o19s.es.ltr.ranker.parser.LtrRankerParserFactory;
 
 public class TransportFeatureStoreAction extends HandledTransportAction<FeatureStoreRequest, FeatureStoreResponse> {
@@ -97,12 +98,19 @@ public class TransportFeatureStoreAction extends HandledTransportAction<FeatureS
             );
         }
         // some synchronous pre-checks that require the parser factory
-        precheck(request);
+        Float quantizationMaxDeviation = precheck(request);
         if (request.getValidation() != null) {
             // validate and then store
-            validate(request.getValidation(), request.getStorableElement(), task, listener, () -> store(request, task, listener), ltrStats);
+            validate(
+                request.getValidation(),
+                request.getStorableElement(),
+                task,
+                listener,
+                () -> store(request, task, listener, quantizationMaxDeviation),
+                ltrStats
+            );
         } else {
-            store(request, task, listener);
+            store(request, task, listener, quantizationMaxDeviation);
         }
     }
 
@@ -138,12 +146,14 @@ public class TransportFeatureStoreAction extends HandledTransportAction<FeatureS
 
     /**
      * Will throw an exception if it fails.
+     *
+     * @return the deviation of the scores of a quantized model from its float model, null for other elements
      */
-    private void precheck(FeatureStoreRequest request) {
+    private Float precheck(FeatureStoreRequest request) {
         if (request.getStorableElement() instanceof StoredLtrModel) {
             StoredLtrModel model = (StoredLtrModel) request.getStorableElement();
             try {
-                model.compile(factory);
+                return QuantizedAdditiveDecisionTree.maxDeviation(model.compile(factory).ranker());
             } catch (Exception e) {
                 throw new IllegalArgumentException(
                     "Error while parsing model [" + model.name() + "]" + " with type [" + model.rankingModelType() + "]",
@@ -157,6 +167,7 @@ public class TransportFeatureStoreAction extends HandledTransportAction<FeatureS
             StoredFeature feature = (StoredFeature) request.getStorableElement();
             feature.optimize();
         }
+        return null;
     }
 
     /**
@@ -201,7 +212,12 @@ public class TransportFeatureStoreAction extends HandledTransportAction<FeatureS
     /**
      * Prepare a Runnable to send an index request to store the element, invalidates the cache on success
      */
-    private void store(FeatureStoreRequest request, Task task, ActionListener<FeatureStoreResponse> listener) {
+    private void store(
+        FeatureStoreRequest request,
+        Task task,
+        ActionListener<FeatureStoreResponse> listener,
+        Float quantizationMaxDeviation
+    ) {
 
         try {
             Optional<ClearCachesNodesRequest> clearCachesNodesRequest = buildClearCache(request);
@@ -211,7 +227,7 @@ public class TransportFeatureStoreAction extends HandledTransportAction<FeatureS
                 // but don't wait for the action to be done nor set the parent task.
                 clearCachesNodesRequest
                     .ifPresent((req) -> clearCachesAction.execute(req, wrap((r2) -> {}, (e) -> logger.error("Failed to clear cache", e))));
-                listener.onResponse(new FeatureStoreResponse(r));
+                listener.onResponse(new FeatureStoreResponse(r, quantizationMaxDeviation));
             }, listener::onFailure));
         } catch (IOException ioe) {
             listener.onFailure(ioe);
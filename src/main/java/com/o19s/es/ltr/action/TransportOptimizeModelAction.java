@@ -0,0 +1,164 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.action;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.opensearch.action.ActionRunnable;
+import org.opensearch.action.get.GetRequest;
+import org.opensearch.action.get.GetResponse;
+import org.opensearch.action.get.TransportGetAction;
+import org.opensearch.action.support.ActionFilters;
+import org.opensearch.action.support.HandledTransportAction;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.common.inject.Inject;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.ltr.breaker.LTRCircuitBreakerService;
+import org.opensearch.ltr.exception.LimitExceededException;
+import org.opensearch.tasks.Task;
+import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.transport.TransportService;
+
+import com.o19s.es.ltr.action.FeatureStoreAction.FeatureStoreRequest;
+import com.o19s.es.ltr.action.OptimizeModelAction.OptimizeModelRequest;
+import com.o19s.es.ltr.action.OptimizeModelAction.OptimizeModelResponse;
+import com.o19s.es.ltr.feature.FeatureSet;
+import com.o19s.es.ltr.feature.store.StorableElement;
+import com.o19s.es.ltr.feature.store.StoredLtrModel;
+import com.o19s.es.ltr.feature.store.index.IndexFeatureStore;
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.LtrRanker.FeatureVector;
+import com.o19s.es.ltr.ranker.dectree.FlatAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.TreeEvaluator;
+import com.o19s.es.ltr.ranker.dectree.TreeLayoutOptimizer;
+import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+import com.o19s.es.ltr.ranker.parser.LtrRankerParserFactory;
+import com.o19s.es.ltr.ranker.parser.XGBoostJsonParser;
+
+public class TransportOptimizeModelAction extends HandledTransportAction<OptimizeModelRequest, OptimizeModelResponse> {
+    private final ClusterService clusterService;
+    private final TransportGetAction getAction;
+    private final TransportFeatureStoreAction featureStoreAction;
+    private final LtrRankerParserFactory factory;
+    private final LTRCircuitBreakerService ltrCircuitBreakerService;
+    private final ThreadPool threadPool;
+
+    @Inject
+    public TransportOptimizeModelAction(
+        TransportService transportService,
+        ActionFilters actionFilters,
+        ClusterService clusterService,
+        TransportGetAction getAction,
+        TransportFeatureStoreAction featureStoreAction,
+        LtrRankerParserFactory factory,
+        LTRCircuitBreakerService ltrCircuitBreakerService
+    ) {
+        super(OptimizeModelAction.NAME, transportService, actionFilters, OptimizeModelRequest::new);
+        this.clusterService = clusterService;
+        this.getAction = getAction;
+        this.featureStoreAction = featureStoreAction;
+        this.factory = factory;
+        this.ltrCircuitBreakerService = ltrCircuitBreakerService;
+        this.threadPool = transportService.getThreadPool();
+    }
+
+    @Override
+    protected void doExecute(Task task, OptimizeModelRequest request, ActionListener<OptimizeModelResponse> listener) {
+        if (!clusterService.state().routingTable().hasIndex(request.getStore())) {
+            throw new IllegalArgumentException("Store [" + request.getStore() + "] does not exist, please create it first.");
+        }
+        if (this.ltrCircuitBreakerService.isOpen()) {
+            throw new LimitExceededException(
+                "Store [" + request.getStore() + "] optimizing model is not allowed " + "as memory circuit is broken."
+            );
+        }
+        GetRequest getRequest = new GetRequest(request.getStore())
+            .id(StorableElement.generateId(StoredLtrModel.TYPE, request.getModelName()))
+            .routing(request.getRouting());
+        getRequest.setParentTask(clusterService.localNode().getId(), task.getId());
+        // profiling scores every sample with every tree, keep it off the thread completing the get
+        getAction
+            .execute(
+                getRequest,
+                ActionListener
+                    .wrap(
+                        (r) -> threadPool
+                            .executor(ThreadPool.Names.GENERIC)
+                            .execute(ActionRunnable.wrap(listener, (l) -> this.doStore(task, r, request, l))),
+                        listener::onFailure
+                    )
+            );
+    }
+
+    private void doStore(
+        Task parentTask,
+        GetResponse response,
+        OptimizeModelRequest request,
+        ActionListener<OptimizeModelResponse> listener
+    ) throws IOException {
+        if (!response.isExists()) {
+            throw new IllegalArgumentException("Stored model [" + request.getModelName() + "] does not exist");
+        }
+        StoredLtrModel model = IndexFeatureStore.parse(StoredLtrModel.class, StoredLtrModel.TYPE, response.getSourceAsBytesRef());
+        String definition = optimize(model, request);
+        StoredLtrModel optimized = new StoredLtrModel(
+            request.getTargetName(),
+            model.featureSet(),
+            XGBoostJsonParser.TYPE,
+            definition,
+            false,
+            model.getFeatureNormalizers()
+        );
+        // Model will be parsed & checked by TransportFeatureStoreAction
+        FeatureStoreRequest featureStoreRequest = new FeatureStoreRequest(request.getStore(), optimized, FeatureStoreRequest.Action.CREATE);
+        featureStoreRequest.setRouting(request.getRouting());
+        featureStoreRequest.setParentTask(clusterService.localNode().getId(), parentTask.getId());
+        featureStoreAction
+            .execute(
+                featureStoreRequest,
+                ActionListener.wrap((r) -> listener.onResponse(new OptimizeModelResponse(r.getResponse())), listener::onFailure)
+            );
+    }
+
+    /**
+     * Profile the trees of the model with the samples of the request
+     *
+     * @return the definition of the optimized model
+     */
+    private String optimize(StoredLtrModel model, OptimizeModelRequest request) throws IOException {
+        FeatureSet set = model.featureSet().optimize();
+        LtrRanker ranker = factory.getParser(model.rankingModelType()).parse(set, model.rankingModel());
+        if (!(ranker instanceof FlatAdditiveDecisionTree)) {
+            throw new IllegalArgumentException(
+                "Model ["
+                    + model.name()
+                    + "] cannot be optimized, only tree ensembles evaluated with the ["
+                    + TreeEvaluator.FLAT.getName()
+                    + "] evaluator are supported"
+            );
+        }
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) ranker;
+        // trees are profiled with the values they see when scoring
+        Map<Integer, Normalizer> norms = model.getFeatureNormalizers().compileOrdToNorms(set);
+        TreeLayoutOptimizer optimizer = new TreeLayoutOptimizer(tree);
+        FeatureVector vector = null;
+        for (Map<String, Float> sample : request.getSamples()) {
+            vector = tree.newFeatureVector(vector);
+            for (Map.Entry<String, Float> value : sample.entrySet()) {
+                if (!set.hasFeature(value.getKey())) {
+                    throw new IllegalArgumentException("Unknown feature [" + value.getKey() + "] in the samples");
+                }
+                vector.setFeatureScore(set.featureOrdinal(value.getKey()), value.getValue());
+            }
+            for (Map.Entry<Integer, Normalizer> norm : norms.entrySet()) {
+                vector.setFeatureScore(norm.getKey(), norm.getValue().normalize(vector.getFeatureScore(norm.getKey())));
+            }
+            optimizer.record(vector);
+        }
+        return optimizer.toXGBoostJson(set);
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.action;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.opensearch.action.ActionRunnable;
+import org.opensearch.action.get.GetRequest;
+import org.opensearch.action.get.GetResponse;
+import org.opensearch.action.get.TransportGetAction;
+import org.opensearch.action.support.ActionFilters;
+import org.opensearch.action.support.HandledTransportAction;
+import org.opensearch.cluster.service.ClusterService;
+import org.opensearch.common.inject.Inject;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.core.indices.breaker.CircuitBreakerService;
+import org.opensearch.ltr.breaker.LTRCircuitBreakerService;
+import org.opensearch.ltr.exception.LimitExceededException;
+import org.opensearch.tasks.Task;
+import org.opensearch.threadpool.ThreadPool;
+import org.opensearch.transport.TransportService;
+
+import com.o19s.es.ltr.action.FeatureStoreAction.FeatureStoreRequest;
+import com.o19s.es.ltr.action.PruneModelAction.PruneModelRequest;
+import com.o19s.es.ltr.action.PruneModelAction.PruneModelResponse;
+import com.o19s.es.ltr.action.PruneModelAction.PruningReport;
+import com.o19s.es.ltr.feature.FeatureSet;
+import com.o19s.es.ltr.feature.store.StorableElement;
+import com.o19s.es.ltr.feature.store.StoredLtrModel;
+import com.o19s.es.ltr.feature.store.index.IndexFeatureStore;
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.LtrRanker.FeatureVector;
+import com.o19s.es.ltr.ranker.dectree.FlatAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.TreeEnsemblePruner;
+import com.o19s.es.ltr.ranker.dectree.TreeEvaluator;
+import com.o19s.es.ltr.ranker.dectree.TreeLayoutOptimizer;
+import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+import com.o19s.es.ltr.ranker.parser.LtrRankerParserFactory;
+import com.o19s.es.ltr.ranker.parser.XGBoostJsonParser;
+
+public class TransportPruneModelAction extends HandledTransportAction<PruneModelRequest, PruneModelResponse> {
+    private static final String BREAKER_LABEL = "<ltr_prune_model>";
+
+    private final ClusterService clusterService;
+    private final TransportGetAction getAction;
+    private final TransportFeatureStoreAction featureStoreAction;
+    private final LtrRankerParserFactory factory;
+    private final LTRCircuitBreakerService ltrCircuitBreakerService;
+    private final CircuitBreakerService circuitBreakerService;
+    private final ThreadPool threadPool;
+
+    @Inject
+    public TransportPruneModelAction(
+        TransportService transportService,
+        ActionFilters actionFilters,
+        ClusterService clusterService,
+        TransportGetAction getAction,
+        TransportFeatureStoreAction featureStoreAction,
+        LtrRankerParserFactory factory,
+        LTRCircuitBreakerService ltrCircuitBreakerService,
+        CircuitBreakerService circuitBreakerService
+    ) {
+        super(PruneModelAction.NAME, transportService, actionFilters, PruneModelRequest::new);
+        this.clusterService = clusterService;
+        this.getAction = getAction;
+        this.featureStoreAction = featureStoreAction;
+        this.factory = factory;
+        this.ltrCircuitBreakerService = ltrCircuitBreakerService;
+        this.circuitBreakerService = circuitBreakerService;
+        this.threadPool = transportService.getThreadPool();
+    }
+
+    @Override
+    protected void doExecute(Task task, PruneModelRequest request, ActionListener<PruneModelResponse> listener) {
+        if (!clusterService.state().routingTable().hasIndex(request.getStore())) {
+            throw new IllegalArgumentException("Store [" + request.getStore() + "] does not exist, please create it first.");
+        }
+        if (this.ltrCircuitBreakerService.isOpen()) {
+            throw new LimitExceededException(
+                "Store [" + request.getStore() + "] pruning model is not allowed " + "as memory circuit is broken."
+            );
+        }
+        GetRequest getRequest = new GetRequest(request.getStore())
+            .id(StorableElement.generateId(StoredLtrModel.TYPE, request.getModelName()))
+            .routing(request.getRouting());
+        getRequest.setParentTask(clusterService.localNode().getId(), task.getId());
+        // pruning scores every sample with every tree once per used feature, keep it off the thread completing the get
+        getAction
+            .execute(
+                getRequest,
+                ActionListener
+                    .wrap(
+                        (r) -> threadPool
+                            .executor(ThreadPool.Names.GENERIC)
+                            .execute(ActionRunnable.wrap(listener, (l) -> this.doStore(task, r, request, l))),
+                        listener::onFailure
+                    )
+            );
+    }
+
+    private void doStore(Task parentTask, GetResponse response, PruneModelRequest request, ActionListener<PruneModelResponse> listener)
+        throws IOException {
+        if (!response.isExists()) {
+            throw new IllegalArgumentException("Stored model [" + request.getModelName() + "] does not exist");
+        }
+        StoredLtrModel model = IndexFeatureStore.parse(StoredLtrModel.class, StoredLtrModel.TYPE, response.getSourceAsBytesRef());
+        FeatureSet set = model.featureSet().optimize();
+        LtrRanker ranker = factory.getParser(model.rankingModelType()).parse(set, model.rankingModel());
+        if (!(ranker instanceof FlatAdditiveDecisionTree)) {
+            throw new IllegalArgumentException(
+                "Model ["
+                    + model.name()
+                    + "] cannot be pruned, only tree ensembles evaluated with the ["
+                    + TreeEvaluator.FLAT.getName()
+                    + "] evaluator are supported"
+            );
+        }
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) ranker;
+        int numPoints = request.getSamples().size();
+        // the samples are held as one dense vector each while the model is pruned
+        long bytes = (long) numPoints * set.size() * Float.BYTES;
+        CircuitBreaker breaker = circuitBreakerService.getBreaker(CircuitBreaker.REQUEST);
+        breaker.addEstimateBytesAndMaybeBreak(bytes, BREAKER_LABEL);
+        PruningReport report;
+        String definition;
+        try {
+            float[] points = samplePoints(model, set, tree, request.getSamples());
+            TreeEnsemblePruner.Result result = new TreeEnsemblePruner(tree, points, numPoints)
+                .prune(request.getMaxTrees(), request.getMinTreeContribution(), request.getMinFeatureContribution());
+            if (result.getMaxScoreDeviation() > request.getMaxScoreDeviation()
+                || result.getRankCorrelation() < request.getMinRankCorrelation()) {
+                throw new IllegalArgumentException(
+                    "The pruned model is too far from model ["
+                        + model.name()
+                        + "] on the samples: max score deviation ["
+                        + result.getMaxScoreDeviation()
+                        + "] (allowed ["
+                        + request.getMaxScoreDeviation()
+                        + "]), rank correlation ["
+                        + result.getRankCorrelation()
+                        + "] (required ["
+                        + request.getMinRankCorrelation()
+                        + "])"
+                );
+            }
+            FlatAdditiveDecisionTree lite = result.getTree();
+            List<String> droppedFeatures = new ArrayList<>(result.getDroppedFeatures().length);
+            for (int ord : result.getDroppedFeatures()) {
+                droppedFeatures.add(set.feature(ord).name());
+            }
+            report = new PruningReport(
+                tree.numTrees(),
+                lite.numTrees(),
+                tree.numSplits(),
+                lite.numSplits(),
+                droppedFeatures,
+                result.getMeanScoreDeviation(),
+                result.getMaxScoreDeviation(),
+                result.getRankCorrelation()
+            );
+
+            // lay the lite model out for the samples as well
+            TreeLayoutOptimizer layout = new TreeLayoutOptimizer(lite);
+            FeatureVector vector = null;
+            for (int p = 0; p < numPoints; p++) {
+                vector = lite.newFeatureVector(vector);
+                for (int f = 0; f < set.size(); f++) {
+                    vector.setFeatureScore(f, points[p * set.size() + f]);
+                }
+                layout.record(vector);
+            }
+            definition = layout.toXGBoostJson(set);
+        } finally {
+            breaker.addWithoutBreaking(-bytes);
+        }
+        StoredLtrModel pruned = new StoredLtrModel(
+            request.getTargetName(),
+            model.featureSet(),
+            XGBoostJsonParser.TYPE,
+            definition,
+            false,
+            model.getFeatureNormalizers()
+        );
+        // Model will be parsed & checked by TransportFeatureStoreAction
+        FeatureStoreRequest featureStoreRequest = new FeatureStoreRequest(request.getStore(), pruned, FeatureStoreRequest.Action.CREATE);
+        featureStoreRequest.setRouting(request.getRouting());
+        featureStoreRequest.setParentTask(clusterService.localNode().getId(), parentTask.getId());
+        featureStoreAction
+            .execute(
+                featureStoreRequest,
+                ActionListener.wrap((r) -> listener.onResponse(new PruneModelResponse(r.getResponse(), report)), listener::onFailure)
+            );
+    }
+
+    /**
+     * @return the samples as the values the trees see when scoring, one vector of all the features after the other
+     */
+    private static float[] samplePoints(
+        StoredLtrModel model,
+        FeatureSet set,
+        FlatAdditiveDecisionTree tree,
+        List<Map<String, Float>> samples
+    ) {
+        int numFeatures = set.size();
+        float[] points = new float[samples.size() * numFeatures];
+        Arrays.fill(points, tree.isMissingAsZero() ? 0F : Float.NaN);
+        Map<Integer, Normalizer> norms = model.getFeatureNormalizers().compileOrdToNorms(set);
+        for (int p = 0; p < samples.size(); p++) {
+            int offset = p * numFeatures;
+            for (Map.Entry<String, Float> value : samples.get(p).entrySet()) {
+                if (!set.hasFeature(value.getKey())) {
+                    throw new IllegalArgumentException("Unknown feature [" + value.getKey() + "] in the samples");
+                }
+                points[offset + set.featureOrdinal(value.getKey())] = value.getValue();
+            }
+            for (Map.Entry<Integer, Normalizer> norm : norms.entrySet()) {
+                points[offset + norm.getKey()] = norm.getValue().normalize(points[offset + norm.getKey()]);
+            }
+        }
+        return points;
+    }
+}
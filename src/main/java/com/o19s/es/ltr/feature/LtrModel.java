@@ -36,4 +36,12 @@ public interface LtrModel {
      * @return the set of features used by this model
      */
     FeatureSet featureSet();
+
+    /**
+     * @return the sorted ordinals of the features of the set read by the ranker,
+     * or null if the ranker may read any of them
+     */
+    default int[] usedFeatures() {
+        return ranker().usedFeatures();
+    }
 }
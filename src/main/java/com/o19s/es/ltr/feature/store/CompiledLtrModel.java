@@ -19,6 +19,8 @@ package com.o19s.es.ltr.feature.store;
 import static org.apache.lucene.util.RamUsageEstimator.NUM_BYTES_ARRAY_HEADER;
 import static org.apache.lucene.util.RamUsageEstimator.NUM_BYTES_OBJECT_HEADER;
 
+import java.util.Arrays;
+
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.RamUsageEstimator;
 
@@ -32,11 +34,15 @@ public class CompiledLtrModel implements LtrModel, Accountable {
     private final String name;
     private final FeatureSet set;
     private final LtrRanker ranker;
+    private final int[] usedFeatures;
 
     public CompiledLtrModel(String name, FeatureSet set, LtrRanker ranker) {
         this.name = name;
         this.set = set.optimize();
         this.ranker = ranker;
+        int[] rankerFeatures = ranker.usedFeatures();
+        // ordinals outside of the set are never populated
+        this.usedFeatures = rankerFeatures == null ? null : Arrays.stream(rankerFeatures).filter(ord -> ord < set.size()).toArray();
     }
 
     /**
@@ -63,6 +69,15 @@ public class CompiledLtrModel implements LtrModel, Accountable {
         return set;
     }
 
+    /**
+     * The ordinals of the features read by the ranker, computed when the model is parsed.
+     * Features not listed here do not need to be extracted when scoring with this model.
+     */
+    @Override
+    public int[] usedFeatures() {
+        return usedFeatures;
+    }
+
     /**
      * Return the memory usage of this object in bytes. Negative values are illegal.
      */
@@ -72,6 +87,6 @@ public class CompiledLtrModel implements LtrModel, Accountable {
             ? ((Accountable) set).ramBytesUsed()
             : set.size() * NUM_BYTES_OBJECT_HEADER) + (ranker instanceof Accountable
                 ? ((Accountable) ranker).ramBytesUsed()
-                : set.size() * NUM_BYTES_OBJECT_HEADER);
+                : set.size() * NUM_BYTES_OBJECT_HEADER) + (usedFeatures == null ? 0 : RamUsageEstimator.sizeOf(usedFeatures));
     }
 }
@@ -20,6 +20,7 @@ import java.io.IOException;
 
 import com.o19s.es.ltr.feature.Feature;
 import com.o19s.es.ltr.feature.FeatureSet;
+import com.o19s.es.ltr.feature.store.index.FeatureVectorCache;
 
 /**
  * A feature store
@@ -53,4 +54,11 @@ public interface FeatureStore {
      * @throws IOException if the model can not be loaded and compiled
      */
     CompiledLtrModel loadModel(String name) throws IOException;
+
+    /**
+     * @return the node cache of the feature vectors computed with the elements of this store, null if none
+     */
+    default FeatureVectorCache featureVectorCache() {
+        return null;
+    }
 }
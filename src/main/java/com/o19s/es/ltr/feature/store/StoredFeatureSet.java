@@ -28,6 +28,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.RandomAccess;
+import java.util.function.Function;
 
 import org.apache.lucene.search.MatchNoDocsQuery;
 import org.apache.lucene.search.Query;
@@ -102,10 +103,17 @@ public class StoredFeatureSet implements FeatureSet, Accountable, StorableElemen
 
     @Override
     public FeatureSet optimize() {
+        return optimize(StoredFeature::optimize);
+    }
+
+    /**
+     * Optimize the set, compiling its features with the given function
+     */
+    public FeatureSet optimize(Function<StoredFeature, Feature> compiler) {
         List<Feature> optimizedFeatures = new ArrayList<>(this.features.size());
         boolean optimized = false;
         for (StoredFeature feature : this.features) {
-            Feature optimizedFeature = feature.optimize();
+            Feature optimizedFeature = compiler.apply(feature);
             optimized |= optimizedFeature != feature;
             optimizedFeatures.add(optimizedFeature);
         }
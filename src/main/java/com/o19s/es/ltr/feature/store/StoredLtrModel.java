@@ -125,12 +125,18 @@ public class StoredLtrModel implements StorableElement {
     }
 
     public CompiledLtrModel compile(LtrRankerParserFactory factory) throws IOException {
+        return compile(factory, featureSet.optimize());
+    }
+
+    /**
+     * Compile the model against an already optimized version of its feature set
+     */
+    public CompiledLtrModel compile(LtrRankerParserFactory factory, FeatureSet optimized) throws IOException {
         LtrRankerParser modelParser = factory.getParser(rankingModelType);
-        FeatureSet optimized = featureSet.optimize();
         LtrRanker ranker = modelParser.parse(optimized, rankingModel);
         Map<Integer, Normalizer> ordToNorms = parsedFtrNorms.compileOrdToNorms(optimized);
         if (ordToNorms.size() > 0) {
-            ranker = new FeatureNormalizingRanker(ranker, ordToNorms);
+            ranker = FeatureNormalizingRanker.wrapOrFold(ranker, ordToNorms);
         }
         return new CompiledLtrModel(name, optimized, ranker);
     }
@@ -57,6 +57,11 @@ public class CachedFeatureStore implements FeatureStore {
         return caches.loadModel(key(id), inner::loadModel);
     }
 
+    @Override
+    public FeatureVectorCache featureVectorCache() {
+        return caches.featureVectorCache();
+    }
+
     Feature getCachedFeature(String id) {
         return innerGet(id, caches.featureCache());
     }
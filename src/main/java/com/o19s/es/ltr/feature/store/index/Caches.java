@@ -17,7 +17,9 @@
 package com.o19s.es.ltr.feature.store.index;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -44,6 +46,9 @@ import org.opensearch.threadpool.ThreadPool;
 import com.o19s.es.ltr.feature.Feature;
 import com.o19s.es.ltr.feature.FeatureSet;
 import com.o19s.es.ltr.feature.store.CompiledLtrModel;
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.dectree.MappedAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.normalizer.FeatureNormalizingRanker;
 
 /**
  * Store various caches used by the plugin
@@ -53,6 +58,19 @@ public class Caches {
 
     static final String MAX_MEM_KEY = "ltr.caches.max_mem";
     public static final Setting<ByteSizeValue> LTR_CACHE_MEM_SETTING;
+    static final String MAX_MAPPED_MEM_KEY = "ltr.caches.max_mapped_mem";
+    /**
+     * Bounds the nodes of the mapped models held by the model cache, they live off-heap and are not weighed
+     * against {@link #LTR_CACHE_MEM_SETTING}. The least recently used mapped models are evicted above it.
+     */
+    public static final Setting<ByteSizeValue> LTR_CACHE_MAPPED_MEM_SETTING = new Setting<>(
+        new Setting.SimpleKey(MAX_MAPPED_MEM_KEY),
+        (s) -> "1gb",
+        (s) -> ByteSizeValue.parseBytesSizeValue(s, MAX_MAPPED_MEM_KEY),
+        (v) -> validateMaxMem(MAX_MAPPED_MEM_KEY, v),
+        Setting.Property.NodeScope,
+        Setting.Property.Dynamic
+    );
     public static final Setting<TimeValue> LTR_CACHE_EXPIRE_AFTER_WRITE = Setting
         .timeSetting("ltr.caches.expire_after_write", TimeValue.timeValueHours(1), TimeValue.timeValueNanos(0), Setting.Property.NodeScope);
     public static final Setting<TimeValue> LTR_CACHE_EXPIRE_AFTER_READ = Setting
@@ -61,6 +79,7 @@ public class Caches {
     private final Cache<CacheKey, Feature> featureCache;
     private final Cache<CacheKey, FeatureSet> featureSetCache;
     private final Cache<CacheKey, CompiledLtrModel> modelCache;
+    private final FeatureVectorCache featureVectorCache;
 
     /**
      * The limit bounds each of the three caches (feature, feature set, model) independently, so the real
@@ -81,7 +100,7 @@ public class Caches {
             // getStringRep, not toString: the latter rounds to one decimal and the parser rejects fractions.
             (s) -> defaultMaxMem(JvmInfo.jvmInfo().getMem().getHeapMax().getBytes()).getStringRep(),
             new Setting.MemorySizeValueParser(MAX_MEM_KEY),
-            Caches::validateMaxMem,
+            (v) -> validateMaxMem(MAX_MEM_KEY, v),
             Setting.Property.NodeScope,
             Setting.Property.Dynamic
         );
@@ -91,17 +110,26 @@ public class Caches {
      * {@link ByteSizeValue} accepts the unit-less value -1, which {@link Cache#setMaximumWeight} then
      * rejects. Validating here fails the update request instead of failing later on every node.
      */
-    private static void validateMaxMem(ByteSizeValue value) {
+    static void validateMaxMem(String key, ByteSizeValue value) {
         if (value.getBytes() < 0) {
-            throw new IllegalArgumentException(MAX_MEM_KEY + " must not be negative");
+            throw new IllegalArgumentException(key + " must not be negative");
         }
     }
 
     private final Map<String, PerStoreStats> perStoreStats = new ConcurrentHashMap<>();
+    private final InternTable internTable = new InternTable();
     private volatile ByteSizeValue maxWeight;
     private volatile ThreadPool threadPool;
+    // the mapped rankers of the model cache entries, and the size of their nodes
+    private final Map<CacheKey, MappedAdditiveDecisionTree> mappedModels = new ConcurrentHashMap<>();
+    private final AtomicLong mappedBytes = new AtomicLong();
+    private volatile long maxMappedBytes = LTR_CACHE_MAPPED_MEM_SETTING.getDefault(Settings.EMPTY).getBytes();
 
     public Caches(TimeValue expAfterWrite, TimeValue expAfterAccess, ByteSizeValue maxWeight) {
+        this(expAfterWrite, expAfterAccess, maxWeight, ByteSizeValue.ZERO);
+    }
+
+    public Caches(TimeValue expAfterWrite, TimeValue expAfterAccess, ByteSizeValue maxWeight, ByteSizeValue featureVectorsMaxMem) {
         this.featureCache = configCache(CacheBuilder.<CacheKey, Feature>builder(), expAfterWrite, expAfterAccess, maxWeight)
             .weigher(Caches::weigther)
             .removalListener((l) -> this.onRemove(l.getKey(), l.getValue()))
@@ -114,6 +142,7 @@ public class Caches {
             .weigher((s, w) -> w.ramBytesUsed())
             .removalListener((l) -> this.onRemove(l.getKey(), l.getValue()))
             .build();
+        this.featureVectorCache = new FeatureVectorCache(featureVectorsMaxMem);
         this.maxWeight = maxWeight;
         warnIfAggregateExceedsHeap(maxWeight);
     }
@@ -121,6 +150,7 @@ public class Caches {
     /** Evicting down to a smaller limit can take a while, so keep it off the cluster applier thread. */
     public void setThreadPool(ThreadPool threadPool) {
         this.threadPool = threadPool;
+        featureVectorCache.setThreadPool(threadPool);
     }
 
     /**
@@ -173,6 +203,63 @@ public class Caches {
         }
     }
 
+    /**
+     * Applies a new limit to the mapped models, evicting the least recently used ones when shrinking
+     */
+    public void setMaxMappedMem(ByteSizeValue newMaxMappedMem) {
+        long previous = maxMappedBytes;
+        maxMappedBytes = newMaxMappedMem.getBytes();
+        if (maxMappedBytes < previous) {
+            if (threadPool != null) {
+                threadPool.executor(ThreadPool.Names.GENERIC).execute(() -> evictMappedModels(null));
+            } else {
+                evictMappedModels(null);
+            }
+        }
+    }
+
+    public long getMaxMappedBytes() {
+        return maxMappedBytes;
+    }
+
+    /**
+     * @return the size of the nodes of the mapped models held by the model cache
+     */
+    public long mappedBytes() {
+        return mappedBytes.get();
+    }
+
+    /**
+     * Evict the least recently used mapped models until the mapped models fit the limit
+     *
+     * @param loaded the model just loaded, never evicted, null if none
+     */
+    private void evictMappedModels(CacheKey loaded) {
+        if (mappedBytes.get() <= maxMappedBytes) {
+            return;
+        }
+        // keys() goes from the most to the least recently used model
+        List<CacheKey> keys = new ArrayList<>();
+        modelCache.keys().forEach(keys::add);
+        for (int i = keys.size() - 1; i >= 0 && mappedBytes.get() > maxMappedBytes; i--) {
+            CacheKey key = keys.get(i);
+            if (key.equals(loaded) == false && mappedModels.containsKey(key)) {
+                modelCache.invalidate(key);
+            }
+        }
+    }
+
+    private static MappedAdditiveDecisionTree mappedRanker(Object element) {
+        if (element instanceof CompiledLtrModel == false) {
+            return null;
+        }
+        LtrRanker ranker = ((CompiledLtrModel) element).ranker();
+        if (ranker instanceof FeatureNormalizingRanker) {
+            ranker = ((FeatureNormalizingRanker) ranker).getWrapped();
+        }
+        return ranker instanceof MappedAdditiveDecisionTree ? (MappedAdditiveDecisionTree) ranker : null;
+    }
+
     private void refresh() {
         featureCache.refresh();
         featureSetCache.refresh();
@@ -203,11 +290,21 @@ public class Caches {
     }
 
     public Caches(Settings settings) {
-        this(LTR_CACHE_EXPIRE_AFTER_WRITE.get(settings), LTR_CACHE_EXPIRE_AFTER_READ.get(settings), LTR_CACHE_MEM_SETTING.get(settings));
+        this(
+            LTR_CACHE_EXPIRE_AFTER_WRITE.get(settings),
+            LTR_CACHE_EXPIRE_AFTER_READ.get(settings),
+            LTR_CACHE_MEM_SETTING.get(settings),
+            FeatureVectorCache.MAX_MEM_SETTING.get(settings)
+        );
+        this.maxMappedBytes = LTR_CACHE_MAPPED_MEM_SETTING.get(settings).getBytes();
     }
 
     private void onAdd(CacheKey k, Object acc) {
         perStoreStats.compute(k.getStoreName(), (k2, v) -> v != null ? v.add(acc) : new PerStoreStats(acc));
+        MappedAdditiveDecisionTree mapped = mappedRanker(acc);
+        if (mapped != null && mappedModels.put(k, mapped) == null) {
+            mappedBytes.addAndGet(mapped.mappedBytes());
+        }
     }
 
     private void onRemove(CacheKey k, Object acc) {
@@ -216,6 +313,14 @@ public class Caches {
             // return null should remove the entry
             return v.remove(acc) > 0 ? v : null;
         });
+        MappedAdditiveDecisionTree mapped = mappedRanker(acc);
+        if (mapped != null && mappedModels.remove(k, mapped)) {
+            mappedBytes.addAndGet(-mapped.mappedBytes());
+        }
+        if (internTable.release(acc) && mapped != null) {
+            // no other cache entry shares the ranker
+            mapped.close();
+        }
     }
 
     Feature loadFeature(CacheKey key, CheckedFunction<String, Feature, IOException> loader) throws IOException {
@@ -227,7 +332,9 @@ public class Caches {
     }
 
     CompiledLtrModel loadModel(CacheKey key, CheckedFunction<String, CompiledLtrModel, IOException> loader) throws IOException {
-        return cacheLoad(key, modelCache, loader);
+        CompiledLtrModel model = cacheLoad(key, modelCache, loader);
+        evictMappedModels(key);
+        return model;
     }
 
     private <E> E cacheLoad(CacheKey key, Cache<CacheKey, E> cache, CheckedFunction<String, E, IOException> loader) throws IOException {
@@ -283,6 +390,20 @@ public class Caches {
         return modelCache;
     }
 
+    /**
+     * Feature vectors computed by sltr queries, not bounded by {@link #LTR_CACHE_MEM_SETTING}
+     */
+    public FeatureVectorCache featureVectorCache() {
+        return featureVectorCache;
+    }
+
+    /**
+     * Elements loaded through this table are shared between the stores and released when removed from the caches
+     */
+    public InternTable internTable() {
+        return internTable;
+    }
+
     public Set<String> getCachedStoreNames() {
         return perStoreStats.keySet();
     }
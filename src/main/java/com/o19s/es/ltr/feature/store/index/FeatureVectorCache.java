@@ -0,0 +1,318 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.feature.store.index;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.opensearch.common.cache.Cache;
+import org.opensearch.common.cache.CacheBuilder;
+import org.opensearch.common.cache.RemovalNotification;
+import org.opensearch.common.cache.RemovalReason;
+import org.opensearch.common.settings.Setting;
+import org.opensearch.core.common.unit.ByteSizeValue;
+import org.opensearch.threadpool.ThreadPool;
+
+import com.o19s.es.ltr.feature.FeatureSet;
+import com.o19s.es.ltr.ranker.LtrRanker;
+
+/**
+ * Node level cache of the feature vectors computed by sltr queries, shared by all the requests of the node.
+ * Repeated queries (popular queries, pages of the same query) reuse the vectors computed by previous requests
+ * instead of running every feature query again on the same documents.
+ * <p>
+ * A vector is keyed by the index reader it was computed on, the shard doc id, the identity of the feature set,
+ * the query params, the active features, the features the model reads and the boost. Feature scores depend on
+ * statistics of the whole shard, so the reader is the top level reader: a refresh starts with an empty cache
+ * and the vectors of a reader are invalidated when it is closed. The keys are also bucketed by reader so that
+ * closing a reader only visits the vectors of this reader.
+ * <p>
+ * The cache is disabled unless {@link #MAX_MEM_SETTING} is set.
+ */
+public class FeatureVectorCache {
+    static final String MAX_MEM_KEY = "ltr.caches.feature_vectors.max_mem";
+    public static final Setting<ByteSizeValue> MAX_MEM_SETTING = new Setting<>(
+        new Setting.SimpleKey(MAX_MEM_KEY),
+        (s) -> ByteSizeValue.ZERO.getStringRep(),
+        (s) -> ByteSizeValue.parseBytesSizeValue(s, MAX_MEM_KEY),
+        (v) -> Caches.validateMaxMem(MAX_MEM_KEY, v),
+        Setting.Property.NodeScope,
+        Setting.Property.Dynamic
+    );
+
+    // object headers, key fields, the entry of the cache and the entry of the reader bucket
+    private static final long ENTRY_OVERHEAD = 160;
+
+    private final Cache<Key, float[]> cache;
+    // keys of the cached vectors of the readers a close listener was added to
+    private final Map<IndexReader.CacheKey, Set<Key>> readers = new ConcurrentHashMap<>();
+    private volatile ByteSizeValue maxMem;
+    private volatile ThreadPool threadPool;
+
+    public FeatureVectorCache(ByteSizeValue maxMem) {
+        this.cache = CacheBuilder
+            .<Key, float[]>builder()
+            .setMaximumWeight(maxMem.getBytes())
+            .weigher((k, v) -> ENTRY_OVERHEAD + RamUsageEstimator.sizeOf(v))
+            .removalListener(this::onRemove)
+            .build();
+        this.maxMem = maxMem;
+    }
+
+    /** Evicting and invalidating can take a while, so keep it off the cluster applier and refresh threads. */
+    void setThreadPool(ThreadPool threadPool) {
+        this.threadPool = threadPool;
+    }
+
+    /**
+     * Applies a new memory limit, a zero limit disables the cache and drops the cached vectors.
+     */
+    public synchronized void setMaxMem(ByteSizeValue newMaxMem) {
+        long previous = maxMem.getBytes();
+        if (newMaxMem.getBytes() == previous) {
+            return;
+        }
+        maxMem = newMaxMem;
+        cache.setMaximumWeight(newMaxMem.getBytes());
+        if (newMaxMem.getBytes() == 0) {
+            execute(cache::invalidateAll);
+        } else if (newMaxMem.getBytes() < previous) {
+            execute(cache::refresh);
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxMem.getBytes() > 0;
+    }
+
+    /**
+     * The vectors of a query.
+     *
+     * @param featureSet the feature set, compared by identity
+     * @param params the query params
+     * @param activeFeatures the active features, empty if all the features are active
+     * @param extractedFeatures the features extracted for the model, null if all the features are extracted
+     * @return the vectors of the query, null if the cache is disabled
+     */
+    public QueryVectors forQuery(FeatureSet featureSet, Map<String, Object> params, Set<String> activeFeatures, BitSet extractedFeatures) {
+        if (!isEnabled()) {
+            return null;
+        }
+        return new QueryVectors(new QueryKey(featureSet, params, activeFeatures, extractedFeatures));
+    }
+
+    public Cache<?, ?> cache() {
+        return cache;
+    }
+
+    private void execute(Runnable task) {
+        ThreadPool pool = threadPool;
+        if (pool != null) {
+            pool.executor(ThreadPool.Names.GENERIC).execute(task);
+        } else {
+            task.run();
+        }
+    }
+
+    private void onRemove(RemovalNotification<Key, float[]> notification) {
+        if (notification.getRemovalReason() == RemovalReason.REPLACED) {
+            return;
+        }
+        Set<Key> keys = readers.get(notification.getKey().reader);
+        if (keys != null) {
+            keys.remove(notification.getKey());
+        }
+    }
+
+    private void onClose(IndexReader.CacheKey reader) {
+        Set<Key> keys = readers.remove(reader);
+        if (keys != null) {
+            // a reader may have many vectors, do not block the thread closing it
+            execute(() -> keys.forEach(cache::invalidate));
+        }
+    }
+
+    /**
+     * @return the number of cached vectors of a reader
+     */
+    int numVectors(IndexReader.CacheKey reader) {
+        Set<Key> keys = readers.get(reader);
+        return keys == null ? 0 : keys.size();
+    }
+
+    /**
+     * The vectors computed by the same query, whatever the request running it
+     */
+    public final class QueryVectors {
+        private final QueryKey query;
+
+        private QueryVectors(QueryKey query) {
+            this.query = query;
+        }
+
+        /**
+         * @param reader the top level reader of the searcher
+         * @param boost the boost applied to the feature queries
+         * @return the vectors of this reader, null if the reader cannot be cached
+         */
+        public ReaderVectors forReader(IndexReader reader, float boost) {
+            IndexReader.CacheHelper helper = reader.getReaderCacheHelper();
+            if (helper == null || !isEnabled()) {
+                return null;
+            }
+            IndexReader.CacheKey key = helper.getKey();
+            Set<Key> keys = readers.get(key);
+            if (keys == null) {
+                Set<Key> newKeys = ConcurrentHashMap.newKeySet();
+                keys = readers.putIfAbsent(key, newKeys);
+                if (keys == null) {
+                    keys = newKeys;
+                    helper.addClosedListener(FeatureVectorCache.this::onClose);
+                }
+            }
+            return new ReaderVectors(query, key, keys, boost);
+        }
+    }
+
+    /**
+     * The vectors of a query computed on a reader
+     */
+    public final class ReaderVectors {
+        private final QueryKey query;
+        private final IndexReader.CacheKey reader;
+        private final Set<Key> keys;
+        private final float boost;
+        private final int numFeatures;
+
+        private ReaderVectors(QueryKey query, IndexReader.CacheKey reader, Set<Key> keys, float boost) {
+            this.query = query;
+            this.reader = reader;
+            this.keys = keys;
+            this.boost = boost;
+            this.numFeatures = query.featureSet.size();
+        }
+
+        /**
+         * Copy the cached scores of the features that matched the document to the vector.
+         *
+         * @param doc the doc id in the top level reader
+         * @return false if the vector of the document is not cached
+         */
+        public boolean copyTo(int doc, LtrRanker.FeatureVector vector) {
+            float[] scores = cache.get(new Key(query, reader, boost, doc));
+            if (scores == null) {
+                return false;
+            }
+            for (int ordinal = 0; ordinal < scores.length; ordinal++) {
+                if (!Float.isNaN(scores[ordinal])) {
+                    vector.setFeatureScore(ordinal, scores[ordinal]);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the array to pass to {@link #put(int, float[])}, NaN for features not matching the document
+         */
+        public float[] newScores() {
+            float[] scores = new float[numFeatures];
+            Arrays.fill(scores, Float.NaN);
+            return scores;
+        }
+
+        /**
+         * @param doc the doc id in the top level reader
+         * @param scores the feature scores of the document, owned by the cache once put
+         */
+        public void put(int doc, float[] scores) {
+            Key key = new Key(query, reader, boost, doc);
+            // bucketed first so that an eviction racing with the put leaves no stale key in the bucket
+            keys.add(key);
+            cache.put(key, scores);
+            if (readers.get(reader) != keys) {
+                // the reader was closed while the vector was computed
+                cache.invalidate(key);
+            }
+        }
+    }
+
+    private static final class QueryKey {
+        private final FeatureSet featureSet;
+        private final Map<String, Object> params;
+        private final Set<String> activeFeatures;
+        private final BitSet extractedFeatures;
+        private final int hashCode;
+
+        private QueryKey(FeatureSet featureSet, Map<String, Object> params, Set<String> activeFeatures, BitSet extractedFeatures) {
+            this.featureSet = Objects.requireNonNull(featureSet);
+            this.params = params;
+            this.activeFeatures = activeFeatures;
+            this.extractedFeatures = extractedFeatures;
+            this.hashCode = Objects.hash(System.identityHashCode(featureSet), params, activeFeatures, extractedFeatures);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey other = (QueryKey) o;
+            return featureSet == other.featureSet
+                && hashCode == other.hashCode
+                && Objects.equals(params, other.params)
+                && Objects.equals(activeFeatures, other.activeFeatures)
+                && Objects.equals(extractedFeatures, other.extractedFeatures);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class Key {
+        private final QueryKey query;
+        private final IndexReader.CacheKey reader;
+        private final float boost;
+        private final int doc;
+
+        private Key(QueryKey query, IndexReader.CacheKey reader, float boost, int doc) {
+            this.query = query;
+            this.reader = reader;
+            this.boost = boost;
+            this.doc = doc;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return doc == other.doc && reader == other.reader && Float.compare(boost, other.boost) == 0 && query.equals(other.query);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = query.hashCode();
+            result = 31 * result + reader.hashCode();
+            result = 31 * result + Float.hashCode(boost);
+            return 31 * result + doc;
+        }
+    }
+}
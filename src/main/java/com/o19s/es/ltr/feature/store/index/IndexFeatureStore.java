@@ -111,11 +111,21 @@ public class IndexFeatureStore implements FeatureStore {
     private final String index;
     private final Supplier<Client> clientSupplier;
     private final LtrRankerParserFactory parserFactory;
+    private final InternTable internTable;
 
     public IndexFeatureStore(String index, Supplier<Client> clientSupplier, LtrRankerParserFactory factory) {
+        this(index, clientSupplier, factory, null);
+    }
+
+    /**
+     * @param internTable when not null the loaded elements are shared through this table, they must be
+     *                    released once no longer used, see {@link Caches#internTable()}
+     */
+    public IndexFeatureStore(String index, Supplier<Client> clientSupplier, LtrRankerParserFactory factory, InternTable internTable) {
         this.index = Objects.requireNonNull(index);
         this.clientSupplier = Objects.requireNonNull(clientSupplier);
         this.parserFactory = Objects.requireNonNull(factory);
+        this.internTable = internTable;
     }
 
     @Override
@@ -125,16 +135,16 @@ public class IndexFeatureStore implements FeatureStore {
 
     @Override
     public Feature load(final String name) throws IOException {
-        return getAndParse(name, StoredFeature.class, StoredFeature.TYPE)
-            .orElseThrow(() -> new ResourceNotFoundException("Unknown feature [" + name + "]"))
-            .optimize();
+        StoredFeature feature = getAndParse(name, StoredFeature.class, StoredFeature.TYPE)
+            .orElseThrow(() -> new ResourceNotFoundException("Unknown feature [" + name + "]"));
+        return internTable != null ? internTable.feature(feature) : feature.optimize();
     }
 
     @Override
     public FeatureSet loadSet(final String name) throws IOException {
-        return getAndParse(name, StoredFeatureSet.class, StoredFeatureSet.TYPE)
-            .orElseThrow(() -> new ResourceNotFoundException("Unknown featureset [" + name + "]"))
-            .optimize();
+        StoredFeatureSet set = getAndParse(name, StoredFeatureSet.class, StoredFeatureSet.TYPE)
+            .orElseThrow(() -> new ResourceNotFoundException("Unknown featureset [" + name + "]"));
+        return internTable != null ? internTable.featureSet(set) : set.optimize();
     }
 
     /**
@@ -188,7 +198,7 @@ public class IndexFeatureStore implements FeatureStore {
         StoredLtrModel model = getAndParse(name, StoredLtrModel.class, StoredLtrModel.TYPE)
             .orElseThrow(() -> new ResourceNotFoundException("Unknown model [" + name + "]"));
 
-        return model.compile(parserFactory);
+        return internTable != null ? internTable.model(model, parserFactory) : model.compile(parserFactory);
     }
 
     public <E extends StorableElement> Optional<E> getAndParse(String name, Class<E> eltClass, String type) throws IOException {
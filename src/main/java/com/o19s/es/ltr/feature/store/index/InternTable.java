@@ -0,0 +1,204 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.feature.store.index;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.util.BytesRef;
+import org.opensearch.common.CheckedConsumer;
+import org.opensearch.common.CheckedFunction;
+import org.opensearch.common.hash.MessageDigests;
+import org.opensearch.common.io.stream.BytesStreamOutput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+
+import com.o19s.es.ltr.feature.Feature;
+import com.o19s.es.ltr.feature.FeatureSet;
+import com.o19s.es.ltr.feature.store.CompiledLtrModel;
+import com.o19s.es.ltr.feature.store.StoredFeature;
+import com.o19s.es.ltr.feature.store.StoredFeatureSet;
+import com.o19s.es.ltr.feature.store.StoredLtrModel;
+import com.o19s.es.ltr.ranker.parser.LtrRankerParserFactory;
+
+/**
+ * Shares the compiled features, feature sets and model rankers having identical definitions, whatever
+ * their store. Elements are keyed by a SHA-256 hash of their definition and are compiled only once.
+ * <p>
+ * Every element returned by this table holds a reference that must be released with {@link #release(Object)}
+ * once it is no longer used, the {@link Caches} release it when the cache entry is removed. An element is
+ * dropped from the table, and releases the elements it was built from (the features of a set, the set of
+ * a model), when its last reference is released.
+ * <p>
+ * Models are keyed by their definition and feature set but not by their name: models uploaded under several
+ * names share their feature set and ranker but each get their own {@link CompiledLtrModel}.
+ */
+public class InternTable {
+    private final Map<String, Entry> entries = new HashMap<>();
+    // shared element (the ranker for models) to its entry
+    private final Map<Object, Entry> handles = new IdentityHashMap<>();
+    private long hits;
+
+    /**
+     * Compile the feature or get the shared instance of an identical feature
+     */
+    public Feature feature(StoredFeature feature) throws IOException {
+        return acquire(contentKey("feature", feature::writeTo), (deps) -> feature.optimize());
+    }
+
+    /**
+     * Compile the feature set or get the shared instance of an identical feature set,
+     * its features are shared as well.
+     */
+    public FeatureSet featureSet(StoredFeatureSet set) throws IOException {
+        return acquire(contentKey("featureset", set::writeTo), (deps) -> set.optimize((f) -> {
+            try {
+                Feature feature = feature(f);
+                deps.add(feature);
+                return feature;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+    }
+
+    /**
+     * Compile the model or get a model sharing the feature set and ranker of an identical model
+     */
+    public CompiledLtrModel model(StoredLtrModel model, LtrRankerParserFactory factory) throws IOException {
+        CompiledLtrModel shared = acquire(contentKey("model", (out) -> {
+            model.featureSet().writeTo(out);
+            out.writeString(model.rankingModelType());
+            out.writeString(model.rankingModel());
+            model.getFeatureNormalizers().writeTo(out);
+        }), (deps) -> {
+            FeatureSet set = featureSet(model.featureSet());
+            deps.add(set);
+            return model.compile(factory, set);
+        });
+        if (shared.name().equals(model.name())) {
+            return shared;
+        }
+        return new CompiledLtrModel(model.name(), shared.featureSet(), shared.ranker());
+    }
+
+    /**
+     * Release a reference acquired on an element of this table, elements not coming from this table are ignored
+     *
+     * @return true if the element is no longer referenced by this table, its resources can be released
+     */
+    public synchronized boolean release(Object element) {
+        Entry entry = handles.get(handle(element));
+        if (entry == null) {
+            return true;
+        }
+        assert entry.refs > 0;
+        if (--entry.refs == 0) {
+            entries.remove(entry.key);
+            handles.remove(handle(entry.value));
+            entry.deps.forEach(this::release);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of distinct elements in the table
+     */
+    public synchronized int count() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of loads that reused an element of the table
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * @return the memory used by the distinct model rankers, feature sets and features of this table
+     */
+    public synchronized long ramBytesUsed() {
+        long ram = 0;
+        for (Entry entry : entries.values()) {
+            // the feature set of a model has its own entry
+            ram += Caches.weigther(null, handle(entry.value));
+        }
+        return ram;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E> E acquire(String key, CheckedFunction<List<Object>, E, IOException> compiler) throws IOException {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                entry.refs++;
+                hits++;
+                return (E) entry.value;
+            }
+        }
+        // compile outside the lock, identical elements loaded concurrently may be compiled twice
+        List<Object> deps = new ArrayList<>();
+        E value;
+        try {
+            value = compiler.apply(deps);
+        } catch (IOException | RuntimeException e) {
+            deps.forEach(this::release);
+            throw e;
+        }
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                entry.refs++;
+                hits++;
+                deps.forEach(this::release);
+                return (E) entry.value;
+            }
+            entry = new Entry(key, value, deps);
+            entries.put(key, entry);
+            handles.put(handle(value), entry);
+            return value;
+        }
+    }
+
+    /**
+     * Models with different names sharing the same ranker are tracked by their ranker
+     */
+    private static Object handle(Object element) {
+        return element instanceof CompiledLtrModel ? ((CompiledLtrModel) element).ranker() : element;
+    }
+
+    private static String contentKey(String type, CheckedConsumer<StreamOutput, IOException> definition) throws IOException {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.writeString(type);
+            definition.accept(out);
+            BytesRef bytes = out.bytes().toBytesRef();
+            MessageDigest digest = MessageDigests.sha256();
+            digest.update(bytes.bytes, bytes.offset, bytes.length);
+            return MessageDigests.toHexString(digest.digest());
+        }
+    }
+
+    private static class Entry {
+        private final String key;
+        private final Object value;
+        // elements this one was built from, released with it
+        private final List<Object> deps;
+        private int refs = 1;
+
+        Entry(String key, Object value, List<Object> deps) {
+            this.key = key;
+            this.value = value;
+            this.deps = deps;
+        }
+    }
+}
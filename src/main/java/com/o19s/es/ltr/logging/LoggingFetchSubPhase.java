@@ -42,6 +42,7 @@ import org.opensearch.search.rescore.QueryRescorer;
 import org.opensearch.search.rescore.RescoreContext;
 
 import com.o19s.es.ltr.feature.FeatureSet;
+import com.o19s.es.ltr.query.LtrRescorer;
 import com.o19s.es.ltr.query.RankerQuery;
 import com.o19s.es.ltr.ranker.LogLtrRanker;
 
@@ -127,9 +128,12 @@ public class LoggingFetchSubPhase implements FetchSubPhase {
             );
         }
         RescoreContext context = contexts.get(logSpec.getRescoreIndex());
+        if (context instanceof LtrRescorer.LtrRescoreContext) {
+            return toLogger(logSpec, ((LtrRescorer.LtrRescoreContext) context).getQuery());
+        }
         if (!(context instanceof QueryRescorer.QueryRescoreContext)) {
             throw new IllegalArgumentException(
-                "Expected a [QueryRescoreContext] but found a "
+                "Expected a [QueryRescoreContext] or an [LtrRescoreContext] but found a "
                     + "["
                     + context.getClass().getSimpleName()
                     + "] "
@@ -80,6 +80,13 @@ public class DerivedExpressionQuery extends Query implements LtrRewritableQuery
         return Objects.hash(expression, features, queryParamValues);
     }
 
+    /**
+     * The variables of the expression, features or query params
+     */
+    String[] variables() {
+        return expression.variables;
+    }
+
     @Override
     public String toString(String field) {
         return (field != null ? field : "") + ":fv_query(" + expression.sourceText + ")";
@@ -0,0 +1,212 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.query;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.util.ArrayUtil;
+import org.opensearch.common.lease.Releasable;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+
+import com.o19s.es.ltr.ranker.LtrRanker;
+
+/**
+ * Feature scores computed while scoring a {@link RankerQuery}, reused when logging the features of the same documents.
+ * Each segment owns its scores: segments may be scored by different slices of a concurrent segment search and
+ * no lookup needs to compute a shard level doc id.
+ * <p>
+ * The scores of a segment are stored in a single float arena, one row of features per cached document, indexed by
+ * an open addressing table from segment doc ids to rows. Caching a document allocates nothing once the arena has
+ * grown to the rescore window. The query owning the cache has no close hook, the growth of the cache is accounted
+ * against a circuit breaker while a rescorer scores the window, see {@link #charge(CircuitBreaker)}.
+ */
+class FeatureScoreCache {
+    private static final int INITIAL_CAPACITY = 16;
+    static final String BREAKER_LABEL = "<ltr_feature_score_cache>";
+
+    private final int numFeatures;
+    // keyed by the doc base of the segment
+    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+    private final AtomicLong chargedBytes = new AtomicLong();
+    private volatile CircuitBreaker breaker;
+
+    /**
+     * @param numFeatures the number of features of a cached document
+     */
+    FeatureScoreCache(int numFeatures) {
+        this.numFeatures = numFeatures;
+    }
+
+    /**
+     * @return the feature scores of the documents of this segment
+     */
+    Segment segment(LeafReaderContext context) {
+        return segments.computeIfAbsent(context.docBase, (k) -> new Segment());
+    }
+
+    /**
+     * Charge the bytes the segments grow by to the breaker, before they are allocated, until the returned releasable
+     * is closed. Closing it gives the charged bytes back to the breaker.
+     */
+    Releasable charge(CircuitBreaker breaker) {
+        this.breaker = breaker;
+        return () -> {
+            this.breaker = null;
+            breaker.addWithoutBreaking(-chargedBytes.getAndSet(0));
+        };
+    }
+
+    private void account(long bytes) {
+        CircuitBreaker breaker = this.breaker;
+        if (breaker != null && bytes > 0) {
+            breaker.addEstimateBytesAndMaybeBreak(bytes, BREAKER_LABEL);
+            chargedBytes.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * @return the number of bytes of the tables and arenas of all the segments
+     */
+    long ramBytesUsed() {
+        long bytes = 0;
+        for (Segment segment : segments.values()) {
+            bytes += segment.ramBytesUsed();
+        }
+        return bytes;
+    }
+
+    /**
+     * Feature scores of the documents of a segment, keyed by segment doc id.
+     * A segment may still be split in several partitions searched concurrently, access is synchronized.
+     */
+    final class Segment {
+        private static final int EMPTY = -1;
+
+        // open addressing table, keys[i] is a doc id or EMPTY and rows[i] its row in the arena
+        private int[] keys = new int[0];
+        private int[] rows = new int[0];
+        private int mask = -1;
+        // numFeatures scores per row, NaN when the feature did not match the document
+        private float[] arena = new float[0];
+        private int size;
+
+        /**
+         * Make room for numDocs more documents, e.g. the documents of the rescore window in this segment.
+         */
+        synchronized void reserve(int numDocs) {
+            ensureCapacity(size + numDocs);
+        }
+
+        boolean contains(int doc) {
+            return row(doc) >= 0;
+        }
+
+        /**
+         * Copy the cached scores of the features that matched the document to the vector.
+         *
+         * @return false if the document is not cached
+         */
+        synchronized boolean copyTo(int doc, LtrRanker.FeatureVector vector) {
+            int row = row(doc);
+            if (row < 0) {
+                return false;
+            }
+            int offset = row * numFeatures;
+            for (int ordinal = 0; ordinal < numFeatures; ordinal++) {
+                float score = arena[offset + ordinal];
+                if (!Float.isNaN(score)) {
+                    vector.setFeatureScore(ordinal, score);
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Cache the scores of a document, NaN for the features that did not match it.
+         * The scores are copied, the array can be reused for the next document.
+         */
+        synchronized void put(int doc, float[] scores) {
+            assert scores.length >= numFeatures;
+            int row = row(doc);
+            if (row < 0) {
+                ensureCapacity(size + 1);
+                row = size++;
+                int slot = hash(doc) & mask;
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = doc;
+                rows[slot] = row;
+            }
+            System.arraycopy(scores, 0, arena, row * numFeatures, numFeatures);
+        }
+
+        private synchronized int row(int doc) {
+            if (size == 0) {
+                return -1;
+            }
+            for (int slot = hash(doc) & mask;; slot = (slot + 1) & mask) {
+                int key = keys[slot];
+                if (key == doc) {
+                    return rows[slot];
+                }
+                if (key == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        synchronized long ramBytesUsed() {
+            return (long) keys.length * Integer.BYTES * 2 + (long) arena.length * Float.BYTES;
+        }
+
+        private void ensureCapacity(int numDocs) {
+            // the table is kept at most half full, it may be larger than needed by the arena after it was rounded up
+            if (numDocs * 2 <= keys.length && (long) numDocs * numFeatures <= arena.length) {
+                return;
+            }
+            int newRowCapacity = Math.max(INITIAL_CAPACITY, ArrayUtil.oversize(numDocs, Float.BYTES * Math.max(1, numFeatures)));
+            int tableSize = Integer.highestOneBit(Math.max(1, newRowCapacity * 2 - 1)) << 1;
+
+            // charged before allocating so that a breaking breaker leaves the segment unchanged
+            long growth = (long) Math.max(0, tableSize - keys.length) * Integer.BYTES * 2
+                + (long) Math.max(0, newRowCapacity * numFeatures - arena.length) * Float.BYTES;
+            account(growth);
+            if (arena.length < newRowCapacity * numFeatures) {
+                arena = ArrayUtil.growExact(arena, newRowCapacity * numFeatures);
+            }
+            if (tableSize <= keys.length) {
+                return;
+            }
+            int[] oldKeys = keys;
+            int[] oldRows = rows;
+            keys = new int[tableSize];
+            rows = new int[tableSize];
+            Arrays.fill(keys, EMPTY);
+            mask = tableSize - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    int slot = hash(oldKeys[i]) & mask;
+                    while (keys[slot] != EMPTY) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    rows[slot] = oldRows[i];
+                }
+            }
+        }
+
+        private int hash(int doc) {
+            // doc ids of a window are often close to each other, spread them over the table
+            int h = doc * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
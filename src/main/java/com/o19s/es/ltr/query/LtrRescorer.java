@@ -0,0 +1,373 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.query;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.TopDocs;
+import org.opensearch.common.lease.Releasable;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.search.rescore.QueryRescoreMode;
+import org.opensearch.search.rescore.RescoreContext;
+import org.opensearch.search.rescore.Rescorer;
+
+import com.o19s.es.ltr.query.RankerQuery.RankerWeight;
+
+/**
+ * Rescore the top hits with a {@link RankerQuery}.
+ * Unlike the query rescorer, which advances the ranker query document by document, the whole window is known up front:
+ * it is split by segment, each segment scores its documents in doc id order and the model is applied to blocks of
+ * {@link #BLOCK_SIZE} documents with a single call. Segments are rescored concurrently when the searcher has an executor.
+ * The feature scores of a block are accounted against the request circuit breaker while the segment is rescored,
+ * and so is the growth of the feature score cache of the query while the window is rescored.
+ * When a top k is set, the k best combined scores seen so far across segments give every document the lowest model
+ * score that can still reach them, the model may stop early below it.
+ * Scores are combined with the first pass scores like the query rescorer does.
+ */
+public class LtrRescorer implements Rescorer {
+    public static final LtrRescorer INSTANCE = new LtrRescorer();
+    static final String BREAKER_LABEL = "<ltr_rescore>";
+    // bounds the feature scores buffered by a segment whatever the window size and the number of features
+    static final int BLOCK_SIZE = 256;
+
+    private static final Comparator<ScoreDoc> DOC_ORDER = Comparator.comparingInt((d) -> d.doc);
+    private static final Comparator<ScoreDoc> SCORE_ORDER = (a, b) -> {
+        int cmp = Float.compare(b.score, a.score);
+        return cmp != 0 ? cmp : Integer.compare(a.doc, b.doc);
+    };
+
+    private LtrRescorer() {}
+
+    @Override
+    public TopDocs rescore(TopDocs topDocs, IndexSearcher searcher, RescoreContext rescoreContext) throws IOException {
+        if (topDocs == null || topDocs.scoreDocs.length == 0) {
+            return topDocs;
+        }
+        LtrRescoreContext context = (LtrRescoreContext) rescoreContext;
+        int windowSize = Math.min(context.getWindowSize(), topDocs.scoreDocs.length);
+        ScoreDoc[] window = Arrays.copyOf(topDocs.scoreDocs, windowSize);
+        Arrays.sort(window, DOC_ORDER);
+
+        RankerWeight weight = context.createWeight(searcher);
+        TopScores topScores = context.getTopK() > 0 ? new TopScores(context.getTopK()) : null;
+        List<LeafReaderContext> leaves = searcher.getIndexReader().leaves();
+        // each segment scores its own range of the window, on the executor of the searcher if it has one
+        List<Callable<Void>> batches = new ArrayList<>();
+        int start = 0;
+        while (start < windowSize) {
+            LeafReaderContext leaf = leaves.get(ReaderUtil.subIndex(window[start].doc, leaves));
+            int maxDoc = leaf.docBase + leaf.reader().maxDoc();
+            int end = start;
+            while (end < windowSize && window[end].doc < maxDoc) {
+                end++;
+            }
+            int from = start;
+            int to = end;
+            batches.add(() -> {
+                rescoreSegment(weight, leaf, window, from, to, context, topScores);
+                return null;
+            });
+            start = end;
+        }
+        FeatureScoreCache cache = weight.getFeatureScoreCache();
+        CircuitBreaker breaker = context.getBreaker();
+        // the feature score cache grows to the window, it is accounted until the window is rescored
+        try (Releasable ignored = cache == null || breaker == null ? null : cache.charge(breaker)) {
+            searcher.getTaskExecutor().invokeAll(batches);
+        }
+
+        Set<Integer> rescored = new HashSet<>(windowSize);
+        for (ScoreDoc hit : window) {
+            rescored.add(hit.doc);
+        }
+        context.setRescoredDocs(rescored);
+
+        Arrays.sort(window, SCORE_ORDER);
+        System.arraycopy(window, 0, topDocs.scoreDocs, 0, windowSize);
+        if (topDocs.scoreDocs.length > windowSize) {
+            // hits past the window are treated like the query rescorer treats them
+            for (int i = windowSize; i < topDocs.scoreDocs.length; i++) {
+                topDocs.scoreDocs[i].score *= context.getQueryWeight();
+            }
+            Arrays.sort(topDocs.scoreDocs, SCORE_ORDER);
+        }
+        return topDocs;
+    }
+
+    private static void rescoreSegment(
+        RankerWeight weight,
+        LeafReaderContext leaf,
+        ScoreDoc[] window,
+        int from,
+        int to,
+        LtrRescoreContext context,
+        TopScores topScores
+    ) throws IOException {
+        RankerWeight.RankerScorer scorer = weight.getScorer(leaf);
+        int blockSize = Math.min(to - from, BLOCK_SIZE);
+        long bytes;
+        if (topScores == null) {
+            // the feature scores of a block, its doc ids and its model scores
+            bytes = (long) blockSize * (scorer.numFeatures() + 2) * Float.BYTES;
+        } else {
+            // the bound is refreshed after every block, the first block sets it once k documents are scored
+            blockSize = Math.min(blockSize, context.getTopK());
+            // documents are scored one by one, only their doc ids, bounds and model scores are buffered
+            bytes = (long) blockSize * 3 * Float.BYTES;
+        }
+        CircuitBreaker breaker = context.getBreaker();
+        if (breaker != null) {
+            breaker.addEstimateBytesAndMaybeBreak(bytes, BREAKER_LABEL);
+        }
+        try {
+            int[] docs = new int[blockSize];
+            float[] scores = new float[blockSize];
+            float[] minScores = topScores == null ? null : new float[blockSize];
+            for (int start = from; start < to; start += blockSize) {
+                int numDocs = Math.min(blockSize, to - start);
+                for (int i = 0; i < numDocs; i++) {
+                    docs[i] = window[start + i].doc - leaf.docBase;
+                }
+                if (topScores == null) {
+                    scorer.scoreBlock(docs, numDocs, scores);
+                } else {
+                    float minCompetitive = topScores.minCompetitiveScore();
+                    for (int i = 0; i < numDocs; i++) {
+                        minScores[i] = context.minRankerScore(window[start + i].score, minCompetitive);
+                    }
+                    scorer.scoreBlock(docs, numDocs, minScores, scores);
+                }
+                for (int i = 0; i < numDocs; i++) {
+                    // the ranker query matches all the documents
+                    window[start + i].score = context.combine(window[start + i].score, scores[i]);
+                    if (topScores != null) {
+                        topScores.add(window[start + i].score);
+                    }
+                }
+            }
+        } finally {
+            if (breaker != null) {
+                breaker.addWithoutBreaking(-bytes);
+            }
+        }
+    }
+
+    @Override
+    public Explanation explain(int topLevelDocId, IndexSearcher searcher, RescoreContext rescoreContext, Explanation sourceExplanation)
+        throws IOException {
+        LtrRescoreContext context = (LtrRescoreContext) rescoreContext;
+        Explanation primary;
+        if (sourceExplanation.isMatch()) {
+            primary = Explanation
+                .match(
+                    sourceExplanation.getValue(),
+                    "product of:",
+                    sourceExplanation,
+                    Explanation.match(context.getQueryWeight(), "primaryWeight")
+                );
+        } else {
+            primary = Explanation.noMatch("First pass did not match", sourceExplanation);
+        }
+        if (!context.isRescored(topLevelDocId)) {
+            return primary;
+        }
+        Query query = context.getBoost() == 1F ? context.getQuery() : new BoostQuery(context.getQuery(), context.getBoost());
+        Explanation rescoreExplain = searcher.explain(query, topLevelDocId);
+        float secondaryWeight = context.getRescoreQueryWeight();
+        Explanation secondary = Explanation
+            .match(
+                rescoreExplain.getValue().floatValue() * secondaryWeight,
+                "product of:",
+                rescoreExplain,
+                Explanation.match(secondaryWeight, "secondaryWeight")
+            );
+        QueryRescoreMode scoreMode = context.getScoreMode();
+        return Explanation
+            .match(
+                scoreMode.combine(primary.getValue().floatValue(), secondary.getValue().floatValue()),
+                scoreMode + " of:",
+                primary,
+                secondary
+            );
+    }
+
+    /**
+     * The k best combined scores of the window, shared by the segments rescored concurrently.
+     */
+    static final class TopScores {
+        private final int k;
+        private final PriorityQueue<Float> heap;
+        private volatile float minCompetitiveScore = Float.NEGATIVE_INFINITY;
+
+        TopScores(int k) {
+            this.k = k;
+            this.heap = new PriorityQueue<>(k);
+        }
+
+        synchronized void add(float score) {
+            if (heap.size() < k) {
+                heap.add(score);
+            } else if (score > heap.peek()) {
+                heap.poll();
+                heap.add(score);
+            } else {
+                return;
+            }
+            if (heap.size() == k) {
+                minCompetitiveScore = heap.peek();
+            }
+        }
+
+        /**
+         * @return the k-th best combined score, or negative infinity until k documents are scored
+         */
+        float minCompetitiveScore() {
+            return minCompetitiveScore;
+        }
+    }
+
+    public static class LtrRescoreContext extends RescoreContext {
+        private final RankerQuery query;
+        private final float boost;
+        private float queryWeight = 1F;
+        private float rescoreQueryWeight = 1F;
+        private QueryRescoreMode scoreMode = QueryRescoreMode.Total;
+        private int topK;
+        private CircuitBreaker breaker;
+
+        /**
+         * @param windowSize the number of top hits to rescore
+         * @param query the ranker query computing the second pass scores
+         * @param boost the boost of the ranker query
+         */
+        public LtrRescoreContext(int windowSize, RankerQuery query, float boost) {
+            super(windowSize, INSTANCE);
+            this.query = Objects.requireNonNull(query);
+            this.boost = boost;
+        }
+
+        public RankerQuery getQuery() {
+            return query;
+        }
+
+        public float getBoost() {
+            return boost;
+        }
+
+        public float getQueryWeight() {
+            return queryWeight;
+        }
+
+        public void setQueryWeight(float queryWeight) {
+            this.queryWeight = queryWeight;
+        }
+
+        public float getRescoreQueryWeight() {
+            return rescoreQueryWeight;
+        }
+
+        public void setRescoreQueryWeight(float rescoreQueryWeight) {
+            this.rescoreQueryWeight = rescoreQueryWeight;
+        }
+
+        public QueryRescoreMode getScoreMode() {
+            return scoreMode;
+        }
+
+        public void setScoreMode(QueryRescoreMode scoreMode) {
+            this.scoreMode = Objects.requireNonNull(scoreMode);
+        }
+
+        public int getTopK() {
+            return topK;
+        }
+
+        /**
+         * @param topK the number of best hits whose scores must be exact, 0 to score the whole window exactly.
+         *             The combination must grow with the model score.
+         */
+        public void setTopK(int topK) {
+            this.topK = topK;
+        }
+
+        public CircuitBreaker getBreaker() {
+            return breaker;
+        }
+
+        /**
+         * @param breaker the breaker the scored blocks are accounted against, null to not account them
+         */
+        public void setBreaker(CircuitBreaker breaker) {
+            this.breaker = breaker;
+        }
+
+        @Override
+        public List<Query> getQueries() {
+            return Collections.singletonList(query);
+        }
+
+        float combine(float firstPassScore, float rankerScore) {
+            return scoreMode.combine(firstPassScore * queryWeight, rankerScore * rescoreQueryWeight);
+        }
+
+        /**
+         * @return the lowest model score whose combination with the first pass score may reach minCompetitiveScore,
+         *         any lower model score is combined to a score lower than minCompetitiveScore
+         */
+        float minRankerScore(float firstPassScore, float minCompetitiveScore) {
+            if (minCompetitiveScore == Float.NEGATIVE_INFINITY) {
+                return Float.NEGATIVE_INFINITY;
+            }
+            float primary = firstPassScore * queryWeight;
+            float bound;
+            switch (scoreMode) {
+                case Total:
+                    bound = (minCompetitiveScore - primary) / rescoreQueryWeight;
+                    break;
+                case Avg:
+                    bound = (2 * minCompetitiveScore - primary) / rescoreQueryWeight;
+                    break;
+                case Max:
+                    bound = primary >= minCompetitiveScore ? Float.NEGATIVE_INFINITY : minCompetitiveScore / rescoreQueryWeight;
+                    break;
+                case Min:
+                    bound = primary < minCompetitiveScore ? Float.POSITIVE_INFINITY : minCompetitiveScore / rescoreQueryWeight;
+                    break;
+                default:
+                    throw new IllegalStateException("The combination [" + scoreMode + "] does not grow with the model score");
+            }
+            // the combination is rounded, lower the bound until the score right below it cannot reach minCompetitiveScore
+            while (bound != Float.NEGATIVE_INFINITY && combine(firstPassScore, Math.nextDown(bound)) >= minCompetitiveScore) {
+                bound = Math.nextDown(bound);
+            }
+            return bound;
+        }
+
+        RankerWeight createWeight(IndexSearcher searcher) throws IOException {
+            // rewriting a ranker query only rewrites its features
+            RankerQuery rewritten = (RankerQuery) searcher.rewrite(query);
+            return (RankerWeight) rewritten.createWeight(searcher, ScoreMode.COMPLETE, boost);
+        }
+    }
+}
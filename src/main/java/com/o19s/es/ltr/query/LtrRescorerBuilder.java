@@ -0,0 +1,254 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.query;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Objects;
+
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.Query;
+import org.opensearch.core.ParseField;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.core.common.ParsingException;
+import org.opensearch.core.common.io.stream.StreamInput;
+import org.opensearch.core.common.io.stream.StreamOutput;
+import org.opensearch.core.xcontent.ObjectParser;
+import org.opensearch.core.xcontent.XContentBuilder;
+import org.opensearch.core.xcontent.XContentParser;
+import org.opensearch.index.query.AbstractQueryBuilder;
+import org.opensearch.index.query.QueryBuilder;
+import org.opensearch.index.query.QueryRewriteContext;
+import org.opensearch.index.query.QueryShardContext;
+import org.opensearch.search.rescore.QueryRescoreMode;
+import org.opensearch.search.rescore.RescorerBuilder;
+
+import com.o19s.es.ltr.query.LtrRescorer.LtrRescoreContext;
+
+/**
+ * ltr rescorer, rescore the top hits with a sltr or ltr query scoring the window segment by segment:
+ * <pre>
+ * "rescore": {
+ *     "window_size": 1000,
+ *     "ltr": {
+ *         "rescore_query": { "sltr": { "model": "my_model", "params": { ... } } },
+ *         "query_weight": 0.0,
+ *         "rescore_query_weight": 1.0,
+ *         "score_mode": "total"
+ *     }
+ * }
+ * </pre>
+ * The weights and the score modes are the ones of the query rescorer.
+ * <p>
+ * When only the best hits of the window are of interest, {@code top_k} lets the model stop early on the documents
+ * that cannot make it to the k best combined scores. The k best hits keep their exact scores and order, the other
+ * hits of the window get a combined score lower than the k-th best. It requires a combination that grows with the
+ * model score: a positive {@code rescore_query_weight} and a score mode other than {@code multiply}.
+ */
+public class LtrRescorerBuilder extends RescorerBuilder<LtrRescorerBuilder> {
+    public static final String NAME = "ltr";
+    public static final ParseField RESCORE_QUERY = new ParseField("rescore_query");
+    public static final ParseField QUERY_WEIGHT = new ParseField("query_weight");
+    public static final ParseField RESCORE_QUERY_WEIGHT = new ParseField("rescore_query_weight");
+    public static final ParseField SCORE_MODE = new ParseField("score_mode");
+    public static final ParseField TOP_K = new ParseField("top_k");
+    private static final ObjectParser<LtrRescorerBuilder, Void> PARSER;
+
+    static {
+        PARSER = new ObjectParser<>(NAME, LtrRescorerBuilder::new);
+        PARSER.declareObject(LtrRescorerBuilder::rescoreQuery, (p, c) -> AbstractQueryBuilder.parseInnerQueryBuilder(p), RESCORE_QUERY);
+        PARSER.declareFloat(LtrRescorerBuilder::setQueryWeight, QUERY_WEIGHT);
+        PARSER.declareFloat(LtrRescorerBuilder::setRescoreQueryWeight, RESCORE_QUERY_WEIGHT);
+        PARSER.declareString((b, s) -> b.setScoreMode(QueryRescoreMode.fromString(s)), SCORE_MODE);
+        PARSER.declareInt(LtrRescorerBuilder::setTopK, TOP_K);
+    }
+
+    private QueryBuilder rescoreQuery;
+    private float queryWeight = 1F;
+    private float rescoreQueryWeight = 1F;
+    private QueryRescoreMode scoreMode = QueryRescoreMode.Total;
+    private Integer topK;
+
+    private LtrRescorerBuilder() {}
+
+    public LtrRescorerBuilder(QueryBuilder rescoreQuery) {
+        this.rescoreQuery = Objects.requireNonNull(rescoreQuery);
+    }
+
+    public LtrRescorerBuilder(StreamInput in) throws IOException {
+        super(in);
+        rescoreQuery = in.readNamedWriteable(QueryBuilder.class);
+        queryWeight = in.readFloat();
+        rescoreQueryWeight = in.readFloat();
+        scoreMode = QueryRescoreMode.readFromStream(in);
+        topK = in.readOptionalVInt();
+    }
+
+    public static LtrRescorerBuilder fromXContent(XContentParser parser) throws IOException {
+        final LtrRescorerBuilder builder;
+        try {
+            builder = PARSER.parse(parser, null);
+            builder.checkTopK();
+        } catch (IllegalArgumentException iae) {
+            throw new ParsingException(parser.getTokenLocation(), iae.getMessage(), iae);
+        }
+        if (builder.rescoreQuery == null) {
+            throw new ParsingException(parser.getTokenLocation(), "Field [" + RESCORE_QUERY + "] is mandatory.");
+        }
+        return builder;
+    }
+
+    @Override
+    protected void doWriteTo(StreamOutput out) throws IOException {
+        out.writeNamedWriteable(rescoreQuery);
+        out.writeFloat(queryWeight);
+        out.writeFloat(rescoreQueryWeight);
+        scoreMode.writeTo(out);
+        out.writeOptionalVInt(topK);
+    }
+
+    @Override
+    protected void doXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(NAME);
+        builder.field(RESCORE_QUERY.getPreferredName(), rescoreQuery);
+        builder.field(QUERY_WEIGHT.getPreferredName(), queryWeight);
+        builder.field(RESCORE_QUERY_WEIGHT.getPreferredName(), rescoreQueryWeight);
+        builder.field(SCORE_MODE.getPreferredName(), scoreMode.name().toLowerCase(Locale.ROOT));
+        if (topK != null) {
+            builder.field(TOP_K.getPreferredName(), topK);
+        }
+        builder.endObject();
+    }
+
+    @Override
+    protected LtrRescoreContext innerBuildContext(int windowSize, QueryShardContext context) throws IOException {
+        checkTopK();
+        Query query = rescoreQuery.toQuery(context);
+        float boost = 1F;
+        if (query instanceof BoostQuery) {
+            boost = ((BoostQuery) query).getBoost();
+            query = ((BoostQuery) query).getQuery();
+        }
+        if (!(query instanceof RankerQuery)) {
+            throw new IllegalArgumentException(
+                "[" + NAME + "] rescorer expects a [sltr] or [ltr] query but found a [" + query.getClass().getSimpleName() + "]"
+            );
+        }
+        LtrRescoreContext rescoreContext = new LtrRescoreContext(windowSize, (RankerQuery) query, boost);
+        rescoreContext.setQueryWeight(queryWeight);
+        rescoreContext.setRescoreQueryWeight(rescoreQueryWeight);
+        rescoreContext.setScoreMode(scoreMode);
+        if (topK != null) {
+            rescoreContext.setTopK(topK);
+        }
+        if (context.bigArrays() != null && context.bigArrays().breakerService() != null) {
+            rescoreContext.setBreaker(context.bigArrays().breakerService().getBreaker(CircuitBreaker.REQUEST));
+        }
+        return rescoreContext;
+    }
+
+    @Override
+    public LtrRescorerBuilder rewrite(QueryRewriteContext ctx) throws IOException {
+        QueryBuilder rewritten = rescoreQuery.rewrite(ctx);
+        if (rewritten == rescoreQuery) {
+            return this;
+        }
+        LtrRescorerBuilder builder = new LtrRescorerBuilder(rewritten)
+            .setQueryWeight(queryWeight)
+            .setRescoreQueryWeight(rescoreQueryWeight)
+            .setScoreMode(scoreMode)
+            .setTopK(topK);
+        if (windowSize() != null) {
+            builder.windowSize(windowSize());
+        }
+        return builder;
+    }
+
+    @Override
+    public String getWriteableName() {
+        return NAME;
+    }
+
+    public QueryBuilder rescoreQuery() {
+        return rescoreQuery;
+    }
+
+    private void rescoreQuery(QueryBuilder rescoreQuery) {
+        this.rescoreQuery = rescoreQuery;
+    }
+
+    public float getQueryWeight() {
+        return queryWeight;
+    }
+
+    public LtrRescorerBuilder setQueryWeight(float queryWeight) {
+        this.queryWeight = queryWeight;
+        return this;
+    }
+
+    public float getRescoreQueryWeight() {
+        return rescoreQueryWeight;
+    }
+
+    public LtrRescorerBuilder setRescoreQueryWeight(float rescoreQueryWeight) {
+        this.rescoreQueryWeight = rescoreQueryWeight;
+        return this;
+    }
+
+    public QueryRescoreMode getScoreMode() {
+        return scoreMode;
+    }
+
+    public LtrRescorerBuilder setScoreMode(QueryRescoreMode scoreMode) {
+        this.scoreMode = Objects.requireNonNull(scoreMode);
+        return this;
+    }
+
+    public Integer getTopK() {
+        return topK;
+    }
+
+    /**
+     * @param topK the number of best hits whose scores must be exact, null to score the whole window exactly
+     */
+    public LtrRescorerBuilder setTopK(Integer topK) {
+        if (topK != null && topK <= 0) {
+            throw new IllegalArgumentException("[" + TOP_K + "] must be greater than 0 but was [" + topK + "]");
+        }
+        this.topK = topK;
+        return this;
+    }
+
+    private void checkTopK() {
+        if (topK == null) {
+            return;
+        }
+        // the model may only stop early if a lower model score can never give a greater combined score
+        if (rescoreQueryWeight <= 0F || scoreMode == QueryRescoreMode.Multiply) {
+            throw new IllegalArgumentException(
+                "[" + TOP_K + "] requires a positive [" + RESCORE_QUERY_WEIGHT + "] and a [" + SCORE_MODE + "] other than [multiply]"
+            );
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!super.equals(obj)) {
+            return false;
+        }
+        LtrRescorerBuilder other = (LtrRescorerBuilder) obj;
+        return Objects.equals(rescoreQuery, other.rescoreQuery)
+            && queryWeight == other.queryWeight
+            && rescoreQueryWeight == other.rescoreQueryWeight
+            && scoreMode == other.scoreMode
+            && Objects.equals(topK, other.topK);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), rescoreQuery, queryWeight, rescoreQueryWeight, scoreMode, topK);
+    }
+}
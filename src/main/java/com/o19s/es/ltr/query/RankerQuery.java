@@ -17,6 +17,7 @@
 package com.o19s.es.ltr.query;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.stream.Stream;
 
@@ -45,6 +46,8 @@ import com.o19s.es.ltr.feature.Feature;
 import com.o19s.es.ltr.feature.FeatureSet;
 import com.o19s.es.ltr.feature.LtrModel;
 import com.o19s.es.ltr.feature.PrebuiltLtrModel;
+import com.o19s.es.ltr.feature.store.index.FeatureVectorCache;
+import com.o19s.es.ltr.ranker.LazyFeatureVector;
 import com.o19s.es.ltr.ranker.LogLtrRanker;
 import com.o19s.es.ltr.ranker.LtrRanker;
 import com.o19s.es.ltr.ranker.NullRanker;
@@ -73,6 +76,8 @@ public class RankerQuery extends Query {
      *         All calls described above happen on the same thread for a single document
      *     </li>
      * </ul>
+     * The vector is only bound to the thread while a single document is scored, so slices of a concurrent
+     * segment search scoring other segments on other threads never see each other's vectors.
      */
     private static final ThreadLocal<LtrRanker.FeatureVector> CURRENT_VECTOR = new ThreadLocal<>();
 
@@ -80,20 +85,28 @@ public class RankerQuery extends Query {
     private final List<Query> queries;
     private final FeatureSet features;
     private final LtrRanker ranker;
-    private final Map<Integer, float[]> featureScoreCache;
+    private final FeatureScoreCache featureScoreCache;
+    // vectors computed by previous requests, null if they are not cached
+    private final FeatureVectorCache.QueryVectors featureVectors;
+    // features to extract, null to extract all of them
+    private final BitSet extractedFeatures;
 
     private RankerQuery(
         List<Query> queries,
         FeatureSet features,
         LtrRanker ranker,
-        Map<Integer, float[]> featureScoreCache,
-        LTRStats ltrStats
+        FeatureScoreCache featureScoreCache,
+        FeatureVectorCache.QueryVectors featureVectors,
+        LTRStats ltrStats,
+        BitSet extractedFeatures
     ) {
         this.queries = Objects.requireNonNull(queries);
         this.features = Objects.requireNonNull(features);
         this.ranker = Objects.requireNonNull(ranker);
         this.featureScoreCache = featureScoreCache;
+        this.featureVectors = featureVectors;
         this.ltrStats = ltrStats;
+        this.extractedFeatures = extractedFeatures;
     }
 
     /**
@@ -107,10 +120,12 @@ public class RankerQuery extends Query {
         return build(
             model.ranker(),
             model.featureSet(),
+            model.usedFeatures(),
             new LtrQueryContext(null, Collections.emptySet()),
             Collections.emptyMap(),
             false,
-            ltrStats
+            ltrStats,
+            null
         );
     }
 
@@ -129,23 +144,98 @@ public class RankerQuery extends Query {
         Boolean featureScoreCacheFlag,
         LTRStats ltrStats
     ) {
-        return build(model.ranker(), model.featureSet(), context, params, featureScoreCacheFlag, ltrStats);
+        return build(model, context, params, featureScoreCacheFlag, ltrStats, null);
+    }
+
+    /**
+     * Build a RankerQuery reusing the feature vectors computed by previous requests.
+     *
+     * @param model   The model
+     * @param context the context used to parse features into lucene queries
+     * @param params  the query params
+     * @param featureVectorCache the node cache of feature vectors, null to not cache them
+     * @return the lucene query
+     */
+    public static RankerQuery build(
+        LtrModel model,
+        LtrQueryContext context,
+        Map<String, Object> params,
+        Boolean featureScoreCacheFlag,
+        LTRStats ltrStats,
+        FeatureVectorCache featureVectorCache
+    ) {
+        return build(
+            model.ranker(),
+            model.featureSet(),
+            model.usedFeatures(),
+            context,
+            params,
+            featureScoreCacheFlag,
+            ltrStats,
+            featureVectorCache
+        );
     }
 
     private static RankerQuery build(
         LtrRanker ranker,
         FeatureSet features,
+        int[] usedFeatures,
         LtrQueryContext context,
         Map<String, Object> params,
         Boolean featureScoreCacheFlag,
-        LTRStats ltrStats
+        LTRStats ltrStats,
+        FeatureVectorCache featureVectorCache
     ) {
         List<Query> queries = features.toQueries(context, params);
-        Map<Integer, float[]> featureScoreCache = null;
+        FeatureScoreCache featureScoreCache = null;
+        BitSet extractedFeatures = null;
+        FeatureVectorCache.QueryVectors featureVectors = null;
         if (null != featureScoreCacheFlag && featureScoreCacheFlag) {
-            featureScoreCache = new HashMap<>();
+            // cached feature scores are reused when logging, they must include all the features
+            featureScoreCache = new FeatureScoreCache(queries.size());
+        } else {
+            if (usedFeatures != null) {
+                extractedFeatures = extractedFeatures(queries, features, usedFeatures);
+            }
+            if (featureVectorCache != null) {
+                featureVectors = featureVectorCache.forQuery(features, params, context.getActiveFeatures(), extractedFeatures);
+            }
         }
-        return new RankerQuery(queries, features, ranker, featureScoreCache, ltrStats);
+        return new RankerQuery(queries, features, ranker, featureScoreCache, featureVectors, ltrStats, extractedFeatures);
+    }
+
+    /**
+     * The features read by the ranker and, recursively, the features derived expressions read from the feature vector.
+     *
+     * @return the features to extract or null if all the features must be extracted
+     */
+    private static BitSet extractedFeatures(List<Query> queries, FeatureSet features, int[] usedFeatures) {
+        BitSet extracted = new BitSet(queries.size());
+        Deque<Integer> pending = new ArrayDeque<>();
+        for (int ordinal : usedFeatures) {
+            if (ordinal < queries.size()) {
+                pending.push(ordinal);
+            }
+        }
+        while (!pending.isEmpty()) {
+            int ordinal = pending.pop();
+            if (extracted.get(ordinal)) {
+                continue;
+            }
+            extracted.set(ordinal);
+            Query query = queries.get(ordinal);
+            if (query instanceof DerivedExpressionQuery) {
+                for (String variable : ((DerivedExpressionQuery) query).variables()) {
+                    if (features.hasFeature(variable)) {
+                        pending.push(features.featureOrdinal(variable));
+                    }
+                }
+            } else if (query instanceof LtrRewritableQuery) {
+                // e.g. scripts may read any feature of the vector
+                return null;
+            }
+        }
+        return extracted;
     }
 
     public static RankerQuery buildLogQuery(
@@ -156,12 +246,12 @@ public class RankerQuery extends Query {
         LTRStats ltrStats
     ) {
         List<Query> queries = features.toQueries(context, params);
-        return new RankerQuery(queries, features, new LogLtrRanker(consumer, features.size()), null, ltrStats);
+        return new RankerQuery(queries, features, new LogLtrRanker(consumer, features.size()), null, null, ltrStats, null);
     }
 
     public RankerQuery toLoggerQuery(LogLtrRanker.LogConsumer consumer) {
         NullRanker newRanker = new NullRanker(features.size());
-        return new RankerQuery(queries, features, new LogLtrRanker(newRanker, consumer), featureScoreCache, ltrStats);
+        return new RankerQuery(queries, features, new LogLtrRanker(newRanker, consumer), featureScoreCache, null, ltrStats, null);
     }
 
     @Override
@@ -173,7 +263,10 @@ public class RankerQuery extends Query {
             rewritten |= rewrittenQuery != query;
             rewrittenQueries.add(rewrittenQuery);
         }
-        return rewritten ? new RankerQuery(rewrittenQueries, features, ranker, featureScoreCache, ltrStats) : this;
+        if (!rewritten) {
+            return this;
+        }
+        return new RankerQuery(rewrittenQueries, features, ranker, featureScoreCache, featureVectors, ltrStats, extractedFeatures);
     }
 
     @SuppressWarnings("EqualsWhichDoesntCheckParameterClass")
@@ -268,27 +361,38 @@ public class RankerQuery extends Query {
 
         FVLtrRankerWrapper ltrRankerWrapper = new FVLtrRankerWrapper(ranker);
         LtrRewriteContext context = new LtrRewriteContext(ranker, CURRENT_VECTOR::get);
-        for (Query q : queries) {
+        for (int ordinal = 0; ordinal < queries.size(); ordinal++) {
+            if (extractedFeatures != null && !extractedFeatures.get(ordinal)) {
+                // the ranker never reads this feature
+                weights.add(null);
+                continue;
+            }
+            Query q = queries.get(ordinal);
             if (q instanceof LtrRewritableQuery) {
                 q = ((LtrRewritableQuery) q).ltrRewrite(context);
             }
             weights.add(searcher.createWeight(q, ScoreMode.COMPLETE, boost));
         }
-        return new RankerWeight(this, weights, ltrRankerWrapper, features, featureScoreCache);
+        FeatureVectorCache.ReaderVectors readerVectors = featureVectors == null
+            ? null
+            : featureVectors.forReader(searcher.getIndexReader(), boost);
+        return new RankerWeight(this, weights, ltrRankerWrapper, features, featureScoreCache, readerVectors);
     }
 
     public static class RankerWeight extends Weight {
         private final List<Weight> weights;
         private final FVLtrRankerWrapper ranker;
         private final FeatureSet features;
-        private final Map<Integer, float[]> featureScoreCache;
+        private final FeatureScoreCache featureScoreCache;
+        private final FeatureVectorCache.ReaderVectors featureVectors;
 
         RankerWeight(
             RankerQuery query,
             List<Weight> weights,
             FVLtrRankerWrapper ranker,
             FeatureSet features,
-            Map<Integer, float[]> featureScoreCache
+            FeatureScoreCache featureScoreCache,
+            FeatureVectorCache.ReaderVectors featureVectors
         ) {
             super(query);
             assert weights instanceof RandomAccess;
@@ -296,6 +400,7 @@ public class RankerQuery extends Query {
             this.ranker = Objects.requireNonNull(ranker);
             this.features = Objects.requireNonNull(features);
             this.featureScoreCache = featureScoreCache;
+            this.featureVectors = featureVectors;
         }
 
         @Override
@@ -318,13 +423,17 @@ public class RankerQuery extends Query {
             int ordinal = -1;
             for (Weight weight : weights) {
                 ordinal++;
-                final Explanation explain;
-                explain = weight.explain(context, doc);
                 String featureString = "Feature " + Integer.toString(ordinal);
                 if (features.feature(ordinal).name() != null) {
                     featureString += "(" + features.feature(ordinal).name() + ")";
                 }
                 featureString += ":";
+                if (weight == null) {
+                    subs.add(Explanation.noMatch(featureString + " [not used by the model]"));
+                    continue;
+                }
+                final Explanation explain;
+                explain = weight.explain(context, doc);
                 if (!explain.isMatch()) {
                     subs
                         .add(
@@ -343,25 +452,44 @@ public class RankerQuery extends Query {
             return Explanation.match(modelScore, " LtrModel: " + ranker.name() + " using features:", subs);
         }
 
+        FeatureScoreCache getFeatureScoreCache() {
+            return featureScoreCache;
+        }
+
         public RankerScorer getScorer(LeafReaderContext context) throws IOException {
+            // cached feature scores must be complete, they are not computed lazily
+            boolean lazy = featureScoreCache == null && featureVectors == null && ranker.supportsLazyFeatures();
             List<Scorer> scorers = new ArrayList<>(weights.size());
+            DocIdSetIterator[] subIterators = lazy ? new DocIdSetIterator[weights.size()] : null;
             DisiPriorityQueue disiPriorityQueue = DisiPriorityQueue.ofMaxSize(weights.size());
             for (Weight weight : weights) {
+                if (weight == null) {
+                    // not extracted, never positioned on a document
+                    scorers.add(new NoopScorer(this, DocIdSetIterator.empty()));
+                    continue;
+                }
                 Scorer scorer = weight.scorer(context);
                 if (scorer == null) {
-                    scorer = new NoopScorer(this, DocIdSetIterator.empty());
+                    // never positioned on a document either
+                    scorers.add(new NoopScorer(this, DocIdSetIterator.empty()));
+                    continue;
+                }
+                if (lazy) {
+                    // advanced on demand by the lazy feature vector
+                    subIterators[scorers.size()] = scorer.iterator();
+                } else {
+                    disiPriorityQueue.add(new FeatureDisiWrapper(scorer, scorers.size()));
                 }
                 scorers.add(scorer);
-                disiPriorityQueue.add(new DisiWrapper(scorer, false));
             }
 
+            FeatureScoreCache.Segment segmentScoreCache = featureScoreCache == null ? null : featureScoreCache.segment(context);
             DisjunctionDISI rankerIterator = new DisjunctionDISI(
                 DocIdSetIterator.all(context.reader().maxDoc()),
                 disiPriorityQueue,
-                context.docBase,
-                featureScoreCache
+                segmentScoreCache
             );
-            return new RankerScorer(scorers, rankerIterator, ranker, context.docBase, featureScoreCache);
+            return new RankerScorer(scorers, subIterators, rankerIterator, ranker, segmentScoreCache, context.docBase);
         }
 
         @Override
@@ -388,15 +516,23 @@ public class RankerQuery extends Query {
             private final DisjunctionDISI iterator;
             private final FVLtrRankerWrapper ranker;
             private LtrRanker.FeatureVector fv;
+            private float[] block = new float[0];
+            private float minCompetitiveScore = Float.NEGATIVE_INFINITY;
+            // feature scores of this segment keyed by segment doc id, null when the cache is disabled
+            private final FeatureScoreCache.Segment featureScoreCache;
             private final int docBase;
-            private final Map<Integer, float[]> featureScoreCache;
+            // scores of the current document before they are copied to the cache
+            private float[] featureScores;
+            // null when all the features are extracted before scoring
+            private final LazyVector lazyVector;
 
             RankerScorer(
                 List<Scorer> scorers,
+                DocIdSetIterator[] subIterators,
                 DisjunctionDISI iterator,
                 FVLtrRankerWrapper ranker,
-                int docBase,
-                Map<Integer, float[]> featureScoreCache
+                FeatureScoreCache.Segment featureScoreCache,
+                int docBase
             ) {
                 super();
                 this.scorers = scorers;
@@ -404,6 +540,7 @@ public class RankerQuery extends Query {
                 this.ranker = ranker;
                 this.docBase = docBase;
                 this.featureScoreCache = featureScoreCache;
+                this.lazyVector = subIterators == null ? null : new LazyVector(subIterators);
             }
 
             @Override
@@ -413,47 +550,202 @@ public class RankerQuery extends Query {
 
             @Override
             public float score() throws IOException {
+                return score(minCompetitiveScore);
+            }
+
+            private float score(float minScore) throws IOException {
+                if (lazyVector == null) {
+                    extractFeatures();
+                    return ranker.score(fv, minScore);
+                }
                 fv = ranker.newFeatureVector(fv);
-                if (featureScoreCache == null) {  // Cache disabled
-                    int ordinal = -1;
-                    // a DisiPriorityQueue could help to avoid
-                    // looping on all scorers
-                    for (Scorer scorer : scorers) {
-                        ordinal++;
-                        // FIXME: Probably inefficient, again we loop over all scorers..
-                        if (scorer.docID() == docID()) {
-                            // XXX: bold assumption that all models are dense
-                            // do we need a some indirection to infer the featureId?
-                            fv.setFeatureScore(ordinal, scorer.score());
-                        }
+                lazyVector.reset(fv);
+                try {
+                    return ranker.score(lazyVector, minScore);
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+            }
+
+            /**
+             * Documents scoring less than minScore may get any score lower than minScore,
+             * allowing the ranker to stop evaluating the model early.
+             */
+            @Override
+            public void setMinCompetitiveScore(float minScore) {
+                this.minCompetitiveScore = minScore;
+            }
+
+            /**
+             * @return the number of features of a document buffered by {@link #scoreBlock(int[], int, float[])}
+             */
+            int numFeatures() {
+                return scorers.size();
+            }
+
+            /**
+             * Score a block of documents of this segment with a single call to the model.
+             * Feature scores are still extracted document by document, but the model is applied to
+             * the whole block with {@link LtrRanker#scoreBlock(float[], int, int, float[])}.
+             * The scores of all the features of the block are buffered, callers bound the block size.
+             *
+             * @param docs the documents to score, sorted in increasing order and not before the current document
+             * @param numDocs the number of documents to score
+             * @param scores receives the score of docs[i] at index i
+             */
+            void scoreBlock(int[] docs, int numDocs, float[] scores) throws IOException {
+                int numFeatures = scorers.size();
+                if (block.length < numDocs * numFeatures) {
+                    block = new float[numDocs * numFeatures];
+                }
+                if (featureScoreCache != null) {
+                    // the cache grows once for the whole block
+                    featureScoreCache.reserve(numDocs);
+                }
+                for (int i = 0; i < numDocs; i++) {
+                    assert docs[i] >= docID();
+                    if (docs[i] != docID()) {
+                        iterator.advance(docs[i]);
                     }
-                } else {
-                    int perShardDocId = docBase + docID();
-                    if (featureScoreCache.containsKey(perShardDocId)) {  // Cache hit
-                        float[] featureScores = featureScoreCache.get(perShardDocId);
-                        int ordinal = -1;
-                        for (float score : featureScores) {
-                            ordinal++;
-                            if (!Float.isNaN(score)) {
-                                fv.setFeatureScore(ordinal, score);
-                            }
-                        }
-                    } else {  // Cache miss
-                        int ordinal = -1;
-                        float[] featureScores = new float[scorers.size()];
-                        for (Scorer scorer : scorers) {
-                            ordinal++;
-                            float score = Float.NaN;
-                            if (scorer.docID() == docID()) {
-                                score = scorer.score();
-                                fv.setFeatureScore(ordinal, score);
-                            }
-                            featureScores[ordinal] = score;
+                    extractFeatures();
+                    int offset = i * numFeatures;
+                    for (int ordinal = 0; ordinal < numFeatures; ordinal++) {
+                        block[offset + ordinal] = fv.getFeatureScore(ordinal);
+                    }
+                }
+                ranker.scoreBlock(block, numFeatures, numDocs, scores);
+            }
+
+            /**
+             * Score a block of documents of this segment document by document, letting the model stop early.
+             * Documents scoring less than their minimum score may get any score lower than it,
+             * see {@link #setMinCompetitiveScore(float)}.
+             *
+             * @param docs the documents to score, sorted in increasing order and not before the current document
+             * @param numDocs the number of documents to score
+             * @param minScores the minimum competitive score of docs[i] at index i
+             * @param scores receives the score of docs[i] at index i
+             */
+            void scoreBlock(int[] docs, int numDocs, float[] minScores, float[] scores) throws IOException {
+                if (featureScoreCache != null) {
+                    featureScoreCache.reserve(numDocs);
+                }
+                for (int i = 0; i < numDocs; i++) {
+                    assert docs[i] >= docID();
+                    if (docs[i] != docID()) {
+                        iterator.advance(docs[i]);
+                    }
+                    scores[i] = score(minScores[i]);
+                }
+            }
+
+            private void extractFeatures() throws IOException {
+                fv = ranker.newFeatureVector(fv);
+                if (lazyVector != null) {
+                    // sub iterators are only advanced by the lazy vector
+                    lazyVector.reset(fv);
+                    for (int ordinal = 0; ordinal < scorers.size(); ordinal++) {
+                        lazyVector.compute(ordinal);
+                    }
+                } else if (featureScoreCache == null) {  // Cache disabled
+                    if (featureVectors != null && featureVectors.copyTo(docBase + docID(), fv)) {
+                        // computed by a previous request
+                        return;
+                    }
+                    float[] computed = featureVectors == null ? null : featureVectors.newScores();
+                    // only the scorers matching the document, the other features keep the default score
+                    for (DisiWrapper w = iterator.matchingSubIterators(); w != null; w = w.next) {
+                        int ordinal = ((FeatureDisiWrapper) w).ordinal;
+                        float score = scorers.get(ordinal).score();
+                        fv.setFeatureScore(ordinal, score);
+                        if (computed != null) {
+                            computed[ordinal] = score;
                         }
-                        featureScoreCache.put(perShardDocId, featureScores);
                     }
+                    if (computed != null) {
+                        featureVectors.put(docBase + docID(), computed);
+                    }
+                } else if (!featureScoreCache.copyTo(docID(), fv)) {  // Cache miss, a hit fills the vector
+                    if (featureScores == null) {
+                        featureScores = new float[scorers.size()];
+                    }
+                    Arrays.fill(featureScores, Float.NaN);
+                    for (DisiWrapper w = iterator.matchingSubIterators(); w != null; w = w.next) {
+                        int ordinal = ((FeatureDisiWrapper) w).ordinal;
+                        float score = scorers.get(ordinal).score();
+                        fv.setFeatureScore(ordinal, score);
+                        featureScores[ordinal] = score;
+                    }
+                    featureScoreCache.put(docID(), featureScores);
+                }
+            }
+
+            /**
+             * Computes the score of a feature the first time the ranker reads it for the current document,
+             * advancing its scorer to the current document at that time.
+             */
+            private final class LazyVector implements LazyFeatureVector {
+                private final DocIdSetIterator[] subIterators;
+                // generation in which each feature was last computed
+                private final int[] computed;
+                private int generation;
+                private LtrRanker.FeatureVector vector;
+
+                LazyVector(DocIdSetIterator[] subIterators) {
+                    this.subIterators = subIterators;
+                    this.computed = new int[subIterators.length];
+                }
+
+                /**
+                 * Start a new document, computed scores are stored in vector
+                 */
+                void reset(LtrRanker.FeatureVector vector) {
+                    this.vector = vector;
+                    generation++;
+                    // derived features read the other features through this vector
+                    CURRENT_VECTOR.set(this);
+                }
+
+                void compute(int ordinal) throws IOException {
+                    if (computed[ordinal] == generation) {
+                        return;
+                    }
+                    // marked first so that a feature reading itself gets the default score
+                    computed[ordinal] = generation;
+                    DocIdSetIterator subIterator = subIterators[ordinal];
+                    if (subIterator == null) {
+                        // not extracted
+                        return;
+                    }
+                    int doc = docID();
+                    if (subIterator.docID() < doc) {
+                        subIterator.advance(doc);
+                    }
+                    if (subIterator.docID() == doc) {
+                        vector.setFeatureScore(ordinal, scorers.get(ordinal).score());
+                    }
+                }
+
+                @Override
+                public void setFeatureScore(int featureId, float score) {
+                    computed[featureId] = generation;
+                    vector.setFeatureScore(featureId, score);
+                }
+
+                @Override
+                public float getFeatureScore(int featureId) {
+                    try {
+                        compute(featureId);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return vector.getFeatureScore(featureId);
+                }
+
+                @Override
+                public float getDefaultScore() {
+                    return vector.getDefaultScore();
                 }
-                return ranker.score(fv);
             }
 
             // @Override
@@ -487,18 +779,11 @@ public class RankerQuery extends Query {
     static class DisjunctionDISI extends DocIdSetIterator {
         private final DocIdSetIterator main;
         private final DisiPriorityQueue subIteratorsPriorityQueue;
-        private final int docBase;
-        private final Map<Integer, float[]> featureScoreCache;
-
-        DisjunctionDISI(
-            DocIdSetIterator main,
-            DisiPriorityQueue subIteratorsPriorityQueue,
-            int docBase,
-            Map<Integer, float[]> featureScoreCache
-        ) {
+        private final FeatureScoreCache.Segment featureScoreCache;
+
+        DisjunctionDISI(DocIdSetIterator main, DisiPriorityQueue subIteratorsPriorityQueue, FeatureScoreCache.Segment featureScoreCache) {
             this.main = main;
             this.subIteratorsPriorityQueue = subIteratorsPriorityQueue;
-            this.docBase = docBase;
             this.featureScoreCache = featureScoreCache;
         }
 
@@ -517,19 +802,31 @@ public class RankerQuery extends Query {
         @Override
         public int advance(int target) throws IOException {
             int docId = main.advance(target);
-            if (featureScoreCache != null && featureScoreCache.containsKey(docBase + target)) {
+            if (featureScoreCache != null && featureScoreCache.contains(docId)) {
                 return docId;  // Cache hit. No need to advance sub iterators
             }
             advanceSubIterators(docId);
             return docId;
         }
 
+        /**
+         * @return the sub iterators positioned on the current document linked through {@link DisiWrapper#next},
+         * null if there is none
+         */
+        DisiWrapper matchingSubIterators() {
+            DisiWrapper top = subIteratorsPriorityQueue.top();
+            if (top == null || top.doc != docID()) {
+                return null;
+            }
+            return subIteratorsPriorityQueue.topList();
+        }
+
         private void advanceSubIterators(int target) throws IOException {
             if (target == NO_MORE_DOCS) {
                 return;
             }
             DisiWrapper top = subIteratorsPriorityQueue.top();
-            while (top.doc < target) {
+            while (top != null && top.doc < target) {
                 top.doc = top.iterator.advance(target);
                 top = subIteratorsPriorityQueue.updateTop();
             }
@@ -541,6 +838,18 @@ public class RankerQuery extends Query {
         }
     }
 
+    /**
+     * A sub iterator of {@link DisjunctionDISI} that knows the ordinal of its feature
+     */
+    static final class FeatureDisiWrapper extends DisiWrapper {
+        final int ordinal;
+
+        FeatureDisiWrapper(Scorer scorer, int ordinal) {
+            super(scorer, false);
+            this.ordinal = ordinal;
+        }
+    }
+
     static class FVLtrRankerWrapper implements LtrRanker {
         private final LtrRanker wrapped;
 
@@ -567,6 +876,24 @@ public class RankerQuery extends Query {
             return score;
         }
 
+        @Override
+        public float score(FeatureVector point, float minScore) {
+            float score = wrapped.score(point, minScore);
+            CURRENT_VECTOR.remove();
+            return score;
+        }
+
+        @Override
+        public void scoreBlock(float[] points, int numFeatures, int numPoints, float[] scores) {
+            wrapped.scoreBlock(points, numFeatures, numPoints, scores);
+            CURRENT_VECTOR.remove();
+        }
+
+        @Override
+        public boolean supportsLazyFeatures() {
+            return wrapped.supportsLazyFeatures();
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o)
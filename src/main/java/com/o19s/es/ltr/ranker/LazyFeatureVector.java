@@ -0,0 +1,16 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker;
+
+/**
+ * A feature vector that computes the score of a feature the first time it is read with
+ * {@link #getFeatureScore(int)}, the features that are never read for a data point are never computed.
+ * <p>
+ * Only rankers that {@link LtrRanker#supportsLazyFeatures() support lazy features} are given such vectors,
+ * they must read feature scores through {@link #getFeatureScore(int)} rather than the storage of the vectors
+ * they create with {@link LtrRanker#newFeatureVector(LtrRanker.FeatureVector)}.
+ */
+public interface LazyFeatureVector extends LtrRanker.FeatureVector {}
@@ -53,6 +53,94 @@ public interface LtrRanker {
      */
     float score(FeatureVector point);
 
+    /**
+     * Score the data point when only scores greater than or equal to minScore are of interest.
+     * The ranker may stop early when it can prove that the score is lower than minScore, it then
+     * returns a value lower than minScore (but not necessarily the exact score).
+     * Scores greater than or equal to minScore are always exact.
+     * <p>
+     * The default implementation always computes the exact score.
+     *
+     * @param point the feature vector point to compute the score for
+     * @param minScore the minimum competitive score
+     * @return the score computed for the given point, or a value lower than minScore
+     */
+    default float score(FeatureVector point, float minScore) {
+        return score(point);
+    }
+
+    /**
+     * Score a block of data points at once.
+     * The feature scores of the i-th data point are stored row-major, from
+     * {@code points[i * numFeatures]} to {@code points[(i + 1) * numFeatures - 1]}.
+     * Features that did not match must be set to the default score of the feature
+     * vector returned by {@link #newFeatureVector(FeatureVector)}.
+     * The content of the block may be modified by this method.
+     * <p>
+     * The default implementation scores every data point one by one, rankers should
+     * override it when they can evaluate several data points more efficiently.
+     *
+     * @param points the feature scores of the data points
+     * @param numFeatures the number of features of a single data point
+     * @param numPoints the number of data points to score
+     * @param scores receives the score of the i-th data point at index i
+     */
+    default void scoreBlock(float[] points, int numFeatures, int numPoints, float[] scores) {
+        FeatureVector vector = null;
+        for (int i = 0; i < numPoints; i++) {
+            vector = newFeatureVector(vector);
+            int offset = i * numFeatures;
+            for (int f = 0; f < numFeatures; f++) {
+                vector.setFeatureScore(f, points[offset + f]);
+            }
+            scores[i] = score(vector);
+        }
+    }
+
+    /**
+     * Whether this ranker can score {@link LazyFeatureVector}s with {@link #score(FeatureVector)} and
+     * {@link #score(FeatureVector, float)}. Rankers that read only some features of a data point, e.g. the
+     * features on the paths taken in a decision tree, should support them so that the other features are
+     * never computed.
+     * <p>
+     * The default implementation returns false.
+     *
+     * @return true if lazy feature vectors are supported
+     */
+    default boolean supportsLazyFeatures() {
+        return false;
+    }
+
+    /**
+     * The ordinals of the features read by this ranker, the scores of the other features
+     * have no impact on the score of a data point and do not need to be computed.
+     * <p>
+     * The default implementation returns null.
+     *
+     * @return the sorted ordinals of the features read by this ranker, or null if it may read any feature
+     */
+    @Nullable
+    default int[] usedFeatures() {
+        return null;
+    }
+
+    /**
+     * Fold affine feature normalizers into the parameters of this ranker, so that feature vectors do not need
+     * to be normalized before being scored. The feature {@code i} is normalized as
+     * {@code (score - shifts[i]) / scales[i]}, features beyond the length of the arrays are not normalized.
+     * Shifts are finite and scales are finite and positive.
+     * <p>
+     * The default implementation returns null.
+     *
+     * @param shifts the values subtracted from the feature scores, indexed by feature ordinal
+     * @param scales the values the shifted feature scores are divided by, indexed by feature ordinal
+     * @return a ranker scoring raw feature scores like this ranker scores normalized ones, or null if not supported
+     */
+    @Nullable
+    default LtrRanker foldNormalizers(float[] shifts, float[] scales) {
+        return null;
+    }
+
     /**
      * A FeatureVector used to store individual feature scores
      */
@@ -16,6 +16,8 @@
 
 package com.o19s.es.ltr.ranker;
 
+import java.util.Arrays;
+
 public class NullRanker extends DenseLtrRanker {
     private final int modelSize;
 
@@ -38,6 +40,11 @@ public class NullRanker extends DenseLtrRanker {
         return 0F;
     }
 
+    @Override
+    public void scoreBlock(float[] points, int numFeatures, int numPoints, float[] scores) {
+        Arrays.fill(scores, 0, numPoints, 0F);
+    }
+
     @Override
     protected int size() {
         return modelSize;
@@ -0,0 +1,85 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import org.apache.lucene.util.RamUsageEstimator;
+
+import com.o19s.es.ltr.ranker.SparseFeatureVector;
+
+/**
+ * Additive decision tree evaluated by a class generated with {@link TreeEnsembleCompiler}.
+ * Scores are bit-identical to the {@link FlatAdditiveDecisionTree} it was compiled from.
+ */
+public class CompiledAdditiveDecisionTree extends FlatAdditiveDecisionTree {
+    private static final long BASE_RAM_USED = RamUsageEstimator.shallowSizeOfInstance(CompiledAdditiveDecisionTree.class)
+        - RamUsageEstimator.shallowSizeOfInstance(FlatAdditiveDecisionTree.class);
+
+    private final TreeEnsembleCompiler.CompiledEnsemble ensemble;
+    private final int bytecodeSize;
+
+    CompiledAdditiveDecisionTree(FlatAdditiveDecisionTree tree, TreeEnsembleCompiler.CompiledEnsemble ensemble, int bytecodeSize) {
+        super(tree);
+        this.ensemble = ensemble;
+        this.bytecodeSize = bytecodeSize;
+    }
+
+    @Override
+    public String name() {
+        return "compiled_additive_decision_tree";
+    }
+
+    /**
+     * Compiles the folded ensemble
+     */
+    @Override
+    public FlatAdditiveDecisionTree foldNormalizers(float[] shifts, float[] scales) {
+        return TreeEnsembleCompiler.compile(super.foldNormalizers(shifts, scales));
+    }
+
+    @Override
+    protected float score(SparseFeatureVector vector) {
+        return normalizer.normalize(ensemble.eval(vector.scores, 0));
+    }
+
+    /**
+     * Always computes the exact score, the early exit of the flat traversal does not apply to this engine
+     */
+    @Override
+    public float score(FeatureVector point, float minScore) {
+        return score(point);
+    }
+
+    /**
+     * Lazy feature vectors are not supported, the generated code reads the feature scores from the array of the vector
+     */
+    @Override
+    public boolean supportsLazyFeatures() {
+        return false;
+    }
+
+    @Override
+    public void scoreBlock(float[] points, int numFeatures, int numPoints, float[] scores) {
+        for (int j = 0; j < numPoints; j++) {
+            scores[j] = normalizer.normalize(ensemble.eval(points, j * numFeatures));
+        }
+    }
+
+    /**
+     * @return the size of the generated class file
+     */
+    public int bytecodeSize() {
+        return bytecodeSize;
+    }
+
+    /**
+     * Return the memory usage of this object in bytes. Negative values are illegal.
+     * The generated class is approximated by the size of its class file.
+     */
+    @Override
+    public long ramBytesUsed() {
+        return super.ramBytesUsed() + BASE_RAM_USED + bytecodeSize;
+    }
+}
@@ -0,0 +1,583 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import com.o19s.es.ltr.ranker.LazyFeatureVector;
+import com.o19s.es.ltr.ranker.SparseFeatureVector;
+import com.o19s.es.ltr.ranker.SparseLtrRanker;
+import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+
+/**
+ * Additive decision tree stored as a struct of arrays rather than as a graph of
+ * {@link NaiveAdditiveDecisionTree.Node} objects.
+ * <p>
+ * All the split nodes of the ensemble are stored in parallel arrays (feature, threshold,
+ * left, right and defaultLeft), all the leaves in a single leafValue array. A child
+ * reference {@code >= 0} is the index of a split, a negative reference {@code c} points
+ * to the leaf {@code ~c}. Splits are laid out in depth-first order so that the left child
+ * of a split usually sits right next to it.
+ * <p>
+ * Scoring semantics are identical to {@link NaiveAdditiveDecisionTree}, including the
+ * per-node missing value direction and missingAsZero.
+ */
+public class FlatAdditiveDecisionTree extends SparseLtrRanker implements Accountable {
+    private static final long BASE_RAM_USED = RamUsageEstimator.shallowSizeOfInstance(FlatAdditiveDecisionTree.class);
+    // check the score bound every 8 trees
+    private static final int BOUND_CHECK_MASK = 7;
+    /**
+     * The flat layout is the default evaluator of the tree models, it keeps the name of the former naive
+     * implementation so that explain output of existing models does not change.
+     */
+    public static final String DEFAULT_NAME = "naive_additive_decision_tree";
+
+    final int[] feature;
+    final float[] threshold;
+    final int[] left;
+    final int[] right;
+    final byte[] defaultLeft;
+    final float[] leafValue;
+    final int[] roots;
+    final float[] weights;
+    final int modelSize;
+    final Normalizer normalizer;
+    final boolean missingAsZero;
+    final String name;
+    // Upper bound of the contribution of the trees [i, numTrees), including a margin for rounding errors
+    private final float[] maxRemaining;
+    private final int[] usedFeatures;
+
+    FlatAdditiveDecisionTree(
+        int[] feature,
+        float[] threshold,
+        int[] left,
+        int[] right,
+        byte[] defaultLeft,
+        float[] leafValue,
+        int[] roots,
+        float[] weights,
+        int modelSize,
+        Normalizer normalizer,
+        boolean missingAsZero,
+        String name
+    ) {
+        assert feature.length == threshold.length;
+        assert feature.length == left.length && feature.length == right.length && feature.length == defaultLeft.length;
+        assert roots.length == weights.length;
+        this.feature = feature;
+        this.threshold = threshold;
+        this.left = left;
+        this.right = right;
+        this.defaultLeft = defaultLeft;
+        this.leafValue = leafValue;
+        this.roots = roots;
+        this.weights = weights;
+        this.modelSize = modelSize;
+        this.normalizer = normalizer;
+        this.missingAsZero = missingAsZero;
+        this.name = Objects.requireNonNull(name);
+        this.maxRemaining = maxRemaining(roots, weights, left, right, leafValue);
+        this.usedFeatures = usedFeatures(feature);
+    }
+
+    private static int[] usedFeatures(int[] feature) {
+        int[] sorted = feature.clone();
+        Arrays.sort(sorted);
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (size == 0 || sorted[size - 1] != sorted[i]) {
+                sorted[size++] = sorted[i];
+            }
+        }
+        return ArrayUtil.copyOfSubArray(sorted, 0, size);
+    }
+
+    private static float[] maxRemaining(int[] roots, float[] weights, int[] left, int[] right, float[] leafValue) {
+        double[] maxContribution = new double[roots.length];
+        double absTotal = 0;
+        int[] stack = new int[16];
+        for (int t = 0; t < roots.length; t++) {
+            double max = Double.NEGATIVE_INFINITY;
+            double absMax = 0;
+            int depth = 0;
+            stack[depth++] = roots[t];
+            while (depth > 0) {
+                int node = stack[--depth];
+                if (node < 0) {
+                    // same float product as the one computed when scoring
+                    float contribution = weights[t] * leafValue[~node];
+                    max = Math.max(max, contribution);
+                    absMax = Math.max(absMax, Math.abs(contribution));
+                } else {
+                    stack = ArrayUtil.grow(stack, depth + 2);
+                    stack[depth++] = right[node];
+                    stack[depth++] = left[node];
+                }
+            }
+            maxContribution[t] = max;
+            absTotal += absMax;
+        }
+        // Every partial sum is bounded by absTotal, so every float addition made while scoring
+        // (and when adding the bound to the partial sum) is off by at most half an ulp of absTotal.
+        double margin = (roots.length + 1) * (double) Math.ulp((float) absTotal);
+        float[] bounds = new float[roots.length + 1];
+        double remaining = 0;
+        for (int t = roots.length - 1; t >= 0; t--) {
+            remaining += maxContribution[t];
+            float bound = (float) (remaining + margin);
+            bounds[t] = bound < remaining + margin ? Math.nextUp(bound) : bound;
+        }
+        return bounds;
+    }
+
+    /**
+     * Share the arrays of another flat ensemble, used by alternative evaluation engines
+     */
+    FlatAdditiveDecisionTree(FlatAdditiveDecisionTree other) {
+        this(
+            other.feature,
+            other.threshold,
+            other.left,
+            other.right,
+            other.defaultLeft,
+            other.leafValue,
+            other.roots,
+            other.weights,
+            other.modelSize,
+            other.normalizer,
+            other.missingAsZero,
+            other.name
+        );
+    }
+
+    /**
+     * Flatten an ensemble built from {@link NaiveAdditiveDecisionTree.Node} objects.
+     */
+    public static FlatAdditiveDecisionTree fromNodes(
+        NaiveAdditiveDecisionTree.Node[] trees,
+        float[] weights,
+        int modelSize,
+        Normalizer normalizer,
+        boolean missingAsZero
+    ) {
+        assert trees.length == weights.length;
+        Builder builder = new Builder();
+        for (int i = 0; i < trees.length; i++) {
+            builder.addTree(builder.addNode(trees[i]), weights[i]);
+        }
+        return builder.build(modelSize, normalizer, missingAsZero);
+    }
+
+    /**
+     * {@link #DEFAULT_NAME} unless the model was converted from a format that names its models, e.g. RankLib
+     */
+    @Override
+    public String name() {
+        return name;
+    }
+
+    public boolean isMissingAsZero() {
+        return missingAsZero;
+    }
+
+    @Override
+    public SparseFeatureVector newFeatureVector(FeatureVector reuse) {
+        float defaultValue = missingAsZero ? 0.0f : Float.NaN;
+        // Only reuse when the vector's default matches this ranker's; otherwise reset() would restore
+        // a stale default and score with the wrong missing value.
+        if (reuse instanceof SparseFeatureVector && Float.compare(((SparseFeatureVector) reuse).getDefaultScore(), defaultValue) == 0) {
+            SparseFeatureVector vector = (SparseFeatureVector) reuse;
+            vector.reset();
+            return vector;
+        }
+        return new SparseFeatureVector(size(), defaultValue);
+    }
+
+    @Override
+    protected float score(SparseFeatureVector vector) {
+        float sum = 0;
+        float[] scores = vector.scores;
+        for (int i = 0; i < roots.length; i++) {
+            sum += weights[i] * evalTree(roots[i], scores, 0);
+        }
+        return normalizer.normalize(sum);
+    }
+
+    @Override
+    public float score(FeatureVector point) {
+        if (point instanceof LazyFeatureVector) {
+            return score(point, Float.NEGATIVE_INFINITY);
+        }
+        return super.score(point);
+    }
+
+    /**
+     * Stops evaluating trees once the partial sum plus the maximum contribution of the remaining
+     * trees is lower than minScore. This assumes that the normalizer is monotonic.
+     */
+    @Override
+    public float score(FeatureVector point, float minScore) {
+        assert point instanceof SparseFeatureVector || point instanceof LazyFeatureVector;
+        float[] scores = point instanceof SparseFeatureVector ? ((SparseFeatureVector) point).scores : null;
+        float sum = 0;
+        for (int i = 0; i < roots.length; i++) {
+            if ((i & BOUND_CHECK_MASK) == 0) {
+                float upperBound = normalizer.normalize(sum + maxRemaining[i]);
+                if (upperBound < minScore) {
+                    return upperBound;
+                }
+            }
+            sum += weights[i] * (scores != null ? evalTree(roots[i], scores, 0) : evalTree(roots[i], point));
+        }
+        return normalizer.normalize(sum);
+    }
+
+    /**
+     * Features are only read on the paths taken, the other features of a {@link LazyFeatureVector} are never computed.
+     */
+    @Override
+    public boolean supportsLazyFeatures() {
+        return true;
+    }
+
+    /**
+     * Evaluates the block tree by tree so that the nodes of a tree stay in cache
+     * while it is applied to all the data points.
+     */
+    @Override
+    public void scoreBlock(float[] points, int numFeatures, int numPoints, float[] scores) {
+        Arrays.fill(scores, 0, numPoints, 0F);
+        for (int i = 0; i < roots.length; i++) {
+            int root = roots[i];
+            float weight = weights[i];
+            for (int j = 0; j < numPoints; j++) {
+                scores[j] += weight * evalTree(root, points, j * numFeatures);
+            }
+        }
+        for (int j = 0; j < numPoints; j++) {
+            scores[j] = normalizer.normalize(scores[j]);
+        }
+    }
+
+    private float evalTree(int node, float[] scores, int offset) {
+        while (node >= 0) {
+            float value = scores[offset + feature[node]];
+            if (Float.isNaN(value)) {
+                node = defaultLeft[node] != 0 ? left[node] : right[node];
+            } else if (threshold[node] > value) {
+                node = left[node];
+            } else {
+                node = right[node];
+            }
+        }
+        return leafValue[~node];
+    }
+
+    private float evalTree(int node, FeatureVector point) {
+        while (node >= 0) {
+            float value = point.getFeatureScore(feature[node]);
+            if (Float.isNaN(value)) {
+                node = defaultLeft[node] != 0 ? left[node] : right[node];
+            } else if (threshold[node] > value) {
+                node = left[node];
+            } else {
+                node = right[node];
+            }
+        }
+        return leafValue[~node];
+    }
+
+    @Override
+    protected int size() {
+        return modelSize;
+    }
+
+    /**
+     * @return the features the splits of this ensemble are made on
+     */
+    @Override
+    public int[] usedFeatures() {
+        return usedFeatures;
+    }
+
+    /**
+     * Thresholds are replaced by the smallest raw score whose normalized score is not lower than the threshold:
+     * the normalization is monotonic so every raw score takes the branch its normalized score takes, scores are
+     * not changed.
+     */
+    @Override
+    public FlatAdditiveDecisionTree foldNormalizers(float[] shifts, float[] scales) {
+        float[] folded = threshold.clone();
+        for (int i = 0; i < feature.length; i++) {
+            int f = feature[i];
+            if (f < shifts.length) {
+                folded[i] = foldThreshold(threshold[i], shifts[f], scales[f]);
+            }
+        }
+        return new FlatAdditiveDecisionTree(
+            feature,
+            folded,
+            left,
+            right,
+            defaultLeft,
+            leafValue,
+            roots,
+            weights,
+            modelSize,
+            normalizer,
+            missingAsZero,
+            name
+        );
+    }
+
+    /**
+     * Binary search of the smallest float {@code v} such that {@code (v - shift) / scale >= threshold}
+     */
+    static float foldThreshold(float threshold, float shift, float scale) {
+        if (Float.isNaN(threshold)) {
+            // no value goes left
+            return threshold;
+        }
+        // +Infinity is normalized to +Infinity which is not lower than any threshold
+        int low = NumericUtils.floatToSortableInt(Float.NEGATIVE_INFINITY);
+        int high = NumericUtils.floatToSortableInt(Float.POSITIVE_INFINITY);
+        while (low < high) {
+            int mid = (int) (((long) low + high) >> 1);
+            float value = NumericUtils.sortableIntToFloat(mid);
+            if ((value - shift) / scale >= threshold) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return NumericUtils.sortableIntToFloat(low);
+    }
+
+    /**
+     * @return the number of trees in this ensemble
+     */
+    public int numTrees() {
+        return roots.length;
+    }
+
+    /**
+     * @return the total number of split nodes in this ensemble
+     */
+    public int numSplits() {
+        return feature.length;
+    }
+
+    /**
+     * @return the total number of leaves in this ensemble
+     */
+    public int numLeaves() {
+        return leafValue.length;
+    }
+
+    /**
+     * Return the memory usage of this object in bytes. Negative values are illegal.
+     */
+    @Override
+    public long ramBytesUsed() {
+        return BASE_RAM_USED + RamUsageEstimator.sizeOf(feature) + RamUsageEstimator.sizeOf(threshold) + RamUsageEstimator.sizeOf(left)
+            + RamUsageEstimator.sizeOf(right) + RamUsageEstimator.sizeOf(defaultLeft) + RamUsageEstimator.sizeOf(leafValue)
+            + RamUsageEstimator.sizeOf(roots) + RamUsageEstimator.sizeOf(weights) + RamUsageEstimator.sizeOf(maxRemaining)
+            + RamUsageEstimator.sizeOf(usedFeatures);
+    }
+
+    /**
+     * Incrementally build a {@link FlatAdditiveDecisionTree}, meant to be used by model parsers
+     * so that they can emit the flat representation without building an intermediate object graph.
+     * <p>
+     * Not thread-safe.
+     */
+    public static class Builder {
+        // ~UNSET is not a valid leaf index, a split with an UNSET child is incomplete
+        private static final int UNSET = Integer.MIN_VALUE;
+        private int[] feature = new int[16];
+        private float[] threshold = new float[16];
+        private int[] left = new int[16];
+        private int[] right = new int[16];
+        private byte[] defaultLeft = new byte[16];
+        private int numSplits;
+        private float[] leafValue = new float[16];
+        private int numLeaves;
+        private int[] roots = new int[4];
+        private float[] weights = new float[4];
+        private int numTrees;
+        private String name = DEFAULT_NAME;
+
+        /**
+         * Add a split node, its children must be set with {@link #setChildren(int, int, int)}
+         *
+         * @return the reference of the new split
+         */
+        public int addSplit(int feature, float threshold, boolean defaultLeft) {
+            if (numSplits == this.feature.length) {
+                this.feature = ArrayUtil.grow(this.feature, numSplits + 1);
+                this.threshold = ArrayUtil.growExact(this.threshold, this.feature.length);
+                this.left = ArrayUtil.growExact(this.left, this.feature.length);
+                this.right = ArrayUtil.growExact(this.right, this.feature.length);
+                this.defaultLeft = ArrayUtil.growExact(this.defaultLeft, this.feature.length);
+            }
+            this.feature[numSplits] = feature;
+            this.threshold[numSplits] = threshold;
+            this.left[numSplits] = UNSET;
+            this.right[numSplits] = UNSET;
+            this.defaultLeft[numSplits] = (byte) (defaultLeft ? 1 : 0);
+            return numSplits++;
+        }
+
+        /**
+         * Add a leaf
+         *
+         * @return the reference of the new leaf (always negative)
+         */
+        public int addLeaf(float value) {
+            if (numLeaves == leafValue.length) {
+                leafValue = ArrayUtil.grow(leafValue, numLeaves + 1);
+            }
+            leafValue[numLeaves] = value;
+            return ~numLeaves++;
+        }
+
+        /**
+         * Set the condition of a split previously added with {@link #addSplit(int, float, boolean)}, used by
+         * streaming parsers to reserve the slot of a split before all its fields are read
+         */
+        public void setSplit(int split, int feature, float threshold, boolean defaultLeft) {
+            assert split >= 0 && split < numSplits;
+            this.feature[split] = feature;
+            this.threshold[split] = threshold;
+            this.defaultLeft[split] = (byte) (defaultLeft ? 1 : 0);
+        }
+
+        /**
+         * Replace the feature {@code f} of every split added so far with {@code ordinals[f]}, used by parsers
+         * of models whose feature order differs from the feature set
+         *
+         * @throws IllegalArgumentException if a split uses a feature outside of the ordinals
+         */
+        public void remapFeatures(int[] ordinals) {
+            for (int i = 0; i < numSplits; i++) {
+                if (feature[i] < 0 || feature[i] >= ordinals.length) {
+                    throw new IllegalArgumentException("Split [" + i + "] uses an unknown feature index [" + feature[i] + "]");
+                }
+                feature[i] = ordinals[feature[i]];
+            }
+        }
+
+        /**
+         * Replace the weight of a tree previously added with {@link #addTree(int, float)}
+         */
+        public Builder setWeight(int tree, float weight) {
+            assert tree >= 0 && tree < numTrees;
+            weights[tree] = weight;
+            return this;
+        }
+
+        /**
+         * Name reported by the built ensemble, {@link #DEFAULT_NAME} by default
+         */
+        public Builder setName(String name) {
+            this.name = Objects.requireNonNull(name);
+            return this;
+        }
+
+        /**
+         * @return the number of trees added so far
+         */
+        public int numTrees() {
+            return numTrees;
+        }
+
+        /**
+         * Set the children of a split previously added with {@link #addSplit(int, float, boolean)}
+         */
+        public void setChildren(int split, int left, int right) {
+            assert split >= 0 && split < numSplits;
+            this.left[split] = left;
+            this.right[split] = right;
+        }
+
+        /**
+         * Add a tree to the ensemble
+         *
+         * @param root reference of the root node (split or leaf)
+         * @param weight the weight applied to the tree output
+         */
+        public Builder addTree(int root, float weight) {
+            if (numTrees == roots.length) {
+                roots = ArrayUtil.grow(roots, numTrees + 1);
+                weights = ArrayUtil.growExact(weights, roots.length);
+            }
+            roots[numTrees] = root;
+            weights[numTrees] = weight;
+            numTrees++;
+            return this;
+        }
+
+        /**
+         * Copy a node and all its descendants, splits are added in depth-first order
+         *
+         * @return the reference of the copied node
+         */
+        public int addNode(NaiveAdditiveDecisionTree.Node node) {
+            if (node instanceof NaiveAdditiveDecisionTree.Split split) {
+                int id = addSplit(split.getFeature(), split.getThreshold(), split.getDefaultLeft());
+                int l = addNode(split.getLeft());
+                int r = addNode(split.getRight());
+                setChildren(id, l, r);
+                return id;
+            }
+            assert node instanceof NaiveAdditiveDecisionTree.Leaf;
+            return addLeaf(((NaiveAdditiveDecisionTree.Leaf) node).getOutput());
+        }
+
+        private void checkRef(int ref) {
+            if (ref == UNSET) {
+                throw new IllegalStateException("Incomplete tree: a split has no children");
+            }
+            if (ref >= numSplits || ~ref >= numLeaves) {
+                throw new IllegalStateException("Invalid node reference [" + ref + "]");
+            }
+        }
+
+        public FlatAdditiveDecisionTree build(int modelSize, Normalizer normalizer, boolean missingAsZero) {
+            for (int i = 0; i < numSplits; i++) {
+                if (feature[i] < 0 || feature[i] >= modelSize) {
+                    throw new IllegalArgumentException("Split [" + i + "] uses an unknown feature ordinal [" + feature[i] + "]");
+                }
+                checkRef(left[i]);
+                checkRef(right[i]);
+            }
+            for (int i = 0; i < numTrees; i++) {
+                checkRef(roots[i]);
+            }
+            return new FlatAdditiveDecisionTree(
+                ArrayUtil.copyOfSubArray(feature, 0, numSplits),
+                ArrayUtil.copyOfSubArray(threshold, 0, numSplits),
+                ArrayUtil.copyOfSubArray(left, 0, numSplits),
+                ArrayUtil.copyOfSubArray(right, 0, numSplits),
+                ArrayUtil.copyOfSubArray(defaultLeft, 0, numSplits),
+                ArrayUtil.copyOfSubArray(leafValue, 0, numLeaves),
+                ArrayUtil.copyOfSubArray(roots, 0, numTrees),
+                ArrayUtil.copyOfSubArray(weights, 0, numTrees),
+                modelSize,
+                normalizer,
+                missingAsZero,
+                name
+            );
+        }
+    }
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.AccessController;
+import java.security.MessageDigest;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.opensearch.SpecialPermission;
+import org.opensearch.common.hash.MessageDigests;
+import org.opensearch.common.lease.Releasable;
+
+import com.o19s.es.ltr.ranker.LazyFeatureVector;
+import com.o19s.es.ltr.ranker.SparseFeatureVector;
+import com.o19s.es.ltr.ranker.SparseLtrRanker;
+import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+
+/**
+ * Additive decision tree whose nodes live off-heap, in a memory-mapped file.
+ * <p>
+ * The arrays of the {@link FlatAdditiveDecisionTree} are written to a file of the model directory (see
+ * {@link #setDirectory(Path)}) named after the SHA-256 hash of its content. Identical models, whether parsed for
+ * validation, optimization or loaded in the caches, and the models reloaded after a restart map the existing file
+ * rather than writing a new one. Files are mapped read-only, the clean pages can be dropped by the OS under memory
+ * pressure. Splits are stored as 16 byte records (feature and missing value direction, threshold, left and right
+ * child) followed by the leaf values, child references use the same encoding as the flat ensemble.
+ * <p>
+ * Only the roots and weights of the trees are kept on-heap and reported by {@link #ramBytesUsed()}, the mapped
+ * nodes are reported by {@link #mappedBytes()}. {@link #close()} deletes the file, searches still holding the ranker
+ * keep reading the mapping which is released once the ranker is garbage collected.
+ * Meant for ensembles too large to be cached on-heap, scoring is slower than the {@link FlatAdditiveDecisionTree}.
+ */
+public class MappedAdditiveDecisionTree extends SparseLtrRanker implements Accountable, Releasable {
+    private static final long BASE_RAM_USED = RamUsageEstimator.shallowSizeOfInstance(MappedAdditiveDecisionTree.class);
+    static final String FILE_SUFFIX = ".ltrtree";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int SPLIT_BYTES = 16;
+    private static final int THRESHOLD_OFFSET = 4;
+    private static final int LEFT_OFFSET = 8;
+    private static final int RIGHT_OFFSET = 12;
+    private static final int DEFAULT_LEFT = 1 << 31;
+    // size of the chunks the nodes are hashed and written by
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private static volatile Path directory;
+    // files mapped by instances not closed yet, with their number of instances
+    private static final Map<Path, Integer> OPEN_FILES = new ConcurrentHashMap<>();
+
+    private final ByteBuffer nodes;
+    private final Path file;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final int leavesOffset;
+    private final int[] roots;
+    private final float[] weights;
+    private final int modelSize;
+    private final Normalizer normalizer;
+    private final boolean missingAsZero;
+    private final int[] usedFeatures;
+
+    /**
+     * Map the nodes of a flat ensemble, writing them to the model directory unless an identical model is already
+     * there. The flat ensemble is not referenced by the new instance.
+     *
+     * @throws IllegalArgumentException if the ensemble is too large to be mapped
+     * @throws IllegalStateException if the model directory is not set
+     * @throws UncheckedIOException if the file cannot be written or mapped
+     */
+    public MappedAdditiveDecisionTree(FlatAdditiveDecisionTree flat) {
+        this.roots = flat.roots;
+        this.weights = flat.weights;
+        this.modelSize = flat.modelSize;
+        this.normalizer = flat.normalizer;
+        this.missingAsZero = flat.missingAsZero;
+        this.usedFeatures = flat.usedFeatures();
+        long size = (long) flat.feature.length * SPLIT_BYTES + (long) flat.leafValue.length * Float.BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                "The ["
+                    + TreeEvaluator.MAPPED.getName()
+                    + "] evaluator supports at most ["
+                    + Integer.MAX_VALUE
+                    + "] bytes of nodes but the model needs ["
+                    + size
+                    + "]"
+            );
+        }
+        Path dir = directory;
+        if (dir == null) {
+            throw new IllegalStateException("The directory of the [" + TreeEvaluator.MAPPED.getName() + "] models is not set");
+        }
+        this.leavesOffset = flat.feature.length * SPLIT_BYTES;
+        this.file = dir.resolve(hash(flat) + FILE_SUFFIX);
+        this.nodes = map(flat, file, (int) size).order(ByteOrder.nativeOrder());
+        OPEN_FILES.merge(file, 1, Integer::sum);
+    }
+
+    /**
+     * Set the directory the model files are written to. The model files left by a previous node run are kept
+     * to be reused, see {@link #deleteUnusedFiles()}, the partially written ones are deleted.
+     */
+    public static void setDirectory(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + TEMP_SUFFIX)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+        directory = dir;
+    }
+
+    /**
+     * Delete the model files of the model directory that are not mapped by an open ranker,
+     * e.g. the files of the models not used since the node restarted.
+     */
+    public static void deleteUnusedFiles() throws IOException {
+        Path dir = directory;
+        if (dir == null) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                if (OPEN_FILES.containsKey(file) == false) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete the file of the nodes. The nodes stay readable until this ranker is garbage collected,
+     * other rankers mapping the same file keep their mapping as well.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            OPEN_FILES.computeIfPresent(file, (f, count) -> count > 1 ? count - 1 : null);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // some platforms do not allow deleting a mapped file, deleteUnusedFiles cleans it up later
+            }
+        }
+    }
+
+    /**
+     * Hash the nodes as they are written to the file
+     */
+    private static String hash(FlatAdditiveDecisionTree flat) {
+        MessageDigest digest = MessageDigests.sha256();
+        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.nativeOrder());
+        writeNodes(flat, chunk, (c) -> digest.update(c));
+        return MessageDigests.toHexString(digest.digest());
+    }
+
+    private interface ChunkConsumer {
+        void accept(ByteBuffer chunk) throws IOException;
+    }
+
+    /**
+     * Fill the chunk with the nodes, handing it to the consumer every time it is full
+     */
+    private static void writeNodes(FlatAdditiveDecisionTree flat, ByteBuffer chunk, ChunkConsumer consumer) {
+        try {
+            for (int i = 0; i < flat.feature.length; i++) {
+                if (chunk.remaining() < SPLIT_BYTES) {
+                    flush(chunk, consumer);
+                }
+                chunk.putInt(flat.feature[i] | (flat.defaultLeft[i] != 0 ? DEFAULT_LEFT : 0));
+                chunk.putFloat(flat.threshold[i]);
+                chunk.putInt(flat.left[i]);
+                chunk.putInt(flat.right[i]);
+            }
+            for (float leaf : flat.leafValue) {
+                if (chunk.remaining() < Float.BYTES) {
+                    flush(chunk, consumer);
+                }
+                chunk.putFloat(leaf);
+            }
+            flush(chunk, consumer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void flush(ByteBuffer chunk, ChunkConsumer consumer) throws IOException {
+        chunk.flip();
+        consumer.accept(chunk);
+        chunk.clear();
+    }
+
+    /**
+     * Map the file of the nodes read-only, writing it first if it does not exist yet
+     */
+    private static ByteBuffer map(FlatAdditiveDecisionTree flat, Path file, int size) {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new SpecialPermission());
+        }
+        try {
+            return AccessController.doPrivileged((PrivilegedExceptionAction<ByteBuffer>) () -> {
+                try {
+                    if (Files.size(file) == size) {
+                        return mapReadOnly(file, size);
+                    }
+                } catch (NoSuchFileException e) {
+                    // not written yet, or deleted by a closed ranker in the meantime
+                }
+                // written aside then moved, other nodes of the directory never see a partial file
+                Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), TEMP_SUFFIX);
+                try {
+                    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                        ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE).order(ByteOrder.nativeOrder());
+                        writeNodes(flat, chunk, (c) -> {
+                            while (c.hasRemaining()) {
+                                channel.write(c);
+                            }
+                        });
+                        channel.force(false);
+                    }
+                    Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } finally {
+                    Files.deleteIfExists(temp);
+                }
+                return mapReadOnly(file, size);
+            });
+        } catch (PrivilegedActionException e) {
+            throw new UncheckedIOException("Cannot map the nodes of the model", (IOException) e.getException());
+        }
+    }
+
+    private static ByteBuffer mapReadOnly(Path file, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid once the channel is closed and the file deleted
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    @Override
+    public String name() {
+        return "mapped_additive_decision_tree";
+    }
+
+    @Override
+    public SparseFeatureVector newFeatureVector(FeatureVector reuse) {
+        float defaultValue = missingAsZero ? 0.0f : Float.NaN;
+        if (reuse instanceof SparseFeatureVector && Float.compare(((SparseFeatureVector) reuse).getDefaultScore(), defaultValue) == 0) {
+            SparseFeatureVector vector = (SparseFeatureVector) reuse;
+            vector.reset();
+            return vector;
+        }
+        return new SparseFeatureVector(size(), defaultValue);
+    }
+
+    @Override
+    public float score(FeatureVector point) {
+        if (point instanceof LazyFeatureVector) {
+            float sum = 0;
+            for (int i = 0; i < roots.length; i++) {
+                sum += weights[i] * evalTree(roots[i], point);
+            }
+            return normalizer.normalize(sum);
+        }
+        return super.score(point);
+    }
+
+    @Override
+    protected float score(SparseFeatureVector vector) {
+        float sum = 0;
+        float[] scores = vector.scores;
+        for (int i = 0; i < roots.length; i++) {
+            sum += weights[i] * evalTree(roots[i], scores, 0);
+        }
+        return normalizer.normalize(sum);
+    }
+
+    /**
+     * Evaluates the block tree by tree so that the pages of a tree are only touched once per block
+     */
+    @Override
+    public void scoreBlock(float[] points, int numFeatures, int numPoints, float[] scores) {
+        Arrays.fill(scores, 0, numPoints, 0F);
+        for (int i = 0; i < roots.length; i++) {
+            int root = roots[i];
+            float weight = weights[i];
+            for (int j = 0; j < numPoints; j++) {
+                scores[j] += weight * evalTree(root, points, j * numFeatures);
+            }
+        }
+        for (int j = 0; j < numPoints; j++) {
+            scores[j] = normalizer.normalize(scores[j]);
+        }
+    }
+
+    @Override
+    public boolean supportsLazyFeatures() {
+        return true;
+    }
+
+    private float evalTree(int node, float[] scores, int offset) {
+        while (node >= 0) {
+            int base = node * SPLIT_BYTES;
+            int f = nodes.getInt(base);
+            node = next(base, f, scores[offset + (f & ~DEFAULT_LEFT)]);
+        }
+        return nodes.getFloat(leavesOffset + ~node * Float.BYTES);
+    }
+
+    private float evalTree(int node, FeatureVector point) {
+        while (node >= 0) {
+            int base = node * SPLIT_BYTES;
+            int f = nodes.getInt(base);
+            node = next(base, f, point.getFeatureScore(f & ~DEFAULT_LEFT));
+        }
+        return nodes.getFloat(leavesOffset + ~node * Float.BYTES);
+    }
+
+    private int next(int base, int f, float value) {
+        if (Float.isNaN(value)) {
+            return nodes.getInt(base + ((f & DEFAULT_LEFT) != 0 ? LEFT_OFFSET : RIGHT_OFFSET));
+        } else if (nodes.getFloat(base + THRESHOLD_OFFSET) > value) {
+            return nodes.getInt(base + LEFT_OFFSET);
+        }
+        return nodes.getInt(base + RIGHT_OFFSET);
+    }
+
+    @Override
+    protected int size() {
+        return modelSize;
+    }
+
+    @Override
+    public int[] usedFeatures() {
+        return usedFeatures;
+    }
+
+    /**
+     * @return the number of trees in this ensemble
+     */
+    public int numTrees() {
+        return roots.length;
+    }
+
+    /**
+     * @return the size in bytes of the mapped nodes, not accounted by {@link #ramBytesUsed()}
+     *         but by the mapped models limit of the caches
+     */
+    public long mappedBytes() {
+        return nodes.capacity();
+    }
+
+    /**
+     * Return the on-heap memory usage of this object in bytes, the mapped nodes are not included.
+     */
+    @Override
+    public long ramBytesUsed() {
+        return BASE_RAM_USED + RamUsageEstimator.sizeOf(roots) + RamUsageEstimator.sizeOf(weights) + RamUsageEstimator.sizeOf(
+            usedFeatures
+        );
+    }
+}
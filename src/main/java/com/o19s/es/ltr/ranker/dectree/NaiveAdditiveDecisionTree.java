@@ -16,6 +16,7 @@
 
 package com.o19s.es.ltr.ranker.dectree;
 
+import java.util.Arrays;
 import java.util.Objects;
 
 import org.apache.lucene.util.Accountable;
@@ -99,6 +100,25 @@ public class NaiveAdditiveDecisionTree extends SparseLtrRanker implements Accoun
         return normalizer.normalize(sum);
     }
 
+    /**
+     * Evaluates the block tree by tree so that the nodes of a tree stay in cache
+     * while it is applied to all the data points.
+     */
+    @Override
+    public void scoreBlock(float[] points, int numFeatures, int numPoints, float[] scores) {
+        Arrays.fill(scores, 0, numPoints, 0F);
+        for (int i = 0; i < trees.length; i++) {
+            Node tree = trees[i];
+            float weight = weights[i];
+            for (int j = 0; j < numPoints; j++) {
+                scores[j] += weight * tree.eval(points, j * numFeatures);
+            }
+        }
+        for (int j = 0; j < numPoints; j++) {
+            scores[j] = normalizer.normalize(scores[j]);
+        }
+    }
+
     @Override
     protected int size() {
         return modelSize;
@@ -116,6 +136,14 @@ public class NaiveAdditiveDecisionTree extends SparseLtrRanker implements Accoun
         boolean isLeaf();
 
         float eval(float[] scores);
+
+        /**
+         * Evaluate the node on the feature scores stored at {@code scores[offset]}
+         * to {@code scores[offset + modelSize - 1]}
+         */
+        default float eval(float[] scores, int offset) {
+            return eval(Arrays.copyOfRange(scores, offset, scores.length));
+        }
     }
 
     public static class Split implements Node {
@@ -154,11 +182,16 @@ public class NaiveAdditiveDecisionTree extends SparseLtrRanker implements Accoun
 
         @Override
         public float eval(float[] scores) {
+            return eval(scores, 0);
+        }
+
+        @Override
+        public float eval(float[] scores, int offset) {
             Node n = this;
             while (!n.isLeaf()) {
                 assert n instanceof Split;
                 Split s = (Split) n;
-                float value = scores[s.feature];
+                float value = scores[offset + s.feature];
                 if (Float.isNaN(value)) {
                     n = s.defaultLeft ? s.left : s.right;
                 } else if (s.threshold > value) {
@@ -168,7 +201,7 @@ public class NaiveAdditiveDecisionTree extends SparseLtrRanker implements Accoun
                 }
             }
             assert n instanceof Leaf;
-            return n.eval(scores);
+            return n.eval(scores, offset);
         }
 
         public Node getLeft() {
@@ -219,6 +252,15 @@ public class NaiveAdditiveDecisionTree extends SparseLtrRanker implements Accoun
             return output;
         }
 
+        @Override
+        public float eval(float[] scores, int offset) {
+            return output;
+        }
+
+        public float getOutput() {
+            return this.output;
+        }
+
         /**
          * Return the memory usage of this object in bytes. Negative values are illegal.
          */
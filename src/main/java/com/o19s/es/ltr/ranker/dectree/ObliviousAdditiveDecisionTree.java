@@ -0,0 +1,274 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import java.util.Arrays;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import com.o19s.es.ltr.ranker.SparseFeatureVector;
+import com.o19s.es.ltr.ranker.SparseLtrRanker;
+import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+
+/**
+ * Additive ensemble of oblivious (symmetric) decision trees, as trained by CatBoost: all the
+ * splits of a level of a tree share the same feature and threshold.
+ * <p>
+ * A tree of depth {@code d} is stored as its {@code d} splits and its {@code 2^d} leaves. The
+ * split at depth {@code i} sets the bit {@code i} of the leaf index when the value goes to the
+ * right ({@code value >= threshold}), so evaluating a tree is a fixed sequence of comparisons
+ * without data dependent branches followed by a single array lookup. Missing (NaN) values go to
+ * the left when {@code defaultLeft} is set, to the right otherwise.
+ */
+public class ObliviousAdditiveDecisionTree extends SparseLtrRanker implements Accountable {
+    private static final long BASE_RAM_USED = RamUsageEstimator.shallowSizeOfInstance(ObliviousAdditiveDecisionTree.class);
+    // leaf indexes are ints
+    public static final int MAX_DEPTH = 30;
+
+    final int[] feature;
+    final float[] threshold;
+    final byte[] defaultLeft;
+    // the splits of the tree i are [splitOffset[i], splitOffset[i + 1])
+    final int[] splitOffset;
+    final int[] leafOffset;
+    final float[] leafValue;
+    final float bias;
+    final int modelSize;
+    final Normalizer normalizer;
+    private final int[] usedFeatures;
+
+    ObliviousAdditiveDecisionTree(
+        int[] feature,
+        float[] threshold,
+        byte[] defaultLeft,
+        int[] splitOffset,
+        int[] leafOffset,
+        float[] leafValue,
+        float bias,
+        int modelSize,
+        Normalizer normalizer
+    ) {
+        assert feature.length == threshold.length && feature.length == defaultLeft.length;
+        assert splitOffset.length == leafOffset.length + 1;
+        this.feature = feature;
+        this.threshold = threshold;
+        this.defaultLeft = defaultLeft;
+        this.splitOffset = splitOffset;
+        this.leafOffset = leafOffset;
+        this.leafValue = leafValue;
+        this.bias = bias;
+        this.modelSize = modelSize;
+        this.normalizer = normalizer;
+        this.usedFeatures = Arrays.stream(feature).distinct().sorted().toArray();
+    }
+
+    @Override
+    public String name() {
+        return "oblivious_additive_decision_tree";
+    }
+
+    @Override
+    public SparseFeatureVector newFeatureVector(FeatureVector reuse) {
+        if (reuse instanceof SparseFeatureVector && Float.isNaN(reuse.getDefaultScore())) {
+            SparseFeatureVector vector = (SparseFeatureVector) reuse;
+            vector.reset();
+            return vector;
+        }
+        return new SparseFeatureVector(size(), Float.NaN);
+    }
+
+    @Override
+    protected float score(SparseFeatureVector vector) {
+        float[] scores = vector.scores;
+        float sum = 0;
+        for (int i = 0; i < leafOffset.length; i++) {
+            sum += leafValue[leafOffset[i] + leafIndex(i, scores, 0)];
+        }
+        return normalizer.normalize(sum + bias);
+    }
+
+    /**
+     * Evaluates the block tree by tree so that the splits and leaves of a tree stay in cache
+     * while it is applied to all the data points.
+     */
+    @Override
+    public void scoreBlock(float[] points, int numFeatures, int numPoints, float[] scores) {
+        Arrays.fill(scores, 0, numPoints, 0F);
+        for (int i = 0; i < leafOffset.length; i++) {
+            int offset = leafOffset[i];
+            for (int j = 0; j < numPoints; j++) {
+                scores[j] += leafValue[offset + leafIndex(i, points, j * numFeatures)];
+            }
+        }
+        for (int j = 0; j < numPoints; j++) {
+            scores[j] = normalizer.normalize(scores[j] + bias);
+        }
+    }
+
+    private int leafIndex(int tree, float[] scores, int offset) {
+        int index = 0;
+        for (int split = splitOffset[tree], depth = 0; split < splitOffset[tree + 1]; split++, depth++) {
+            float value = scores[offset + feature[split]];
+            // non short-circuit operators: NaN is never greater or equal, it goes right only when not defaultLeft
+            boolean right = value >= threshold[split] | (value != value & defaultLeft[split] == 0);
+            index |= (right ? 1 : 0) << depth;
+        }
+        return index;
+    }
+
+    @Override
+    protected int size() {
+        return modelSize;
+    }
+
+    /**
+     * @return the features the splits of this ensemble are made on
+     */
+    @Override
+    public int[] usedFeatures() {
+        return usedFeatures;
+    }
+
+    /**
+     * Thresholds are folded like the ones of {@link FlatAdditiveDecisionTree#foldNormalizers(float[], float[])}.
+     */
+    @Override
+    public ObliviousAdditiveDecisionTree foldNormalizers(float[] shifts, float[] scales) {
+        float[] folded = threshold.clone();
+        for (int i = 0; i < feature.length; i++) {
+            int f = feature[i];
+            if (f < shifts.length) {
+                folded[i] = FlatAdditiveDecisionTree.foldThreshold(threshold[i], shifts[f], scales[f]);
+            }
+        }
+        return new ObliviousAdditiveDecisionTree(
+            feature,
+            folded,
+            defaultLeft,
+            splitOffset,
+            leafOffset,
+            leafValue,
+            bias,
+            modelSize,
+            normalizer
+        );
+    }
+
+    /**
+     * @return the number of trees in this ensemble
+     */
+    public int numTrees() {
+        return leafOffset.length;
+    }
+
+    /**
+     * Return the memory usage of this object in bytes. Negative values are illegal.
+     */
+    @Override
+    public long ramBytesUsed() {
+        return BASE_RAM_USED + RamUsageEstimator.sizeOf(feature) + RamUsageEstimator.sizeOf(threshold)
+            + RamUsageEstimator.sizeOf(defaultLeft) + RamUsageEstimator.sizeOf(splitOffset) + RamUsageEstimator.sizeOf(leafOffset)
+            + RamUsageEstimator.sizeOf(leafValue) + RamUsageEstimator.sizeOf(usedFeatures);
+    }
+
+    /**
+     * Incrementally build an {@link ObliviousAdditiveDecisionTree}, meant to be used by model parsers.
+     * <p>
+     * Not thread-safe.
+     */
+    public static class Builder {
+        private int[] feature = new int[16];
+        private float[] threshold = new float[16];
+        private byte[] defaultLeft = new byte[16];
+        private int numSplits;
+        private float[] leafValue = new float[16];
+        private int numLeaves;
+        private int[] splitOffset = new int[5];
+        private int[] leafOffset = new int[4];
+        private int numTrees;
+
+        /**
+         * Add a tree to the ensemble
+         *
+         * @param features the feature of the split of every level, starting from the one setting the lowest bit of the leaf index
+         * @param thresholds the threshold of every level, values greater or equal go to the right
+         * @param defaultLeft the direction of the missing values at every level
+         * @param leafValues the {@code 2^depth} leaves, indexed by the directions taken at every level
+         */
+        public Builder addTree(int[] features, float[] thresholds, boolean[] defaultLeft, float[] leafValues) {
+            int depth = features.length;
+            if (thresholds.length != depth || defaultLeft.length != depth) {
+                throw new IllegalArgumentException("Tree [" + numTrees + "] must define a threshold and a default direction per level");
+            }
+            if (depth > MAX_DEPTH) {
+                throw new IllegalArgumentException("Tree [" + numTrees + "] is too deep [" + depth + "], max depth is [" + MAX_DEPTH + "]");
+            }
+            if (leafValues.length != 1 << depth) {
+                throw new IllegalArgumentException(
+                    "Tree ["
+                        + numTrees
+                        + "] of depth ["
+                        + depth
+                        + "] must have ["
+                        + (1 << depth)
+                        + "] leaves but has ["
+                        + leafValues.length
+                        + "]"
+                );
+            }
+            if (numSplits + depth > feature.length) {
+                feature = ArrayUtil.grow(feature, numSplits + depth);
+                threshold = ArrayUtil.growExact(threshold, feature.length);
+                this.defaultLeft = ArrayUtil.growExact(this.defaultLeft, feature.length);
+            }
+            System.arraycopy(features, 0, feature, numSplits, depth);
+            System.arraycopy(thresholds, 0, threshold, numSplits, depth);
+            for (int i = 0; i < depth; i++) {
+                this.defaultLeft[numSplits + i] = (byte) (defaultLeft[i] ? 1 : 0);
+            }
+            leafValue = ArrayUtil.grow(leafValue, numLeaves + leafValues.length);
+            System.arraycopy(leafValues, 0, leafValue, numLeaves, leafValues.length);
+            leafOffset = ArrayUtil.grow(leafOffset, numTrees + 1);
+            splitOffset = ArrayUtil.grow(splitOffset, numTrees + 2);
+            leafOffset[numTrees] = numLeaves;
+            numSplits += depth;
+            numLeaves += leafValues.length;
+            splitOffset[++numTrees] = numSplits;
+            return this;
+        }
+
+        /**
+         * @return the number of trees added so far
+         */
+        public int numTrees() {
+            return numTrees;
+        }
+
+        /**
+         * @param bias constant added to the sum of the trees, before normalization
+         */
+        public ObliviousAdditiveDecisionTree build(int modelSize, float bias, Normalizer normalizer) {
+            for (int i = 0; i < numSplits; i++) {
+                if (feature[i] < 0 || feature[i] >= modelSize) {
+                    throw new IllegalArgumentException("Split [" + i + "] uses an unknown feature ordinal [" + feature[i] + "]");
+                }
+            }
+            return new ObliviousAdditiveDecisionTree(
+                ArrayUtil.copyOfSubArray(feature, 0, numSplits),
+                ArrayUtil.copyOfSubArray(threshold, 0, numSplits),
+                ArrayUtil.copyOfSubArray(defaultLeft, 0, numSplits),
+                ArrayUtil.copyOfSubArray(splitOffset, 0, numTrees + 1),
+                ArrayUtil.copyOfSubArray(leafOffset, 0, numTrees),
+                ArrayUtil.copyOfSubArray(leafValue, 0, numLeaves),
+                bias,
+                modelSize,
+                normalizer
+            );
+        }
+    }
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import java.util.Arrays;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import com.o19s.es.ltr.ranker.LazyFeatureVector;
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.SparseFeatureVector;
+import com.o19s.es.ltr.ranker.SparseLtrRanker;
+import com.o19s.es.ltr.ranker.normalizer.FeatureNormalizingRanker;
+import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+
+/**
+ * Compact encoding of an additive decision tree, about half the size of a {@link FlatAdditiveDecisionTree}.
+ * <ul>
+ *     <li>
+ *         The thresholds of each feature are stored once in a sorted table of unique values, splits only
+ *         store an 8-bit index into the table of their feature (16-bit if a feature has more than 256 thresholds).
+ *         Thresholds are not approximated, splits take exactly the same decisions as the float model.
+ *     </li>
+ *     <li>
+ *         Leaf values, multiplied by the weight of their tree, are stored as 16-bit integers scaled by a
+ *         single per-model factor. This is the only source of deviation from the float model, bounded
+ *         by {@link #maxDeviation()}.
+ *     </li>
+ *     <li>
+ *         Children are stored as 16-bit references relative to the first split and the first leaf of their tree,
+ *         the feature ordinal and the missing value direction share a 16-bit value.
+ *     </li>
+ * </ul>
+ * Trees must have at most {@link #MAX_NODES} splits and {@link #MAX_NODES} leaves, and feature ordinals
+ * must be lower than {@link #MAX_NODES}.
+ */
+public class QuantizedAdditiveDecisionTree extends SparseLtrRanker implements Accountable {
+    private static final long BASE_RAM_USED = RamUsageEstimator.shallowSizeOfInstance(QuantizedAdditiveDecisionTree.class);
+
+    public static final int MAX_NODES = 1 << 15;
+    // set on child references pointing to a leaf
+    private static final char LEAF = 0x8000;
+    // set on the feature of splits sending missing values to the left
+    private static final char DEFAULT_LEFT = 0x8000;
+    private static final char FEATURE_MASK = 0x7FFF;
+
+    // feature ordinal and DEFAULT_LEFT
+    private final char[] feature;
+    // index of the threshold in the table of the feature, only one of them is not null
+    private final byte[] threshold8;
+    private final char[] threshold16;
+    // thresholds of feature f are stored sorted in [thresholdOffsets[f], thresholdOffsets[f+1])
+    private final int[] thresholdOffsets;
+    private final float[] thresholds;
+    private final char[] left;
+    private final char[] right;
+    private final short[] leaves;
+    private final float leafScale;
+    // reference of the root of each tree and offsets of its splits and leaves
+    private final char[] roots;
+    private final int[] splitOffsets;
+    private final int[] leafOffsets;
+    private final int modelSize;
+    private final Normalizer normalizer;
+    private final boolean missingAsZero;
+    private final int[] usedFeatures;
+    private final float maxDeviation;
+
+    /**
+     * Encode a flat ensemble, the flat ensemble is not referenced by the new instance.
+     *
+     * @throws IllegalArgumentException if the ensemble is too large to be encoded or has non-finite leaves
+     */
+    public QuantizedAdditiveDecisionTree(FlatAdditiveDecisionTree flat) {
+        this.modelSize = flat.modelSize;
+        this.normalizer = flat.normalizer;
+        this.missingAsZero = flat.missingAsZero;
+        this.usedFeatures = flat.usedFeatures();
+        if (modelSize > MAX_NODES) {
+            throw new IllegalArgumentException(
+                "The [" + TreeEvaluator.QUANTIZED.getName() + "] evaluator supports at most [" + MAX_NODES + "] features"
+            );
+        }
+
+        // sorted tables of unique thresholds per feature
+        thresholdOffsets = new int[modelSize + 1];
+        float[] sorted = new float[flat.feature.length];
+        for (int f : flat.feature) {
+            thresholdOffsets[f + 1]++;
+        }
+        for (int f = 0; f < modelSize; f++) {
+            thresholdOffsets[f + 1] += thresholdOffsets[f];
+        }
+        int[] next = ArrayUtil.copyOfSubArray(thresholdOffsets, 0, modelSize);
+        for (int i = 0; i < flat.feature.length; i++) {
+            sorted[next[flat.feature[i]]++] = flat.threshold[i];
+        }
+        int numThresholds = 0;
+        int maxTableSize = 0;
+        for (int f = 0; f < modelSize; f++) {
+            int start = numThresholds;
+            Arrays.sort(sorted, thresholdOffsets[f], thresholdOffsets[f + 1]);
+            for (int i = thresholdOffsets[f]; i < thresholdOffsets[f + 1]; i++) {
+                if (numThresholds == start || Float.compare(sorted[numThresholds - 1], sorted[i]) != 0) {
+                    sorted[numThresholds++] = sorted[i];
+                }
+            }
+            thresholdOffsets[f] = start;
+            maxTableSize = Math.max(maxTableSize, numThresholds - start);
+        }
+        thresholdOffsets[modelSize] = numThresholds;
+        thresholds = ArrayUtil.copyOfSubArray(sorted, 0, numThresholds);
+        if (maxTableSize > 1 << 16) {
+            throw new IllegalArgumentException(
+                "A feature has ["
+                    + maxTableSize
+                    + "] distinct thresholds, the ["
+                    + TreeEvaluator.QUANTIZED.getName()
+                    + "] evaluator supports at most ["
+                    + (1 << 16)
+                    + "]"
+            );
+        }
+
+        // weighted leaf values, in tree order
+        int numTrees = flat.roots.length;
+        Layout layout = new Layout(flat);
+        roots = new char[numTrees];
+        splitOffsets = new int[numTrees];
+        leafOffsets = new int[numTrees];
+        for (int t = 0; t < numTrees; t++) {
+            splitOffsets[t] = layout.numSplits;
+            leafOffsets[t] = layout.numLeaves;
+            roots[t] = layout.addTree(t);
+        }
+        double maxAbs = 0;
+        for (int i = 0; i < layout.numLeaves; i++) {
+            if (Float.isFinite(layout.leaves[i]) == false) {
+                throw new IllegalArgumentException("Leaf values must be finite to be quantized but got [" + layout.leaves[i] + "]");
+            }
+            maxAbs = Math.max(maxAbs, Math.abs(layout.leaves[i]));
+        }
+        leafScale = maxAbs == 0 ? 1F : (float) (maxAbs / Short.MAX_VALUE);
+        leaves = new short[layout.numLeaves];
+        double deviation = 0;
+        for (int t = 0; t < numTrees; t++) {
+            int end = t + 1 < numTrees ? leafOffsets[t + 1] : layout.numLeaves;
+            double treeDeviation = 0;
+            for (int i = leafOffsets[t]; i < end; i++) {
+                long q = Math.round(layout.leaves[i] / (double) leafScale);
+                leaves[i] = (short) Math.max(-Short.MAX_VALUE, Math.min(Short.MAX_VALUE, q));
+                treeDeviation = Math.max(treeDeviation, Math.abs(leaves[i] * (double) leafScale - layout.leaves[i]));
+            }
+            deviation += treeDeviation;
+        }
+        float maxDeviation = (float) deviation;
+        this.maxDeviation = maxDeviation < deviation ? Math.nextUp(maxDeviation) : maxDeviation;
+
+        int numSplits = layout.numSplits;
+        feature = new char[numSplits];
+        left = new char[numSplits];
+        right = new char[numSplits];
+        threshold8 = maxTableSize <= 1 << 8 ? new byte[numSplits] : null;
+        threshold16 = threshold8 == null ? new char[numSplits] : null;
+        for (int i = 0; i < numSplits; i++) {
+            int split = layout.splits[i];
+            int f = flat.feature[split];
+            feature[i] = (char) (f | (flat.defaultLeft[split] != 0 ? DEFAULT_LEFT : 0));
+            int index = Arrays.binarySearch(thresholds, thresholdOffsets[f], thresholdOffsets[f + 1], flat.threshold[split])
+                - thresholdOffsets[f];
+            assert index >= 0;
+            if (threshold8 != null) {
+                threshold8[i] = (byte) index;
+            } else {
+                threshold16[i] = (char) index;
+            }
+            left[i] = layout.children[2 * i];
+            right[i] = layout.children[2 * i + 1];
+        }
+    }
+
+    /**
+     * Lays the nodes of every tree out in depth-first order, numbering splits and leaves relatively to their tree
+     */
+    private static class Layout {
+        private final FlatAdditiveDecisionTree flat;
+        // flat split of each new split, children of each new split
+        private int[] splits;
+        private char[] children;
+        private int numSplits;
+        private float[] leaves;
+        private int numLeaves;
+        private int[] stack = new int[16];
+
+        Layout(FlatAdditiveDecisionTree flat) {
+            this.flat = flat;
+            this.splits = new int[flat.feature.length];
+            this.children = new char[2 * flat.feature.length];
+            this.leaves = new float[flat.leafValue.length];
+        }
+
+        /**
+         * @return the reference of the root of the tree
+         */
+        char addTree(int t) {
+            int firstSplit = numSplits;
+            int firstLeaf = numLeaves;
+            char root = add(flat.roots[t], t, firstSplit, firstLeaf);
+            // preorder: the stack holds the child slots to fill, encoded as 2 * split + (right ? 1 : 0)
+            int depth = 0;
+            if ((root & LEAF) == 0) {
+                stack = ArrayUtil.grow(stack, depth + 2);
+                stack[depth++] = 2 * firstSplit + 1;
+                stack[depth++] = 2 * firstSplit;
+            }
+            while (depth > 0) {
+                int slot = stack[--depth];
+                int split = splits[slot >> 1];
+                int node = (slot & 1) == 0 ? flat.left[split] : flat.right[split];
+                char ref = add(node, t, firstSplit, firstLeaf);
+                children[slot] = ref;
+                if ((ref & LEAF) == 0) {
+                    int added = numSplits - 1;
+                    stack = ArrayUtil.grow(stack, depth + 2);
+                    stack[depth++] = 2 * added + 1;
+                    stack[depth++] = 2 * added;
+                }
+            }
+            return root;
+        }
+
+        private char add(int node, int t, int firstSplit, int firstLeaf) {
+            if (node < 0) {
+                int ref = numLeaves - firstLeaf;
+                checkSize(ref, t, "leaves");
+                leaves = ArrayUtil.grow(leaves, numLeaves + 1);
+                // same float product as the one computed by the flat model
+                leaves[numLeaves++] = flat.weights[t] * flat.leafValue[~node];
+                return (char) (ref | LEAF);
+            }
+            int ref = numSplits - firstSplit;
+            checkSize(ref, t, "splits");
+            splits = ArrayUtil.grow(splits, numSplits + 1);
+            children = ArrayUtil.grow(children, 2 * numSplits + 2);
+            splits[numSplits++] = node;
+            return (char) ref;
+        }
+
+        private static void checkSize(int ref, int t, String what) {
+            if (ref >= MAX_NODES) {
+                throw new IllegalArgumentException(
+                    "Tree ["
+                        + t
+                        + "] has more than ["
+                        + MAX_NODES
+                        + "] "
+                        + what
+                        + ", the ["
+                        + TreeEvaluator.QUANTIZED.getName()
+                        + "] evaluator does not support it"
+                );
+            }
+        }
+    }
+
+    @Override
+    public String name() {
+        return "quantized_additive_decision_tree";
+    }
+
+    /**
+     * @return an upper bound of the difference between the scores of this model and of the float model
+     * it was built from, before normalization and ignoring the rounding errors of the float additions
+     */
+    public float maxDeviation() {
+        return maxDeviation;
+    }
+
+    /**
+     * @param ranker a compiled ranker, possibly normalizing its features
+     * @return the deviation of the scores of the ranker from its float model if it is quantized, null otherwise
+     */
+    public static Float maxDeviation(LtrRanker ranker) {
+        if (ranker instanceof FeatureNormalizingRanker) {
+            // feature normalization does not change the deviation of the scores
+            ranker = ((FeatureNormalizingRanker) ranker).getWrapped();
+        }
+        return ranker instanceof QuantizedAdditiveDecisionTree ? ((QuantizedAdditiveDecisionTree) ranker).maxDeviation : null;
+    }
+
+    /**
+     * Check the deviation of the scores of a quantized model from the float model against the tolerance, if one is set.
+     * The deviation is reported when the model is stored, see {@link #maxDeviation(LtrRanker)}.
+     *
+     * @param tolerance the maximum deviation allowed, null to not check it
+     * @throws IllegalArgumentException if a tolerance is set and the ranker is not quantized or deviates by more than tolerance
+     */
+    public static void checkMaxDeviation(LtrRanker ranker, Float tolerance) {
+        if (tolerance == null) {
+            return;
+        }
+        if (ranker instanceof QuantizedAdditiveDecisionTree == false) {
+            throw new IllegalArgumentException(
+                "A quantization tolerance requires the [" + TreeEvaluator.QUANTIZED.getName() + "] evaluator"
+            );
+        }
+        float maxDeviation = ((QuantizedAdditiveDecisionTree) ranker).maxDeviation;
+        if (maxDeviation > tolerance) {
+            throw new IllegalArgumentException(
+                "The quantized model deviates by up to ["
+                    + maxDeviation
+                    + "] from the float model, more than the tolerance of ["
+                    + tolerance
+                    + "]"
+            );
+        }
+    }
+
+    @Override
+    public SparseFeatureVector newFeatureVector(FeatureVector reuse) {
+        float defaultValue = missingAsZero ? 0.0f : Float.NaN;
+        if (reuse instanceof SparseFeatureVector && Float.compare(((SparseFeatureVector) reuse).getDefaultScore(), defaultValue) == 0) {
+            SparseFeatureVector vector = (SparseFeatureVector) reuse;
+            vector.reset();
+            return vector;
+        }
+        return new SparseFeatureVector(size(), defaultValue);
+    }
+
+    @Override
+    public float score(FeatureVector point) {
+        if (point instanceof LazyFeatureVector) {
+            long sum = 0;
+            for (int t = 0; t < roots.length; t++) {
+                sum += evalTree(t, point);
+            }
+            return normalizer.normalize((float) (sum * (double) leafScale));
+        }
+        return super.score(point);
+    }
+
+    /**
+     * Leaves are summed as integers, the sum is scaled once
+     */
+    @Override
+    protected float score(SparseFeatureVector vector) {
+        float[] scores = vector.scores;
+        long sum = 0;
+        for (int t = 0; t < roots.length; t++) {
+            sum += evalTree(t, scores, 0);
+        }
+        return normalizer.normalize((float) (sum * (double) leafScale));
+    }
+
+    @Override
+    public void scoreBlock(float[] points, int numFeatures, int numPoints, float[] scores) {
+        for (int j = 0; j < numPoints; j++) {
+            long sum = 0;
+            int offset = j * numFeatures;
+            for (int t = 0; t < roots.length; t++) {
+                sum += evalTree(t, points, offset);
+            }
+            scores[j] = normalizer.normalize((float) (sum * (double) leafScale));
+        }
+    }
+
+    @Override
+    public boolean supportsLazyFeatures() {
+        return true;
+    }
+
+    private int evalTree(int t, float[] scores, int offset) {
+        int splitOffset = splitOffsets[t];
+        char node = roots[t];
+        while ((node & LEAF) == 0) {
+            int split = splitOffset + node;
+            char f = feature[split];
+            float value = scores[offset + (f & FEATURE_MASK)];
+            node = next(split, f, value);
+        }
+        return leaves[leafOffsets[t] + (node & ~LEAF)];
+    }
+
+    private int evalTree(int t, FeatureVector point) {
+        int splitOffset = splitOffsets[t];
+        char node = roots[t];
+        while ((node & LEAF) == 0) {
+            int split = splitOffset + node;
+            char f = feature[split];
+            float value = point.getFeatureScore(f & FEATURE_MASK);
+            node = next(split, f, value);
+        }
+        return leaves[leafOffsets[t] + (node & ~LEAF)];
+    }
+
+    private char next(int split, char f, float value) {
+        if (Float.isNaN(value)) {
+            return (f & DEFAULT_LEFT) != 0 ? left[split] : right[split];
+        }
+        int index = threshold8 != null ? threshold8[split] & 0xFF : threshold16[split];
+        return thresholds[thresholdOffsets[f & FEATURE_MASK] + index] > value ? left[split] : right[split];
+    }
+
+    @Override
+    protected int size() {
+        return modelSize;
+    }
+
+    @Override
+    public int[] usedFeatures() {
+        return usedFeatures;
+    }
+
+    /**
+     * @return the number of trees in this ensemble
+     */
+    public int numTrees() {
+        return roots.length;
+    }
+
+    /**
+     * Return the memory usage of this object in bytes. Negative values are illegal.
+     */
+    @Override
+    public long ramBytesUsed() {
+        return BASE_RAM_USED + RamUsageEstimator.sizeOf(feature) + (threshold8 != null
+            ? RamUsageEstimator.sizeOf(threshold8)
+            : RamUsageEstimator.sizeOf(threshold16)) + RamUsageEstimator.sizeOf(thresholdOffsets) + RamUsageEstimator.sizeOf(thresholds)
+            + RamUsageEstimator.sizeOf(left) + RamUsageEstimator.sizeOf(right) + RamUsageEstimator.sizeOf(leaves) + RamUsageEstimator
+                .sizeOf(roots) + RamUsageEstimator.sizeOf(splitOffsets) + RamUsageEstimator.sizeOf(leafOffsets) + RamUsageEstimator
+                    .sizeOf(usedFeatures);
+    }
+}
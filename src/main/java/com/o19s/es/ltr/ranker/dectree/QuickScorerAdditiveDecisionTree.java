@@ -0,0 +1,321 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import java.util.Arrays;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.InPlaceMergeSorter;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import com.o19s.es.ltr.ranker.SparseFeatureVector;
+
+/**
+ * Additive decision tree evaluated with the QuickScorer algorithm
+ * (Lucchese et al., "QuickScorer: a Fast Algorithm to Rank Documents with Additive Ensembles of Regression Trees").
+ * <p>
+ * Instead of traversing each tree, the split conditions of the whole ensemble are grouped by feature
+ * and sorted by threshold. For each feature only the conditions that evaluate to false (i.e. send the
+ * document to the right child) are visited, and each of them clears the leaves of its left subtree in
+ * a per-tree 64-bit leaf bitvector. Once all the features are processed the exit leaf of each tree is
+ * the leftmost leaf still set, found with a trailing zero count.
+ * <p>
+ * Scores are bit-identical to {@link FlatAdditiveDecisionTree}: tree outputs are summed in the same order.
+ * Every tree must have at most {@link #MAX_LEAVES} leaves.
+ */
+public class QuickScorerAdditiveDecisionTree extends FlatAdditiveDecisionTree {
+    public static final int MAX_LEAVES = Long.SIZE;
+    // only the fields added by this class, the parent accounts for the rest
+    private static final long BASE_RAM_USED = RamUsageEstimator.shallowSizeOfInstance(QuickScorerAdditiveDecisionTree.class)
+        - RamUsageEstimator.shallowSizeOfInstance(FlatAdditiveDecisionTree.class);
+
+    // Features used by at least one split
+    private final int[] usedFeatures;
+    // Conditions of feature f are stored in [conditionOffsets[f], conditionOffsets[f+1]) sorted by threshold
+    private final int[] conditionOffsets;
+    private final float[] conditionThreshold;
+    private final int[] conditionTree;
+    private final long[] conditionMask;
+    // Conditions of feature f sending a missing (NaN) value to the right, stored in [nanOffsets[f], nanOffsets[f+1])
+    private final int[] nanOffsets;
+    private final int[] nanTree;
+    private final long[] nanMask;
+    // Leaves of tree t, from left to right, are stored from treeLeafOffsets[t]
+    private final int[] treeLeafOffsets;
+    private final float[] leaves;
+
+    /**
+     * Build the QuickScorer structures from a flat ensemble, sharing its arrays.
+     *
+     * @throws IllegalArgumentException if a tree has more than {@link #MAX_LEAVES} leaves
+     */
+    public QuickScorerAdditiveDecisionTree(FlatAdditiveDecisionTree flat) {
+        super(flat);
+        Conditions conditions = new Conditions();
+        treeLeafOffsets = new int[roots.length];
+        for (int t = 0; t < roots.length; t++) {
+            treeLeafOffsets[t] = conditions.numLeaves;
+            int nbLeaves = conditions.addTree(roots[t], t);
+            if (nbLeaves > MAX_LEAVES) {
+                throw new IllegalArgumentException(
+                    "Tree ["
+                        + t
+                        + "] has ["
+                        + nbLeaves
+                        + "] leaves, the ["
+                        + TreeEvaluator.QUICKSCORER.getName()
+                        + "] evaluator supports at most ["
+                        + MAX_LEAVES
+                        + "] leaves per tree"
+                );
+            }
+        }
+        leaves = ArrayUtil.copyOfSubArray(conditions.leaves, 0, conditions.numLeaves);
+        conditions.sort();
+
+        int n = conditions.size;
+        conditionOffsets = new int[modelSize + 1];
+        nanOffsets = new int[modelSize + 1];
+        int nbNan = 0;
+        for (int i = 0; i < n; i++) {
+            conditionOffsets[conditions.feature[i] + 1]++;
+            if (conditions.nanRight[i] != 0) {
+                nanOffsets[conditions.feature[i] + 1]++;
+                nbNan++;
+            }
+        }
+        int nbUsed = 0;
+        for (int f = 0; f < modelSize; f++) {
+            if (conditionOffsets[f + 1] > 0) {
+                nbUsed++;
+            }
+            conditionOffsets[f + 1] += conditionOffsets[f];
+            nanOffsets[f + 1] += nanOffsets[f];
+        }
+        usedFeatures = new int[nbUsed];
+        for (int f = 0, u = 0; f < modelSize; f++) {
+            if (conditionOffsets[f + 1] > conditionOffsets[f]) {
+                usedFeatures[u++] = f;
+            }
+        }
+
+        // conditions are already sorted by feature
+        conditionThreshold = ArrayUtil.copyOfSubArray(conditions.threshold, 0, n);
+        conditionTree = ArrayUtil.copyOfSubArray(conditions.tree, 0, n);
+        conditionMask = ArrayUtil.copyOfSubArray(conditions.mask, 0, n);
+        nanTree = new int[nbNan];
+        nanMask = new long[nbNan];
+        for (int i = 0, j = 0; i < n; i++) {
+            if (conditions.nanRight[i] != 0) {
+                nanTree[j] = conditions.tree[i];
+                nanMask[j] = conditions.mask[i];
+                j++;
+            }
+        }
+    }
+
+    /**
+     * Builds the bitvectors of the folded ensemble
+     */
+    @Override
+    public QuickScorerAdditiveDecisionTree foldNormalizers(float[] shifts, float[] scales) {
+        return new QuickScorerAdditiveDecisionTree(super.foldNormalizers(shifts, scales));
+    }
+
+    @Override
+    public String name() {
+        return "quickscorer_additive_decision_tree";
+    }
+
+    @Override
+    public SparseFeatureVector newFeatureVector(FeatureVector reuse) {
+        float defaultValue = missingAsZero ? 0.0f : Float.NaN;
+        if (reuse instanceof QuickScorerFeatureVector vector
+            && vector.leafBits.length == roots.length
+            && Float.compare(vector.getDefaultScore(), defaultValue) == 0) {
+            vector.reset();
+            return vector;
+        }
+        return new QuickScorerFeatureVector(size(), defaultValue, roots.length);
+    }
+
+    @Override
+    protected float score(SparseFeatureVector vector) {
+        long[] leafBits = vector instanceof QuickScorerFeatureVector qsVector ? qsVector.leafBits : new long[roots.length];
+        return normalizer.normalize(score(vector.scores, 0, leafBits));
+    }
+
+    /**
+     * Always computes the exact score, the early exit of the flat traversal does not apply to this engine
+     */
+    @Override
+    public float score(FeatureVector point, float minScore) {
+        return score(point);
+    }
+
+    /**
+     * Lazy feature vectors are not supported, every feature a split is made on is read to compute the leaf bitvectors
+     */
+    @Override
+    public boolean supportsLazyFeatures() {
+        return false;
+    }
+
+    @Override
+    public void scoreBlock(float[] points, int numFeatures, int numPoints, float[] scores) {
+        long[] leafBits = new long[roots.length];
+        for (int j = 0; j < numPoints; j++) {
+            scores[j] = normalizer.normalize(score(points, j * numFeatures, leafBits));
+        }
+    }
+
+    private float score(float[] scores, int offset, long[] leafBits) {
+        Arrays.fill(leafBits, -1L);
+        for (int f : usedFeatures) {
+            float value = scores[offset + f];
+            if (Float.isNaN(value)) {
+                for (int i = nanOffsets[f], end = nanOffsets[f + 1]; i < end; i++) {
+                    leafBits[nanTree[i]] &= nanMask[i];
+                }
+            } else {
+                // a split sends the value to the right (false) when !(threshold > value)
+                for (int i = conditionOffsets[f], end = conditionOffsets[f + 1]; i < end && conditionThreshold[i] <= value; i++) {
+                    leafBits[conditionTree[i]] &= conditionMask[i];
+                }
+            }
+        }
+        float sum = 0;
+        for (int t = 0; t < leafBits.length; t++) {
+            sum += weights[t] * leaves[treeLeafOffsets[t] + Long.numberOfTrailingZeros(leafBits[t])];
+        }
+        return sum;
+    }
+
+    /**
+     * Return the memory usage of this object in bytes. Negative values are illegal.
+     */
+    @Override
+    public long ramBytesUsed() {
+        long size = super.ramBytesUsed() + BASE_RAM_USED;
+        size += RamUsageEstimator.sizeOf(usedFeatures);
+        size += RamUsageEstimator.sizeOf(conditionOffsets) + RamUsageEstimator.sizeOf(conditionThreshold);
+        size += RamUsageEstimator.sizeOf(conditionTree) + RamUsageEstimator.sizeOf(conditionMask);
+        size += RamUsageEstimator.sizeOf(nanOffsets) + RamUsageEstimator.sizeOf(nanTree) + RamUsageEstimator.sizeOf(nanMask);
+        size += RamUsageEstimator.sizeOf(treeLeafOffsets) + RamUsageEstimator.sizeOf(leaves);
+        return size;
+    }
+
+    /**
+     * Feature vector carrying the leaf bitvectors so that scoring does not allocate
+     */
+    static class QuickScorerFeatureVector extends SparseFeatureVector {
+        final long[] leafBits;
+
+        QuickScorerFeatureVector(int size, float defaultValue, int nbTrees) {
+            super(size, defaultValue);
+            this.leafBits = new long[nbTrees];
+        }
+    }
+
+    /**
+     * Collects the split conditions of the ensemble while numbering leaves from left to right.
+     */
+    private class Conditions extends InPlaceMergeSorter {
+        private int[] feature = new int[16];
+        private float[] threshold = new float[16];
+        private int[] tree = new int[16];
+        private long[] mask = new long[16];
+        private byte[] nanRight = new byte[16];
+        private int size;
+        private float[] leaves = new float[16];
+        private int numLeaves;
+
+        /**
+         * @return the number of leaves of the tree
+         */
+        int addTree(int root, int treeId) {
+            int first = numLeaves;
+            addNode(root, treeId, first);
+            return numLeaves - first;
+        }
+
+        private void addNode(int node, int treeId, int firstTreeLeaf) {
+            if (node < 0) {
+                if (numLeaves == leaves.length) {
+                    leaves = ArrayUtil.grow(leaves, numLeaves + 1);
+                }
+                leaves[numLeaves++] = leafValue[~node];
+                return;
+            }
+            int leftStart = numLeaves - firstTreeLeaf;
+            addNode(left[node], treeId, firstTreeLeaf);
+            int leftEnd = numLeaves - firstTreeLeaf;
+            addNode(right[node], treeId, firstTreeLeaf);
+            if (leftEnd >= MAX_LEAVES) {
+                // too many leaves, reported by the caller
+                return;
+            }
+            // Leaves of the left subtree are unreachable when the split condition is false
+            long leftLeaves = ((1L << (leftEnd - leftStart)) - 1) << leftStart;
+            add(feature(node), threshold(node), treeId, ~leftLeaves, defaultLeft[node] == 0);
+        }
+
+        private int feature(int node) {
+            return QuickScorerAdditiveDecisionTree.this.feature[node];
+        }
+
+        private float threshold(int node) {
+            float t = QuickScorerAdditiveDecisionTree.this.threshold[node];
+            // NaN > value is always false: such a split always sends a (non-NaN) value to the right
+            return Float.isNaN(t) ? Float.NEGATIVE_INFINITY : t;
+        }
+
+        private void add(int f, float t, int treeId, long m, boolean nanGoesRight) {
+            if (size == feature.length) {
+                feature = ArrayUtil.grow(feature, size + 1);
+                threshold = ArrayUtil.growExact(threshold, feature.length);
+                tree = ArrayUtil.growExact(tree, feature.length);
+                mask = ArrayUtil.growExact(mask, feature.length);
+                nanRight = ArrayUtil.growExact(nanRight, feature.length);
+            }
+            feature[size] = f;
+            threshold[size] = t;
+            tree[size] = treeId;
+            mask[size] = m;
+            nanRight[size] = (byte) (nanGoesRight ? 1 : 0);
+            size++;
+        }
+
+        void sort() {
+            sort(0, size);
+        }
+
+        @Override
+        protected int compare(int i, int j) {
+            int cmp = Integer.compare(feature[i], feature[j]);
+            return cmp != 0 ? cmp : Float.compare(threshold[i], threshold[j]);
+        }
+
+        @Override
+        protected void swap(int i, int j) {
+            int f = feature[i];
+            feature[i] = feature[j];
+            feature[j] = f;
+            float t = threshold[i];
+            threshold[i] = threshold[j];
+            threshold[j] = t;
+            int tr = tree[i];
+            tree[i] = tree[j];
+            tree[j] = tr;
+            long m = mask[i];
+            mask[i] = mask[j];
+            mask[j] = m;
+            byte n = nanRight[i];
+            nanRight[i] = nanRight[j];
+            nanRight[j] = n;
+        }
+    }
+}
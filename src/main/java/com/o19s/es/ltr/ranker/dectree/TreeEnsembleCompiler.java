@@ -0,0 +1,282 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import static org.objectweb.asm.Opcodes.ACC_FINAL;
+import static org.objectweb.asm.Opcodes.ACC_PRIVATE;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_STATIC;
+import static org.objectweb.asm.Opcodes.ACC_SUPER;
+import static org.objectweb.asm.Opcodes.ACC_SYNTHETIC;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.FADD;
+import static org.objectweb.asm.Opcodes.FALOAD;
+import static org.objectweb.asm.Opcodes.FCMPL;
+import static org.objectweb.asm.Opcodes.FCONST_0;
+import static org.objectweb.asm.Opcodes.FLOAD;
+import static org.objectweb.asm.Opcodes.FRETURN;
+import static org.objectweb.asm.Opcodes.FSTORE;
+import static org.objectweb.asm.Opcodes.GOTO;
+import static org.objectweb.asm.Opcodes.IADD;
+import static org.objectweb.asm.Opcodes.IFLE;
+import static org.objectweb.asm.Opcodes.IFNE;
+import static org.objectweb.asm.Opcodes.ILOAD;
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.SIPUSH;
+import static org.objectweb.asm.Opcodes.V11;
+
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.ArrayUtil;
+import org.objectweb.asm.ClassTooLargeException;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodTooLargeException;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+import org.opensearch.SpecialPermission;
+
+/**
+ * Compiles a {@link FlatAdditiveDecisionTree} into a generated class where every split is
+ * inlined as a branch on constant feature indexes and thresholds, and every leaf as a constant
+ * (already multiplied by the tree weight) added to the running sum.
+ * <p>
+ * Trees are packed into static methods of at most {@link #MAX_METHOD_SIZE} bytes of bytecode so that
+ * the JIT compiles them (methods larger than 8000 bytes are never compiled by HotSpot). When a single
+ * tree does not fit in a method or when the generated class exceeds the class file limits the
+ * original interpreted ensemble is returned.
+ * <p>
+ * The generated class is owned by its own class loader so that it can be garbage collected along
+ * with the ranker, i.e. when the model is evicted from the model cache.
+ */
+public final class TreeEnsembleCompiler {
+    private static final Logger LOGGER = LogManager.getLogger(TreeEnsembleCompiler.class);
+
+    /**
+     * Budget in bytes of bytecode of a generated method
+     */
+    public static final int MAX_METHOD_SIZE = 7000;
+    // Upper bounds of the bytecode emitted per node, see writeNode
+    private static final int SPLIT_SIZE = 28;
+    private static final int LEAF_SIZE = 11;
+
+    private static final String BASE_CLASS = Type.getInternalName(CompiledEnsemble.class);
+    private static final String EVAL_DESCRIPTOR = "([FI)F";
+    private static final String CHUNK_DESCRIPTOR = "([FIF)F";
+    // locals of the chunk methods
+    private static final int SCORES_VAR = 0;
+    private static final int OFFSET_VAR = 1;
+    private static final int SUM_VAR = 2;
+    private static final int VALUE_VAR = 3;
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private TreeEnsembleCompiler() {}
+
+    /**
+     * Compile the ensemble
+     *
+     * @return a {@link CompiledAdditiveDecisionTree} or the ensemble itself if it is too large to be compiled
+     */
+    public static FlatAdditiveDecisionTree compile(FlatAdditiveDecisionTree tree) {
+        int[] chunks = chunk(tree);
+        if (chunks == null) {
+            LOGGER.debug("A tree is too large to be compiled, falling back to [{}]", tree.name());
+            return tree;
+        }
+        String className = TreeEnsembleCompiler.class.getPackageName().replace('.', '/') + "/GeneratedEnsemble" + COUNTER
+            .incrementAndGet();
+        byte[] bytecode;
+        try {
+            bytecode = generate(className, tree, chunks);
+        } catch (ClassTooLargeException | MethodTooLargeException e) {
+            LOGGER.debug("Generated class too large, falling back to [{}]", tree.name());
+            return tree;
+        }
+        return new CompiledAdditiveDecisionTree(tree, load(className.replace('/', '.'), bytecode), bytecode.length);
+    }
+
+    /**
+     * Split the trees into chunks that fit in a method
+     *
+     * @return the index of the first tree of each chunk or null if a tree does not fit in a method
+     */
+    private static int[] chunk(FlatAdditiveDecisionTree tree) {
+        int[] chunks = new int[1];
+        int nbChunks = 1;
+        int chunkSize = 0;
+        for (int t = 0; t < tree.roots.length; t++) {
+            int treeSize = estimateSize(tree, tree.roots[t]);
+            if (treeSize > MAX_METHOD_SIZE) {
+                return null;
+            }
+            if (chunkSize + treeSize > MAX_METHOD_SIZE) {
+                if (nbChunks == chunks.length) {
+                    chunks = ArrayUtil.grow(chunks, nbChunks + 1);
+                }
+                chunks[nbChunks++] = t;
+                chunkSize = 0;
+            }
+            chunkSize += treeSize;
+        }
+        return ArrayUtil.copyOfSubArray(chunks, 0, nbChunks);
+    }
+
+    private static int estimateSize(FlatAdditiveDecisionTree tree, int root) {
+        // iterative so that degenerated trees do not overflow the stack
+        int[] stack = new int[16];
+        int depth = 0;
+        int size = 0;
+        stack[depth++] = root;
+        while (depth > 0 && size <= MAX_METHOD_SIZE) {
+            int node = stack[--depth];
+            if (node < 0) {
+                size += LEAF_SIZE;
+            } else {
+                size += SPLIT_SIZE;
+                if (depth + 2 > stack.length) {
+                    stack = ArrayUtil.grow(stack, depth + 2);
+                }
+                stack[depth++] = tree.right[node];
+                stack[depth++] = tree.left[node];
+            }
+        }
+        return size;
+    }
+
+    private static byte[] generate(String className, FlatAdditiveDecisionTree tree, int[] chunks) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(V11, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, className, null, BASE_CLASS, null);
+
+        MethodVisitor ctor = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        ctor.visitCode();
+        ctor.visitVarInsn(ALOAD, 0);
+        ctor.visitMethodInsn(INVOKESPECIAL, BASE_CLASS, "<init>", "()V", false);
+        ctor.visitInsn(RETURN);
+        ctor.visitMaxs(0, 0);
+        ctor.visitEnd();
+
+        // eval(float[] scores, int offset): this is local 0, chunk methods are static
+        MethodVisitor eval = cw.visitMethod(ACC_PUBLIC | ACC_FINAL, "eval", EVAL_DESCRIPTOR, null, null);
+        eval.visitCode();
+        eval.visitInsn(FCONST_0);
+        for (int c = 0; c < chunks.length; c++) {
+            eval.visitVarInsn(FSTORE, 3);
+            eval.visitVarInsn(ALOAD, 1);
+            eval.visitVarInsn(ILOAD, 2);
+            eval.visitVarInsn(FLOAD, 3);
+            eval.visitMethodInsn(INVOKESTATIC, className, "chunk" + c, CHUNK_DESCRIPTOR, false);
+        }
+        eval.visitInsn(FRETURN);
+        eval.visitMaxs(0, 0);
+        eval.visitEnd();
+
+        for (int c = 0; c < chunks.length; c++) {
+            int end = c + 1 < chunks.length ? chunks[c + 1] : tree.roots.length;
+            MethodVisitor mv = cw.visitMethod(ACC_PRIVATE | ACC_STATIC, "chunk" + c, CHUNK_DESCRIPTOR, null, null);
+            mv.visitCode();
+            for (int t = chunks[c]; t < end; t++) {
+                Label next = new Label();
+                writeNode(mv, tree, tree.roots[t], tree.weights[t], next);
+                mv.visitLabel(next);
+            }
+            mv.visitVarInsn(FLOAD, SUM_VAR);
+            mv.visitInsn(FRETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Emit the code of a node, identical to {@link FlatAdditiveDecisionTree} traversal:
+     * NaN goes to the default child, otherwise left if threshold > value.
+     */
+    private static void writeNode(MethodVisitor mv, FlatAdditiveDecisionTree tree, int node, float weight, Label exit) {
+        if (node < 0) {
+            // sum += weight * leaf
+            mv.visitVarInsn(FLOAD, SUM_VAR);
+            mv.visitLdcInsn(weight * tree.leafValue[~node]);
+            mv.visitInsn(FADD);
+            mv.visitVarInsn(FSTORE, SUM_VAR);
+            mv.visitJumpInsn(GOTO, exit);
+            return;
+        }
+        Label leftLabel = new Label();
+        Label rightLabel = new Label();
+        // value = scores[offset + feature]
+        mv.visitVarInsn(ALOAD, SCORES_VAR);
+        mv.visitVarInsn(ILOAD, OFFSET_VAR);
+        pushInt(mv, tree.feature[node]);
+        mv.visitInsn(IADD);
+        mv.visitInsn(FALOAD);
+        mv.visitVarInsn(FSTORE, VALUE_VAR);
+        // value != value only for NaN
+        mv.visitVarInsn(FLOAD, VALUE_VAR);
+        mv.visitVarInsn(FLOAD, VALUE_VAR);
+        mv.visitInsn(FCMPL);
+        mv.visitJumpInsn(IFNE, tree.defaultLeft[node] != 0 ? leftLabel : rightLabel);
+        // fcmpl pushes -1 for a NaN threshold so that it goes right like threshold > value does
+        mv.visitLdcInsn(tree.threshold[node]);
+        mv.visitVarInsn(FLOAD, VALUE_VAR);
+        mv.visitInsn(FCMPL);
+        mv.visitJumpInsn(IFLE, rightLabel);
+        mv.visitLabel(leftLabel);
+        writeNode(mv, tree, tree.left[node], weight, exit);
+        mv.visitLabel(rightLabel);
+        writeNode(mv, tree, tree.right[node], weight, exit);
+    }
+
+    private static void pushInt(MethodVisitor mv, int value) {
+        if (value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    private static CompiledEnsemble load(String className, byte[] bytecode) {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new SpecialPermission());
+        }
+        return AccessController.doPrivileged((PrivilegedAction<CompiledEnsemble>) () -> {
+            Loader loader = new Loader(CompiledEnsemble.class.getClassLoader());
+            try {
+                return loader.define(className, bytecode).asSubclass(CompiledEnsemble.class).getConstructor().newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot instantiate the compiled ensemble", e);
+            }
+        });
+    }
+
+    /**
+     * Base class of the generated ensembles
+     */
+    public abstract static class CompiledEnsemble {
+        /**
+         * @return the weighted sum of the tree outputs, not normalized
+         */
+        public abstract float eval(float[] scores, int offset);
+    }
+
+    private static final class Loader extends ClassLoader {
+        Loader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytecode) {
+            return defineClass(name, bytecode, 0, bytecode.length);
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import java.util.Arrays;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.InPlaceMergeSorter;
+
+import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+import com.o19s.es.ltr.ranker.normalizer.Normalizers;
+
+/**
+ * Derive a lighter version of a {@link FlatAdditiveDecisionTree} from a sample of feature vectors.
+ * <p>
+ * The contribution of a tree, or of a feature, is the mean absolute change of the raw scores of the sample when
+ * it is removed, once the mean change is compensated. Trees past a maximum count and trees contributing less
+ * than a threshold are removed first, then the splits on the features contributing less than a threshold to the
+ * remaining trees are replaced with their most taken child. The mean change of the raw scores is added back as
+ * a single leaf tree so that the lite ensemble stays centered on the full one.
+ * <p>
+ * The lite ensemble is evaluated against the full one on the same sample: see {@link Result}.
+ */
+public class TreeEnsemblePruner {
+    private static final Normalizer NOOP = Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME);
+
+    private final FlatAdditiveDecisionTree tree;
+    private final float[] points;
+    private final int numPoints;
+    private final long[] leftHits;
+    private final long[] rightHits;
+
+    /**
+     * @param tree the ensemble to prune
+     * @param points the sample, {@code numPoints} vectors of all the features of the ensemble stored one after the
+     *               other, with the values seen by the ensemble when scoring (normalized, NaN when missing)
+     * @param numPoints the number of vectors in the sample
+     */
+    public TreeEnsemblePruner(FlatAdditiveDecisionTree tree, float[] points, int numPoints) {
+        if (numPoints <= 0) {
+            throw new IllegalArgumentException("At least one sample is required to prune a model");
+        }
+        if (points.length < numPoints * tree.modelSize) {
+            throw new IllegalArgumentException("Expected [" + numPoints * tree.modelSize + "] values but got [" + points.length + "]");
+        }
+        this.tree = tree;
+        this.points = points;
+        this.numPoints = numPoints;
+        this.leftHits = new long[tree.feature.length];
+        this.rightHits = new long[tree.feature.length];
+    }
+
+    /**
+     * @param maxTrees the number of leading trees to consider, the trailing ones are removed
+     * @param minTreeContribution trees contributing less are removed
+     * @param minFeatureContribution splits on features contributing less are removed
+     */
+    public Result prune(int maxTrees, float minTreeContribution, float minFeatureContribution) {
+        int numTrees = tree.roots.length;
+        boolean[] keepTree = new boolean[numTrees];
+        // same summation order as FlatAdditiveDecisionTree#score
+        float[] fullRaw = new float[numPoints];
+        float[] outputs = new float[numPoints];
+        for (int t = 0; t < numTrees; t++) {
+            for (int p = 0; p < numPoints; p++) {
+                outputs[p] = tree.weights[t] * leaf(tree.roots[t], p * tree.modelSize);
+                fullRaw[p] += outputs[p];
+            }
+            keepTree[t] = t < maxTrees && contribution(outputs) >= minTreeContribution;
+        }
+
+        boolean[] dropFeature = new boolean[tree.modelSize];
+        FlatAdditiveDecisionTree kept = rebuild(keepTree, dropFeature, NOOP, false, 0F);
+        float[] keptRaw = new float[numPoints];
+        kept.scoreBlock(points, tree.modelSize, numPoints, keptRaw);
+        int[] weakFeatures = new int[0];
+        float[] diff = new float[numPoints];
+        for (int f : kept.usedFeatures()) {
+            dropFeature[f] = true;
+            rebuild(keepTree, dropFeature, NOOP, false, 0F).scoreBlock(points, tree.modelSize, numPoints, diff);
+            dropFeature[f] = false;
+            for (int p = 0; p < numPoints; p++) {
+                diff[p] -= keptRaw[p];
+            }
+            if (contribution(diff) < minFeatureContribution) {
+                weakFeatures = ArrayUtil.growExact(weakFeatures, weakFeatures.length + 1);
+                weakFeatures[weakFeatures.length - 1] = f;
+            }
+        }
+        for (int f : weakFeatures) {
+            dropFeature[f] = true;
+        }
+
+        float[] liteRaw = new float[numPoints];
+        rebuild(keepTree, dropFeature, NOOP, false, 0F).scoreBlock(points, tree.modelSize, numPoints, liteRaw);
+        double bias = 0;
+        for (int p = 0; p < numPoints; p++) {
+            bias += (double) fullRaw[p] - liteRaw[p];
+        }
+        bias /= numPoints;
+        boolean anyTree = false;
+        for (boolean keep : keepTree) {
+            anyTree |= keep;
+        }
+        FlatAdditiveDecisionTree lite = rebuild(keepTree, dropFeature, tree.normalizer, bias != 0 || !anyTree, (float) bias);
+
+        float[] fullScores = new float[numPoints];
+        float[] liteScores = new float[numPoints];
+        tree.scoreBlock(points, tree.modelSize, numPoints, fullScores);
+        lite.scoreBlock(points, tree.modelSize, numPoints, liteScores);
+        double meanDeviation = 0;
+        double maxDeviation = 0;
+        for (int p = 0; p < numPoints; p++) {
+            double deviation = Math.abs((double) fullScores[p] - liteScores[p]);
+            meanDeviation += deviation;
+            maxDeviation = Math.max(maxDeviation, deviation);
+        }
+        meanDeviation /= numPoints;
+        // including the features only read by the removed trees
+        int[] droppedFeatures = Arrays.stream(tree.usedFeatures()).filter(f -> Arrays.binarySearch(lite.usedFeatures(), f) < 0).toArray();
+        return new Result(lite, droppedFeatures, meanDeviation, maxDeviation, rankCorrelation(fullScores, liteScores, numPoints));
+    }
+
+    /**
+     * Evaluate a tree on a point, counting the branches taken
+     */
+    private float leaf(int node, int offset) {
+        while (node >= 0) {
+            float value = points[offset + tree.feature[node]];
+            boolean goLeft = Float.isNaN(value) ? tree.defaultLeft[node] != 0 : tree.threshold[node] > value;
+            if (goLeft) {
+                leftHits[node]++;
+                node = tree.left[node];
+            } else {
+                rightHits[node]++;
+                node = tree.right[node];
+            }
+        }
+        return tree.leafValue[~node];
+    }
+
+    /**
+     * @return the mean absolute deviation of the values from their mean
+     */
+    private double contribution(float[] values) {
+        double mean = 0;
+        for (int p = 0; p < numPoints; p++) {
+            mean += values[p];
+        }
+        mean /= numPoints;
+        double deviation = 0;
+        for (int p = 0; p < numPoints; p++) {
+            deviation += Math.abs(values[p] - mean);
+        }
+        return deviation / numPoints;
+    }
+
+    private FlatAdditiveDecisionTree rebuild(
+        boolean[] keepTree,
+        boolean[] dropFeature,
+        Normalizer normalizer,
+        boolean withBias,
+        float bias
+    ) {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        for (int t = 0; t < keepTree.length; t++) {
+            if (keepTree[t]) {
+                builder.addTree(copy(builder, tree.roots[t], dropFeature), tree.weights[t]);
+            }
+        }
+        if (withBias) {
+            builder.addTree(builder.addLeaf(bias), 1F);
+        }
+        return builder.build(tree.modelSize, normalizer, tree.missingAsZero);
+    }
+
+    /**
+     * Copy a node and its descendants, splits on dropped features are replaced with their most taken child
+     */
+    private int copy(FlatAdditiveDecisionTree.Builder builder, int root, boolean[] dropFeature) {
+        // iterative so that degenerated trees do not overflow the stack, nodes are still copied in depth-first order
+        int[] nodes = new int[16];
+        // where the copy of the node goes: -1 for the root, 2 * split for a left child, 2 * split + 1 for a right child
+        int[] parents = new int[16];
+        // copies of the left children waiting for the right ones, by split of the builder
+        int[] lefts = new int[16];
+        int depth = 0;
+        int copiedRoot = -1;
+        nodes[depth] = root;
+        parents[depth++] = -1;
+        while (depth > 0) {
+            int node = nodes[--depth];
+            int parent = parents[depth];
+            while (node >= 0 && dropFeature[tree.feature[node]]) {
+                // ties, and splits never reached by the sample, keep their left child
+                node = rightHits[node] > leftHits[node] ? tree.right[node] : tree.left[node];
+            }
+            int copied;
+            if (node < 0) {
+                copied = builder.addLeaf(tree.leafValue[~node]);
+            } else {
+                copied = builder.addSplit(tree.feature[node], tree.threshold[node], tree.defaultLeft[node] != 0);
+                if (depth + 2 > nodes.length) {
+                    nodes = ArrayUtil.grow(nodes, depth + 2);
+                    parents = ArrayUtil.growExact(parents, nodes.length);
+                }
+                nodes[depth] = tree.right[node];
+                parents[depth++] = 2 * copied + 1;
+                nodes[depth] = tree.left[node];
+                parents[depth++] = 2 * copied;
+            }
+            if (parent == -1) {
+                copiedRoot = copied;
+            } else if ((parent & 1) == 0) {
+                lefts = ArrayUtil.grow(lefts, (parent >> 1) + 1);
+                lefts[parent >> 1] = copied;
+            } else {
+                builder.setChildren(parent >> 1, lefts[parent >> 1], copied);
+            }
+        }
+        return copiedRoot;
+    }
+
+    /**
+     * Spearman's rank correlation coefficient, tied values get the mean of their ranks
+     *
+     * @return 1 if both series are constant, 0 if only one of them is
+     */
+    static double rankCorrelation(float[] a, float[] b, int n) {
+        double[] ranksA = ranks(a, n);
+        double[] ranksB = ranks(b, n);
+        // the mean rank is the same for both series
+        double mean = (n + 1) / 2.0;
+        double covariance = 0;
+        double varianceA = 0;
+        double varianceB = 0;
+        for (int i = 0; i < n; i++) {
+            double da = ranksA[i] - mean;
+            double db = ranksB[i] - mean;
+            covariance += da * db;
+            varianceA += da * da;
+            varianceB += db * db;
+        }
+        if (varianceA == 0 || varianceB == 0) {
+            return varianceA == varianceB ? 1 : 0;
+        }
+        return covariance / Math.sqrt(varianceA * varianceB);
+    }
+
+    private static double[] ranks(float[] values, int n) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        new InPlaceMergeSorter() {
+            @Override
+            protected int compare(int i, int j) {
+                return Float.compare(values[order[i]], values[order[j]]);
+            }
+
+            @Override
+            protected void swap(int i, int j) {
+                int tmp = order[i];
+                order[i] = order[j];
+                order[j] = tmp;
+            }
+        }.sort(0, n);
+        double[] ranks = new double[n];
+        for (int start = 0, end; start < n; start = end) {
+            end = start + 1;
+            while (end < n && Float.compare(values[order[start]], values[order[end]]) == 0) {
+                end++;
+            }
+            // ranks start at 1
+            double rank = (start + end + 1) / 2.0;
+            for (int i = start; i < end; i++) {
+                ranks[order[i]] = rank;
+            }
+        }
+        return ranks;
+    }
+
+    /**
+     * A lite ensemble and how far its scores are from the ones of the full ensemble on the sample
+     */
+    public static class Result {
+        private final FlatAdditiveDecisionTree tree;
+        private final int[] droppedFeatures;
+        private final double meanScoreDeviation;
+        private final double maxScoreDeviation;
+        private final double rankCorrelation;
+
+        Result(
+            FlatAdditiveDecisionTree tree,
+            int[] droppedFeatures,
+            double meanScoreDeviation,
+            double maxScoreDeviation,
+            double rankCorrelation
+        ) {
+            this.tree = tree;
+            this.droppedFeatures = droppedFeatures;
+            this.meanScoreDeviation = meanScoreDeviation;
+            this.maxScoreDeviation = maxScoreDeviation;
+            this.rankCorrelation = rankCorrelation;
+        }
+
+        /**
+         * @return the lite ensemble
+         */
+        public FlatAdditiveDecisionTree getTree() {
+            return tree;
+        }
+
+        /**
+         * @return the ordinals of the features the lite ensemble no longer splits on
+         */
+        public int[] getDroppedFeatures() {
+            return droppedFeatures;
+        }
+
+        /**
+         * @return the mean absolute difference between the scores of the full and the lite ensembles
+         */
+        public double getMeanScoreDeviation() {
+            return meanScoreDeviation;
+        }
+
+        /**
+         * @return the largest absolute difference between the scores of the full and the lite ensembles
+         */
+        public double getMaxScoreDeviation() {
+            return maxScoreDeviation;
+        }
+
+        /**
+         * @return the Spearman's rank correlation between the scores of the full and the lite ensembles
+         */
+        public double getRankCorrelation() {
+            return rankCorrelation;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import com.o19s.es.ltr.ranker.LtrRanker;
+
+/**
+ * Engines available to evaluate a {@link FlatAdditiveDecisionTree}, selected per model
+ * with the "evaluator" model parameter.
+ */
+public enum TreeEvaluator {
+    /**
+     * Tree traversal on the flat arrays (default)
+     */
+    FLAT(tree -> tree),
+    /**
+     * QuickScorer bitvector evaluation, see {@link QuickScorerAdditiveDecisionTree}
+     */
+    QUICKSCORER(QuickScorerAdditiveDecisionTree::new),
+    /**
+     * Generated bytecode, see {@link TreeEnsembleCompiler}
+     */
+    COMPILED(TreeEnsembleCompiler::compile),
+    /**
+     * Compact encoding with 16-bit leaves, see {@link QuantizedAdditiveDecisionTree}
+     */
+    QUANTIZED(QuantizedAdditiveDecisionTree::new),
+    /**
+     * Nodes stored off-heap in a memory-mapped file, see {@link MappedAdditiveDecisionTree}
+     */
+    MAPPED(MappedAdditiveDecisionTree::new);
+
+    private final Function<FlatAdditiveDecisionTree, LtrRanker> factory;
+
+    TreeEvaluator(Function<FlatAdditiveDecisionTree, LtrRanker> factory) {
+        this.factory = factory;
+    }
+
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Wrap the ensemble with this evaluation engine
+     */
+    public LtrRanker apply(FlatAdditiveDecisionTree tree) {
+        return factory.apply(tree);
+    }
+
+    public static TreeEvaluator fromName(String name) {
+        for (TreeEvaluator evaluator : values()) {
+            if (evaluator.getName().equals(name)) {
+                return evaluator;
+            }
+        }
+        throw new IllegalArgumentException(
+            "Evaluator ["
+                + name
+                + "] is not a valid tree evaluator, expected one of ["
+                + Arrays.stream(values()).map(TreeEvaluator::getName).collect(Collectors.joining(", "))
+                + "]"
+        );
+    }
+}
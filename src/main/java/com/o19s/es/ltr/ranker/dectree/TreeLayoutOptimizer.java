@@ -0,0 +1,156 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import java.io.IOException;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.opensearch.common.xcontent.json.JsonXContent;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+import com.o19s.es.ltr.feature.FeatureSet;
+import com.o19s.es.ltr.ranker.LtrRanker.FeatureVector;
+import com.o19s.es.ltr.ranker.normalizer.Normalizers;
+import com.o19s.es.ltr.ranker.parser.XGBoostJsonParser;
+
+/**
+ * Profile-guided layout of the nodes of a {@link FlatAdditiveDecisionTree}.
+ * <p>
+ * Sample feature vectors are routed through the trees to count how often each branch of every split is taken.
+ * The ensemble is then written as a {@link XGBoostJsonParser#TYPE} definition listing the most taken child of
+ * each split first: the parser lays the splits out in depth-first order of the listed children, so the hot
+ * child is stored right after its parent and the traversals of the sampled traffic mostly read consecutive
+ * nodes. Scores are not changed, tree weights are folded into the leaf values.
+ */
+public class TreeLayoutOptimizer {
+    // marks the end of the children of a split on the stack of the writer, cannot be a node reference
+    private static final int END_OF_CHILDREN = Integer.MIN_VALUE;
+
+    private final FlatAdditiveDecisionTree tree;
+    private final long[] leftHits;
+    private final long[] rightHits;
+    private long samples;
+
+    public TreeLayoutOptimizer(FlatAdditiveDecisionTree tree) {
+        this.tree = tree;
+        this.leftHits = new long[tree.feature.length];
+        this.rightHits = new long[tree.feature.length];
+    }
+
+    /**
+     * Route the point through every tree of the ensemble, counting the branches taken
+     *
+     * @param point a vector created by {@link FlatAdditiveDecisionTree#newFeatureVector(FeatureVector)}
+     */
+    public void record(FeatureVector point) {
+        for (int root : tree.roots) {
+            int node = root;
+            while (node >= 0) {
+                float value = point.getFeatureScore(tree.feature[node]);
+                boolean goLeft = Float.isNaN(value) ? tree.defaultLeft[node] != 0 : tree.threshold[node] > value;
+                if (goLeft) {
+                    leftHits[node]++;
+                    node = tree.left[node];
+                } else {
+                    rightHits[node]++;
+                    node = tree.right[node];
+                }
+            }
+        }
+        samples++;
+    }
+
+    /**
+     * @return the number of points recorded
+     */
+    public long samples() {
+        return samples;
+    }
+
+    /**
+     * Write the ensemble as a {@link XGBoostJsonParser#TYPE} definition, children of each split are listed
+     * hot child first. Ties, and splits never reached by the samples, keep their left child first.
+     *
+     * @param set the feature set the ensemble was parsed with, to resolve the feature names
+     */
+    public String toXGBoostJson(FeatureSet set) throws IOException {
+        try (XContentBuilder builder = JsonXContent.contentBuilder()) {
+            builder.startObject();
+            builder.field("objective", objective());
+            builder.field("missing_as_zero", tree.missingAsZero);
+            builder.startArray("splits");
+            int[] stack = new int[16];
+            int[] depths = new int[16];
+            for (int t = 0; t < tree.roots.length; t++) {
+                float weight = tree.weights[t];
+                int size = 0;
+                stack[size] = tree.roots[t];
+                depths[size++] = 0;
+                while (size > 0) {
+                    int node = stack[--size];
+                    int depth = depths[size];
+                    if (node == END_OF_CHILDREN) {
+                        builder.endArray();
+                        builder.endObject();
+                        continue;
+                    }
+                    builder.startObject();
+                    builder.field("nodeid", nodeId(node));
+                    builder.field("depth", depth);
+                    if (node < 0) {
+                        // same float product as the one computed when scoring
+                        builder.field("leaf", weight * tree.leafValue[~node]);
+                        builder.endObject();
+                        continue;
+                    }
+                    int left = tree.left[node];
+                    int right = tree.right[node];
+                    builder.field("split", set.feature(tree.feature[node]).name());
+                    builder.field("split_condition", tree.threshold[node]);
+                    builder.field("yes", nodeId(left));
+                    builder.field("no", nodeId(right));
+                    builder.field("missing", nodeId(tree.defaultLeft[node] != 0 ? left : right));
+                    builder.startArray("children");
+                    if (size + 3 > stack.length) {
+                        stack = ArrayUtil.grow(stack, size + 3);
+                        depths = ArrayUtil.growExact(depths, stack.length);
+                    }
+                    stack[size++] = END_OF_CHILDREN;
+                    stack[size] = hotRight(node) ? left : right;
+                    depths[size++] = depth + 1;
+                    stack[size] = hotRight(node) ? right : left;
+                    depths[size++] = depth + 1;
+                }
+            }
+            builder.endArray();
+            builder.endObject();
+            return builder.toString();
+        }
+    }
+
+    /**
+     * @return true if the samples took the right branch of the split more often than its left branch
+     */
+    boolean hotRight(int split) {
+        return rightHits[split] > leftHits[split];
+    }
+
+    private String objective() {
+        if (tree.normalizer == Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME)) {
+            return "reg:linear";
+        } else if (tree.normalizer == Normalizers.get(Normalizers.SIGMOID_NORMALIZER_NAME)) {
+            return "binary:logistic";
+        }
+        throw new IllegalArgumentException("The normalizer of the model cannot be expressed as an XGBoost objective");
+    }
+
+    /**
+     * Node ids are unique across the ensemble: splits keep their index, leaves are numbered after the splits
+     */
+    private int nodeId(int ref) {
+        return ref >= 0 ? ref : tree.feature.length + ~ref;
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.ensemble;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+import org.apache.lucene.expressions.Expression;
+import org.apache.lucene.search.DoubleValues;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.opensearch.common.Nullable;
+
+import com.o19s.es.ltr.ranker.LtrRanker;
+
+/**
+ * Combines the scores of several rankers sharing the same feature set, either with a weighted sum
+ * or with an expression whose variables are the names of the members.
+ * <p>
+ * The features are extracted once per document: the feature vector of the ensemble forwards the
+ * feature scores to a vector per member, so that every member scores its own kind of vector.
+ */
+public class EnsembleRanker implements LtrRanker, Accountable {
+    private static final long BASE_RAM_USED = RamUsageEstimator.shallowSizeOfInstance(EnsembleRanker.class);
+
+    private final LtrRanker[] members;
+    // weights of the members, null when combined with an expression
+    private final float[] weights;
+    private final String[] names;
+    private final Expression expression;
+    // index of the member bound to every variable of the expression
+    private final int[] variableMembers;
+    private final int[] usedFeatures;
+
+    /**
+     * Combine the members with a weighted sum
+     */
+    public EnsembleRanker(LtrRanker[] members, float[] weights) {
+        this(members, Objects.requireNonNull(weights), null, null);
+        if (members.length != weights.length) {
+            throw new IllegalArgumentException(
+                "Expected one weight per model but got [" + weights.length + "] weights for [" + members.length + "] models"
+            );
+        }
+    }
+
+    /**
+     * Combine the members with an expression, every member must be referenced by its name
+     */
+    public EnsembleRanker(LtrRanker[] members, String[] names, Expression expression) {
+        this(members, null, Objects.requireNonNull(names), Objects.requireNonNull(expression));
+    }
+
+    private EnsembleRanker(LtrRanker[] members, @Nullable float[] weights, @Nullable String[] names, @Nullable Expression expression) {
+        if (members.length == 0) {
+            throw new IllegalArgumentException("An ensemble requires at least one model");
+        }
+        this.members = members;
+        this.weights = weights;
+        this.names = names;
+        this.expression = expression;
+        if (expression != null) {
+            variableMembers = new int[expression.variables.length];
+            boolean[] referenced = new boolean[members.length];
+            for (int i = 0; i < variableMembers.length; i++) {
+                int member = Arrays.asList(names).indexOf(expression.variables[i]);
+                if (member < 0) {
+                    throw new IllegalArgumentException(
+                        "Expression [" + expression.sourceText + "] refers to unknown model [" + expression.variables[i] + "]"
+                    );
+                }
+                variableMembers[i] = member;
+                referenced[member] = true;
+            }
+            for (int i = 0; i < members.length; i++) {
+                if (!referenced[i]) {
+                    throw new IllegalArgumentException(
+                        "Model [" + names[i] + "] is not used by the expression [" + expression.sourceText + "]"
+                    );
+                }
+            }
+        } else {
+            variableMembers = null;
+        }
+        this.usedFeatures = usedFeatures(members);
+    }
+
+    private static int[] usedFeatures(LtrRanker[] members) {
+        IntStream features = IntStream.empty();
+        for (LtrRanker member : members) {
+            int[] used = member.usedFeatures();
+            if (used == null) {
+                return null;
+            }
+            features = IntStream.concat(features, Arrays.stream(used));
+        }
+        return features.distinct().sorted().toArray();
+    }
+
+    @Override
+    public String name() {
+        return "ensemble";
+    }
+
+    @Override
+    public EnsembleFeatureVector newFeatureVector(FeatureVector reuse) {
+        if (reuse != null) {
+            assert reuse instanceof EnsembleFeatureVector;
+            EnsembleFeatureVector vector = (EnsembleFeatureVector) reuse;
+            for (int i = 0; i < members.length; i++) {
+                vector.vectors[i] = members[i].newFeatureVector(vector.vectors[i]);
+            }
+            return vector;
+        }
+        FeatureVector[] vectors = new FeatureVector[members.length];
+        for (int i = 0; i < members.length; i++) {
+            vectors[i] = members[i].newFeatureVector(null);
+        }
+        return new EnsembleFeatureVector(vectors, expression != null ? expression.variables.length : 0);
+    }
+
+    @Override
+    public float score(FeatureVector point) {
+        assert point instanceof EnsembleFeatureVector;
+        EnsembleFeatureVector vector = (EnsembleFeatureVector) point;
+        if (expression == null) {
+            float score = 0F;
+            for (int i = 0; i < members.length; i++) {
+                score += weights[i] * members[i].score(vector.vectors[i]);
+            }
+            return score;
+        }
+        for (int i = 0; i < variableMembers.length; i++) {
+            int member = variableMembers[i];
+            vector.bindings[i].score = members[member].score(vector.vectors[member]);
+        }
+        try {
+            return (float) expression.evaluate(vector.bindings);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int[] usedFeatures() {
+        return usedFeatures;
+    }
+
+    /**
+     * The normalizers are folded into every member, the ensemble is folded only if all its members are.
+     */
+    @Override
+    public LtrRanker foldNormalizers(float[] shifts, float[] scales) {
+        LtrRanker[] folded = new LtrRanker[members.length];
+        for (int i = 0; i < members.length; i++) {
+            folded[i] = members[i].foldNormalizers(shifts, scales);
+            if (folded[i] == null) {
+                return null;
+            }
+        }
+        return new EnsembleRanker(folded, weights, names, expression);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        EnsembleRanker that = (EnsembleRanker) o;
+        return Arrays.equals(members, that.members)
+            && Arrays.equals(weights, that.weights)
+            && Arrays.equals(names, that.names)
+            && Objects.equals(expressionSource(), that.expressionSource());
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Arrays.hashCode(members);
+        result = 31 * result + Arrays.hashCode(weights);
+        result = 31 * result + Arrays.hashCode(names);
+        return 31 * result + Objects.hashCode(expressionSource());
+    }
+
+    private String expressionSource() {
+        return expression == null ? null : expression.sourceText;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        long size = BASE_RAM_USED + RamUsageEstimator.shallowSizeOf(members);
+        for (LtrRanker member : members) {
+            if (member instanceof Accountable) {
+                size += ((Accountable) member).ramBytesUsed();
+            }
+        }
+        if (weights != null) {
+            size += RamUsageEstimator.sizeOf(weights);
+        }
+        if (names != null) {
+            size += RamUsageEstimator.shallowSizeOf(names) + RamUsageEstimator.sizeOf(variableMembers)
+                + RamUsageEstimator.sizeOf(expression.sourceText);
+        }
+        if (usedFeatures != null) {
+            size += RamUsageEstimator.sizeOf(usedFeatures);
+        }
+        return size;
+    }
+
+    /**
+     * Feature vector forwarding the feature scores to the vectors of the members.
+     * Feature scores are read from the vector of the first member.
+     */
+    public static final class EnsembleFeatureVector implements FeatureVector {
+        private final FeatureVector[] vectors;
+        // per vector so that the ranker stays thread-safe
+        private final MemberScore[] bindings;
+
+        private EnsembleFeatureVector(FeatureVector[] vectors, int numVariables) {
+            this.vectors = vectors;
+            this.bindings = new MemberScore[numVariables];
+            for (int i = 0; i < numVariables; i++) {
+                bindings[i] = new MemberScore();
+            }
+        }
+
+        @Override
+        public void setFeatureScore(int featureId, float score) {
+            for (FeatureVector vector : vectors) {
+                vector.setFeatureScore(featureId, score);
+            }
+        }
+
+        @Override
+        public float getFeatureScore(int featureId) {
+            return vectors[0].getFeatureScore(featureId);
+        }
+
+        @Override
+        public float getDefaultScore() {
+            return vectors[0].getDefaultScore();
+        }
+    }
+
+    private static final class MemberScore extends DoubleValues {
+        private double score;
+
+        @Override
+        public double doubleValue() {
+            return score;
+        }
+
+        @Override
+        public boolean advanceExact(int doc) {
+            return true;
+        }
+    }
+}
@@ -18,9 +18,11 @@ package com.o19s.es.ltr.ranker.linear;
 
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.stream.IntStream;
 
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.VectorUtil;
 
 import com.o19s.es.ltr.ranker.DenseFeatureVector;
 import com.o19s.es.ltr.ranker.DenseLtrRanker;
@@ -31,24 +33,61 @@ import com.o19s.es.ltr.ranker.DenseLtrRanker;
  */
 public class LinearRanker extends DenseLtrRanker implements Accountable {
     private final float[] weights;
+    private final float intercept;
+    private final int[] usedFeatures;
+    private final String name;
 
     public LinearRanker(float[] weights) {
+        this(weights, 0F);
+    }
+
+    /**
+     * @param intercept constant added to the dot product, e.g. the bias of a linear regression
+     */
+    public LinearRanker(float[] weights, float intercept) {
+        this(weights, intercept, "linear");
+    }
+
+    /**
+     * @param name name reported by the ranker, e.g. the name of the RankLib model it was converted from
+     */
+    public LinearRanker(float[] weights, float intercept, String name) {
+        this.name = Objects.requireNonNull(name);
         this.weights = Objects.requireNonNull(weights);
+        this.intercept = intercept;
+        this.usedFeatures = IntStream.range(0, weights.length).filter(i -> weights[i] != 0F).toArray();
     }
 
     @Override
     public String name() {
-        return "linear";
+        return name;
     }
 
+    /**
+     * Uses {@link VectorUtil#dotProduct(float[], float[])} which is SIMD accelerated by lucene
+     * when the jdk.incubator.vector module is available, and falls back to a scalar loop otherwise.
+     */
     @Override
     protected float score(DenseFeatureVector point) {
         float[] scores = point.scores;
+        if (scores.length == weights.length) {
+            return VectorUtil.dotProduct(weights, scores) + intercept;
+        }
         float score = 0;
         for (int i = 0; i < weights.length; i++) {
             score += weights[i] * scores[i];
         }
-        return score;
+        return score + intercept;
+    }
+
+    @Override
+    public void scoreBlock(float[] points, int numFeatures, int numPoints, float[] scores) {
+        assert numFeatures >= weights.length;
+        float[] row = new float[weights.length];
+        for (int i = 0; i < numPoints; i++) {
+            System.arraycopy(points, i * numFeatures, row, 0, weights.length);
+            scores[i] = VectorUtil.dotProduct(weights, row) + intercept;
+        }
     }
 
     @Override
@@ -56,6 +95,29 @@ public class LinearRanker extends DenseLtrRanker implements Accountable {
         return weights.length;
     }
 
+    /**
+     * @return the features with a non-zero weight
+     */
+    @Override
+    public int[] usedFeatures() {
+        return usedFeatures;
+    }
+
+    /**
+     * Normalized scores are multiplied by the weights: the weights are divided by the scales, and the shifts
+     * multiplied by the weights are subtracted from the intercept.
+     */
+    @Override
+    public LinearRanker foldNormalizers(float[] shifts, float[] scales) {
+        float[] folded = weights.clone();
+        double foldedIntercept = intercept;
+        for (int i = 0; i < Math.min(weights.length, shifts.length); i++) {
+            folded[i] = weights[i] / scales[i];
+            foldedIntercept -= (double) weights[i] * shifts[i] / scales[i];
+        }
+        return new LinearRanker(folded, (float) foldedIntercept, name);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
@@ -65,12 +127,12 @@ public class LinearRanker extends DenseLtrRanker implements Accountable {
 
         LinearRanker ranker = (LinearRanker) o;
 
-        return Arrays.equals(weights, ranker.weights);
+        return Arrays.equals(weights, ranker.weights) && Float.compare(intercept, ranker.intercept) == 0;
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(weights);
+        return 31 * Arrays.hashCode(weights) + Float.hashCode(intercept);
     }
 
     /**
@@ -78,6 +140,6 @@ public class LinearRanker extends DenseLtrRanker implements Accountable {
      */
     @Override
     public long ramBytesUsed() {
-        return RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.sizeOf(weights);
+        return RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.sizeOf(weights) + RamUsageEstimator.sizeOf(usedFeatures);
     }
 }
@@ -0,0 +1,351 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.mlp;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.VectorUtil;
+
+import com.o19s.es.ltr.ranker.DenseFeatureVector;
+import com.o19s.es.ltr.ranker.DenseLtrRanker;
+
+/**
+ * Small feed-forward neural network (multilayer perceptron) made of dense layers.
+ * <p>
+ * Every layer computes {@code activation(weights * input + bias)}, the last layer has a single output which is the
+ * score. The weights of a layer are stored one row per output, so that every output is a dot product of two
+ * contiguous arrays computed with {@link VectorUtil#dotProduct(float[], float[])}, which is SIMD accelerated by
+ * lucene when the jdk.incubator.vector module is available.
+ * <p>
+ * Blocks of data points are evaluated layer by layer over tiles of {@link #TILE_SIZE} points: every row of weights is
+ * applied to all the points of the tile before moving to the next row, so that the row stays in the L1 cache and
+ * the activations of the tile in the L2 cache.
+ */
+public class MlpRanker extends DenseLtrRanker implements Accountable {
+    private static final long BASE_RAM_USED = RamUsageEstimator.shallowSizeOfInstance(MlpRanker.class);
+    static final int TILE_SIZE = 64;
+
+    private final int modelSize;
+    // feature ordinal of every input of the first layer
+    private final int[] inputs;
+    private final Layer[] layers;
+    private final int[] usedFeatures;
+
+    /**
+     * @param modelSize the number of features of the feature set
+     * @param inputs the feature ordinal of every input of the first layer
+     * @param layers the layers, from the input to the output
+     */
+    public MlpRanker(int modelSize, int[] inputs, List<Layer> layers) {
+        this.modelSize = modelSize;
+        this.inputs = Objects.requireNonNull(inputs);
+        this.layers = layers.toArray(new Layer[0]);
+        if (this.layers.length == 0) {
+            throw new IllegalArgumentException("A neural network requires at least one layer");
+        }
+        for (int input : inputs) {
+            if (input < 0 || input >= modelSize) {
+                throw new IllegalArgumentException("Unknown feature ordinal [" + input + "]");
+            }
+        }
+        int size = inputs.length;
+        for (int i = 0; i < this.layers.length; i++) {
+            if (this.layers[i].inputs() != size) {
+                throw new IllegalArgumentException(
+                    "Layer [" + i + "] expects [" + this.layers[i].inputs() + "] inputs but the previous layer has [" + size + "] outputs"
+                );
+            }
+            size = this.layers[i].outputs();
+        }
+        if (size != 1) {
+            throw new IllegalArgumentException("The last layer must have a single output but has [" + size + "]");
+        }
+        this.usedFeatures = Arrays.stream(inputs).distinct().sorted().toArray();
+    }
+
+    @Override
+    public String name() {
+        return "mlp";
+    }
+
+    @Override
+    public MlpFeatureVector newFeatureVector(FeatureVector reuse) {
+        if (reuse instanceof MlpFeatureVector) {
+            MlpFeatureVector vector = (MlpFeatureVector) reuse;
+            vector.reset();
+            return vector;
+        }
+        return new MlpFeatureVector(modelSize, layers);
+    }
+
+    @Override
+    protected float score(DenseFeatureVector point) {
+        float[][] activations = point instanceof MlpFeatureVector
+            ? ((MlpFeatureVector) point).activations
+            : MlpFeatureVector.newActivations(layers);
+        float[] input = activations[0];
+        for (int i = 0; i < inputs.length; i++) {
+            input[i] = point.scores[inputs[i]];
+        }
+        for (int l = 0; l < layers.length; l++) {
+            layers[l].forward(activations[l], activations[l + 1]);
+        }
+        return activations[layers.length][0];
+    }
+
+    @Override
+    public void scoreBlock(float[] points, int numFeatures, int numPoints, float[] scores) {
+        int tileSize = Math.min(TILE_SIZE, numPoints);
+        // activations of the points of a tile, per layer
+        float[][][] tile = new float[layers.length + 1][tileSize][];
+        for (int p = 0; p < tileSize; p++) {
+            tile[0][p] = new float[inputs.length];
+            for (int l = 0; l < layers.length; l++) {
+                tile[l + 1][p] = new float[layers[l].outputs()];
+            }
+        }
+        for (int start = 0; start < numPoints; start += tileSize) {
+            int n = Math.min(tileSize, numPoints - start);
+            for (int p = 0; p < n; p++) {
+                int offset = (start + p) * numFeatures;
+                float[] input = tile[0][p];
+                for (int i = 0; i < inputs.length; i++) {
+                    input[i] = points[offset + inputs[i]];
+                }
+            }
+            for (int l = 0; l < layers.length; l++) {
+                layers[l].forward(tile[l], tile[l + 1], n);
+            }
+            for (int p = 0; p < n; p++) {
+                scores[start + p] = tile[layers.length][p][0];
+            }
+        }
+    }
+
+    @Override
+    protected int size() {
+        return modelSize;
+    }
+
+    /**
+     * @return the features read by the first layer
+     */
+    @Override
+    public int[] usedFeatures() {
+        return usedFeatures;
+    }
+
+    /**
+     * The first layer is affine: like {@link com.o19s.es.ltr.ranker.linear.LinearRanker} its weights are divided by
+     * the scales and the shifts multiplied by the weights are subtracted from its biases.
+     */
+    @Override
+    public MlpRanker foldNormalizers(float[] shifts, float[] scales) {
+        Layer first = layers[0];
+        float[][] weights = new float[first.outputs()][];
+        float[] bias = first.bias.clone();
+        for (int j = 0; j < weights.length; j++) {
+            weights[j] = first.weights[j].clone();
+            double foldedBias = bias[j];
+            for (int i = 0; i < inputs.length; i++) {
+                int f = inputs[i];
+                if (f < shifts.length) {
+                    weights[j][i] = first.weights[j][i] / scales[f];
+                    foldedBias -= (double) first.weights[j][i] * shifts[f] / scales[f];
+                }
+            }
+            bias[j] = (float) foldedBias;
+        }
+        Layer[] folded = layers.clone();
+        folded[0] = new Layer(weights, bias, first.activation);
+        return new MlpRanker(modelSize, inputs, Arrays.asList(folded));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        MlpRanker that = (MlpRanker) o;
+        return modelSize == that.modelSize && Arrays.equals(inputs, that.inputs) && Arrays.equals(layers, that.layers);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * modelSize + Arrays.hashCode(inputs)) + Arrays.hashCode(layers);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        long size = BASE_RAM_USED + RamUsageEstimator.sizeOf(inputs) + RamUsageEstimator.sizeOf(usedFeatures)
+            + RamUsageEstimator.shallowSizeOf(layers);
+        for (Layer layer : layers) {
+            size += layer.ramBytesUsed();
+        }
+        return size;
+    }
+
+    /**
+     * Activation function of the outputs of a layer
+     */
+    public enum Activation {
+        IDENTITY,
+        RELU,
+        TANH,
+        SIGMOID;
+
+        public static Activation fromString(String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(
+                    "Unknown activation [" + name + "], expected one of " + Arrays.toString(values()).toLowerCase(Locale.ROOT)
+                );
+            }
+        }
+
+        void apply(float[] values, int length) {
+            switch (this) {
+                case IDENTITY:
+                    break;
+                case RELU:
+                    for (int i = 0; i < length; i++) {
+                        values[i] = Math.max(values[i], 0F);
+                    }
+                    break;
+                case TANH:
+                    for (int i = 0; i < length; i++) {
+                        values[i] = (float) Math.tanh(values[i]);
+                    }
+                    break;
+                case SIGMOID:
+                    for (int i = 0; i < length; i++) {
+                        values[i] = (float) (1 / (1 + Math.exp(-values[i])));
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown activation [" + this + "]");
+            }
+        }
+    }
+
+    /**
+     * A dense layer
+     */
+    public static final class Layer implements Accountable {
+        private static final long BASE_RAM_USED = RamUsageEstimator.shallowSizeOfInstance(Layer.class);
+
+        private final float[][] weights;
+        private final float[] bias;
+        private final Activation activation;
+
+        /**
+         * @param weights one row of input weights per output
+         * @param bias the bias of every output
+         * @param activation the activation function applied to the outputs
+         */
+        public Layer(float[][] weights, float[] bias, Activation activation) {
+            this.weights = Objects.requireNonNull(weights);
+            this.bias = Objects.requireNonNull(bias);
+            this.activation = Objects.requireNonNull(activation);
+            if (weights.length == 0) {
+                throw new IllegalArgumentException("A layer requires at least one output");
+            }
+            if (bias.length != weights.length) {
+                throw new IllegalArgumentException("Expected [" + weights.length + "] biases but got [" + bias.length + "]");
+            }
+            for (float[] row : weights) {
+                if (row.length != weights[0].length) {
+                    throw new IllegalArgumentException("All the rows of weights of a layer must have the same size");
+                }
+            }
+        }
+
+        int inputs() {
+            return weights[0].length;
+        }
+
+        int outputs() {
+            return weights.length;
+        }
+
+        void forward(float[] input, float[] output) {
+            for (int j = 0; j < weights.length; j++) {
+                output[j] = VectorUtil.dotProduct(weights[j], input) + bias[j];
+            }
+            activation.apply(output, weights.length);
+        }
+
+        void forward(float[][] input, float[][] output, int numPoints) {
+            for (int j = 0; j < weights.length; j++) {
+                float[] row = weights[j];
+                float b = bias[j];
+                for (int p = 0; p < numPoints; p++) {
+                    output[p][j] = VectorUtil.dotProduct(row, input[p]) + b;
+                }
+            }
+            for (int p = 0; p < numPoints; p++) {
+                activation.apply(output[p], weights.length);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Layer layer = (Layer) o;
+            return Arrays.deepEquals(weights, layer.weights) && Arrays.equals(bias, layer.bias) && activation == layer.activation;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(Arrays.deepHashCode(weights), Arrays.hashCode(bias), activation);
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            long size = BASE_RAM_USED + RamUsageEstimator.shallowSizeOf(weights) + RamUsageEstimator.sizeOf(bias);
+            for (float[] row : weights) {
+                size += RamUsageEstimator.sizeOf(row);
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Dense feature vector holding the activations of every layer, so that scoring a single data point
+     * does not allocate
+     */
+    public static class MlpFeatureVector extends DenseFeatureVector {
+        private final float[][] activations;
+
+        MlpFeatureVector(int size, Layer[] layers) {
+            super(size);
+            this.activations = newActivations(layers);
+        }
+
+        private static float[][] newActivations(Layer[] layers) {
+            float[][] activations = new float[layers.length + 1][];
+            activations[0] = new float[layers[0].inputs()];
+            for (int l = 0; l < layers.length; l++) {
+                activations[l + 1] = new float[layers[l].outputs()];
+            }
+            return activations;
+        }
+    }
+}
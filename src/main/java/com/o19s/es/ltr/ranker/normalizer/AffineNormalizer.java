@@ -0,0 +1,22 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.normalizer;
+
+/**
+ * A normalizer computing {@code (value - shift()) / scale()}, which allows rankers
+ * to apply it over primitive arrays.
+ */
+public interface AffineNormalizer extends Normalizer {
+    /**
+     * @return the value subtracted from the feature score
+     */
+    float shift();
+
+    /**
+     * @return the value the shifted feature score is divided by
+     */
+    float scale();
+}
@@ -16,18 +16,36 @@
 
 package com.o19s.es.ltr.ranker.normalizer;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
 
 import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.RamUsageEstimator;
 
+import com.o19s.es.ltr.ranker.ArrayFeatureVector;
+import com.o19s.es.ltr.ranker.LazyFeatureVector;
 import com.o19s.es.ltr.ranker.LtrRanker;
 
+/**
+ * Normalizes the feature scores before handing them to the wrapped ranker.
+ * <p>
+ * Normalizers are applied over primitive arrays: when all of them are {@link AffineNormalizer}s
+ * (min-max and standard) and the feature vector is backed by an array, the whole vector is
+ * normalized with a single branch-free loop (features without a normalizer use the identity
+ * {@code (v - 0) / 1}) that the JIT can vectorize.
+ */
 public class FeatureNormalizingRanker implements LtrRanker, Accountable {
 
     private final LtrRanker wrapped;
     private final Map<Integer, Normalizer> ftrNorms;
+    // ordinals and normalizers, for the generic path
+    private final int[] ords;
+    private final Normalizer[] norms;
+    // dense affine parameters indexed by ordinal, null if some normalizers are not affine
+    private final float[] shifts;
+    private final float[] scales;
     private static final long BASE_RAM_USED;
 
     private static final long PER_FTR_NORM_RAM_USED = 8;
@@ -38,6 +56,56 @@ public class FeatureNormalizingRanker implements LtrRanker, Accountable {
     public FeatureNormalizingRanker(LtrRanker wrapped, Map<Integer, Normalizer> ftrNorms) {
         this.wrapped = Objects.requireNonNull(wrapped);
         this.ftrNorms = Objects.requireNonNull(ftrNorms);
+        this.ords = new int[ftrNorms.size()];
+        this.norms = new Normalizer[ftrNorms.size()];
+        int i = 0;
+        int maxOrd = -1;
+        boolean affine = true;
+        for (Map.Entry<Integer, Normalizer> ordToNorm : new TreeMap<>(ftrNorms).entrySet()) {
+            ords[i] = ordToNorm.getKey();
+            norms[i] = ordToNorm.getValue();
+            maxOrd = Math.max(maxOrd, ords[i]);
+            affine &= norms[i] instanceof AffineNormalizer;
+            i++;
+        }
+        if (affine) {
+            shifts = new float[maxOrd + 1];
+            scales = new float[maxOrd + 1];
+            Arrays.fill(scales, 1F);
+            for (int j = 0; j < ords.length; j++) {
+                AffineNormalizer norm = (AffineNormalizer) norms[j];
+                shifts[ords[j]] = norm.shift();
+                scales[ords[j]] = norm.scale();
+            }
+        } else {
+            shifts = null;
+            scales = null;
+        }
+    }
+
+    /**
+     * Normalize the features of a ranker. When all the normalizers are affine with a positive scale and the ranker
+     * supports it, the normalizers are folded into the parameters of the ranker, see
+     * {@link LtrRanker#foldNormalizers(float[], float[])}, otherwise the ranker is wrapped.
+     * Feature vectors are never modified by folded rankers.
+     */
+    public static LtrRanker wrapOrFold(LtrRanker ranker, Map<Integer, Normalizer> ftrNorms) {
+        FeatureNormalizingRanker normalizing = new FeatureNormalizingRanker(ranker, ftrNorms);
+        if (normalizing.shifts == null) {
+            return normalizing;
+        }
+        for (int i = 0; i < normalizing.shifts.length; i++) {
+            float scale = normalizing.scales[i];
+            if (!Float.isFinite(normalizing.shifts[i]) || !Float.isFinite(scale) || scale <= 0F) {
+                return normalizing;
+            }
+        }
+        LtrRanker folded = ranker.foldNormalizers(normalizing.shifts, normalizing.scales);
+        return folded != null ? folded : normalizing;
+    }
+
+    public LtrRanker getWrapped() {
+        return wrapped;
     }
 
     public Map<Integer, Normalizer> getFtrNorms() {
@@ -56,15 +124,94 @@ public class FeatureNormalizingRanker implements LtrRanker, Accountable {
 
     @Override
     public float score(FeatureVector point) {
-        for (Map.Entry<Integer, Normalizer> ordToNorm : this.ftrNorms.entrySet()) {
-            int ord = ordToNorm.getKey();
-            float origFtrScore = point.getFeatureScore(ord);
-            float normed = ordToNorm.getValue().normalize(origFtrScore);
-            point.setFeatureScore(ord, normed);
+        if (point instanceof LazyFeatureVector) {
+            return wrapped.score(new NormalizingFeatureVector(point));
         }
+        normalize(point);
         return wrapped.score(point);
     }
 
+    @Override
+    public float score(FeatureVector point, float minScore) {
+        if (point instanceof LazyFeatureVector) {
+            return wrapped.score(new NormalizingFeatureVector(point), minScore);
+        }
+        normalize(point);
+        return wrapped.score(point, minScore);
+    }
+
+    @Override
+    public boolean supportsLazyFeatures() {
+        return wrapped.supportsLazyFeatures();
+    }
+
+    private void normalize(FeatureVector point) {
+        if (shifts != null && point instanceof ArrayFeatureVector && ((ArrayFeatureVector) point).scores.length >= shifts.length) {
+            normalize(((ArrayFeatureVector) point).scores, 0);
+        } else {
+            for (int i = 0; i < ords.length; i++) {
+                point.setFeatureScore(ords[i], norms[i].normalize(point.getFeatureScore(ords[i])));
+            }
+        }
+    }
+
+    @Override
+    public void scoreBlock(float[] points, int numFeatures, int numPoints, float[] scores) {
+        if (shifts != null && numFeatures >= shifts.length) {
+            for (int i = 0; i < numPoints; i++) {
+                normalize(points, i * numFeatures);
+            }
+        } else {
+            for (int i = 0; i < numPoints; i++) {
+                int offset = i * numFeatures;
+                for (int j = 0; j < ords.length; j++) {
+                    points[offset + ords[j]] = norms[j].normalize(points[offset + ords[j]]);
+                }
+            }
+        }
+        wrapped.scoreBlock(points, numFeatures, numPoints, scores);
+    }
+
+    private void normalize(float[] scores, int offset) {
+        for (int i = 0; i < shifts.length; i++) {
+            scores[offset + i] = (scores[offset + i] - shifts[i]) / scales[i];
+        }
+    }
+
+    @Override
+    public int[] usedFeatures() {
+        return wrapped.usedFeatures();
+    }
+
+    /**
+     * Normalizes the feature scores of a lazy vector when they are read, so that normalizing
+     * does not compute the features the wrapped ranker does not read.
+     */
+    private final class NormalizingFeatureVector implements LazyFeatureVector {
+        private final FeatureVector vector;
+
+        NormalizingFeatureVector(FeatureVector vector) {
+            this.vector = vector;
+        }
+
+        @Override
+        public void setFeatureScore(int featureId, float score) {
+            vector.setFeatureScore(featureId, score);
+        }
+
+        @Override
+        public float getFeatureScore(int featureId) {
+            float score = vector.getFeatureScore(featureId);
+            int i = Arrays.binarySearch(ords, featureId);
+            return i >= 0 ? norms[i].normalize(score) : score;
+        }
+
+        @Override
+        public float getDefaultScore() {
+            return vector.getDefaultScore();
+        }
+    }
+
     @Override
     public boolean equals(Object other) {
         if (other == null)
@@ -92,7 +239,11 @@ public class FeatureNormalizingRanker implements LtrRanker, Accountable {
     @Override
     public long ramBytesUsed() {
 
-        long ftrNormSize = ftrNorms.size() * (PER_FTR_NORM_RAM_USED);
+        long ftrNormSize = ftrNorms.size() * (PER_FTR_NORM_RAM_USED) + RamUsageEstimator.sizeOf(ords) + RamUsageEstimator
+            .shallowSizeOf(norms);
+        if (shifts != null) {
+            ftrNormSize += RamUsageEstimator.sizeOf(shifts) + RamUsageEstimator.sizeOf(scales);
+        }
 
         if (this.wrapped instanceof Accountable) {
             Accountable accountable = (Accountable) this.wrapped;
@@ -24,7 +24,7 @@ package com.o19s.es.ltr.ranker.normalizer;
  * See
  * https://scikit-learn.org/stable/modules/generated/sklearn.preprocessing.MinMaxScaler.html
  */
-public class MinMaxFeatureNormalizer implements Normalizer {
+public class MinMaxFeatureNormalizer implements AffineNormalizer {
     float maximum;
     float minimum;
 
@@ -43,6 +43,16 @@ public class MinMaxFeatureNormalizer implements Normalizer {
         return (value - minimum) / (maximum - minimum);
     }
 
+    @Override
+    public float shift() {
+        return minimum;
+    }
+
+    @Override
+    public float scale() {
+        return maximum - minimum;
+    }
+
     @Override
     public boolean equals(Object other) {
         if (this == other)
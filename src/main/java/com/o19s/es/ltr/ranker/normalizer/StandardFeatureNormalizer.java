@@ -16,7 +16,7 @@
 
 package com.o19s.es.ltr.ranker.normalizer;
 
-public class StandardFeatureNormalizer implements Normalizer {
+public class StandardFeatureNormalizer implements AffineNormalizer {
 
     private float mean;
     private float stdDeviation;
@@ -31,6 +31,16 @@ public class StandardFeatureNormalizer implements Normalizer {
         return (value - this.mean) / this.stdDeviation;
     }
 
+    @Override
+    public float shift() {
+        return mean;
+    }
+
+    @Override
+    public float scale() {
+        return stdDeviation;
+    }
+
     @Override
     public boolean equals(Object other) {
         if (this == other)
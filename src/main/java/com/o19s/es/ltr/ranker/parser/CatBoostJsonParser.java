@@ -0,0 +1,246 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.parser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.opensearch.common.xcontent.LoggingDeprecationHandler;
+import org.opensearch.common.xcontent.json.JsonXContent;
+import org.opensearch.core.ParseField;
+import org.opensearch.core.common.ParsingException;
+import org.opensearch.core.xcontent.NamedXContentRegistry;
+import org.opensearch.core.xcontent.ObjectParser;
+import org.opensearch.core.xcontent.ObjectParser.ValueType;
+import org.opensearch.core.xcontent.XContentParseException;
+import org.opensearch.core.xcontent.XContentParser;
+
+import com.o19s.es.ltr.feature.FeatureSet;
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.dectree.ObliviousAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.normalizer.Normalizers;
+
+/**
+ * Parse CatBoost models saved in the JSON format ({@code save_model(format="json")}) as an
+ * {@link ObliviousAdditiveDecisionTree}.
+ * <p>
+ * CatBoost sends a value to the right of a split when {@code value > border}, borders are converted to the
+ * inclusive comparison of the oblivious trees. Missing values are routed according to the
+ * {@code nan_value_treatment} of the feature: to the right with {@code AsTrue}, to the left otherwise.
+ * Features are mapped by their {@code feature_id} when it is set, by their {@code flat_feature_index} otherwise.
+ * Only the splits on float features of single dimension models are supported, the raw score is not normalized.
+ */
+public class CatBoostJsonParser implements LtrRankerParser {
+    public static final String TYPE = "model/catboost+json";
+
+    @Override
+    public LtrRanker parse(FeatureSet set, String model) {
+        CatBoostDefinition definition;
+        try (
+            XContentParser parser = JsonXContent.jsonXContent
+                .createParser(NamedXContentRegistry.EMPTY, LoggingDeprecationHandler.INSTANCE, model)
+        ) {
+            definition = CatBoostDefinition.parse(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot parse model", e);
+        }
+        return definition.toRanker(set);
+    }
+
+    private static class CatBoostDefinition {
+        private static final ObjectParser<CatBoostDefinition, Void> PARSER;
+        static {
+            PARSER = new ObjectParser<>("catboost_definition", true, CatBoostDefinition::new);
+            PARSER.declareObject((d, info) -> d.features = info.floatFeatures, FeaturesInfo.PARSER, new ParseField("features_info"));
+            PARSER.declareObjectArray((d, trees) -> d.trees = trees, ObliviousTree.PARSER, new ParseField("oblivious_trees"));
+            PARSER
+                .declareField(
+                    CatBoostDefinition::setScaleAndBias,
+                    (parser, context) -> parseScaleAndBias(parser),
+                    new ParseField("scale_and_bias"),
+                    ValueType.OBJECT_ARRAY
+                );
+        }
+
+        private List<FloatFeature> features = new ArrayList<>();
+        private List<ObliviousTree> trees;
+        private double scale = 1;
+        private double bias = 0;
+
+        static CatBoostDefinition parse(XContentParser parser) throws IOException {
+            CatBoostDefinition definition;
+            XContentParser.Token startToken = parser.nextToken();
+            if (startToken != XContentParser.Token.START_OBJECT) {
+                throw new ParsingException(parser.getTokenLocation(), "Expected [START_OBJECT] but got [" + startToken + "]");
+            }
+            try {
+                definition = PARSER.apply(parser, null);
+            } catch (XContentParseException e) {
+                throw new ParsingException(parser.getTokenLocation(), "Unable to parse CatBoost model", e);
+            }
+            if (definition.trees == null) {
+                throw new ParsingException(parser.getTokenLocation(), "CatBoost model missing required field [oblivious_trees]");
+            }
+            return definition;
+        }
+
+        /**
+         * Either [scale, bias] or [scale, [bias]]
+         */
+        private static double[] parseScaleAndBias(XContentParser parser) throws IOException {
+            if (parser.currentToken() != XContentParser.Token.START_ARRAY || parser.nextToken() != XContentParser.Token.VALUE_NUMBER) {
+                throw new ParsingException(parser.getTokenLocation(), "Expected [scale_and_bias] to be an array [scale, [bias]]");
+            }
+            double scale = parser.doubleValue();
+            List<Double> biases = new ArrayList<>();
+            XContentParser.Token token = parser.nextToken();
+            if (token == XContentParser.Token.VALUE_NUMBER) {
+                biases.add(parser.doubleValue());
+                token = parser.nextToken();
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                while (parser.nextToken() == XContentParser.Token.VALUE_NUMBER) {
+                    biases.add(parser.doubleValue());
+                }
+                token = parser.currentToken() == XContentParser.Token.END_ARRAY ? parser.nextToken() : parser.currentToken();
+            }
+            if (token != XContentParser.Token.END_ARRAY) {
+                throw new ParsingException(parser.getTokenLocation(), "Expected [scale_and_bias] to be an array [scale, [bias]]");
+            }
+            if (biases.size() > 1) {
+                throw new ParsingException(parser.getTokenLocation(), "Multi-dimensional CatBoost models are not supported");
+            }
+            return new double[] { scale, biases.isEmpty() ? 0 : biases.get(0) };
+        }
+
+        private void setScaleAndBias(double[] scaleAndBias) {
+            this.scale = scaleAndBias[0];
+            this.bias = scaleAndBias[1];
+        }
+
+        LtrRanker toRanker(FeatureSet set) {
+            Map<Integer, FloatFeature> byIndex = new HashMap<>();
+            for (FloatFeature feature : features) {
+                byIndex.put(feature.featureIndex, feature);
+            }
+            // only the features used by the splits must be in the feature set
+            Set<String> unknownFeatures = new TreeSet<>();
+            ObliviousAdditiveDecisionTree.Builder builder = new ObliviousAdditiveDecisionTree.Builder();
+            for (ObliviousTree tree : trees) {
+                int depth = tree.splits.size();
+                int[] ordinals = new int[depth];
+                float[] thresholds = new float[depth];
+                boolean[] defaultLeft = new boolean[depth];
+                for (int i = 0; i < depth; i++) {
+                    Split split = tree.splits.get(i);
+                    if (split.splitType != null && !split.splitType.equals("FloatFeature")) {
+                        throw new IllegalArgumentException(
+                            "Split type [" + split.splitType + "] of tree [" + builder.numTrees() + "] is not supported"
+                        );
+                    }
+                    FloatFeature feature = byIndex.get(split.floatFeatureIndex);
+                    if (feature == null) {
+                        throw new IllegalArgumentException(
+                            "Tree [" + builder.numTrees() + "] uses an unknown float feature [" + split.floatFeatureIndex + "]"
+                        );
+                    }
+                    ordinals[i] = feature.ordinal(set);
+                    if (ordinals[i] < 0) {
+                        unknownFeatures.add(feature.name());
+                    }
+                    // value > border iff value >= nextUp(t), t being the largest float lower or equal to the border
+                    float t = (float) split.border;
+                    if (t > split.border) {
+                        t = Math.nextDown(t);
+                    }
+                    thresholds[i] = Math.nextUp(t);
+                    defaultLeft[i] = !"AsTrue".equals(feature.nanValueTreatment);
+                }
+                float[] leaves = new float[tree.leafValues.size()];
+                for (int i = 0; i < leaves.length; i++) {
+                    leaves[i] = (float) (scale * tree.leafValues.get(i));
+                }
+                if (unknownFeatures.isEmpty()) {
+                    builder.addTree(ordinals, thresholds, defaultLeft, leaves);
+                }
+            }
+            if (!unknownFeatures.isEmpty()) {
+                throw new IllegalArgumentException("Unknown features in model: [" + String.join(", ", unknownFeatures) + "]");
+            }
+            return builder.build(set.size(), (float) bias, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME));
+        }
+    }
+
+    private static class FeaturesInfo {
+        private static final ObjectParser<FeaturesInfo, Void> PARSER;
+        static {
+            PARSER = new ObjectParser<>("features_info", true, FeaturesInfo::new);
+            PARSER.declareObjectArray((i, features) -> i.floatFeatures = features, FloatFeature.PARSER, new ParseField("float_features"));
+        }
+
+        private List<FloatFeature> floatFeatures = new ArrayList<>();
+    }
+
+    private static class FloatFeature {
+        private static final ObjectParser<FloatFeature, Void> PARSER;
+        static {
+            PARSER = new ObjectParser<>("float_feature", true, FloatFeature::new);
+            PARSER.declareInt((f, index) -> f.featureIndex = index, new ParseField("feature_index"));
+            PARSER.declareInt((f, index) -> f.flatFeatureIndex = index, new ParseField("flat_feature_index"));
+            PARSER.declareString((f, id) -> f.featureId = id, new ParseField("feature_id"));
+            PARSER.declareString((f, treatment) -> f.nanValueTreatment = treatment, new ParseField("nan_value_treatment"));
+        }
+
+        private int featureIndex;
+        private int flatFeatureIndex;
+        private String featureId;
+        private String nanValueTreatment;
+
+        private String name() {
+            return featureId != null && !featureId.isEmpty() ? featureId : String.valueOf(flatFeatureIndex);
+        }
+
+        /**
+         * @return the ordinal of the feature in the set, -1 if unknown
+         */
+        private int ordinal(FeatureSet set) {
+            if (featureId != null && !featureId.isEmpty()) {
+                return set.hasFeature(featureId) ? set.featureOrdinal(featureId) : -1;
+            }
+            return flatFeatureIndex < set.size() ? flatFeatureIndex : -1;
+        }
+    }
+
+    private static class ObliviousTree {
+        private static final ObjectParser<ObliviousTree, Void> PARSER;
+        static {
+            PARSER = new ObjectParser<>("oblivious_tree", true, ObliviousTree::new);
+            PARSER.declareDoubleArray((t, values) -> t.leafValues = values, new ParseField("leaf_values"));
+            PARSER.declareObjectArray((t, splits) -> t.splits = splits, Split.PARSER, new ParseField("splits"));
+        }
+
+        private List<Double> leafValues = new ArrayList<>();
+        private List<Split> splits = new ArrayList<>();
+    }
+
+    private static class Split {
+        private static final ObjectParser<Split, Void> PARSER;
+        static {
+            PARSER = new ObjectParser<>("split", true, Split::new);
+            PARSER.declareInt((s, index) -> s.floatFeatureIndex = index, new ParseField("float_feature_index"));
+            PARSER.declareDouble((s, border) -> s.border = border, new ParseField("border"));
+            PARSER.declareString((s, type) -> s.splitType = type, new ParseField("split_type"));
+        }
+
+        private int floatFeatureIndex = -1;
+        private double border;
+        private String splitType;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.parser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.apache.lucene.expressions.Expression;
+import org.opensearch.common.xcontent.LoggingDeprecationHandler;
+import org.opensearch.common.xcontent.json.JsonXContent;
+import org.opensearch.core.ParseField;
+import org.opensearch.core.common.ParsingException;
+import org.opensearch.core.xcontent.NamedXContentRegistry;
+import org.opensearch.core.xcontent.ObjectParser;
+import org.opensearch.core.xcontent.XContentParser;
+
+import com.o19s.es.ltr.feature.FeatureSet;
+import com.o19s.es.ltr.feature.store.StoredLtrModel.LtrModelDefinition;
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.ensemble.EnsembleRanker;
+import com.o19s.es.ltr.ranker.normalizer.FeatureNormalizingRanker;
+import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+import com.o19s.es.ltr.utils.Scripting;
+
+/**
+ * Parse an ensemble of models sharing the feature set of the ensemble, so that the features are extracted once
+ * for all of them:
+ * <pre>
+ * {
+ *     "expression": "0.7 * main + 0.3 * sigmoid(fresh)",
+ *     "models": [
+ *         {"name": "main", "model": {"type": "model/xgboost+json", "definition": ...}},
+ *         {"name": "fresh", "model": {"type": "model/linear", "definition": ..., "feature_normalizers": ...}}
+ *     ]
+ * }
+ * </pre>
+ * The members are defined like stored models. Without expression the scores of the members are summed,
+ * multiplied by their optional "weight" (1 by default).
+ */
+public class EnsembleModelParser implements LtrRankerParser {
+    public static final String TYPE = "model/ensemble";
+
+    private static final ObjectParser<EnsembleDefinition, Void> PARSER;
+    private static final ObjectParser<MemberDefinition, Void> MEMBER_PARSER;
+    private static final ParseField MODEL_NAME = new ParseField("name");
+    private static final ParseField MODEL_WEIGHT = new ParseField("weight");
+    private static final ParseField MODEL = new ParseField("model");
+
+    static {
+        MEMBER_PARSER = new ObjectParser<>("ensemble_model", MemberDefinition::new);
+        MEMBER_PARSER.declareString((m, name) -> m.name = name, MODEL_NAME);
+        MEMBER_PARSER.declareFloat((m, weight) -> m.weight = weight, MODEL_WEIGHT);
+        MEMBER_PARSER.declareObject((m, model) -> m.model = model, LtrModelDefinition::parse, MODEL);
+
+        PARSER = new ObjectParser<>("ensemble", EnsembleDefinition::new);
+        PARSER.declareString((e, expression) -> e.expression = expression, new ParseField("expression"));
+        PARSER.declareObjectArray((e, models) -> e.models = models, MEMBER_PARSER, new ParseField("models"));
+    }
+
+    private final LtrRankerParserFactory factory;
+
+    /**
+     * @param factory the factory used to parse the models of the ensemble
+     */
+    public EnsembleModelParser(LtrRankerParserFactory factory) {
+        this.factory = Objects.requireNonNull(factory);
+    }
+
+    @Override
+    public LtrRanker parse(FeatureSet set, String model) {
+        try (
+            XContentParser parser = JsonXContent.jsonXContent
+                .createParser(NamedXContentRegistry.EMPTY, LoggingDeprecationHandler.INSTANCE, model)
+        ) {
+            return toRanker(parser, set, PARSER.parse(parser, null));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    private LtrRanker toRanker(XContentParser parser, FeatureSet set, EnsembleDefinition ensemble) {
+        List<MemberDefinition> models = ensemble.models;
+        String expression = ensemble.expression;
+        if (models.isEmpty()) {
+            throw new ParsingException(parser.getTokenLocation(), "Field [models] is mandatory");
+        }
+        LtrRanker[] members = new LtrRanker[models.size()];
+        String[] names = new String[models.size()];
+        float[] weights = new float[models.size()];
+        Set<String> uniqueNames = new HashSet<>();
+        for (int i = 0; i < members.length; i++) {
+            MemberDefinition member = models.get(i);
+            if (member.model == null) {
+                throw new ParsingException(parser.getTokenLocation(), "Field [models.model] is mandatory");
+            }
+            if (member.name != null && !uniqueNames.add(member.name)) {
+                throw new ParsingException(parser.getTokenLocation(), "Duplicate model name [" + member.name + "]");
+            }
+            if (expression != null && member.name == null) {
+                throw new ParsingException(parser.getTokenLocation(), "Field [models.name] is mandatory with an expression");
+            }
+            if (expression != null && member.weight != null) {
+                throw new ParsingException(parser.getTokenLocation(), "Field [models.weight] cannot be used with an expression");
+            }
+            names[i] = member.name;
+            weights[i] = member.weight != null ? member.weight : 1F;
+            members[i] = compileMember(set, member.model);
+        }
+        if (expression == null) {
+            return new EnsembleRanker(members, weights);
+        }
+        return new EnsembleRanker(members, names, (Expression) Scripting.compile(expression));
+    }
+
+    /**
+     * Compile a member like {@link com.o19s.es.ltr.feature.store.StoredLtrModel} compiles a stored model
+     */
+    private LtrRanker compileMember(FeatureSet set, LtrModelDefinition definition) {
+        LtrRanker ranker = factory.getParser(definition.getType()).parse(set, definition.getDefinition());
+        Map<Integer, Normalizer> ordToNorms = definition.getFtrNorms().compileOrdToNorms(set);
+        if (ordToNorms.size() > 0) {
+            ranker = FeatureNormalizingRanker.wrapOrFold(ranker, ordToNorms);
+        }
+        return ranker;
+    }
+
+    private static class MemberDefinition {
+        private String name;
+        private Float weight;
+        private LtrModelDefinition model;
+    }
+
+    private static class EnsembleDefinition {
+        private String expression;
+        private List<MemberDefinition> models = new ArrayList<>();
+    }
+}
@@ -0,0 +1,683 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.parser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.opensearch.common.xcontent.LoggingDeprecationHandler;
+import org.opensearch.common.xcontent.json.JsonXContent;
+import org.opensearch.core.ParseField;
+import org.opensearch.core.common.ParsingException;
+import org.opensearch.core.xcontent.NamedXContentRegistry;
+import org.opensearch.core.xcontent.ObjectParser;
+import org.opensearch.core.xcontent.ObjectParser.ValueType;
+import org.opensearch.core.xcontent.XContentParseException;
+import org.opensearch.core.xcontent.XContentParser;
+
+import com.o19s.es.ltr.feature.FeatureSet;
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.dectree.FlatAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.QuantizedAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.TreeEvaluator;
+import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+import com.o19s.es.ltr.ranker.normalizer.Normalizers;
+
+/**
+ * Parse LightGBM models saved in the native text format ({@code save_model}) or dumped as JSON ({@code dump_model}),
+ * the trees are added straight to a {@link FlatAdditiveDecisionTree}.
+ * <p>
+ * LightGBM sends a value to the left child when {@code value <= threshold}, thresholds are converted to the strict
+ * comparison of the flat trees. Missing values are routed the way LightGBM does according to the missing type
+ * of each split:
+ * <ul>
+ *     <li>{@code NaN}: missing values follow the default direction of the split</li>
+ *     <li>{@code None}: missing values are handled as zero</li>
+ *     <li>
+ *         {@code Zero} (zero_as_missing): missing values and zeros follow the default direction of the split,
+ *         which must be the direction the threshold sends zero to
+ *     </li>
+ * </ul>
+ * The JSON format also accepts the "missing_as_zero", "evaluator" and "quantization_tolerance" parameters of the
+ * XGBoost parsers. Multiclass models, categorical splits and linear trees are not supported.
+ */
+public class LightGBMModelParser implements LtrRankerParser {
+    public static final String TYPE = "model/lightgbm";
+
+    // LightGBM decision_type bits
+    private static final int CATEGORICAL_MASK = 1;
+    private static final int DEFAULT_LEFT_MASK = 2;
+    // LightGBM missing types
+    private static final int MISSING_NONE = 0;
+    private static final int MISSING_ZERO = 1;
+    private static final int MISSING_NAN = 2;
+    // LightGBM handles values whose magnitude is at most this one as zeros
+    private static final float ZERO_THRESHOLD = 1e-35F;
+
+    @Override
+    public LtrRanker parse(FeatureSet set, String model) {
+        LightGBMDefinition definition;
+        if (model.stripLeading().startsWith("{")) {
+            try (
+                XContentParser parser = JsonXContent.jsonXContent
+                    .createParser(NamedXContentRegistry.EMPTY, LoggingDeprecationHandler.INSTANCE, model)
+            ) {
+                definition = LightGBMDefinition.parse(parser, set);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Cannot parse model", e);
+            }
+        } else {
+            definition = LightGBMDefinition.parseText(model);
+        }
+        return definition.toRanker(set);
+    }
+
+    /**
+     * Set the condition of a split reserved in the builder
+     *
+     * @param feature the index of the feature in the model
+     * @param threshold LightGBM threshold, values lower or equal go to the left
+     * @param defaultLeft the direction of the missing values when the missing type is not {@link #MISSING_NONE}
+     */
+    private static void setSplit(
+        FlatAdditiveDecisionTree.Builder builder,
+        int split,
+        int treeId,
+        int feature,
+        double threshold,
+        boolean defaultLeft,
+        int missingType
+    ) {
+        // value <= threshold iff value < nextUp(t), t being the largest float lower or equal to the threshold
+        float t = (float) threshold;
+        if (t > threshold) {
+            t = Math.nextDown(t);
+        }
+        float flatThreshold = Math.nextUp(t);
+        boolean zeroLeft = 0F < flatThreshold;
+        switch (missingType) {
+            case MISSING_NONE:
+                // LightGBM replaces NaN with zero
+                defaultLeft = zeroLeft;
+                break;
+            case MISSING_ZERO:
+                if (defaultLeft != zeroLeft) {
+                    throw new IllegalArgumentException(
+                        "A split of tree ["
+                            + treeId
+                            + "] sends zeros to the ["
+                            + (defaultLeft ? "left" : "right")
+                            + "] as missing values but to the ["
+                            + (zeroLeft ? "left" : "right")
+                            + "] with its threshold ["
+                            + threshold
+                            + "], this is not supported"
+                    );
+                }
+                // values close to zero are missing values as well
+                flatThreshold = zeroLeft ? Math.max(flatThreshold, Math.nextUp(ZERO_THRESHOLD)) : Math.min(flatThreshold, -ZERO_THRESHOLD);
+                break;
+            case MISSING_NAN:
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown missing type [" + missingType + "] in tree [" + treeId + "]");
+        }
+        builder.setSplit(split, feature, flatThreshold, defaultLeft);
+    }
+
+    private static class LightGBMDefinition {
+        private static final ObjectParser<LightGBMDefinition, FeatureSet> PARSER;
+        static {
+            PARSER = new ObjectParser<>("lightgbm_definition", true, LightGBMDefinition::new);
+            PARSER.declareString(LightGBMDefinition::setObjective, new ParseField("objective"));
+            PARSER.declareInt(LightGBMDefinition::setNumClass, new ParseField("num_class"));
+            PARSER.declareInt(LightGBMDefinition::setNumTreePerIteration, new ParseField("num_tree_per_iteration"));
+            PARSER.declareBoolean(LightGBMDefinition::setAverageOutput, new ParseField("average_output"));
+            PARSER.declareStringArray(LightGBMDefinition::setFeatureNames, new ParseField("feature_names"));
+            PARSER
+                .declareField(
+                    LightGBMDefinition::setTrees,
+                    (parser, set) -> new JsonTreeParser().parseTrees(parser),
+                    new ParseField("tree_info"),
+                    ValueType.OBJECT_ARRAY
+                );
+            PARSER.declareBoolean(LightGBMDefinition::setMissingAsZero, new ParseField("missing_as_zero"));
+            PARSER.declareString(LightGBMDefinition::setEvaluator, new ParseField("evaluator"));
+            PARSER.declareFloat(LightGBMDefinition::setQuantizationTolerance, new ParseField("quantization_tolerance"));
+        }
+
+        private Normalizer normalizer = Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME);
+        // multiplier of the raw score applied before the sigmoid
+        private double scale = 1;
+        private int numClass = 1;
+        private int numTreePerIteration = 1;
+        private boolean averageOutput;
+        private List<String> featureNames;
+        private FlatAdditiveDecisionTree.Builder trees;
+        private boolean missingAsZero = false;
+        private TreeEvaluator evaluator = TreeEvaluator.FLAT;
+        private Float quantizationTolerance;
+
+        static LightGBMDefinition parse(XContentParser parser, FeatureSet set) throws IOException {
+            LightGBMDefinition definition;
+            XContentParser.Token startToken = parser.nextToken();
+            if (startToken != XContentParser.Token.START_OBJECT) {
+                throw new ParsingException(parser.getTokenLocation(), "Expected [START_OBJECT] but got [" + startToken + "]");
+            }
+            try {
+                definition = PARSER.apply(parser, set);
+            } catch (XContentParseException e) {
+                throw new ParsingException(parser.getTokenLocation(), "Unable to parse LightGBM model", e);
+            }
+            if (definition.trees == null) {
+                throw new ParsingException(parser.getTokenLocation(), "LightGBM model missing required field [tree_info]");
+            }
+            return definition;
+        }
+
+        /**
+         * Parse the text format, the sections following the trees (feature importances and parameters) are ignored
+         */
+        static LightGBMDefinition parseText(String model) {
+            LightGBMDefinition definition = new LightGBMDefinition();
+            definition.trees = new FlatAdditiveDecisionTree.Builder();
+            TextTree tree = null;
+            for (Iterator<String> lines = model.lines().iterator(); lines.hasNext();) {
+                String line = lines.next().strip();
+                if (line.equals("end of trees")) {
+                    break;
+                } else if (line.equals("average_output")) {
+                    definition.averageOutput = true;
+                    continue;
+                }
+                int eq = line.indexOf('=');
+                if (eq < 0) {
+                    continue;
+                }
+                String key = line.substring(0, eq);
+                String value = line.substring(eq + 1);
+                if (key.equals("Tree")) {
+                    if (tree != null) {
+                        tree.addTo(definition.trees);
+                    } else {
+                        tree = new TextTree();
+                    }
+                    tree.reset(parseInt(key, value));
+                } else if (tree != null) {
+                    tree.setField(key, value);
+                } else {
+                    definition.setHeaderField(key, value);
+                }
+            }
+            if (tree != null) {
+                tree.addTo(definition.trees);
+            }
+            return definition;
+        }
+
+        private void setHeaderField(String key, String value) {
+            switch (key) {
+                case "objective" -> setObjective(value);
+                case "num_class" -> setNumClass(parseInt(key, value));
+                case "num_tree_per_iteration" -> setNumTreePerIteration(parseInt(key, value));
+                case "feature_names" -> setFeatureNames(value.isEmpty() ? List.of() : Arrays.asList(value.split(" ")));
+                default -> {
+                    // not needed to score
+                }
+            }
+        }
+
+        LtrRanker toRanker(FeatureSet set) {
+            if (numClass > 1 || numTreePerIteration > 1) {
+                throw new IllegalArgumentException("Multiclass LightGBM models are not supported");
+            }
+            if (featureNames == null) {
+                throw new IllegalArgumentException("LightGBM model missing required field [feature_names]");
+            }
+            if (trees.numTrees() == 0) {
+                throw new IllegalArgumentException("LightGBM model must define at least one tree");
+            }
+            List<String> unknownFeatures = new ArrayList<>();
+            int[] ordinals = new int[featureNames.size()];
+            for (int i = 0; i < ordinals.length; i++) {
+                if (set.hasFeature(featureNames.get(i))) {
+                    ordinals[i] = set.featureOrdinal(featureNames.get(i));
+                } else {
+                    unknownFeatures.add(featureNames.get(i));
+                }
+            }
+            if (!unknownFeatures.isEmpty()) {
+                throw new IllegalArgumentException("Unknown features in model: [" + String.join(", ", unknownFeatures) + "]");
+            }
+            trees.remapFeatures(ordinals);
+            float weight = (float) (averageOutput ? scale / trees.numTrees() : scale);
+            for (int t = 0; t < trees.numTrees(); t++) {
+                trees.setWeight(t, weight);
+            }
+
+            LtrRanker ranker = evaluator.apply(trees.build(set.size(), normalizer, missingAsZero));
+            QuantizedAdditiveDecisionTree.checkMaxDeviation(ranker, quantizationTolerance);
+            return ranker;
+        }
+
+        /**
+         * Set the normalizer from the LightGBM objective, e.g. "lambdarank" or "binary sigmoid:1"
+         */
+        void setObjective(String objective) {
+            String[] parts = objective.strip().split(" ");
+            switch (parts[0]) {
+                case "lambdarank", "rank_xendcg", "regression", "regression_l1", "huber", "fair", "quantile", "mape" -> normalizer =
+                    Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME);
+                case "binary", "cross_entropy" -> {
+                    normalizer = Normalizers.get(Normalizers.SIGMOID_NORMALIZER_NAME);
+                    for (String param : parts) {
+                        if (param.startsWith("sigmoid:")) {
+                            scale = parseDouble("sigmoid", param.substring("sigmoid:".length()));
+                        }
+                    }
+                }
+                default -> throw new IllegalArgumentException("Objective [" + objective + "] is not a supported LightGBM objective");
+            }
+        }
+
+        void setNumClass(int numClass) {
+            this.numClass = numClass;
+        }
+
+        void setNumTreePerIteration(int numTreePerIteration) {
+            this.numTreePerIteration = numTreePerIteration;
+        }
+
+        void setAverageOutput(boolean averageOutput) {
+            this.averageOutput = averageOutput;
+        }
+
+        void setFeatureNames(List<String> featureNames) {
+            this.featureNames = featureNames;
+        }
+
+        void setTrees(FlatAdditiveDecisionTree.Builder trees) {
+            this.trees = trees;
+        }
+
+        void setMissingAsZero(boolean missingAsZero) {
+            this.missingAsZero = missingAsZero;
+        }
+
+        /**
+         * Select the engine used to evaluate the trees, see {@link TreeEvaluator}
+         */
+        void setEvaluator(String evaluator) {
+            this.evaluator = TreeEvaluator.fromName(evaluator);
+        }
+
+        /**
+         * Maximum deviation of the scores allowed when quantizing the model, requires the
+         * {@link TreeEvaluator#QUANTIZED} evaluator
+         */
+        void setQuantizationTolerance(float quantizationTolerance) {
+            this.quantizationTolerance = quantizationTolerance;
+        }
+    }
+
+    /**
+     * Arrays of a tree of the text format, nodes are added to the builder in depth-first order
+     * using an explicit stack. Child references {@code < 0} point to the leaf {@code ~ref}.
+     */
+    private static class TextTree {
+        private static final int NO_PARENT = Integer.MIN_VALUE;
+        private int id;
+        private int numLeaves;
+        private int numCat;
+        private boolean linear;
+        private int[] splitFeature;
+        private double[] threshold;
+        private int[] decisionType;
+        private int[] leftChild;
+        private int[] rightChild;
+        private double[] leafValue;
+        private int[] stackNodes = new int[16];
+        private int[] stackParents = new int[16];
+        private int[] leftRefs = new int[16];
+
+        void reset(int id) {
+            this.id = id;
+            numLeaves = 0;
+            numCat = 0;
+            linear = false;
+            splitFeature = null;
+            threshold = null;
+            decisionType = null;
+            leftChild = null;
+            rightChild = null;
+            leafValue = null;
+        }
+
+        void setField(String key, String value) {
+            switch (key) {
+                case "num_leaves" -> numLeaves = parseInt(key, value);
+                case "num_cat" -> numCat = parseInt(key, value);
+                case "is_linear" -> linear = parseInt(key, value) != 0;
+                case "split_feature" -> splitFeature = parseInts(key, value);
+                case "threshold" -> threshold = parseDoubles(key, value);
+                case "decision_type" -> decisionType = parseInts(key, value);
+                case "left_child" -> leftChild = parseInts(key, value);
+                case "right_child" -> rightChild = parseInts(key, value);
+                case "leaf_value" -> leafValue = parseDoubles(key, value);
+                default -> {
+                    // not needed to score
+                }
+            }
+        }
+
+        void addTo(FlatAdditiveDecisionTree.Builder builder) {
+            if (numCat > 0) {
+                throw new IllegalArgumentException("Tree [" + id + "] has categorical splits, they are not supported");
+            }
+            if (linear) {
+                throw new IllegalArgumentException("Tree [" + id + "] is a linear tree, linear trees are not supported");
+            }
+            int numSplits = numLeaves - 1;
+            checkLength("leaf_value", leafValue == null ? -1 : leafValue.length, Math.max(numLeaves, 1));
+            if (numSplits <= 0) {
+                builder.addTree(builder.addLeaf((float) leafValue[0]), 1F);
+                return;
+            }
+            checkLength("split_feature", splitFeature == null ? -1 : splitFeature.length, numSplits);
+            checkLength("threshold", threshold == null ? -1 : threshold.length, numSplits);
+            checkLength("decision_type", decisionType == null ? -1 : decisionType.length, numSplits);
+            checkLength("left_child", leftChild == null ? -1 : leftChild.length, numSplits);
+            checkLength("right_child", rightChild == null ? -1 : rightChild.length, numSplits);
+
+            int root = 0;
+            int firstSplit = -1;
+            int visited = 0;
+            int depth = 0;
+            stackNodes[depth] = 0;
+            stackParents[depth++] = NO_PARENT;
+            while (depth > 0) {
+                int node = stackNodes[--depth];
+                int parent = stackParents[depth];
+                if (node >= numSplits || ~node >= numLeaves) {
+                    throw new IllegalArgumentException("Tree [" + id + "] has an invalid child reference [" + node + "]");
+                }
+                if (++visited > numSplits + numLeaves) {
+                    throw new IllegalArgumentException("Tree [" + id + "] is invalid, a node has several parents");
+                }
+                int ref;
+                if (node >= 0) {
+                    if ((decisionType[node] & CATEGORICAL_MASK) != 0) {
+                        throw new IllegalArgumentException("Tree [" + id + "] has categorical splits, they are not supported");
+                    }
+                    ref = builder.addSplit(0, 0F, false);
+                    boolean defaultLeft = (decisionType[node] & DEFAULT_LEFT_MASK) != 0;
+                    setSplit(builder, ref, id, splitFeature[node], threshold[node], defaultLeft, (decisionType[node] >> 2) & 3);
+                    if (firstSplit < 0) {
+                        firstSplit = ref;
+                    }
+                    leftRefs = ArrayUtil.grow(leftRefs, ref - firstSplit + 1);
+                    if (depth + 2 > stackNodes.length) {
+                        stackNodes = ArrayUtil.grow(stackNodes, depth + 2);
+                        stackParents = ArrayUtil.growExact(stackParents, stackNodes.length);
+                    }
+                    // the whole left subtree is added before the right child is popped
+                    stackNodes[depth] = rightChild[node];
+                    stackParents[depth++] = ~ref;
+                    stackNodes[depth] = leftChild[node];
+                    stackParents[depth++] = ref;
+                } else {
+                    ref = builder.addLeaf((float) leafValue[~node]);
+                }
+                if (parent == NO_PARENT) {
+                    root = ref;
+                } else if (parent >= 0) {
+                    leftRefs[parent - firstSplit] = ref;
+                } else {
+                    builder.setChildren(~parent, leftRefs[~parent - firstSplit], ref);
+                }
+            }
+            builder.addTree(root, 1F);
+        }
+
+        private void checkLength(String field, int length, int expected) {
+            if (length < expected) {
+                throw new IllegalArgumentException("Field [" + field + "] of tree [" + id + "] must have [" + expected + "] values");
+            }
+        }
+    }
+
+    /**
+     * Single pass parser of the "tree_info" array of the JSON format, nodes are added to the builder as soon as they
+     * are read and tracked with an explicit stack of reused states.
+     */
+    private static class JsonTreeParser {
+        private final FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        private NodeState[] stack = new NodeState[8];
+        private int treeId;
+
+        FlatAdditiveDecisionTree.Builder parseTrees(XContentParser parser) throws IOException {
+            XContentParser.Token token;
+            while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                if (token != XContentParser.Token.START_OBJECT) {
+                    throw new IllegalArgumentException("Expected [START_OBJECT] but got [" + token + "]");
+                }
+                treeId = builder.numTrees();
+                int root = 0;
+                boolean hasRoot = false;
+                while (parser.nextToken() != XContentParser.Token.END_OBJECT) {
+                    String field = parser.currentName();
+                    token = parser.nextToken();
+                    switch (field) {
+                        case "tree_index" -> treeId = parser.intValue();
+                        case "num_cat" -> {
+                            if (parser.intValue() > 0) {
+                                throw new IllegalArgumentException("Tree [" + treeId + "] has categorical splits, they are not supported");
+                            }
+                        }
+                        case "tree_structure" -> {
+                            if (token != XContentParser.Token.START_OBJECT) {
+                                throw new IllegalArgumentException(
+                                    "Expected [START_OBJECT] for field [" + field + "] but got [" + token + "]"
+                                );
+                            }
+                            root = parseTree(parser);
+                            hasRoot = true;
+                        }
+                        default -> parser.skipChildren();
+                    }
+                }
+                if (!hasRoot) {
+                    throw new IllegalArgumentException("Tree [" + treeId + "] missing required field [tree_structure]");
+                }
+                builder.addTree(root, 1F);
+            }
+            return builder;
+        }
+
+        private int parseTree(XContentParser parser) throws IOException {
+            int depth = 0;
+            push(depth++, false);
+            while (true) {
+                NodeState node = stack[depth - 1];
+                XContentParser.Token token = parser.nextToken();
+                if (token == XContentParser.Token.FIELD_NAME) {
+                    String field = parser.currentName();
+                    token = parser.nextToken();
+                    if ("left_child".equals(field) || "right_child".equals(field)) {
+                        if (token != XContentParser.Token.START_OBJECT) {
+                            throw new IllegalArgumentException("Expected [START_OBJECT] for field [" + field + "] but got [" + token + "]");
+                        }
+                        // reserve the split before its children so that splits are laid out in depth-first order
+                        if (node.split < 0) {
+                            node.split = builder.addSplit(0, 0F, false);
+                        }
+                        push(depth++, "right_child".equals(field));
+                    } else {
+                        node.parseField(parser, field, treeId);
+                    }
+                } else if (token == XContentParser.Token.END_OBJECT) {
+                    int ref = node.finish(builder, treeId);
+                    if (--depth == 0) {
+                        return ref;
+                    }
+                    stack[depth - 1].setChild(node.right, ref);
+                } else {
+                    throw new IllegalArgumentException("Unexpected token [" + token + "] in tree [" + treeId + "]");
+                }
+            }
+        }
+
+        private void push(int depth, boolean right) {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+            }
+            if (stack[depth] == null) {
+                stack[depth] = new NodeState();
+            }
+            stack[depth].reset(right);
+        }
+    }
+
+    /**
+     * Fields of a node of the JSON format being parsed
+     */
+    private static class NodeState {
+        private boolean right;
+        private int feature;
+        private double threshold;
+        private boolean defaultLeft;
+        private int missingType;
+        private double leafValue;
+        private boolean hasFeature;
+        private boolean hasThreshold;
+        private boolean hasLeafValue;
+        // reference of the split reserved when the children are read, -1 for leaves
+        private int split;
+        private int left;
+        private int rightRef;
+        private int numChildren;
+
+        void reset(boolean right) {
+            this.right = right;
+            defaultLeft = false;
+            missingType = MISSING_NONE;
+            hasFeature = false;
+            hasThreshold = false;
+            hasLeafValue = false;
+            split = -1;
+            numChildren = 0;
+        }
+
+        void parseField(XContentParser parser, String field, int treeId) throws IOException {
+            switch (field) {
+                case "split_feature" -> {
+                    feature = parser.intValue();
+                    hasFeature = true;
+                }
+                case "threshold" -> {
+                    if (parser.currentToken() != XContentParser.Token.VALUE_NUMBER) {
+                        throw new IllegalArgumentException("Tree [" + treeId + "] has categorical splits, they are not supported");
+                    }
+                    threshold = parser.doubleValue();
+                    hasThreshold = true;
+                }
+                case "decision_type" -> {
+                    if (!"<=".equals(parser.text())) {
+                        throw new IllegalArgumentException("Tree [" + treeId + "] has categorical splits, they are not supported");
+                    }
+                }
+                case "default_left" -> defaultLeft = parser.booleanValue();
+                case "missing_type" -> missingType = switch (parser.text()) {
+                    case "None" -> MISSING_NONE;
+                    case "Zero" -> MISSING_ZERO;
+                    case "NaN" -> MISSING_NAN;
+                    default -> throw new IllegalArgumentException(
+                        "Unknown missing type [" + parser.text() + "] in tree [" + treeId + "]"
+                    );
+                };
+                case "leaf_value" -> {
+                    leafValue = parser.doubleValue();
+                    hasLeafValue = true;
+                }
+                default -> parser.skipChildren();
+            }
+        }
+
+        void setChild(boolean isRight, int ref) {
+            if (isRight) {
+                rightRef = ref;
+                numChildren |= 2;
+            } else {
+                left = ref;
+                numChildren |= 1;
+            }
+        }
+
+        /**
+         * Validate the node and add it to the builder
+         *
+         * @return the reference of the node
+         */
+        int finish(FlatAdditiveDecisionTree.Builder builder, int treeId) {
+            if (split < 0) {
+                if (!hasLeafValue) {
+                    throw new IllegalArgumentException("Tree [" + treeId + "] has a node that is neither a split nor a leaf");
+                }
+                return builder.addLeaf((float) leafValue);
+            }
+            if (!hasFeature || !hasThreshold || numChildren != 3) {
+                throw new IllegalArgumentException("Tree [" + treeId + "] has a split that does not have all the required fields");
+            }
+            setSplit(builder, split, treeId, feature, threshold, defaultLeft, missingType);
+            builder.setChildren(split, left, rightRef);
+            return split;
+        }
+    }
+
+    private static int parseInt(String field, String value) {
+        try {
+            return Integer.parseInt(value.strip());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cannot parse the value [" + value + "] of field [" + field + "]", e);
+        }
+    }
+
+    private static double parseDouble(String field, String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cannot parse the value [" + value + "] of field [" + field + "]", e);
+        }
+    }
+
+    private static int[] parseInts(String field, String value) {
+        if (value.isBlank()) {
+            return new int[0];
+        }
+        String[] values = value.strip().split(" ");
+        int[] ints = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            ints[i] = parseInt(field, values[i]);
+        }
+        return ints;
+    }
+
+    private static double[] parseDoubles(String field, String value) {
+        if (value.isBlank()) {
+            return new double[0];
+        }
+        String[] values = value.strip().split(" ");
+        double[] doubles = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            doubles[i] = parseDouble(field, values[i]);
+        }
+        return doubles;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.parser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opensearch.common.xcontent.LoggingDeprecationHandler;
+import org.opensearch.common.xcontent.json.JsonXContent;
+import org.opensearch.core.ParseField;
+import org.opensearch.core.common.ParsingException;
+import org.opensearch.core.xcontent.NamedXContentRegistry;
+import org.opensearch.core.xcontent.ObjectParser;
+import org.opensearch.core.xcontent.ObjectParser.ValueType;
+import org.opensearch.core.xcontent.XContentParseException;
+import org.opensearch.core.xcontent.XContentParser;
+
+import com.o19s.es.ltr.feature.FeatureSet;
+import com.o19s.es.ltr.ranker.mlp.MlpRanker;
+
+/**
+ * Parse a small feed-forward neural network:
+ * <pre>
+ * {
+ *     "features": ["title_bm25", "body_bm25", "recency"],
+ *     "layers": [
+ *         {"weights": [[0.1, 0.2, 0.3], [-0.1, 0.5, 0.2]], "bias": [0.0, 0.1], "activation": "relu"},
+ *         {"weights": [[1.0, -1.0]], "bias": [0.5], "activation": "sigmoid"}
+ *     ]
+ * }
+ * </pre>
+ * The weights of a layer have one row per output and one column per input, like the weights of the
+ * {@code torch.nn.Linear} modules. The inputs of the first layer are the features listed in "features", all the
+ * features of the set in order when omitted. Activations are "identity" (the default), "relu", "tanh" and "sigmoid".
+ */
+public class MlpModelParser implements LtrRankerParser {
+    public static final String TYPE = "model/mlp";
+
+    @Override
+    public MlpRanker parse(FeatureSet set, String model) {
+        MlpDefinition definition;
+        try (
+            XContentParser parser = JsonXContent.jsonXContent
+                .createParser(NamedXContentRegistry.EMPTY, LoggingDeprecationHandler.INSTANCE, model)
+        ) {
+            definition = MlpDefinition.parse(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot parse model", e);
+        }
+        return definition.toRanker(set);
+    }
+
+    private static class MlpDefinition {
+        private static final ObjectParser<MlpDefinition, Void> PARSER;
+        static {
+            PARSER = new ObjectParser<>("mlp_definition", MlpDefinition::new);
+            PARSER.declareStringArray((d, features) -> d.features = features, new ParseField("features"));
+            PARSER.declareObjectArray((d, layers) -> d.layers = layers, LayerDefinition.PARSER, new ParseField("layers"));
+        }
+
+        private List<String> features;
+        private List<LayerDefinition> layers;
+
+        static MlpDefinition parse(XContentParser parser) throws IOException {
+            MlpDefinition definition;
+            XContentParser.Token startToken = parser.nextToken();
+            if (startToken != XContentParser.Token.START_OBJECT) {
+                throw new ParsingException(parser.getTokenLocation(), "Expected [START_OBJECT] but got [" + startToken + "]");
+            }
+            try {
+                definition = PARSER.apply(parser, null);
+            } catch (XContentParseException e) {
+                throw new ParsingException(parser.getTokenLocation(), "Unable to parse neural network", e);
+            }
+            if (definition.layers == null || definition.layers.isEmpty()) {
+                throw new ParsingException(parser.getTokenLocation(), "Neural network missing required field [layers]");
+            }
+            return definition;
+        }
+
+        MlpRanker toRanker(FeatureSet set) {
+            int[] inputs;
+            if (features == null) {
+                inputs = new int[set.size()];
+                for (int i = 0; i < inputs.length; i++) {
+                    inputs[i] = i;
+                }
+            } else {
+                inputs = new int[features.size()];
+                List<String> unknownFeatures = new ArrayList<>();
+                for (int i = 0; i < inputs.length; i++) {
+                    if (set.hasFeature(features.get(i))) {
+                        inputs[i] = set.featureOrdinal(features.get(i));
+                    } else {
+                        unknownFeatures.add(features.get(i));
+                    }
+                }
+                if (!unknownFeatures.isEmpty()) {
+                    throw new IllegalArgumentException("Unknown features in model: [" + String.join(", ", unknownFeatures) + "]");
+                }
+            }
+            List<MlpRanker.Layer> mlpLayers = new ArrayList<>(layers.size());
+            for (int i = 0; i < layers.size(); i++) {
+                LayerDefinition layer = layers.get(i);
+                if (layer.weights == null) {
+                    throw new IllegalArgumentException("Layer [" + i + "] missing required field [weights]");
+                }
+                float[] bias = layer.bias != null ? layer.bias : new float[layer.weights.length];
+                mlpLayers.add(new MlpRanker.Layer(layer.weights, bias, layer.activation));
+            }
+            return new MlpRanker(set.size(), inputs, mlpLayers);
+        }
+    }
+
+    private static class LayerDefinition {
+        private static final ObjectParser<LayerDefinition, Void> PARSER;
+        static {
+            PARSER = new ObjectParser<>("layer", LayerDefinition::new);
+            PARSER
+                .declareField(
+                    (l, weights) -> l.weights = weights,
+                    (parser, context) -> parseMatrix(parser),
+                    new ParseField("weights"),
+                    ValueType.OBJECT_ARRAY
+                );
+            PARSER.declareFloatArray((l, bias) -> l.bias = toArray(bias), new ParseField("bias"));
+            PARSER
+                .declareString((l, activation) -> l.activation = MlpRanker.Activation.fromString(activation), new ParseField("activation"));
+        }
+
+        private float[][] weights;
+        private float[] bias;
+        private MlpRanker.Activation activation = MlpRanker.Activation.IDENTITY;
+
+        private static float[][] parseMatrix(XContentParser parser) throws IOException {
+            if (parser.currentToken() != XContentParser.Token.START_ARRAY) {
+                throw new ParsingException(parser.getTokenLocation(), "Expected [weights] to be an array of arrays of floats");
+            }
+            List<float[]> rows = new ArrayList<>();
+            while (parser.nextToken() == XContentParser.Token.START_ARRAY) {
+                List<Float> row = new ArrayList<>();
+                while (parser.nextToken() == XContentParser.Token.VALUE_NUMBER) {
+                    row.add(parser.floatValue());
+                }
+                if (parser.currentToken() != XContentParser.Token.END_ARRAY) {
+                    throw new ParsingException(parser.getTokenLocation(), "Expected a float but found [" + parser.currentToken() + "]");
+                }
+                rows.add(toArray(row));
+            }
+            if (parser.currentToken() != XContentParser.Token.END_ARRAY) {
+                throw new ParsingException(
+                    parser.getTokenLocation(),
+                    "Expected an array of floats but found [" + parser.currentToken() + "]"
+                );
+            }
+            return rows.toArray(new float[0][]);
+        }
+
+        private static float[] toArray(List<Float> values) {
+            float[] array = new float[values.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = values.get(i);
+            }
+            return array;
+        }
+    }
+}
@@ -17,10 +17,7 @@
 package com.o19s.es.ltr.ranker.parser;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
-import java.util.ListIterator;
 
 import org.opensearch.common.xcontent.LoggingDeprecationHandler;
 import org.opensearch.common.xcontent.json.JsonXContent;
@@ -28,12 +25,15 @@ import org.opensearch.core.ParseField;
 import org.opensearch.core.common.ParsingException;
 import org.opensearch.core.xcontent.NamedXContentRegistry;
 import org.opensearch.core.xcontent.ObjectParser;
+import org.opensearch.core.xcontent.ObjectParser.ValueType;
 import org.opensearch.core.xcontent.XContentParseException;
 import org.opensearch.core.xcontent.XContentParser;
 
 import com.o19s.es.ltr.feature.FeatureSet;
-import com.o19s.es.ltr.ranker.dectree.NaiveAdditiveDecisionTree;
-import com.o19s.es.ltr.ranker.dectree.NaiveAdditiveDecisionTree.Node;
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.dectree.FlatAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.QuantizedAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.TreeEvaluator;
 import com.o19s.es.ltr.ranker.normalizer.Normalizer;
 import com.o19s.es.ltr.ranker.normalizer.Normalizers;
 
@@ -44,7 +44,7 @@ public class XGBoostJsonParser implements LtrRankerParser {
     public static final String TYPE = "model/xgboost+json";
 
     @Override
-    public NaiveAdditiveDecisionTree parse(FeatureSet set, String model) {
+    public LtrRanker parse(FeatureSet set, String model) {
         XGBoostDefinition modelDefinition;
         try (
             XContentParser parser = JsonXContent.jsonXContent
@@ -55,11 +55,10 @@ public class XGBoostJsonParser implements LtrRankerParser {
             throw new IllegalArgumentException("Cannot parse model", e);
         }
 
-        Node[] trees = modelDefinition.getTrees(set);
-        float[] weights = new float[trees.length];
-        // Tree weights are already encoded in outputs
-        Arrays.fill(weights, 1F);
-        return new NaiveAdditiveDecisionTree(trees, weights, set.size(), modelDefinition.normalizer, modelDefinition.missingAsZero);
+        FlatAdditiveDecisionTree tree = modelDefinition.trees.build(set.size(), modelDefinition.normalizer, modelDefinition.missingAsZero);
+        LtrRanker ranker = modelDefinition.evaluator.apply(tree);
+        QuantizedAdditiveDecisionTree.checkMaxDeviation(ranker, modelDefinition.quantizationTolerance);
+        return ranker;
     }
 
     private static class XGBoostDefinition {
@@ -67,14 +66,18 @@ public class XGBoostJsonParser implements LtrRankerParser {
         static {
             PARSER = new ObjectParser<>("xgboost_definition", XGBoostDefinition::new);
             PARSER.declareString(XGBoostDefinition::setNormalizer, new ParseField("objective"));
-            PARSER.declareObjectArray(XGBoostDefinition::setSplitParserStates, SplitParserState::parse, new ParseField("splits"));
+            PARSER.declareField(XGBoostDefinition::setTrees, TreeParser::parseTrees, new ParseField("splits"), ValueType.OBJECT_ARRAY);
             // Opt-in: treat missing (unset) features as 0.0 for models trained with fillna=0 (issue #286). Default false.
             PARSER.declareBoolean(XGBoostDefinition::setMissingAsZero, new ParseField("missing_as_zero"));
+            PARSER.declareString(XGBoostDefinition::setEvaluator, new ParseField("evaluator"));
+            PARSER.declareFloat(XGBoostDefinition::setQuantizationTolerance, new ParseField("quantization_tolerance"));
         }
 
         private Normalizer normalizer;
-        private List<SplitParserState> splitParserStates;
+        private FlatAdditiveDecisionTree.Builder trees;
         private boolean missingAsZero = false;
+        private TreeEvaluator evaluator = TreeEvaluator.FLAT;
+        private Float quantizationTolerance;
 
         public static XGBoostDefinition parse(XContentParser parser, FeatureSet set) throws IOException {
             XGBoostDefinition definition;
@@ -89,22 +92,19 @@ public class XGBoostJsonParser implements LtrRankerParser {
                 } catch (XContentParseException e) {
                     throw new ParsingException(parser.getTokenLocation(), "Unable to parse XGBoost object", e);
                 }
-                if (definition.splitParserStates == null) {
+                if (definition.trees == null) {
                     throw new ParsingException(parser.getTokenLocation(), "XGBoost model missing required field [splits]");
                 }
             } else if (startToken == XContentParser.Token.START_ARRAY) {
                 definition = new XGBoostDefinition();
-                definition.splitParserStates = new ArrayList<>();
-                while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
-                    definition.splitParserStates.add(SplitParserState.parse(parser, set));
-                }
+                definition.trees = TreeParser.parseTrees(parser, set);
             } else {
                 throw new ParsingException(
                     parser.getTokenLocation(),
                     "Expected [START_ARRAY] or [START_OBJECT] but got [" + startToken + "]"
                 );
             }
-            if (definition.splitParserStates.size() == 0) {
+            if (definition.trees.numTrees() == 0) {
                 throw new ParsingException(parser.getTokenLocation(), "XGBoost model must define at lease one tree");
             }
             return definition;
@@ -141,148 +141,236 @@ public class XGBoostJsonParser implements LtrRankerParser {
             }
         }
 
-        void setSplitParserStates(List<SplitParserState> splitParserStates) {
-            this.splitParserStates = splitParserStates;
+        void setTrees(FlatAdditiveDecisionTree.Builder trees) {
+            this.trees = trees;
         }
 
         void setMissingAsZero(boolean missingAsZero) {
             this.missingAsZero = missingAsZero;
         }
 
-        Node[] getTrees(FeatureSet set) {
-            Node[] trees = new Node[splitParserStates.size()];
-            ListIterator<SplitParserState> it = splitParserStates.listIterator();
-            while (it.hasNext()) {
-                trees[it.nextIndex()] = it.next().toNode(set);
-            }
-            return trees;
+        /**
+         * Select the engine used to evaluate the trees, see {@link TreeEvaluator}
+         */
+        void setEvaluator(String evaluator) {
+            this.evaluator = TreeEvaluator.fromName(evaluator);
         }
-    }
 
-    private static class SplitParserState {
-        private static final ObjectParser<SplitParserState, FeatureSet> PARSER;
-        static {
-            PARSER = new ObjectParser<>("node", SplitParserState::new);
-            PARSER.declareInt(SplitParserState::setNodeId, new ParseField("nodeid"));
-            PARSER.declareInt(SplitParserState::setDepth, new ParseField("depth"));
-            PARSER.declareString(SplitParserState::setSplit, new ParseField("split"));
-            PARSER.declareFloat(SplitParserState::setThreshold, new ParseField("split_condition"));
-            PARSER.declareInt(SplitParserState::setRightNodeId, new ParseField("no"));
-            PARSER.declareInt(SplitParserState::setLeftNodeId, new ParseField("yes"));
-            PARSER.declareInt(SplitParserState::setMissingNodeId, new ParseField("missing"));
-            PARSER.declareFloat(SplitParserState::setLeaf, new ParseField("leaf"));
-            PARSER.declareObjectArray(SplitParserState::setChildren, SplitParserState::parse, new ParseField("children"));
-            PARSER.declareFloat(SplitParserState::setThreshold, new ParseField("split_condition"));
+        /**
+         * Maximum deviation of the scores allowed when quantizing the model, requires the
+         * {@link TreeEvaluator#QUANTIZED} evaluator
+         */
+        void setQuantizationTolerance(float quantizationTolerance) {
+            this.quantizationTolerance = quantizationTolerance;
         }
+    }
 
-        private Integer nodeId;
-        private Integer depth;
-        private String split;
-        private Float threshold;
-        private Integer rightNodeId;
-        private Integer leftNodeId;
-        // XGBoost per-node missing direction: the child a missing (NaN) feature value is routed to.
-        private Integer missingNodeId;
-        private Float leaf;
-        private List<SplitParserState> children;
+    /**
+     * Single pass parser of the tree dumps, nodes are added to a {@link FlatAdditiveDecisionTree.Builder} as soon
+     * as they are read without building an intermediate representation of the trees. Nodes are tracked with an
+     * explicit stack of reused states so that deep trees do not overflow the thread stack.
+     */
+    private static class TreeParser {
+        private final FeatureSet set;
+        private final FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        private NodeState[] stack = new NodeState[8];
+
+        private TreeParser(FeatureSet set) {
+            this.set = set;
+        }
 
-        public static SplitParserState parse(XContentParser parser, FeatureSet set) {
-            SplitParserState split = PARSER.apply(parser, set);
-            if (split.isSplit()) {
-                if (!split.splitHasAllFields()) {
-                    throw new ParsingException(parser.getTokenLocation(), "This split does not have all the required fields");
-                }
-                if (!split.splitHasValidChildren()) {
-                    throw new ParsingException(
-                        parser.getTokenLocation(),
-                        "Split structure is invalid, yes, no and/or" + " missing branches does not point to the proper children."
-                    );
-                }
-                if (!set.hasFeature(split.split)) {
-                    throw new ParsingException(parser.getTokenLocation(), "Unknown feature [" + split.split + "]");
+        /**
+         * Parse the array of trees the parser is positioned on
+         */
+        static FlatAdditiveDecisionTree.Builder parseTrees(XContentParser parser, FeatureSet set) throws IOException {
+            TreeParser treeParser = new TreeParser(set);
+            XContentParser.Token token;
+            while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                if (token != XContentParser.Token.START_OBJECT) {
+                    throw new ParsingException(parser.getTokenLocation(), "Expected [START_OBJECT] but got [" + token + "]");
                 }
-            } else if (!split.leafHasAllFields()) {
-                throw new ParsingException(parser.getTokenLocation(), "This leaf does not have all the required fields");
+                // Tree weights are already encoded in outputs
+                treeParser.builder.addTree(treeParser.parseTree(parser), 1F);
             }
-            return split;
+            return treeParser.builder;
         }
 
-        void setNodeId(Integer nodeId) {
-            this.nodeId = nodeId;
-        }
-
-        void setDepth(Integer depth) {
-            this.depth = depth;
-        }
-
-        void setSplit(String split) {
-            this.split = split;
-        }
-
-        void setThreshold(Float threshold) {
-            this.threshold = threshold;
-        }
-
-        void setRightNodeId(Integer rightNodeId) {
-            this.rightNodeId = rightNodeId;
-        }
-
-        void setLeftNodeId(Integer leftNodeId) {
-            this.leftNodeId = leftNodeId;
-        }
-
-        void setMissingNodeId(Integer missingNodeId) {
-            this.missingNodeId = missingNodeId;
+        /**
+         * Parse the tree whose root object the parser is positioned on
+         *
+         * @return the reference of the root node
+         */
+        private int parseTree(XContentParser parser) throws IOException {
+            int depth = 0;
+            push(depth++);
+            while (true) {
+                NodeState node = stack[depth - 1];
+                XContentParser.Token token = parser.nextToken();
+                if (token == XContentParser.Token.FIELD_NAME) {
+                    String field = parser.currentName();
+                    token = parser.nextToken();
+                    if ("children".equals(field)) {
+                        if (token != XContentParser.Token.START_ARRAY) {
+                            throw new ParsingException(parser.getTokenLocation(), "Expected [START_ARRAY] but got [" + token + "]");
+                        }
+                        // reserve the split before its children so that splits are laid out in depth-first order
+                        if (node.split < 0) {
+                            node.split = builder.addSplit(0, 0F, false);
+                        }
+                        node.numChildren = 0;
+                        node.inChildren = true;
+                    } else {
+                        node.parseField(parser, field);
+                    }
+                } else if (token == XContentParser.Token.START_OBJECT && node.inChildren) {
+                    push(depth++);
+                } else if (token == XContentParser.Token.END_ARRAY && node.inChildren) {
+                    node.inChildren = false;
+                } else if (token == XContentParser.Token.END_OBJECT) {
+                    int ref = node.finish(parser, set, builder);
+                    if (--depth == 0) {
+                        return ref;
+                    }
+                    stack[depth - 1].addChild(node.nodeId, ref);
+                } else {
+                    throw new ParsingException(parser.getTokenLocation(), "Unexpected token [" + token + "] in tree node");
+                }
+            }
         }
 
-        void setLeaf(Float leaf) {
-            this.leaf = leaf;
+        private void push(int depth) {
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+            }
+            if (stack[depth] == null) {
+                stack[depth] = new NodeState();
+            }
+            stack[depth].reset();
         }
+    }
 
-        void setChildren(List<SplitParserState> children) {
-            this.children = children;
+    /**
+     * Fields of a node being parsed
+     */
+    private static class NodeState {
+        private static final int NODE_ID = 1;
+        private static final int DEPTH = 1 << 1;
+        private static final int SPLIT = 1 << 2;
+        private static final int THRESHOLD = 1 << 3;
+        private static final int YES = 1 << 4;
+        private static final int NO = 1 << 5;
+        private static final int MISSING = 1 << 6;
+        private static final int LEAF = 1 << 7;
+        private static final int SPLIT_FIELDS = NODE_ID | DEPTH | SPLIT | THRESHOLD | YES | NO;
+
+        // fields that have been read
+        private int fields;
+        private int nodeId;
+        private String feature;
+        private float threshold;
+        private int yes;
+        private int no;
+        // XGBoost per-node missing direction: the child a missing (NaN) feature value is routed to.
+        private int missing;
+        private float leaf;
+        // reference of the split reserved when the children are read, -1 for leaves
+        private int split;
+        private boolean inChildren;
+        private int numChildren;
+        private final int[] childIds = new int[2];
+        private final int[] childRefs = new int[2];
+
+        void reset() {
+            fields = 0;
+            feature = null;
+            split = -1;
+            inChildren = false;
+            numChildren = 0;
         }
 
-        boolean splitHasAllFields() {
-            return nodeId != null
-                && threshold != null
-                && split != null
-                && leftNodeId != null
-                && rightNodeId != null
-                && depth != null
-                && children != null
-                && children.size() == 2;
+        void parseField(XContentParser parser, String field) throws IOException {
+            switch (field) {
+                case "nodeid":
+                    nodeId = parser.intValue();
+                    fields |= NODE_ID;
+                    break;
+                case "depth":
+                    parser.intValue();
+                    fields |= DEPTH;
+                    break;
+                case "split":
+                    feature = parser.text();
+                    fields |= SPLIT;
+                    break;
+                case "split_condition":
+                    threshold = parser.floatValue();
+                    fields |= THRESHOLD;
+                    break;
+                case "yes":
+                    yes = parser.intValue();
+                    fields |= YES;
+                    break;
+                case "no":
+                    no = parser.intValue();
+                    fields |= NO;
+                    break;
+                case "missing":
+                    missing = parser.intValue();
+                    fields |= MISSING;
+                    break;
+                case "leaf":
+                    leaf = parser.floatValue();
+                    fields |= LEAF;
+                    break;
+                default:
+                    throw new ParsingException(parser.getTokenLocation(), "[node] unknown field [" + field + "]");
+            }
         }
 
-        boolean leafHasAllFields() {
-            return nodeId != null && leaf != null;
+        void addChild(int id, int ref) {
+            if (numChildren < 2) {
+                childIds[numChildren] = id;
+                childRefs[numChildren] = ref;
+            }
+            numChildren++;
         }
 
-        boolean splitHasValidChildren() {
-            if (children.size() != 2 || !leftNodeId.equals(children.get(0).nodeId) || !rightNodeId.equals(children.get(1).nodeId)) {
-                return false;
+        /**
+         * Validate the node and add it to the builder
+         *
+         * @return the reference of the node
+         */
+        int finish(XContentParser parser, FeatureSet set, FlatAdditiveDecisionTree.Builder builder) {
+            if ((fields & LEAF) != 0) {
+                if ((fields & NODE_ID) == 0) {
+                    throw new ParsingException(parser.getTokenLocation(), "This leaf does not have all the required fields");
+                }
+                if (split >= 0) {
+                    throw new ParsingException(parser.getTokenLocation(), "A leaf cannot have children");
+                }
+                return builder.addLeaf(leaf);
+            }
+            if ((fields & SPLIT_FIELDS) != SPLIT_FIELDS || split < 0 || numChildren != 2) {
+                throw new ParsingException(parser.getTokenLocation(), "This split does not have all the required fields");
             }
+            // Children may be listed in any order, they are laid out in the order they are listed.
             // If a missing direction is declared it must point to one of this split's children.
-            return missingNodeId == null || missingNodeId.equals(leftNodeId) || missingNodeId.equals(rightNodeId);
-        }
-
-        boolean isSplit() {
-            return leaf == null;
-        }
-
-        Node toNode(FeatureSet set) {
-            if (isSplit()) {
-                boolean defaultLeft = missingNodeId != null && missingNodeId.equals(leftNodeId);
-                return new NaiveAdditiveDecisionTree.Split(
-                    children.get(0).toNode(set),
-                    children.get(1).toNode(set),
-                    set.featureOrdinal(split),
-                    threshold,
-                    defaultLeft
+            int yesChild = yes == childIds[0] ? 0 : 1;
+            if (yes != childIds[yesChild]
+                || no != childIds[1 - yesChild]
+                || ((fields & MISSING) != 0 && missing != yes && missing != no)) {
+                throw new ParsingException(
+                    parser.getTokenLocation(),
+                    "Split structure is invalid, yes, no and/or" + " missing branches does not point to the proper children."
                 );
-            } else {
-                return new NaiveAdditiveDecisionTree.Leaf(leaf);
             }
+            if (!set.hasFeature(feature)) {
+                throw new ParsingException(parser.getTokenLocation(), "Unknown feature [" + feature + "]");
+            }
+            boolean defaultLeft = (fields & MISSING) != 0 && missing == yes;
+            builder.setSplit(split, set.featureOrdinal(feature), threshold, defaultLeft);
+            builder.setChildren(split, childRefs[yesChild], childRefs[1 - yesChild]);
+            return split;
         }
     }
 }
@@ -18,24 +18,25 @@ package com.o19s.es.ltr.ranker.parser;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.ListIterator;
-import java.util.Map;
 import java.util.Optional;
 
+import org.apache.lucene.util.ArrayUtil;
 import org.opensearch.common.xcontent.LoggingDeprecationHandler;
 import org.opensearch.common.xcontent.json.JsonXContent;
 import org.opensearch.core.ParseField;
 import org.opensearch.core.common.ParsingException;
 import org.opensearch.core.xcontent.NamedXContentRegistry;
 import org.opensearch.core.xcontent.ObjectParser;
+import org.opensearch.core.xcontent.ObjectParser.ValueType;
 import org.opensearch.core.xcontent.XContentParseException;
 import org.opensearch.core.xcontent.XContentParser;
 
 import com.o19s.es.ltr.feature.FeatureSet;
-import com.o19s.es.ltr.ranker.dectree.NaiveAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.dectree.FlatAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.QuantizedAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.TreeEvaluator;
 import com.o19s.es.ltr.ranker.normalizer.Normalizer;
 import com.o19s.es.ltr.ranker.normalizer.Normalizers;
 
@@ -44,7 +45,7 @@ public class XGBoostRawJsonParser implements LtrRankerParser {
     public static final String TYPE = "model/xgboost+json+raw";
 
     @Override
-    public NaiveAdditiveDecisionTree parse(FeatureSet set, String model) {
+    public LtrRanker parse(FeatureSet set, String model) {
         XGBoostRawJsonParser.XGBoostDefinition modelDefinition;
         try (
             XContentParser parser = JsonXContent.jsonXContent
@@ -55,48 +56,19 @@ public class XGBoostRawJsonParser implements LtrRankerParser {
             throw new IllegalArgumentException("Cannot parse model", e);
         }
 
-        NaiveAdditiveDecisionTree.Node[] trees = modelDefinition.getLearner().getTrees(set);
-        List<String> modelFeatures = modelDefinition.learner.featureNames;
-
+        XGBoostLearner learner = modelDefinition.getLearner();
+        FlatAdditiveDecisionTree.Builder builder = learner.getGradientBooster().getModel().getTrees();
         // remap features according to the order in the feature set
-        Map<Integer, Integer> modelFeaturesReordering = new HashMap<>();
-        for (int i = 0; i < modelFeatures.size(); i++) {
-            modelFeaturesReordering.put(i, set.featureOrdinal(modelFeatures.get(i)));
-        }
-
-        // Reorder features in each tree
-        NaiveAdditiveDecisionTree.Node[] adjustedTrees = new NaiveAdditiveDecisionTree.Node[trees.length];
-        for (int i = 0; i < trees.length; i++) {
-            adjustedTrees[i] = reorderTreeFeatures(trees[i], modelFeaturesReordering);
-        }
-
-        float[] weights = new float[trees.length];
-        Arrays.fill(weights, 1F);
-        return new NaiveAdditiveDecisionTree(
-            adjustedTrees,
-            weights,
-            set.size(),
-            modelDefinition.getLearner().getObjective().getNormalizer(),
-            modelDefinition.missingAsZero
-        );
-    }
+        int[] ordinals = new int[learner.featureNames.size()];
+        for (int i = 0; i < ordinals.length; i++) {
+            ordinals[i] = set.featureOrdinal(learner.featureNames.get(i));
+        }
+        builder.remapFeatures(ordinals);
 
-    private NaiveAdditiveDecisionTree.Node reorderTreeFeatures(
-        NaiveAdditiveDecisionTree.Node node,
-        Map<Integer, Integer> modelFeaturesReordering
-    ) {
-        if (node instanceof NaiveAdditiveDecisionTree.Split splitNode) {
-            return new NaiveAdditiveDecisionTree.Split(
-                reorderTreeFeatures(splitNode.getLeft(), modelFeaturesReordering),
-                reorderTreeFeatures(splitNode.getRight(), modelFeaturesReordering),
-                modelFeaturesReordering.get(splitNode.getFeature()),
-                splitNode.getThreshold(),
-                splitNode.getDefaultLeft()
-            );
-        }
-
-        // if the node is Leaf we don't do anything
-        return node;
+        FlatAdditiveDecisionTree tree = builder.build(set.size(), learner.getObjective().getNormalizer(), modelDefinition.missingAsZero);
+        LtrRanker ranker = modelDefinition.evaluator.apply(tree);
+        QuantizedAdditiveDecisionTree.checkMaxDeviation(ranker, modelDefinition.quantizationTolerance);
+        return ranker;
     }
 
     private static class XGBoostDefinition {
@@ -113,6 +85,12 @@ public class XGBoostRawJsonParser implements LtrRankerParser {
             PARSER.declareIntArray(XGBoostRawJsonParser.XGBoostDefinition::setVersion, new ParseField("version"));
             // Opt-in: treat missing (unset) features as 0.0 for models trained with fillna=0 (issue #286). Default false.
             PARSER.declareBoolean(XGBoostRawJsonParser.XGBoostDefinition::setMissingAsZero, new ParseField("missing_as_zero"));
+            PARSER.declareString(XGBoostRawJsonParser.XGBoostDefinition::setEvaluator, new ParseField("evaluator"));
+            PARSER
+                .declareFloat(
+                    XGBoostRawJsonParser.XGBoostDefinition::setQuantizationTolerance,
+                    new ParseField("quantization_tolerance")
+                );
         }
 
         public static XGBoostRawJsonParser.XGBoostDefinition parse(XContentParser parser, FeatureSet set) throws IOException {
@@ -184,11 +162,28 @@ public class XGBoostRawJsonParser implements LtrRankerParser {
         }
 
         private boolean missingAsZero = false;
+        private TreeEvaluator evaluator = TreeEvaluator.FLAT;
+        private Float quantizationTolerance;
 
         public void setMissingAsZero(boolean missingAsZero) {
             this.missingAsZero = missingAsZero;
         }
 
+        /**
+         * Select the engine used to evaluate the trees, see {@link TreeEvaluator}
+         */
+        void setEvaluator(String evaluator) {
+            this.evaluator = TreeEvaluator.fromName(evaluator);
+        }
+
+        /**
+         * Maximum deviation of the scores allowed when quantizing the model, requires the
+         * {@link TreeEvaluator#QUANTIZED} evaluator
+         */
+        void setQuantizationTolerance(float quantizationTolerance) {
+            this.quantizationTolerance = quantizationTolerance;
+        }
+
         public void setVersion(List<Integer> version) {
             this.version = version;
         }
@@ -235,10 +230,6 @@ public class XGBoostRawJsonParser implements LtrRankerParser {
 
         XGBoostLearner() {}
 
-        NaiveAdditiveDecisionTree.Node[] getTrees(FeatureSet set) {
-            return this.getGradientBooster().getModel().getTrees();
-        }
-
         public XGBoostObjective getObjective() {
             return objective;
         }
@@ -287,7 +278,7 @@ public class XGBoostRawJsonParser implements LtrRankerParser {
     }
 
     static class XGBoostModel {
-        private NaiveAdditiveDecisionTree.Node[] trees;
+        private FlatAdditiveDecisionTree.Builder trees;
         private List<Integer> treeInfo;
 
         private static final ObjectParser<XGBoostRawJsonParser.XGBoostModel, FeatureSet> PARSER;
@@ -295,10 +286,11 @@ public class XGBoostRawJsonParser implements LtrRankerParser {
         static {
             PARSER = new ObjectParser<>("xgboost_model", true, XGBoostRawJsonParser.XGBoostModel::new);
             PARSER
-                .declareObjectArray(
+                .declareField(
                     XGBoostRawJsonParser.XGBoostModel::setTrees,
-                    XGBoostRawJsonParser.XGBoostTree::parse,
-                    new ParseField("trees")
+                    (parser, set) -> new TreeParser().parseTrees(parser),
+                    new ParseField("trees"),
+                    ValueType.OBJECT_ARRAY
                 );
             PARSER.declareIntArray(XGBoostRawJsonParser.XGBoostModel::setTreeInfo, new ParseField("tree_info"));
         }
@@ -321,16 +313,14 @@ public class XGBoostRawJsonParser implements LtrRankerParser {
 
         XGBoostModel() {}
 
-        public NaiveAdditiveDecisionTree.Node[] getTrees() {
+        /**
+         * @return the trees, split features are the indices of the model feature names
+         */
+        public FlatAdditiveDecisionTree.Builder getTrees() {
             return trees;
         }
 
-        public void setTrees(List<XGBoostTree> parsedTrees) {
-            NaiveAdditiveDecisionTree.Node[] trees = new NaiveAdditiveDecisionTree.Node[parsedTrees.size()];
-            ListIterator<XGBoostRawJsonParser.XGBoostTree> it = parsedTrees.listIterator();
-            while (it.hasNext()) {
-                trees[it.nextIndex()] = it.next().getRootNode();
-            }
+        public void setTrees(FlatAdditiveDecisionTree.Builder trees) {
             this.trees = trees;
         }
     }
@@ -365,140 +355,187 @@ public class XGBoostRawJsonParser implements LtrRankerParser {
         }
     }
 
-    static class XGBoostTree {
-        private Integer treeId;
-        private List<Integer> leftChildren;
-        private List<Integer> rightChildren;
-        private List<Integer> parents;
-        private List<Float> splitConditions;
-        private List<Integer> splitIndices;
-        private List<Integer> defaultLeft;
-        private List<Integer> splitTypes;
-        private List<Float> baseWeights;
-
-        private NaiveAdditiveDecisionTree.Node rootNode;
-
-        private static final ObjectParser<XGBoostRawJsonParser.XGBoostTree, FeatureSet> PARSER;
-
-        static {
-            PARSER = new ObjectParser<>("xgboost_tree", true, XGBoostRawJsonParser.XGBoostTree::new);
-            PARSER.declareInt(XGBoostRawJsonParser.XGBoostTree::setTreeId, new ParseField("id"));
-            PARSER.declareIntArray(XGBoostRawJsonParser.XGBoostTree::setLeftChildren, new ParseField("left_children"));
-            PARSER.declareIntArray(XGBoostRawJsonParser.XGBoostTree::setRightChildren, new ParseField("right_children"));
-            PARSER.declareIntArray(XGBoostRawJsonParser.XGBoostTree::setParents, new ParseField("parents"));
-            PARSER.declareFloatArray(XGBoostRawJsonParser.XGBoostTree::setSplitConditions, new ParseField("split_conditions"));
-            PARSER.declareIntArray(XGBoostRawJsonParser.XGBoostTree::setSplitIndices, new ParseField("split_indices"));
-            PARSER.declareIntArray(XGBoostRawJsonParser.XGBoostTree::setDefaultLeft, new ParseField("default_left"));
-            PARSER.declareIntArray(XGBoostRawJsonParser.XGBoostTree::setSplitTypes, new ParseField("split_type"));
-            PARSER.declareFloatArray(XGBoostRawJsonParser.XGBoostTree::setBaseWeights, new ParseField("base_weights"));
-        }
-
-        public static XGBoostRawJsonParser.XGBoostTree parse(XContentParser parser, FeatureSet set) throws IOException {
-            XGBoostRawJsonParser.XGBoostTree tree = PARSER.apply(parser, set);
-            tree.rootNode = tree.asLibTree(0);
-            return tree;
-        }
-
-        public Integer getTreeId() {
-            return treeId;
-        }
-
-        public void setTreeId(Integer treeId) {
-            this.treeId = treeId;
-        }
-
-        public List<Integer> getLeftChildren() {
-            return leftChildren;
-        }
-
-        public void setLeftChildren(List<Integer> leftChildren) {
-            this.leftChildren = leftChildren;
-        }
-
-        public List<Integer> getRightChildren() {
-            return rightChildren;
-        }
-
-        public void setRightChildren(List<Integer> rightChildren) {
-            this.rightChildren = rightChildren;
-        }
-
-        public List<Integer> getParents() {
-            return parents;
-        }
-
-        public void setParents(List<Integer> parents) {
-            this.parents = parents;
-        }
-
-        public List<Float> getSplitConditions() {
-            return splitConditions;
-        }
-
-        public void setSplitConditions(List<Float> splitConditions) {
-            this.splitConditions = splitConditions;
+    /**
+     * Single pass parser of the trees. The node arrays of a tree are read into primitive buffers reused across
+     * trees, the nodes are then added to a {@link FlatAdditiveDecisionTree.Builder} in depth-first order using an
+     * explicit stack so that deep trees do not overflow the thread stack.
+     * <p>
+     * Split features are the indices of the model feature names, they are remapped once the learner is parsed.
+     */
+    static class TreeParser {
+        private static final int NO_PARENT = Integer.MIN_VALUE;
+        private final FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        private final IntValues leftChildren = new IntValues("left_children");
+        private final IntValues rightChildren = new IntValues("right_children");
+        private final IntValues splitIndices = new IntValues("split_indices");
+        private final IntValues defaultLeft = new IntValues("default_left");
+        private final FloatValues splitConditions = new FloatValues("split_conditions");
+        private final FloatValues baseWeights = new FloatValues("base_weights");
+        private int treeId;
+        // stack of the nodes to add with the split they are the left child of, or the complement of the split
+        // they are the right child of
+        private int[] stackNodes = new int[16];
+        private int[] stackParents = new int[16];
+        // left child of the splits of the current tree, set when the right child is added
+        private int[] leftRefs = new int[16];
+
+        /**
+         * Parse the array of trees the parser is positioned on
+         */
+        FlatAdditiveDecisionTree.Builder parseTrees(XContentParser parser) throws IOException {
+            XContentParser.Token token;
+            while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                if (token != XContentParser.Token.START_OBJECT) {
+                    throw new IllegalArgumentException("Expected [START_OBJECT] but got [" + token + "]");
+                }
+                parseTree(parser);
+                addTree();
+            }
+            return builder;
+        }
+
+        private void parseTree(XContentParser parser) throws IOException {
+            treeId = 0;
+            leftChildren.size = 0;
+            rightChildren.size = 0;
+            splitIndices.size = 0;
+            defaultLeft.size = 0;
+            splitConditions.size = 0;
+            baseWeights.size = 0;
+            XContentParser.Token token;
+            while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                assert token == XContentParser.Token.FIELD_NAME;
+                String field = parser.currentName();
+                parser.nextToken();
+                switch (field) {
+                    case "id" -> treeId = parser.intValue();
+                    case "left_children" -> leftChildren.parse(parser);
+                    case "right_children" -> rightChildren.parse(parser);
+                    case "split_indices" -> splitIndices.parse(parser);
+                    case "default_left" -> defaultLeft.parse(parser);
+                    case "split_conditions" -> splitConditions.parse(parser);
+                    case "base_weights" -> baseWeights.parse(parser);
+                    default -> parser.skipChildren();
+                }
+            }
         }
 
-        public List<Integer> getSplitIndices() {
-            return splitIndices;
+        private void addTree() {
+            int numNodes = Math.min(leftChildren.size, rightChildren.size);
+            int root = 0;
+            int firstSplit = -1;
+            int visited = 0;
+            int depth = 0;
+            stackNodes[depth] = 0;
+            stackParents[depth++] = NO_PARENT;
+            while (depth > 0) {
+                int nodeId = stackNodes[--depth];
+                int parent = stackParents[depth];
+                if (nodeId < 0 || nodeId >= numNodes) {
+                    throw new IllegalArgumentException("Child node reference ID [" + nodeId + "] is invalid");
+                }
+                if (++visited > numNodes) {
+                    throw new IllegalArgumentException("Tree [" + treeId + "] is invalid, a node has several parents");
+                }
+                int ref;
+                if (leftChildren.values[nodeId] != -1 && rightChildren.values[nodeId] != -1) {
+                    boolean routeMissingLeft = defaultLeft.size > 0 && defaultLeft.get(treeId, nodeId) == 1;
+                    ref = builder.addSplit(splitIndices.get(treeId, nodeId), splitConditions.get(treeId, nodeId), routeMissingLeft);
+                    if (firstSplit < 0) {
+                        firstSplit = ref;
+                    }
+                    leftRefs = ArrayUtil.grow(leftRefs, ref - firstSplit + 1);
+                    if (depth + 2 > stackNodes.length) {
+                        stackNodes = ArrayUtil.grow(stackNodes, depth + 2);
+                        stackParents = ArrayUtil.growExact(stackParents, stackNodes.length);
+                    }
+                    // the whole left subtree is added before the right child is popped
+                    stackNodes[depth] = rightChildren.values[nodeId];
+                    stackParents[depth++] = ~ref;
+                    stackNodes[depth] = leftChildren.values[nodeId];
+                    stackParents[depth++] = ref;
+                } else {
+                    ref = builder.addLeaf(baseWeights.get(treeId, nodeId));
+                }
+                if (parent == NO_PARENT) {
+                    root = ref;
+                } else if (parent >= 0) {
+                    leftRefs[parent - firstSplit] = ref;
+                } else {
+                    builder.setChildren(~parent, leftRefs[~parent - firstSplit], ref);
+                }
+            }
+            builder.addTree(root, 1F);
         }
+    }
 
-        public void setSplitIndices(List<Integer> splitIndices) {
-            this.splitIndices = splitIndices;
-        }
+    /**
+     * Growable buffer of the integers of an array field
+     */
+    private static class IntValues {
+        private final String field;
+        private int[] values = new int[16];
+        private int size;
 
-        public List<Integer> getDefaultLeft() {
-            return defaultLeft;
+        IntValues(String field) {
+            this.field = field;
         }
 
-        public void setDefaultLeft(List<Integer> defaultLeft) {
-            this.defaultLeft = defaultLeft;
+        void parse(XContentParser parser) throws IOException {
+            if (parser.currentToken() != XContentParser.Token.START_ARRAY) {
+                throw new IllegalArgumentException(
+                    "Expected [START_ARRAY] for field [" + field + "] but got [" + parser.currentToken() + "]"
+                );
+            }
+            size = 0;
+            while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+                if (size == values.length) {
+                    values = ArrayUtil.grow(values, size + 1);
+                }
+                values[size++] = parser.intValue();
+            }
         }
 
-        public List<Integer> getSplitTypes() {
-            return splitTypes;
+        int get(int treeId, int node) {
+            if (node >= size) {
+                throw new IllegalArgumentException("Field [" + field + "] of tree [" + treeId + "] has no value for node [" + node + "]");
+            }
+            return values[node];
         }
+    }
 
-        public void setSplitTypes(List<Integer> splitTypes) {
-            this.splitTypes = splitTypes;
-        }
+    /**
+     * Growable buffer of the floats of an array field
+     */
+    private static class FloatValues {
+        private final String field;
+        private float[] values = new float[16];
+        private int size;
 
-        private boolean isSplit(Integer nodeId) {
-            return leftChildren.get(nodeId) != -1 && rightChildren.get(nodeId) != -1;
+        FloatValues(String field) {
+            this.field = field;
         }
 
-        private NaiveAdditiveDecisionTree.Node asLibTree(Integer nodeId) {
-            if (nodeId >= leftChildren.size()) {
-                throw new IllegalArgumentException("Child node reference ID [" + nodeId + "] is invalid");
-            }
-            if (nodeId >= rightChildren.size()) {
-                throw new IllegalArgumentException("Child node reference ID [" + nodeId + "] is invalid");
-            }
-
-            if (isSplit(nodeId)) {
-                boolean routeMissingLeft = defaultLeft != null && defaultLeft.get(nodeId) == 1;
-                return new NaiveAdditiveDecisionTree.Split(
-                    asLibTree(leftChildren.get(nodeId)),
-                    asLibTree(rightChildren.get(nodeId)),
-                    splitIndices.get(nodeId),
-                    splitConditions.get(nodeId),
-                    routeMissingLeft
+        void parse(XContentParser parser) throws IOException {
+            if (parser.currentToken() != XContentParser.Token.START_ARRAY) {
+                throw new IllegalArgumentException(
+                    "Expected [START_ARRAY] for field [" + field + "] but got [" + parser.currentToken() + "]"
                 );
-            } else {
-                return new NaiveAdditiveDecisionTree.Leaf(baseWeights.get(nodeId));
+            }
+            size = 0;
+            while (parser.nextToken() != XContentParser.Token.END_ARRAY) {
+                if (size == values.length) {
+                    values = ArrayUtil.grow(values, size + 1);
+                }
+                values[size++] = parser.floatValue();
             }
         }
 
-        public List<Float> getBaseWeights() {
-            return baseWeights;
-        }
-
-        public void setBaseWeights(List<Float> baseWeights) {
-            this.baseWeights = baseWeights;
-        }
-
-        public NaiveAdditiveDecisionTree.Node getRootNode() {
-            return rootNode;
+        float get(int treeId, int node) {
+            if (node >= size) {
+                throw new IllegalArgumentException("Field [" + field + "] of tree [" + treeId + "] has no value for node [" + node + "]");
+            }
+            return values[node];
         }
     }
 }
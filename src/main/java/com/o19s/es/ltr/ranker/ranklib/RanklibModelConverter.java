@@ -0,0 +1,218 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.ranklib;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.lucene.util.ArrayUtil;
+
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.dectree.FlatAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.linear.LinearRanker;
+import com.o19s.es.ltr.ranker.normalizer.Normalizers;
+
+import ciir.umass.edu.learning.CoorAscent;
+import ciir.umass.edu.learning.LinearRegRank;
+import ciir.umass.edu.learning.Ranker;
+import ciir.umass.edu.learning.tree.LambdaMART;
+import ciir.umass.edu.learning.tree.RFRanker;
+
+/**
+ * Converts RankLib models to native rankers so that they are not evaluated through {@link Ranker#eval}, which
+ * shifts, bound checks and checks for unknown values every feature read and walks trees of node objects.
+ * <ul>
+ *     <li>MART, LambdaMART and Random Forest ensembles are read from their definition into a
+ *     {@link FlatAdditiveDecisionTree}. A RankLib split goes left when the value is lower than or equal to the
+ *     threshold and unknown values are read as 0.</li>
+ *     <li>Coordinate Ascent and Linear Regression models are converted to a {@link LinearRanker} whose weights
+ *     and intercept are read back by scoring unit vectors with the RankLib model.</li>
+ * </ul>
+ * The converted rankers keep the name of the RankLib model, e.g. {@code LambdaMART}, reported in explain output.
+ */
+final class RanklibModelConverter {
+    private RanklibModelConverter() {}
+
+    /**
+     * @param ranker the model loaded by RankLib
+     * @param model the definition the model was loaded from
+     * @param numFeatures number of features of the set the model is evaluated with
+     * @return the native ranker or null if the model cannot be converted
+     */
+    static LtrRanker convert(Ranker ranker, String model, int numFeatures) {
+        int[] features = ranker.getFeatures();
+        if (features != null) {
+            for (int feature : features) {
+                if (feature > numFeatures) {
+                    // let RankLib report the unknown feature when it is read
+                    return null;
+                }
+            }
+        }
+        if (ranker instanceof RFRanker) {
+            // random forests average the scores of their bags
+            return toTrees(model, ranker.name(), numFeatures, true);
+        } else if (ranker instanceof LambdaMART) {
+            // also covers MART
+            return toTrees(model, ranker.name(), numFeatures, false);
+        } else if (ranker instanceof CoorAscent || ranker instanceof LinearRegRank) {
+            return toLinear(ranker, numFeatures);
+        }
+        return null;
+    }
+
+    private static LinearRanker toLinear(Ranker ranker, int numFeatures) {
+        DenseProgramaticDataPoint point = new DenseProgramaticDataPoint(numFeatures);
+        double intercept = ranker.eval(point);
+        float[] weights = new float[numFeatures];
+        for (int i = 0; i < numFeatures; i++) {
+            point.setFeatureScore(i, 1F);
+            weights[i] = (float) (ranker.eval(point) - intercept);
+            point.setFeatureScore(i, 0F);
+        }
+        return new LinearRanker(weights, (float) intercept, ranker.name());
+    }
+
+    /**
+     * @return the trees or null if they use features outside of the feature set
+     */
+    private static FlatAdditiveDecisionTree toTrees(String model, String name, int numFeatures, boolean averageEnsembles) {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder().setName(name);
+        float[] weights = new float[8];
+        int numEnsembles = 0;
+        float weight = 0;
+        Deque<NodeState> nodes = new ArrayDeque<>();
+        try {
+            XMLStreamReader reader = xmlFactory().createXMLStreamReader(new StringReader(ensembles(model)));
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "ensemble" -> numEnsembles++;
+                        case "tree" -> weight = Float.parseFloat(reader.getAttributeValue(null, "weight"));
+                        case "split" -> {
+                            if (!nodes.isEmpty()) {
+                                nodes.peek().reserve(builder);
+                            }
+                            nodes.push(new NodeState());
+                        }
+                        case "feature" -> {
+                            int feature = Integer.parseInt(reader.getElementText().trim());
+                            if (feature > numFeatures) {
+                                return null;
+                            }
+                            nodes.element().feature = feature;
+                        }
+                        case "threshold" -> nodes.element().threshold = Float.parseFloat(reader.getElementText().trim());
+                        case "output" -> nodes.element().leaf = builder.addLeaf(Float.parseFloat(reader.getElementText().trim()));
+                        default -> {}
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && "split".equals(reader.getLocalName())) {
+                    int ref = nodes.pop().finish(builder);
+                    if (nodes.isEmpty()) {
+                        weights = ArrayUtil.grow(weights, builder.numTrees() + 1);
+                        weights[builder.numTrees()] = weight;
+                        builder.addTree(ref, weight);
+                    } else {
+                        nodes.element().addChild(ref);
+                    }
+                }
+            }
+        } catch (XMLStreamException | RuntimeException e) {
+            throw new IllegalArgumentException("Cannot read the trees of the RankLib model", e);
+        }
+        if (averageEnsembles && numEnsembles > 1) {
+            for (int i = 0; i < builder.numTrees(); i++) {
+                builder.setWeight(i, weights[i] / numEnsembles);
+            }
+        }
+        return builder.build(numFeatures, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), true);
+    }
+
+    /**
+     * Strip the comments of the definition like RankLib does, and wrap the ensembles, random forests have one per bag
+     */
+    private static String ensembles(String model) {
+        StringBuilder xml = new StringBuilder("<model>");
+        try (BufferedReader lines = new BufferedReader(new StringReader(model))) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                line = line.trim();
+                if (!line.startsWith("##")) {
+                    xml.append(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return xml.append("</model>").toString();
+    }
+
+    private static XMLInputFactory xmlFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * A {@code <split>} element, splits are laid out before their children
+     */
+    private static class NodeState {
+        // leaf references are negative
+        private static final int NO_NODE = Integer.MIN_VALUE;
+        // 1-based
+        int feature = -1;
+        float threshold;
+        int split = NO_NODE;
+        int leaf = NO_NODE;
+        int[] children = new int[2];
+        int numChildren;
+
+        void reserve(FlatAdditiveDecisionTree.Builder builder) {
+            if (split != NO_NODE) {
+                return;
+            }
+            if (feature < 1) {
+                throw new IllegalArgumentException("A split has no feature");
+            }
+            // RankLib goes left when value <= threshold, the flat tree when value < threshold
+            // unknown values are read as 0 by RankLib
+            split = builder.addSplit(feature - 1, Math.nextUp(threshold), 0F <= threshold);
+        }
+
+        void addChild(int ref) {
+            if (numChildren == 2) {
+                throw new IllegalArgumentException("A split has more than two children");
+            }
+            children[numChildren++] = ref;
+        }
+
+        int finish(FlatAdditiveDecisionTree.Builder builder) {
+            if (split == NO_NODE) {
+                if (leaf == NO_NODE) {
+                    throw new IllegalArgumentException("A split has neither an output nor children");
+                }
+                return leaf;
+            }
+            if (numChildren != 2) {
+                throw new IllegalArgumentException("A split does not have two children");
+            }
+            // like RankLib, the first child is the left one regardless of its pos attribute
+            builder.setChildren(split, children[0], children[1]);
+            return split;
+        }
+    }
+}
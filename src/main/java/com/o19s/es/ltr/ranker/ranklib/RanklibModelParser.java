@@ -25,7 +25,9 @@ import ciir.umass.edu.learning.RankerFactory;
 
 /**
  * Load a ranklib model from a script file, mostly a wrapper around the
- * existing script that complies with the {@link LtrRankerParser} interface
+ * existing script that complies with the {@link LtrRankerParser} interface.
+ * Tree ensembles and linear models are converted to native rankers, see {@link RanklibModelConverter},
+ * other models are evaluated by RankLib.
  */
 public class RanklibModelParser implements LtrRankerParser {
     public static final String TYPE = "model/ranklib";
@@ -42,6 +44,10 @@ public class RanklibModelParser implements LtrRankerParser {
         if (set != null) {
             numFeatures = set.size();
         }
+        LtrRanker ranker = RanklibModelConverter.convert(ranklibRanker, model, numFeatures);
+        if (ranker != null) {
+            return ranker;
+        }
         return new RanklibRanker(ranklibRanker, numFeatures);
     }
 }
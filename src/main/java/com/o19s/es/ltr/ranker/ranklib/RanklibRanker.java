@@ -16,6 +16,8 @@
 
 package com.o19s.es.ltr.ranker.ranklib;
 
+import java.util.Arrays;
+
 import com.o19s.es.ltr.ranker.LtrRanker;
 
 import ciir.umass.edu.learning.Ranker;
@@ -23,10 +25,22 @@ import ciir.umass.edu.learning.Ranker;
 public class RanklibRanker implements LtrRanker {
     private final Ranker ranker;
     private final int featureSetSize;
+    private final int[] usedFeatures;
 
     public RanklibRanker(Ranker ranker, int featureSetSize) {
         this.ranker = ranker;
         this.featureSetSize = featureSetSize;
+        this.usedFeatures = usedFeatures(ranker.getFeatures());
+    }
+
+    /**
+     * Convert the 1-based feature ids declared by the ranklib model to feature ordinals
+     */
+    private static int[] usedFeatures(int[] ranklibFeatures) {
+        if (ranklibFeatures == null) {
+            return null;
+        }
+        return Arrays.stream(ranklibFeatures).filter(f -> f > 0).map(f -> f - 1).sorted().distinct().toArray();
     }
 
     /**
@@ -72,4 +86,28 @@ public class RanklibRanker implements LtrRanker {
         assert point instanceof DenseProgramaticDataPoint;
         return (float) ranker.eval((DenseProgramaticDataPoint) point);
     }
+
+    /**
+     * @return the features declared by the ranklib model
+     */
+    @Override
+    public int[] usedFeatures() {
+        return usedFeatures;
+    }
+
+    /**
+     * Copies each data point in a single reused RankLib data point, avoiding the
+     * per feature index shifting and bound checks of {@link DenseProgramaticDataPoint#setFeatureScore(int, float)}.
+     */
+    @Override
+    public void scoreBlock(float[] points, int numFeatures, int numPoints, float[] scores) {
+        DenseProgramaticDataPoint point = new DenseProgramaticDataPoint(featureSetSize);
+        // ranklib models are 1-based, slot 0 is never read
+        float[] fVals = point.getFeatureVector();
+        int length = Math.min(numFeatures, featureSetSize);
+        for (int i = 0; i < numPoints; i++) {
+            System.arraycopy(points, i * numFeatures, fVals, 1, length);
+            scores[i] = (float) ranker.eval(point);
+        }
+    }
 }
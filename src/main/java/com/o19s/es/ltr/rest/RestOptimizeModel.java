@@ -0,0 +1,134 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.rest;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableList;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opensearch.common.util.concurrent.ThreadContext;
+import org.opensearch.core.ParseField;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.common.ParsingException;
+import org.opensearch.core.rest.RestStatus;
+import org.opensearch.core.xcontent.ObjectParser;
+import org.opensearch.core.xcontent.XContentParser;
+import org.opensearch.ltr.settings.LTRSettings;
+import org.opensearch.rest.BytesRestResponse;
+import org.opensearch.rest.RestRequest;
+import org.opensearch.rest.action.RestStatusToXContentListener;
+import org.opensearch.transport.client.node.NodeClient;
+
+import com.o19s.es.ltr.action.OptimizeModelAction;
+import com.o19s.es.ltr.action.OptimizeModelAction.OptimizeModelRequestBuilder;
+
+/**
+ * Store a copy of a tree model whose nodes are laid out according to a sample of feature vectors:
+ * <pre>
+ * POST /_ltr/{store}/_model/{name}/_optimize
+ * {
+ *     "name": "my_model_optimized",
+ *     "samples": [ {"feature1": 1.5, "feature2": 0.3}, ... ]
+ * }
+ * </pre>
+ * The new model is named after the source model with an {@code _optimized} suffix when no name is given.
+ * Feature vectors logged by the {@code ltr_log} extension of production queries make good samples.
+ */
+public class RestOptimizeModel extends FeatureStoreBaseRestHandler {
+    private static final String DEFAULT_SUFFIX = "_optimized";
+
+    @Override
+    public String getName() {
+        return "Optimize the layout of a tree model";
+    }
+
+    @Override
+    public List<Route> routes() {
+        return unmodifiableList(
+            asList(
+                new Route(RestRequest.Method.POST, "/_ltr/{store}/_model/{name}/_optimize"),
+                new Route(RestRequest.Method.POST, "/_ltr/_model/{name}/_optimize")
+            )
+        );
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+        if (!LTRSettings.isLTRPluginEnabled()) {
+            throw new IllegalStateException("LTR plugin is disabled. To enable, update ltr.plugin.enabled to true");
+        }
+
+        String store = indexName(request);
+        String modelName = request.param("name");
+        String routing = request.param("routing");
+        ParserState state = new ParserState();
+        request.applyContentParser((p) -> ParserState.parse(p, state));
+        String targetName = state.name != null ? state.name : modelName + DEFAULT_SUFFIX;
+        OptimizeModelRequestBuilder builder = new OptimizeModelRequestBuilder(client).optimize(store, modelName, targetName, state.samples);
+        builder.routing(routing);
+        return (channel) -> {
+            try (ThreadContext.StoredContext threadContext = client.threadPool().getThreadContext().stashContext()) {
+                ActionListener<OptimizeModelAction.OptimizeModelResponse> wrappedListener = ActionListener
+                    .runBefore(
+                        new RestStatusToXContentListener<>(channel, (r) -> r.getResponse().getLocation(routing)),
+                        threadContext::restore
+                    );
+
+                builder.execute(wrappedListener);
+            } catch (Exception e) {
+                channel.sendResponse(new BytesRestResponse(RestStatus.INTERNAL_SERVER_ERROR, e.getMessage()));
+            }
+        };
+    }
+
+    /**
+     * Parse a sample feature vector: an object of feature names to values
+     */
+    static Map<String, Float> parseSample(XContentParser parser) throws IOException {
+        Map<String, Float> sample = new HashMap<>();
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token != XContentParser.Token.FIELD_NAME) {
+                throw new ParsingException(parser.getTokenLocation(), "Expected [FIELD_NAME] but got [" + token + "]");
+            }
+            String feature = parser.currentName();
+            parser.nextToken();
+            sample.put(feature, parser.floatValue());
+        }
+        return sample;
+    }
+
+    private static class ParserState {
+        private static final ObjectParser<ParserState, Void> PARSER = new ObjectParser<>("optimize_model", ParserState::new);
+
+        static {
+            PARSER.declareString(ParserState::setName, new ParseField("name"));
+            PARSER.declareObjectArray(ParserState::setSamples, (p, c) -> parseSample(p), new ParseField("samples"));
+        }
+
+        private String name;
+        private List<Map<String, Float>> samples;
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public void setSamples(List<Map<String, Float>> samples) {
+            this.samples = samples;
+        }
+
+        public static void parse(XContentParser parser, ParserState value) throws IOException {
+            PARSER.parse(parser, value, null);
+            if (value.samples == null || value.samples.isEmpty()) {
+                throw new ParsingException(parser.getTokenLocation(), "Missing required value [samples]");
+            }
+        }
+    }
+}
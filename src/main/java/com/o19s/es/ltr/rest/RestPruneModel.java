@@ -0,0 +1,169 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.rest;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.unmodifiableList;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.opensearch.common.util.concurrent.ThreadContext;
+import org.opensearch.core.ParseField;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.common.ParsingException;
+import org.opensearch.core.rest.RestStatus;
+import org.opensearch.core.xcontent.ObjectParser;
+import org.opensearch.core.xcontent.XContentParser;
+import org.opensearch.ltr.settings.LTRSettings;
+import org.opensearch.rest.BytesRestResponse;
+import org.opensearch.rest.RestRequest;
+import org.opensearch.rest.action.RestStatusToXContentListener;
+import org.opensearch.transport.client.node.NodeClient;
+
+import com.o19s.es.ltr.action.PruneModelAction;
+import com.o19s.es.ltr.action.PruneModelAction.PruneModelRequestBuilder;
+
+/**
+ * Store a lite copy of a tree model, derived from a sample of feature vectors:
+ * <pre>
+ * POST /_ltr/{store}/_model/{name}/_prune
+ * {
+ *     "name": "my_model_lite",
+ *     "samples": [ {"feature1": 1.5, "feature2": 0.3}, ... ],
+ *     "max_trees": 200,
+ *     "min_tree_contribution": 0.001,
+ *     "min_feature_contribution": 0.001,
+ *     "max_score_deviation": 0.1,
+ *     "min_rank_correlation": 0.98
+ * }
+ * </pre>
+ * Trees past {@code max_trees} are removed, as well as the trees and the features whose contribution to the scores
+ * of the samples is lower than the given thresholds. The lite model is only stored if its scores on the samples
+ * stay within {@code max_score_deviation} of the ones of the full model and their rank correlation is at least
+ * {@code min_rank_correlation}; the response reports both. The new model is named after the source model with a
+ * {@code _lite} suffix when no name is given.
+ */
+public class RestPruneModel extends FeatureStoreBaseRestHandler {
+    private static final String DEFAULT_SUFFIX = "_lite";
+
+    @Override
+    public String getName() {
+        return "Derive a lite tree model";
+    }
+
+    @Override
+    public List<Route> routes() {
+        return unmodifiableList(
+            asList(
+                new Route(RestRequest.Method.POST, "/_ltr/{store}/_model/{name}/_prune"),
+                new Route(RestRequest.Method.POST, "/_ltr/_model/{name}/_prune")
+            )
+        );
+    }
+
+    @Override
+    protected RestChannelConsumer prepareRequest(RestRequest request, NodeClient client) throws IOException {
+        if (!LTRSettings.isLTRPluginEnabled()) {
+            throw new IllegalStateException("LTR plugin is disabled. To enable, update ltr.plugin.enabled to true");
+        }
+
+        String store = indexName(request);
+        String modelName = request.param("name");
+        String routing = request.param("routing");
+        ParserState state = new ParserState();
+        request.applyContentParser((p) -> ParserState.parse(p, state));
+        String targetName = state.name != null ? state.name : modelName + DEFAULT_SUFFIX;
+        PruneModelRequestBuilder builder = new PruneModelRequestBuilder(client).prune(store, modelName, targetName, state.samples);
+        if (state.maxTrees != null) {
+            builder.maxTrees(state.maxTrees);
+        }
+        if (state.minTreeContribution != null) {
+            builder.minTreeContribution(state.minTreeContribution);
+        }
+        if (state.minFeatureContribution != null) {
+            builder.minFeatureContribution(state.minFeatureContribution);
+        }
+        if (state.maxScoreDeviation != null) {
+            builder.maxScoreDeviation(state.maxScoreDeviation);
+        }
+        if (state.minRankCorrelation != null) {
+            builder.minRankCorrelation(state.minRankCorrelation);
+        }
+        builder.routing(routing);
+        return (channel) -> {
+            try (ThreadContext.StoredContext threadContext = client.threadPool().getThreadContext().stashContext()) {
+                ActionListener<PruneModelAction.PruneModelResponse> wrappedListener = ActionListener
+                    .runBefore(
+                        new RestStatusToXContentListener<>(channel, (r) -> r.getResponse().getLocation(routing)),
+                        threadContext::restore
+                    );
+
+                builder.execute(wrappedListener);
+            } catch (Exception e) {
+                channel.sendResponse(new BytesRestResponse(RestStatus.INTERNAL_SERVER_ERROR, e.getMessage()));
+            }
+        };
+    }
+
+    private static class ParserState {
+        private static final ObjectParser<ParserState, Void> PARSER = new ObjectParser<>("prune_model", ParserState::new);
+
+        static {
+            PARSER.declareString(ParserState::setName, new ParseField("name"));
+            PARSER.declareObjectArray(ParserState::setSamples, (p, c) -> RestOptimizeModel.parseSample(p), new ParseField("samples"));
+            PARSER.declareInt(ParserState::setMaxTrees, new ParseField("max_trees"));
+            PARSER.declareFloat(ParserState::setMinTreeContribution, new ParseField("min_tree_contribution"));
+            PARSER.declareFloat(ParserState::setMinFeatureContribution, new ParseField("min_feature_contribution"));
+            PARSER.declareFloat(ParserState::setMaxScoreDeviation, new ParseField("max_score_deviation"));
+            PARSER.declareFloat(ParserState::setMinRankCorrelation, new ParseField("min_rank_correlation"));
+        }
+
+        private String name;
+        private List<Map<String, Float>> samples;
+        private Integer maxTrees;
+        private Float minTreeContribution;
+        private Float minFeatureContribution;
+        private Float maxScoreDeviation;
+        private Float minRankCorrelation;
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public void setSamples(List<Map<String, Float>> samples) {
+            this.samples = samples;
+        }
+
+        public void setMaxTrees(Integer maxTrees) {
+            this.maxTrees = maxTrees;
+        }
+
+        public void setMinTreeContribution(Float minTreeContribution) {
+            this.minTreeContribution = minTreeContribution;
+        }
+
+        public void setMinFeatureContribution(Float minFeatureContribution) {
+            this.minFeatureContribution = minFeatureContribution;
+        }
+
+        public void setMaxScoreDeviation(Float maxScoreDeviation) {
+            this.maxScoreDeviation = maxScoreDeviation;
+        }
+
+        public void setMinRankCorrelation(Float minRankCorrelation) {
+            this.minRankCorrelation = minRankCorrelation;
+        }
+
+        public static void parse(XContentParser parser, ParserState value) throws IOException {
+            PARSER.parse(parser, value, null);
+            if (value.samples == null || value.samples.isEmpty()) {
+                throw new ParsingException(parser.getTokenLocation(), "Missing required value [samples]");
+            }
+        }
+    }
+}
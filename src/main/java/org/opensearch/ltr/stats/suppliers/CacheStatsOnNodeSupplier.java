@@ -23,6 +23,7 @@ import java.util.function.Supplier;
 import org.opensearch.common.cache.Cache;
 
 import com.o19s.es.ltr.feature.store.index.Caches;
+import com.o19s.es.ltr.feature.store.index.InternTable;
 
 /**
  * Aggregate stats on the cache used by the plugin per node.
@@ -32,6 +33,8 @@ public class CacheStatsOnNodeSupplier implements Supplier<Map<String, Map<String
     private static final String LTR_CACHE_OBJECT_FEATURE = "feature";
     private static final String LTR_CACHE_OBJECT_FEATURESET = "featureset";
     private static final String LTR_CACHE_OBJECT_MODEL = "model";
+    private static final String LTR_CACHE_OBJECT_INTERNED = "interned";
+    private static final String LTR_CACHE_OBJECT_FEATURE_VECTOR = "feature_vector";
 
     private static final String LTR_CACHE_METRIC_HIT_COUNT = "hit_count";
     private static final String LTR_CACHE_METRIC_MISS_COUNT = "miss_count";
@@ -51,10 +54,23 @@ public class CacheStatsOnNodeSupplier implements Supplier<Map<String, Map<String
         values.put(LTR_CACHE_OBJECT_FEATURE, getCacheStats(caches.featureCache()));
         values.put(LTR_CACHE_OBJECT_FEATURESET, getCacheStats(caches.featureSetCache()));
         values.put(LTR_CACHE_OBJECT_MODEL, getCacheStats(caches.modelCache()));
+        values.put(LTR_CACHE_OBJECT_INTERNED, getInternStats(caches.internTable()));
+        values.put(LTR_CACHE_OBJECT_FEATURE_VECTOR, getCacheStats(caches.featureVectorCache().cache()));
         return Collections.unmodifiableMap(values);
     }
 
-    private Map<String, Object> getCacheStats(Cache<Caches.CacheKey, ?> cache) {
+    /**
+     * Distinct elements shared by the caches, hits are loads that did not need to compile
+     */
+    private Map<String, Object> getInternStats(InternTable internTable) {
+        Map<String, Object> stat = new HashMap<>();
+        stat.put(LTR_CACHE_METRIC_HIT_COUNT, internTable.hits());
+        stat.put(LTR_CACHE_METRIC_ENTRY_COUNT, internTable.count());
+        stat.put(LTR_CACHE_METRIC_MEMORY_USAGE_IN_BYTES, internTable.ramBytesUsed());
+        return Collections.unmodifiableMap(stat);
+    }
+
+    private Map<String, Object> getCacheStats(Cache<?, ?> cache) {
         Map<String, Object> stat = new HashMap<>();
         stat.put(LTR_CACHE_METRIC_HIT_COUNT, cache.stats().getHits());
         stat.put(LTR_CACHE_METRIC_MISS_COUNT, cache.stats().getMisses());
@@ -17,8 +17,11 @@
 package com.o19s.es.ltr.feature.store.index;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 import org.apache.lucene.tests.util.LuceneTestCase;
 import org.apache.lucene.util.RamUsageEstimator;
@@ -35,6 +38,10 @@ import com.o19s.es.ltr.feature.store.CompiledLtrModel;
 import com.o19s.es.ltr.feature.store.MemStore;
 import com.o19s.es.ltr.feature.store.StoredFeature;
 import com.o19s.es.ltr.feature.store.StoredFeatureSet;
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.dectree.FlatAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.MappedAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.normalizer.Normalizers;
 
 public class CachesTests extends LuceneTestCase {
     private static final long ONE_MB = RamUsageEstimator.ONE_MB;
@@ -186,6 +193,46 @@ public class CachesTests extends LuceneTestCase {
         assertEquals(0, caches.getPerStoreStats(storeName).totalRam());
     }
 
+    public void testMappedModelsAreBoundedByTheirOwnLimit() throws IOException {
+        Path dir = createTempDir();
+        MappedAdditiveDecisionTree.setDirectory(dir);
+        MemStore memStore = new MemStore();
+        StoredFeatureSet set = LtrTestUtils.randomFeatureSet();
+        CompiledLtrModel[] models = new CompiledLtrModel[3];
+        for (int i = 0; i < models.length; i++) {
+            // distinct thresholds, distinct files
+            FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+            int split = builder.addSplit(0, i, true);
+            builder.setChildren(split, builder.addLeaf(1F), builder.addLeaf(2F));
+            builder.addTree(split, 1F);
+            LtrRanker ranker = new MappedAdditiveDecisionTree(
+                builder.build(set.size(), Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false)
+            );
+            models[i] = new CompiledLtrModel("model" + i, set, ranker);
+            memStore.add(models[i]);
+        }
+        long modelBytes = ((MappedAdditiveDecisionTree) models[0].ranker()).mappedBytes();
+
+        Caches caches = newCaches(new ByteSizeValue(ONE_MB * 10));
+        caches.setMaxMappedMem(new ByteSizeValue(modelBytes * 2));
+        CachedFeatureStore store = new CachedFeatureStore(memStore, caches);
+        store.loadModel("model0");
+        store.loadModel("model1");
+        assertEquals(modelBytes * 2, caches.mappedBytes());
+        // the least recently used mapped model makes room for the new one and its file is deleted
+        store.loadModel("model2");
+        assertEquals(modelBytes * 2, caches.mappedBytes());
+        assertEquals(2, caches.modelCache().count());
+        assertNull(store.getCachedModel("model0"));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(2, files.count());
+        }
+
+        caches.setMaxMappedMem(new ByteSizeValue(0));
+        assertEquals(0, caches.modelCache().count());
+        assertEquals(0, caches.mappedBytes());
+    }
+
     public void testClusterSettingsUpdateAppliesTheNewLimit() {
         Caches caches = newCaches(new ByteSizeValue(ONE_MB * 10));
         ClusterSettings clusterSettings = new ClusterSettings(Settings.EMPTY, Collections.singleton(Caches.LTR_CACHE_MEM_SETTING));
@@ -0,0 +1,240 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.feature.store.index;
+
+import static java.util.Collections.unmodifiableMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.tests.index.RandomIndexWriter;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.core.common.unit.ByteSizeValue;
+import org.opensearch.ltr.stats.LTRStat;
+import org.opensearch.ltr.stats.LTRStats;
+import org.opensearch.ltr.stats.StatName;
+import org.opensearch.ltr.stats.suppliers.CounterSupplier;
+import org.opensearch.threadpool.TestThreadPool;
+import org.opensearch.threadpool.ThreadPool;
+
+import com.o19s.es.ltr.LtrQueryContext;
+import com.o19s.es.ltr.feature.PrebuiltFeature;
+import com.o19s.es.ltr.feature.PrebuiltFeatureSet;
+import com.o19s.es.ltr.feature.PrebuiltLtrModel;
+import com.o19s.es.ltr.query.RankerQuery;
+import com.o19s.es.ltr.ranker.DenseFeatureVector;
+import com.o19s.es.ltr.ranker.linear.LinearRanker;
+
+public class FeatureVectorCacheTests extends LuceneTestCase {
+    private static final String[] TERMS = { "brown", "cow", "how", "now" };
+
+    private final LTRStats ltrStats = new LTRStats(unmodifiableMap(new HashMap<String, LTRStat<?>>() {
+        {
+            put(StatName.LTR_REQUEST_TOTAL_COUNT.getName(), new LTRStat<>(false, new CounterSupplier()));
+            put(StatName.LTR_REQUEST_ERROR_COUNT.getName(), new LTRStat<>(false, new CounterSupplier()));
+        }
+    }));
+
+    public void testDisabledByDefault() {
+        FeatureVectorCache cache = new Caches(Settings.EMPTY).featureVectorCache();
+        assertFalse(cache.isEnabled());
+        assertNull(cache.forQuery(buildModel().featureSet(), Collections.emptyMap(), Collections.emptySet(), null));
+    }
+
+    public void testReuseVectorsAcrossQueries() throws IOException {
+        FeatureVectorCache cache = new FeatureVectorCache(new ByteSizeValue(1024 * 1024));
+        PrebuiltLtrModel model = buildModel();
+        try (Directory dir = newDirectory()) {
+            IndexReader reader = buildReader(dir);
+            IndexSearcher searcher = new IndexSearcher(reader);
+            TopDocs first = searcher.search(buildQuery(model, cache, Collections.emptyMap()), 10);
+            assertEquals(0, cache.cache().stats().getHits());
+            assertTrue(cache.cache().count() > 0);
+
+            TopDocs second = searcher.search(buildQuery(model, cache, Collections.emptyMap()), 10);
+            assertTrue(cache.cache().stats().getHits() > 0);
+            assertSameHits(first, second);
+
+            // other params are other vectors
+            long hits = cache.cache().stats().getHits();
+            searcher.search(buildQuery(model, cache, Collections.singletonMap("query", "other")), 10);
+            assertEquals(hits, cache.cache().stats().getHits());
+
+            reader.close();
+            assertEquals(0, cache.cache().count());
+        }
+    }
+
+    public void testCloseOnlyDropsTheVectorsOfTheReader() throws IOException {
+        FeatureVectorCache cache = new FeatureVectorCache(new ByteSizeValue(1024 * 1024));
+        PrebuiltLtrModel model = buildModel();
+        try (Directory closedDir = newDirectory(); Directory openDir = newDirectory()) {
+            IndexReader closed = buildReader(closedDir);
+            IndexReader.CacheKey closedKey = closed.getReaderCacheHelper().getKey();
+            new IndexSearcher(closed).search(buildQuery(model, cache, Collections.emptyMap()), 10);
+            assertTrue(cache.numVectors(closedKey) > 0);
+            try (IndexReader open = buildReader(openDir)) {
+                IndexReader.CacheKey openKey = open.getReaderCacheHelper().getKey();
+                IndexSearcher searcher = new IndexSearcher(open);
+                searcher.search(buildQuery(model, cache, Collections.emptyMap()), 10);
+                int numVectors = cache.numVectors(openKey);
+                assertTrue(numVectors > 0);
+                assertEquals(cache.numVectors(closedKey) + numVectors, cache.cache().count());
+
+                closed.close();
+                assertEquals(0, cache.numVectors(closedKey));
+                assertEquals(numVectors, cache.numVectors(openKey));
+                assertEquals(numVectors, cache.cache().count());
+                long hits = cache.cache().stats().getHits();
+                searcher.search(buildQuery(model, cache, Collections.emptyMap()), 10);
+                assertTrue(cache.cache().stats().getHits() > hits);
+
+                // removed vectors leave the bucket of their reader
+                cache.cache().invalidateAll();
+                assertEquals(0, cache.numVectors(openKey));
+            }
+        }
+    }
+
+    public void testCachedVectorsKeepDefaultScores() throws IOException {
+        FeatureVectorCache cache = new FeatureVectorCache(new ByteSizeValue(1024 * 1024));
+        PrebuiltLtrModel model = buildModel();
+        try (Directory dir = newDirectory(); IndexReader reader = buildReader(dir)) {
+            FeatureVectorCache.ReaderVectors vectors = cache
+                .forQuery(model.featureSet(), Collections.emptyMap(), Collections.emptySet(), null)
+                .forReader(reader, 1F);
+            DenseFeatureVector vector = new DenseFeatureVector(TERMS.length);
+            assertFalse(vectors.copyTo(0, vector));
+            float[] scores = vectors.newScores();
+            scores[1] = 2F;
+            vectors.put(0, scores);
+            assertTrue(vectors.copyTo(0, vector));
+            assertEquals(0F, vector.getFeatureScore(0), 0F);
+            assertEquals(2F, vector.getFeatureScore(1), 0F);
+
+            // the boost is part of the key
+            FeatureVectorCache.ReaderVectors boosted = cache
+                .forQuery(model.featureSet(), Collections.emptyMap(), Collections.emptySet(), null)
+                .forReader(reader, 2F);
+            assertFalse(boosted.copyTo(0, new DenseFeatureVector(TERMS.length)));
+        }
+    }
+
+    public void testDisableDropsVectors() throws IOException {
+        FeatureVectorCache cache = new FeatureVectorCache(new ByteSizeValue(1024 * 1024));
+        PrebuiltLtrModel model = buildModel();
+        try (Directory dir = newDirectory(); IndexReader reader = buildReader(dir)) {
+            new IndexSearcher(reader).search(buildQuery(model, cache, Collections.emptyMap()), 10);
+            assertTrue(cache.cache().count() > 0);
+            cache.setMaxMem(ByteSizeValue.ZERO);
+            assertFalse(cache.isEnabled());
+            assertEquals(0, cache.cache().count());
+        }
+    }
+
+    public void testRejectsNegativeLimit() {
+        IllegalArgumentException e = expectThrows(
+            IllegalArgumentException.class,
+            () -> FeatureVectorCache.MAX_MEM_SETTING.get(Settings.builder().put(FeatureVectorCache.MAX_MEM_KEY, "-1").build())
+        );
+        assertTrue(e.getMessage().contains("must not be negative"));
+        assertEquals(0, FeatureVectorCache.MAX_MEM_SETTING.get(Settings.EMPTY).getBytes());
+    }
+
+    public void testInvalidatesOnGenericThreadPool() throws Exception {
+        ThreadPool threadPool = new TestThreadPool("FeatureVectorCacheTests");
+        try {
+            Caches caches = new Caches(Settings.builder().put(FeatureVectorCache.MAX_MEM_KEY, "1mb").build());
+            caches.setThreadPool(threadPool);
+            FeatureVectorCache cache = caches.featureVectorCache();
+            PrebuiltLtrModel model = buildModel();
+            try (Directory dir = newDirectory()) {
+                IndexReader reader = buildReader(dir);
+                new IndexSearcher(reader).search(buildQuery(model, cache, Collections.emptyMap()), 10);
+                assertTrue(cache.cache().count() > 0);
+                // the vectors of a closed reader are invalidated on the GENERIC pool
+                reader.close();
+                assertBusyEmpty(cache);
+
+                reader = buildReader(dir);
+                new IndexSearcher(reader).search(buildQuery(model, cache, Collections.emptyMap()), 10);
+                assertTrue(cache.cache().count() > 0);
+                // the limit is applied synchronously, the vectors are dropped on the GENERIC pool
+                cache.setMaxMem(ByteSizeValue.ZERO);
+                assertFalse(cache.isEnabled());
+                assertBusyEmpty(cache);
+                reader.close();
+            }
+        } finally {
+            ThreadPool.terminate(threadPool, 5, TimeUnit.SECONDS);
+        }
+    }
+
+    // LuceneTestCase does not expose OpenSearchTestCase#assertBusy, so poll the async invalidation directly.
+    private static void assertBusyEmpty(FeatureVectorCache cache) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (cache.cache().count() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, cache.cache().count());
+    }
+
+    private void assertSameHits(TopDocs expected, TopDocs actual) {
+        assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+        for (int i = 0; i < expected.scoreDocs.length; i++) {
+            ScoreDoc e = expected.scoreDocs[i];
+            ScoreDoc a = actual.scoreDocs[i];
+            assertEquals(e.doc, a.doc);
+            assertEquals(e.score, a.score, 0F);
+        }
+    }
+
+    private RankerQuery buildQuery(PrebuiltLtrModel model, FeatureVectorCache cache, Map<String, Object> params) {
+        return RankerQuery.build(model, new LtrQueryContext(null, Collections.emptySet()), params, false, ltrStats, cache);
+    }
+
+    private PrebuiltLtrModel buildModel() {
+        List<PrebuiltFeature> features = new ArrayList<>();
+        float[] weights = new float[TERMS.length];
+        for (int i = 0; i < TERMS.length; i++) {
+            features.add(new PrebuiltFeature(TERMS[i], new TermQuery(new Term("field", TERMS[i]))));
+            weights[i] = i + 1;
+        }
+        LinearRanker ranker = new LinearRanker(weights);
+        return new PrebuiltLtrModel(ranker.name(), ranker, new PrebuiltFeatureSet(null, features));
+    }
+
+    private IndexReader buildReader(Directory dir) throws IOException {
+        try (RandomIndexWriter writer = new RandomIndexWriter(random(), dir)) {
+            int numDocs = atLeast(20);
+            for (int i = 0; i < numDocs; i++) {
+                StringBuilder text = new StringBuilder();
+                for (int t = random().nextInt(4); t < TERMS.length; t++) {
+                    text.append(TERMS[t]).append(' ');
+                }
+                Document doc = new Document();
+                doc.add(newTextField("field", text.toString(), Field.Store.NO));
+                writer.addDocument(doc);
+            }
+            return writer.getReader();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.feature.store.index;
+
+import java.io.IOException;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.opensearch.common.io.stream.BytesStreamOutput;
+import org.opensearch.common.settings.Settings;
+
+import com.o19s.es.ltr.LtrTestUtils;
+import com.o19s.es.ltr.feature.Feature;
+import com.o19s.es.ltr.feature.FeatureSet;
+import com.o19s.es.ltr.feature.store.CompiledLtrModel;
+import com.o19s.es.ltr.feature.store.StoredFeature;
+import com.o19s.es.ltr.feature.store.StoredFeatureSet;
+import com.o19s.es.ltr.feature.store.StoredLtrModel;
+import com.o19s.es.ltr.ranker.parser.LinearRankerParser;
+import com.o19s.es.ltr.ranker.parser.LtrRankerParserFactory;
+
+public class InternTableTests extends LuceneTestCase {
+    private final LtrRankerParserFactory factory = new LtrRankerParserFactory.Builder()
+        .register(LinearRankerParser.TYPE, LinearRankerParser::new)
+        .build();
+
+    public void testSharedFeature() throws IOException {
+        InternTable table = new InternTable();
+        StoredFeature feature = LtrTestUtils.randomFeature();
+        Feature first = table.feature(feature);
+        Feature second = table.feature(copy(feature));
+        assertSame(first, second);
+        assertEquals(1, table.count());
+        assertEquals(1, table.hits());
+        assertTrue(table.ramBytesUsed() > 0);
+
+        Feature other = table.feature(LtrTestUtils.randomFeature(feature.name() + "_other"));
+        assertNotSame(first, other);
+        assertEquals(2, table.count());
+
+        assertFalse(table.release(first));
+        assertEquals(2, table.count());
+        assertTrue(table.release(second));
+        assertTrue(table.release(other));
+        assertEquals(0, table.count());
+        assertEquals(0, table.ramBytesUsed());
+        // unknown elements are ignored, nothing else references them
+        assertTrue(table.release(first));
+        assertTrue(table.release(feature));
+    }
+
+    public void testSharedFeatureSet() throws IOException {
+        InternTable table = new InternTable();
+        StoredFeatureSet set = LtrTestUtils.randomFeatureSet();
+        FeatureSet first = table.featureSet(set);
+        assertSame(first, table.featureSet(copy(set)));
+        assertEquals(set.size() + 1, table.count());
+
+        // features are shared with the sets
+        Feature feature = table.feature(set.feature(0));
+        assertSame(first.feature(0), feature);
+
+        table.release(first);
+        table.release(first);
+        assertEquals(1, table.count());
+        table.release(feature);
+        assertEquals(0, table.count());
+    }
+
+    public void testModelsWithDifferentNames() throws IOException {
+        InternTable table = new InternTable();
+        StoredFeatureSet set = LtrTestUtils.randomFeatureSet();
+        StoredLtrModel model = LtrTestUtils.randomLinearModel("one", set);
+        StoredLtrModel renamed = new StoredLtrModel(
+            "two",
+            copy(set),
+            model.rankingModelType(),
+            model.rankingModel(),
+            false,
+            model.getFeatureNormalizers()
+        );
+
+        CompiledLtrModel one = table.model(model, factory);
+        CompiledLtrModel two = table.model(renamed, factory);
+        assertEquals("one", one.name());
+        assertEquals("two", two.name());
+        assertSame(one.ranker(), two.ranker());
+        assertSame(one.featureSet(), two.featureSet());
+        assertSame(one.featureSet(), table.featureSet(set));
+        assertEquals(2, table.hits());
+
+        table.release(one);
+        table.release(two);
+        assertEquals(set.size() + 1, table.count());
+        table.release(one.featureSet());
+        assertEquals(0, table.count());
+    }
+
+    public void testReleasedOnEviction() throws IOException {
+        Caches caches = new Caches(Settings.EMPTY);
+        InternTable table = caches.internTable();
+        StoredFeature feature = LtrTestUtils.randomFeature();
+        Feature one = caches.loadFeature(new Caches.CacheKey("one", feature.name()), (id) -> table.feature(feature));
+        Feature two = caches.loadFeature(new Caches.CacheKey("two", feature.name()), (id) -> table.feature(copy(feature)));
+        assertSame(one, two);
+        assertEquals(1, table.count());
+        // per store stats account the shared element in every store
+        assertEquals(1, caches.getPerStoreStats("one").featureCount());
+        assertEquals(1, caches.getPerStoreStats("two").featureCount());
+
+        caches.evict("one");
+        assertEquals(1, table.count());
+        caches.evictFeature("two", feature.name());
+        assertEquals(0, table.count());
+        assertTrue(caches.getCachedStoreNames().isEmpty());
+    }
+
+    /**
+     * Identical element parsed again
+     */
+    private static StoredFeature copy(StoredFeature feature) throws IOException {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            feature.writeTo(out);
+            return new StoredFeature(out.bytes().streamInput());
+        }
+    }
+
+    private static StoredFeatureSet copy(StoredFeatureSet set) throws IOException {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            set.writeTo(out);
+            return new StoredFeatureSet(out.bytes().streamInput());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.query;
+
+import static org.apache.lucene.tests.util.TestUtil.nextInt;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.tests.index.RandomIndexWriter;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.opensearch.common.lease.Releasable;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.core.common.breaker.CircuitBreakingException;
+import org.opensearch.core.common.breaker.NoopCircuitBreaker;
+
+import com.o19s.es.ltr.ranker.DenseFeatureVector;
+
+public class FeatureScoreCacheTests extends LuceneTestCase {
+
+    public void testPutAndCopy() throws IOException {
+        int numFeatures = nextInt(random(), 1, 20);
+        try (Directory dir = newDirectory(); IndexReader reader = buildReader(dir)) {
+            FeatureScoreCache cache = new FeatureScoreCache(numFeatures);
+            Map<LeafReaderContext, Map<Integer, float[]>> expected = new HashMap<>();
+            for (LeafReaderContext leaf : reader.leaves()) {
+                FeatureScoreCache.Segment segment = cache.segment(leaf);
+                assertSame(segment, cache.segment(leaf));
+                Map<Integer, float[]> cached = new HashMap<>();
+                float[] scores = new float[numFeatures];
+                for (int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+                    if (random().nextBoolean()) {
+                        continue;
+                    }
+                    for (int i = 0; i < numFeatures; i++) {
+                        scores[i] = random().nextInt(4) == 0 ? Float.NaN : random().nextFloat();
+                    }
+                    segment.put(doc, scores);
+                    cached.put(doc, Arrays.copyOf(scores, numFeatures));
+                }
+                expected.put(leaf, cached);
+            }
+
+            for (LeafReaderContext leaf : reader.leaves()) {
+                FeatureScoreCache.Segment segment = cache.segment(leaf);
+                for (int doc = 0; doc < leaf.reader().maxDoc(); doc++) {
+                    float[] scores = expected.get(leaf).get(doc);
+                    DenseFeatureVector vector = new DenseFeatureVector(numFeatures);
+                    assertEquals(scores != null, segment.contains(doc));
+                    assertEquals(scores != null, segment.copyTo(doc, vector));
+                    for (int i = 0; scores != null && i < numFeatures; i++) {
+                        float score = Float.isNaN(scores[i]) ? vector.getDefaultScore() : scores[i];
+                        assertEquals(score, vector.getFeatureScore(i), 0F);
+                    }
+                }
+            }
+        }
+    }
+
+    public void testManyDocsInOneSegment() throws IOException {
+        int numFeatures = nextInt(random(), 1, 20);
+        try (Directory dir = newDirectory(); IndexReader reader = buildReader(dir)) {
+            FeatureScoreCache.Segment segment = new FeatureScoreCache(numFeatures).segment(reader.leaves().get(0));
+            int numDocs = nextInt(random(), 300, 1000);
+            float[] scores = new float[numFeatures];
+            // grown document by document, like a query scoring without the rescorer
+            for (int doc = 0; doc < numDocs; doc++) {
+                Arrays.fill(scores, doc);
+                segment.put(doc, scores);
+            }
+            for (int doc = 0; doc < numDocs; doc++) {
+                DenseFeatureVector vector = new DenseFeatureVector(numFeatures);
+                assertTrue(segment.copyTo(doc, vector));
+                for (int i = 0; i < numFeatures; i++) {
+                    assertEquals(doc, vector.getFeatureScore(i), 0F);
+                }
+            }
+            assertFalse(segment.contains(numDocs));
+        }
+    }
+
+    public void testReserve() throws IOException {
+        try (Directory dir = newDirectory(); IndexReader reader = buildReader(dir)) {
+            LeafReaderContext leaf = reader.leaves().get(0);
+            FeatureScoreCache cache = new FeatureScoreCache(100);
+            FeatureScoreCache.Segment segment = cache.segment(leaf);
+            assertEquals(0, cache.ramBytesUsed());
+            segment.reserve(1000);
+            long reserved = cache.ramBytesUsed();
+            assertTrue(reserved >= 1000L * 100 * Float.BYTES);
+            float[] scores = new float[100];
+            for (int doc = 0; doc < 1000; doc++) {
+                segment.put(doc, scores);
+            }
+            // the reserved arena holds the whole window
+            assertEquals(reserved, cache.ramBytesUsed());
+        }
+    }
+
+    public void testCharge() throws IOException {
+        int numFeatures = nextInt(random(), 1, 20);
+        try (Directory dir = newDirectory(); IndexReader reader = buildReader(dir)) {
+            AtomicLong used = new AtomicLong();
+            AtomicLong limit = new AtomicLong(Long.MAX_VALUE);
+            CircuitBreaker breaker = new NoopCircuitBreaker(CircuitBreaker.REQUEST) {
+                @Override
+                public double addEstimateBytesAndMaybeBreak(long bytes, String label) {
+                    assertEquals(FeatureScoreCache.BREAKER_LABEL, label);
+                    if (used.get() + bytes > limit.get()) {
+                        throw new CircuitBreakingException("too many bytes", bytes, limit.get(), Durability.TRANSIENT);
+                    }
+                    return used.addAndGet(bytes);
+                }
+
+                @Override
+                public long addWithoutBreaking(long bytes) {
+                    return used.addAndGet(bytes);
+                }
+            };
+            FeatureScoreCache cache = new FeatureScoreCache(numFeatures);
+            FeatureScoreCache.Segment segment = cache.segment(reader.leaves().get(0));
+            float[] scores = new float[numFeatures];
+            try (Releasable ignored = cache.charge(breaker)) {
+                segment.reserve(10);
+                for (int doc = 0; doc < 100; doc++) {
+                    segment.put(doc, scores);
+                }
+                // every growth is charged
+                assertEquals(cache.ramBytesUsed(), used.get());
+
+                // nothing is allocated when the breaker breaks
+                long before = cache.ramBytesUsed();
+                limit.set(used.get());
+                expectThrows(CircuitBreakingException.class, () -> segment.reserve(1000));
+                assertEquals(before, cache.ramBytesUsed());
+                assertTrue(segment.copyTo(99, new DenseFeatureVector(numFeatures)));
+            }
+            assertEquals(0, used.get());
+
+            // the cache is no longer accounted once released
+            limit.set(Long.MAX_VALUE);
+            segment.reserve(1000);
+            assertEquals(0, used.get());
+        }
+    }
+
+    private IndexReader buildReader(Directory dir) throws IOException {
+        try (RandomIndexWriter writer = new RandomIndexWriter(random(), dir)) {
+            int numDocs = atLeast(100);
+            for (int i = 0; i < numDocs; i++) {
+                writer.addDocument(new Document());
+                if (random().nextInt(20) == 0) {
+                    writer.commit();
+                }
+            }
+            return writer.getReader();
+        }
+    }
+}
@@ -87,8 +87,12 @@ import com.o19s.es.ltr.feature.PrebuiltFeatureSet;
 import com.o19s.es.ltr.feature.PrebuiltLtrModel;
 import com.o19s.es.ltr.ranker.LogLtrRanker;
 import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.dectree.FlatAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.QuickScorerAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.linear.LinearRanker;
 import com.o19s.es.ltr.ranker.normalizer.FeatureNormalizingRanker;
 import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+import com.o19s.es.ltr.ranker.normalizer.Normalizers;
 import com.o19s.es.ltr.ranker.normalizer.StandardFeatureNormalizer;
 import com.o19s.es.ltr.ranker.ranklib.DenseProgramaticDataPoint;
 import com.o19s.es.ltr.ranker.ranklib.RanklibRanker;
@@ -333,6 +337,7 @@ public class LtrQueryTests extends LuceneTestCase {
         for (ScoreDoc scoreDoc : scoreDocs) {
             assertScoresMatch(features, scores, ltrQuery, scoreDoc);
         }
+        assertBlockScoresMatch(ltrQuery);
 
         // Try again with a model serialized
 
@@ -383,6 +388,25 @@ public class LtrQueryTests extends LuceneTestCase {
         }
     }
 
+    private void assertBlockScoresMatch(RankerQuery ltrQuery) throws IOException {
+        // Not using searcherUnderTest, it may wrap weights
+        IndexSearcher searcher = new IndexSearcher(indexReaderUnderTest);
+        searcher.setSimilarity(similarity);
+        Query rewritten = searcher.rewrite(ltrQuery);
+        RankerQuery.RankerWeight weight = (RankerQuery.RankerWeight) searcher.createWeight(rewritten, ScoreMode.COMPLETE, 1F);
+        for (LeafReaderContext context : indexReaderUnderTest.leaves()) {
+            int[] docs = range(0, context.reader().maxDoc());
+            float[] blockScores = new float[docs.length];
+            weight.getScorer(context).scoreBlock(docs, docs.length, blockScores);
+
+            RankerQuery.RankerWeight.RankerScorer scorer = weight.getScorer(context);
+            for (int i = 0; i < docs.length; i++) {
+                assertEquals(docs[i], scorer.iterator().advance(docs[i]));
+                assertEquals(scorer.score(), blockScores[i], 0F);
+            }
+        }
+    }
+
     private RankerQuery toRankerQuery(List<PrebuiltFeature> features, Ranker ranker, Map<Integer, Normalizer> ftrNorms) {
         LtrRanker ltrRanker = new RanklibRanker(ranker, features.size());
         if (ftrNorms.size() > 0) {
@@ -495,6 +519,92 @@ public class LtrQueryTests extends LuceneTestCase {
         checkModelWithFeatures(features, null, ftrNorms);
     }
 
+    public void testUnusedFeaturesAreNotExtracted() throws IOException {
+        List<PrebuiltFeature> features = Arrays
+            .asList(
+                new PrebuiltFeature("brown", new TermQuery(new Term("field", "brown"))),
+                new PrebuiltFeature("cow", new TermQuery(new Term("field", "cow")))
+            );
+        LinearRanker ranker = new LinearRanker(new float[] { 1F, 0F });
+        PrebuiltLtrModel model = new PrebuiltLtrModel(ranker.name(), ranker, new PrebuiltFeatureSet(null, features));
+        assertArrayEquals(new int[] { 0 }, model.usedFeatures());
+        RankerQuery ltrQuery = RankerQuery.build(model, ltrStats);
+
+        TopDocs expected = searcherUnderTest.search(new TermQuery(new Term("field", "brown")), 10);
+        for (ScoreDoc scoreDoc : expected.scoreDocs) {
+            Explanation expl = searcherUnderTest.explain(ltrQuery, scoreDoc.doc);
+            assertEquals(scoreDoc.score, expl.getValue().floatValue(), (float) Math.max(ABS_FLOOR, RELATIVE_TOLERANCE * scoreDoc.score));
+            assertTrue(expl.getDetails()[0].isMatch());
+            assertFalse(expl.getDetails()[1].isMatch());
+            assertEquals("Feature 1(cow): [not used by the model]", expl.getDetails()[1].getDescription());
+        }
+        assertBlockScoresMatch(ltrQuery);
+    }
+
+    public void testSparseMatches() throws IOException {
+        // most features never match, the others match a few documents
+        String[] terms = { "brown", "cow", "yummy", "color" };
+        List<PrebuiltFeature> features = new ArrayList<>();
+        float[] weights = new float[200];
+        for (int i = 0; i < weights.length; i++) {
+            String term = i % 50 == 0 ? terms[i / 50] : "missing" + i;
+            features.add(new PrebuiltFeature(term, new TermQuery(new Term("field", term))));
+            weights[i] = random().nextInt(10) + 1;
+        }
+        LinearRanker ranker = new LinearRanker(weights);
+        PrebuiltLtrModel model = new PrebuiltLtrModel(ranker.name(), ranker, new PrebuiltFeatureSet(null, features));
+        RankerQuery ltrQuery = RankerQuery.build(model, ltrStats);
+
+        float[] expected = new float[docs.length];
+        for (int i = 0; i < terms.length; i++) {
+            for (ScoreDoc scoreDoc : searcherUnderTest.search(new TermQuery(new Term("field", terms[i])), docs.length).scoreDocs) {
+                expected[scoreDoc.doc] += weights[i * 50] * scoreDoc.score;
+            }
+        }
+        ScoreDoc[] scoreDocs = searcherUnderTest.search(ltrQuery, docs.length).scoreDocs;
+        assertEquals(docs.length, scoreDocs.length);
+        for (ScoreDoc scoreDoc : scoreDocs) {
+            float score = expected[scoreDoc.doc];
+            assertEquals(score, scoreDoc.score, (float) Math.max(ABS_FLOOR, RELATIVE_TOLERANCE * score));
+        }
+        assertBlockScoresMatch(ltrQuery);
+    }
+
+    public void testLazyFeatures() throws IOException {
+        List<PrebuiltFeature> features = Arrays
+            .asList(
+                new PrebuiltFeature("brown", new TermQuery(new Term("field", "brown"))),
+                new PrebuiltFeature("cow", new TermQuery(new Term("field", "cow"))),
+                new PrebuiltFeature("yummy", new TermQuery(new Term("field", "yummy")))
+            );
+        // "cow" is only read for documents matching "brown", "yummy" for the others
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        int split = builder.addSplit(0, 0F, false);
+        int left = builder.addSplit(2, 0F, true);
+        builder.setChildren(left, builder.addLeaf(1F), builder.addLeaf(2F));
+        int right = builder.addSplit(1, 0F, true);
+        builder.setChildren(right, builder.addLeaf(3F), builder.addLeaf(4F));
+        builder.setChildren(split, left, right);
+        builder.addTree(split, 1F);
+        FlatAdditiveDecisionTree flat = builder.build(features.size(), Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+        assertTrue(flat.supportsLazyFeatures());
+        QuickScorerAdditiveDecisionTree eager = new QuickScorerAdditiveDecisionTree(flat);
+        assertFalse(eager.supportsLazyFeatures());
+
+        RankerQuery lazyQuery = RankerQuery.build(new PrebuiltLtrModel("lazy", flat, new PrebuiltFeatureSet(null, features)), ltrStats);
+        RankerQuery eagerQuery = RankerQuery.build(new PrebuiltLtrModel("eager", eager, new PrebuiltFeatureSet(null, features)), ltrStats);
+        Map<Integer, Float> expected = new HashMap<>();
+        for (ScoreDoc scoreDoc : searcherUnderTest.search(eagerQuery, docs.length).scoreDocs) {
+            expected.put(scoreDoc.doc, scoreDoc.score);
+        }
+        ScoreDoc[] scoreDocs = searcherUnderTest.search(lazyQuery, docs.length).scoreDocs;
+        assertEquals(docs.length, scoreDocs.length);
+        for (ScoreDoc scoreDoc : scoreDocs) {
+            assertEquals(expected.get(scoreDoc.doc), scoreDoc.score, 0F);
+        }
+        assertBlockScoresMatch(lazyQuery);
+    }
+
     @After
     public void closeStuff() throws IOException {
         indexReaderUnderTest.close();
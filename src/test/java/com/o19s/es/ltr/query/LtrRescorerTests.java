@@ -0,0 +1,361 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.query;
+
+import static java.util.Collections.unmodifiableMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryRescorer;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.tests.index.RandomIndexWriter;
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.apache.lucene.tests.util.TestUtil;
+import org.apache.lucene.util.NamedThreadFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.opensearch.core.common.breaker.CircuitBreaker;
+import org.opensearch.core.common.breaker.NoopCircuitBreaker;
+import org.opensearch.ltr.stats.LTRStat;
+import org.opensearch.ltr.stats.LTRStats;
+import org.opensearch.ltr.stats.StatName;
+import org.opensearch.ltr.stats.suppliers.CounterSupplier;
+import org.opensearch.search.rescore.QueryRescoreMode;
+
+import com.o19s.es.ltr.feature.PrebuiltFeature;
+import com.o19s.es.ltr.feature.PrebuiltFeatureSet;
+import com.o19s.es.ltr.feature.PrebuiltLtrModel;
+import com.o19s.es.ltr.query.LtrRescorer.LtrRescoreContext;
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.LtrRanker.FeatureVector;
+import com.o19s.es.ltr.ranker.linear.LinearRanker;
+
+public class LtrRescorerTests extends LuceneTestCase {
+    private static final String[] TERMS = { "brown", "cow", "how", "now", "yummy", "banana" };
+
+    private final LTRStats ltrStats = new LTRStats(unmodifiableMap(new HashMap<String, LTRStat<?>>() {
+        {
+            put(StatName.LTR_REQUEST_TOTAL_COUNT.getName(), new LTRStat<>(false, new CounterSupplier()));
+            put(StatName.LTR_REQUEST_ERROR_COUNT.getName(), new LTRStat<>(false, new CounterSupplier()));
+        }
+    }));
+
+    private Directory dir;
+    private IndexReader reader;
+    private IndexSearcher searcher;
+
+    @Before
+    public void setupIndex() throws IOException {
+        dir = newDirectory();
+        try (RandomIndexWriter writer = new RandomIndexWriter(random(), dir)) {
+            int numDocs = atLeast(50);
+            for (int i = 0; i < numDocs; i++) {
+                // at least one document matches the first pass
+                StringBuilder text = new StringBuilder(i == 0 ? "brown " : "");
+                int numTerms = random().nextInt(5) + 1;
+                for (int t = 0; t < numTerms; t++) {
+                    text.append(TERMS[random().nextInt(TERMS.length)]).append(' ');
+                }
+                Document doc = new Document();
+                doc.add(newTextField("field", text.toString(), Field.Store.NO));
+                writer.addDocument(doc);
+                if (random().nextInt(10) == 0) {
+                    // several segments
+                    writer.commit();
+                }
+            }
+            reader = writer.getReader();
+        }
+        // Not using newSearcher, it may wrap weights
+        searcher = new IndexSearcher(reader);
+    }
+
+    @After
+    public void closeIndex() throws IOException {
+        reader.close();
+        dir.close();
+    }
+
+    public void testRescoreWholeWindow() throws IOException {
+        RankerQuery ltrQuery = buildQuery();
+        float queryWeight = random().nextInt(3);
+        float rescoreQueryWeight = random().nextInt(3) + 1;
+        int numHits = searcher.count(firstPassQuery());
+
+        LtrRescoreContext context = new LtrRescoreContext(numHits, ltrQuery, 1F);
+        context.setQueryWeight(queryWeight);
+        context.setRescoreQueryWeight(rescoreQueryWeight);
+        context.setScoreMode(QueryRescoreMode.Total);
+        TopDocs rescored = LtrRescorer.INSTANCE.rescore(searcher.search(firstPassQuery(), numHits), searcher, context);
+
+        TopDocs expected = new QueryRescorer(ltrQuery) {
+            @Override
+            protected float combine(float firstPassScore, boolean secondPassMatches, float secondPassScore) {
+                return firstPassScore * queryWeight + secondPassScore * rescoreQueryWeight;
+            }
+        }.rescore(searcher, searcher.search(firstPassQuery(), numHits), numHits);
+
+        assertEquals(expected.scoreDocs.length, rescored.scoreDocs.length);
+        for (int i = 0; i < expected.scoreDocs.length; i++) {
+            assertEquals(expected.scoreDocs[i].doc, rescored.scoreDocs[i].doc);
+            assertEquals(expected.scoreDocs[i].score, rescored.scoreDocs[i].score, 0F);
+            assertTrue(context.isRescored(rescored.scoreDocs[i].doc));
+        }
+    }
+
+    public void testRescoreSeveralBlocksPerSegment() throws IOException {
+        try (Directory largeDir = newDirectory()) {
+            try (RandomIndexWriter writer = new RandomIndexWriter(random(), largeDir)) {
+                int numDocs = LtrRescorer.BLOCK_SIZE * 2 + random().nextInt(LtrRescorer.BLOCK_SIZE);
+                for (int i = 0; i < numDocs; i++) {
+                    Document doc = new Document();
+                    doc.add(newTextField("field", "brown " + TERMS[random().nextInt(TERMS.length)], Field.Store.NO));
+                    writer.addDocument(doc);
+                }
+                writer.forceMerge(1);
+            }
+            try (IndexReader largeReader = DirectoryReader.open(largeDir)) {
+                IndexSearcher largeSearcher = new IndexSearcher(largeReader);
+                RankerQuery ltrQuery = buildQuery();
+                int numHits = largeSearcher.count(firstPassQuery());
+                AtomicLong used = new AtomicLong();
+                AtomicLong maxUsed = new AtomicLong();
+                LtrRescoreContext context = new LtrRescoreContext(numHits, ltrQuery, 1F);
+                context.setBreaker(new NoopCircuitBreaker(CircuitBreaker.REQUEST) {
+                    @Override
+                    public double addEstimateBytesAndMaybeBreak(long bytes, String label) {
+                        maxUsed.accumulateAndGet(used.addAndGet(bytes), Math::max);
+                        return used.get();
+                    }
+
+                    @Override
+                    public long addWithoutBreaking(long bytes) {
+                        return used.addAndGet(bytes);
+                    }
+                });
+                TopDocs rescored = LtrRescorer.INSTANCE.rescore(largeSearcher.search(firstPassQuery(), numHits), largeSearcher, context);
+                TopDocs expected = new QueryRescorer(ltrQuery) {
+                    @Override
+                    protected float combine(float firstPassScore, boolean secondPassMatches, float secondPassScore) {
+                        return firstPassScore + secondPassScore;
+                    }
+                }.rescore(largeSearcher, largeSearcher.search(firstPassQuery(), numHits), numHits);
+
+                assertEquals(expected.scoreDocs.length, rescored.scoreDocs.length);
+                for (int i = 0; i < expected.scoreDocs.length; i++) {
+                    assertEquals(expected.scoreDocs[i].doc, rescored.scoreDocs[i].doc);
+                    assertEquals(expected.scoreDocs[i].score, rescored.scoreDocs[i].score, 0F);
+                }
+                // a single block of the segment is accounted, and released once rescored
+                assertEquals((long) LtrRescorer.BLOCK_SIZE * (TERMS.length + 2) * Float.BYTES, maxUsed.get());
+                assertEquals(0, used.get());
+            }
+        }
+    }
+
+    public void testRescoreConcurrently() throws IOException {
+        RankerQuery ltrQuery = buildQuery();
+        int numHits = searcher.count(firstPassQuery());
+        LtrRescoreContext context = new LtrRescoreContext(numHits, ltrQuery, 1F);
+        TopDocs expected = LtrRescorer.INSTANCE.rescore(searcher.search(firstPassQuery(), numHits), searcher, context);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4, new NamedThreadFactory("ltr-rescore"));
+        try {
+            IndexSearcher concurrentSearcher = new IndexSearcher(reader, executor);
+            TopDocs rescored = LtrRescorer.INSTANCE.rescore(
+                concurrentSearcher.search(firstPassQuery(), numHits),
+                concurrentSearcher,
+                new LtrRescoreContext(numHits, ltrQuery, 1F)
+            );
+            assertEquals(expected.scoreDocs.length, rescored.scoreDocs.length);
+            for (int i = 0; i < expected.scoreDocs.length; i++) {
+                assertEquals(expected.scoreDocs[i].doc, rescored.scoreDocs[i].doc);
+                assertEquals(expected.scoreDocs[i].score, rescored.scoreDocs[i].score, 0F);
+            }
+        } finally {
+            TestUtil.shutdownExecutorService(executor);
+        }
+    }
+
+    public void testRescorePartialWindow() throws IOException {
+        RankerQuery ltrQuery = buildQuery();
+        int numHits = searcher.count(firstPassQuery());
+        int windowSize = random().nextInt(numHits) + 1;
+        TopDocs firstPass = searcher.search(firstPassQuery(), numHits);
+        List<Integer> window = new ArrayList<>();
+        HashMap<Integer, Float> outsideWindow = new HashMap<>();
+        for (int i = 0; i < numHits; i++) {
+            if (i < windowSize) {
+                window.add(firstPass.scoreDocs[i].doc);
+            } else {
+                outsideWindow.put(firstPass.scoreDocs[i].doc, firstPass.scoreDocs[i].score);
+            }
+        }
+
+        LtrRescoreContext context = new LtrRescoreContext(windowSize, ltrQuery, 1F);
+        context.setQueryWeight(0.5F);
+        context.setScoreMode(QueryRescoreMode.Max);
+        TopDocs rescored = LtrRescorer.INSTANCE.rescore(firstPass, searcher, context);
+
+        assertEquals(numHits, rescored.scoreDocs.length);
+        for (int i = 0; i < numHits; i++) {
+            ScoreDoc hit = rescored.scoreDocs[i];
+            if (i > 0) {
+                assertTrue(rescored.scoreDocs[i - 1].score >= hit.score);
+            }
+            assertEquals(window.contains(hit.doc), context.isRescored(hit.doc));
+            if (!window.contains(hit.doc)) {
+                assertEquals(outsideWindow.get(hit.doc) * 0.5F, hit.score, 0F);
+            }
+        }
+    }
+
+    public void testRescoreTopK() throws IOException {
+        try (Directory largeDir = newDirectory()) {
+            try (RandomIndexWriter writer = new RandomIndexWriter(random(), largeDir)) {
+                int numDocs = atLeast(100);
+                for (int i = 0; i < numDocs; i++) {
+                    StringBuilder text = new StringBuilder("brown ");
+                    int numTerms = random().nextInt(5) + 1;
+                    for (int t = 0; t < numTerms; t++) {
+                        text.append(TERMS[random().nextInt(TERMS.length)]).append(' ');
+                    }
+                    Document doc = new Document();
+                    doc.add(newTextField("field", text.toString(), Field.Store.NO));
+                    writer.addDocument(doc);
+                    if (random().nextInt(20) == 0) {
+                        writer.commit();
+                    }
+                }
+            }
+            try (IndexReader largeReader = DirectoryReader.open(largeDir)) {
+                IndexSearcher largeSearcher = new IndexSearcher(largeReader);
+                float[] weights = new float[TERMS.length];
+                for (int i = 0; i < TERMS.length; i++) {
+                    weights[i] = random().nextInt(10) + 1;
+                }
+                AtomicInteger cutShort = new AtomicInteger();
+                LinearRanker earlyExit = new LinearRanker(weights) {
+                    @Override
+                    public float score(FeatureVector point, float minScore) {
+                        float score = score(point);
+                        if (score < minScore) {
+                            cutShort.incrementAndGet();
+                            // the closest value to the bound a ranker stopping early may return
+                            return Math.nextDown(minScore);
+                        }
+                        return score;
+                    }
+                };
+                int numHits = largeSearcher.count(firstPassQuery());
+                int topK = random().nextInt(5) + 1;
+                float queryWeight = random().nextInt(3);
+                float rescoreQueryWeight = random().nextInt(3) + 1;
+                // the combinations growing with the model score
+                QueryRescoreMode[] scoreModes = {
+                    QueryRescoreMode.Total,
+                    QueryRescoreMode.Avg,
+                    QueryRescoreMode.Max,
+                    QueryRescoreMode.Min };
+                QueryRescoreMode scoreMode = scoreModes[random().nextInt(scoreModes.length)];
+
+                LtrRescoreContext context = new LtrRescoreContext(numHits, buildQuery(earlyExit), 1F);
+                context.setQueryWeight(queryWeight);
+                context.setRescoreQueryWeight(rescoreQueryWeight);
+                context.setScoreMode(scoreMode);
+                context.setTopK(topK);
+                TopDocs rescored = LtrRescorer.INSTANCE.rescore(largeSearcher.search(firstPassQuery(), numHits), largeSearcher, context);
+
+                TopDocs expected = new QueryRescorer(buildQuery(new LinearRanker(weights))) {
+                    @Override
+                    protected float combine(float firstPassScore, boolean secondPassMatches, float secondPassScore) {
+                        return scoreMode.combine(firstPassScore * queryWeight, secondPassScore * rescoreQueryWeight);
+                    }
+                }.rescore(largeSearcher, largeSearcher.search(firstPassQuery(), numHits), numHits);
+
+                assertEquals(numHits, rescored.scoreDocs.length);
+                // the top k keeps its exact scores and order
+                for (int i = 0; i < topK; i++) {
+                    assertEquals(expected.scoreDocs[i].doc, rescored.scoreDocs[i].doc);
+                    assertEquals(expected.scoreDocs[i].score, rescored.scoreDocs[i].score, 0F);
+                }
+                // documents cut short stay below the k-th best
+                float kth = expected.scoreDocs[topK - 1].score;
+                for (int i = topK; i < numHits; i++) {
+                    assertTrue(rescored.scoreDocs[i].score <= kth);
+                }
+                if (scoreMode == QueryRescoreMode.Total || scoreMode == QueryRescoreMode.Avg) {
+                    // the first pass score never decides the combination alone
+                    assertTrue(cutShort.get() > 0);
+                }
+            }
+        }
+    }
+
+    public void testExplain() throws IOException {
+        RankerQuery ltrQuery = buildQuery();
+        int numHits = searcher.count(firstPassQuery());
+        LtrRescoreContext context = new LtrRescoreContext(numHits, ltrQuery, 2F);
+        context.setRescoreQueryWeight(3F);
+        TopDocs rescored = LtrRescorer.INSTANCE.rescore(searcher.search(firstPassQuery(), numHits), searcher, context);
+        for (ScoreDoc hit : rescored.scoreDocs) {
+            Explanation firstPass = searcher.explain(firstPassQuery(), hit.doc);
+            Explanation explanation = LtrRescorer.INSTANCE.explain(hit.doc, searcher, context, firstPass);
+            assertTrue(explanation.isMatch());
+            float delta = Math.max(1e-4F, Math.abs(hit.score) * 1e-5F);
+            assertEquals(hit.score, explanation.getValue().floatValue(), delta);
+        }
+    }
+
+    public void testEmptyTopDocs() throws IOException {
+        LtrRescoreContext context = new LtrRescoreContext(10, buildQuery(), 1F);
+        TopDocs empty = searcher.search(new TermQuery(new Term("field", "missing")), 10);
+        assertSame(empty, LtrRescorer.INSTANCE.rescore(empty, searcher, context));
+    }
+
+    private Query firstPassQuery() {
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        builder.add(new TermQuery(new Term("field", "brown")), BooleanClause.Occur.SHOULD);
+        builder.add(new TermQuery(new Term("field", "cow")), BooleanClause.Occur.SHOULD);
+        return builder.build();
+    }
+
+    private RankerQuery buildQuery() {
+        float[] weights = new float[TERMS.length];
+        for (int i = 0; i < TERMS.length; i++) {
+            weights[i] = random().nextInt(10) + 1;
+        }
+        return buildQuery(new LinearRanker(weights));
+    }
+
+    private RankerQuery buildQuery(LtrRanker ranker) {
+        List<PrebuiltFeature> features = new ArrayList<>();
+        for (String term : TERMS) {
+            features.add(new PrebuiltFeature(term, new TermQuery(new Term("field", term))));
+        }
+        return RankerQuery.build(new PrebuiltLtrModel(ranker.name(), ranker, new PrebuiltFeatureSet(null, features)), ltrStats);
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import static org.apache.lucene.tests.util.TestUtil.nextInt;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+import com.o19s.es.ltr.ranker.LazyFeatureVector;
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.SparseFeatureVector;
+import com.o19s.es.ltr.ranker.linear.LinearRankerTests;
+import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+import com.o19s.es.ltr.ranker.normalizer.Normalizers;
+
+public class FlatAdditiveDecisionTreeTests extends LuceneTestCase {
+
+    public void testName() {
+        FlatAdditiveDecisionTree ranker = new FlatAdditiveDecisionTree.Builder()
+            .build(0, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+        assertEquals("naive_additive_decision_tree", ranker.name());
+
+        ranker = new FlatAdditiveDecisionTree.Builder().setName("LambdaMART")
+            .build(0, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+        assertEquals("LambdaMART", ranker.name());
+        // folding and the alternative engines keep the name
+        assertEquals("LambdaMART", ranker.foldNormalizers(new float[0], new float[0]).name());
+        assertEquals("LambdaMART", new FlatAdditiveDecisionTree(ranker).name());
+    }
+
+    public void testSingleLeafTree() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        builder.addTree(builder.addLeaf(0.5F), 2F);
+        FlatAdditiveDecisionTree ranker = builder.build(1, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+        assertEquals(1F, ranker.score(ranker.newFeatureVector(null)), 0F);
+    }
+
+    public void testMissingDirection() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        int split = builder.addSplit(0, 100F, true);
+        builder.setChildren(split, builder.addLeaf(0.5F), builder.addLeaf(0.2F));
+        builder.addTree(split, 1F);
+        Normalizer noop = Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME);
+
+        FlatAdditiveDecisionTree ranker = builder.build(1, noop, false);
+        LtrRanker.FeatureVector v = ranker.newFeatureVector(null);
+        assertEquals(0.5F, ranker.score(v), 0F);
+        v.setFeatureScore(0, 150F);
+        assertEquals(0.2F, ranker.score(v), 0F);
+
+        FlatAdditiveDecisionTree zero = builder.build(1, noop, true);
+        assertTrue(zero.isMissingAsZero());
+        assertEquals(0.5F, zero.score(zero.newFeatureVector(null)), 0F);
+    }
+
+    public void testIncompleteTree() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        builder.addTree(builder.addSplit(0, 1F, false), 1F);
+        expectThrows(IllegalStateException.class, () -> builder.build(1, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false));
+    }
+
+    public void testUsedFeatures() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        int split = builder.addSplit(3, 1F, false);
+        int right = builder.addSplit(1, 2F, false);
+        builder.setChildren(right, builder.addLeaf(1F), builder.addLeaf(2F));
+        builder.setChildren(split, builder.addLeaf(3F), right);
+        builder.addTree(split, 1F);
+        split = builder.addSplit(3, 0F, true);
+        builder.setChildren(split, builder.addLeaf(1F), builder.addLeaf(2F));
+        builder.addTree(split, 1F);
+        builder.addTree(builder.addLeaf(1F), 1F);
+        FlatAdditiveDecisionTree ranker = builder.build(5, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+        assertArrayEquals(new int[] { 1, 3 }, ranker.usedFeatures());
+        assertArrayEquals(new int[] { 1, 3 }, new QuickScorerAdditiveDecisionTree(ranker).usedFeatures());
+    }
+
+    public void testUnknownFeature() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        int split = builder.addSplit(3, 1F, false);
+        builder.setChildren(split, builder.addLeaf(1F), builder.addLeaf(2F));
+        builder.addTree(split, 1F);
+        expectThrows(IllegalArgumentException.class, () -> builder.build(2, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false));
+    }
+
+    public void testSameScoresAsNaive() {
+        int nbFeatures = nextInt(random(), 1, 100);
+        int nbTrees = nextInt(random(), 1, 200);
+        NaiveAdditiveDecisionTree.Node[] trees = new NaiveAdditiveDecisionTree.Node[nbTrees];
+        for (int i = 0; i < nbTrees; i++) {
+            trees[i] = NaiveAdditiveDecisionTreeTests.randomTree(nbFeatures, nextInt(random(), 0, 10));
+        }
+        float[] weights = LinearRankerTests.generateRandomWeights(nbTrees);
+        boolean missingAsZero = random().nextBoolean();
+        Normalizer normalizer = Normalizers
+            .get(random().nextBoolean() ? Normalizers.NOOP_NORMALIZER_NAME : Normalizers.SIGMOID_NORMALIZER_NAME);
+
+        NaiveAdditiveDecisionTree naive = new NaiveAdditiveDecisionTree(trees, weights, nbFeatures, normalizer, missingAsZero);
+        FlatAdditiveDecisionTree flat = FlatAdditiveDecisionTree.fromNodes(trees, weights, nbFeatures, normalizer, missingAsZero);
+        assertEquals(nbTrees, flat.numTrees());
+
+        SparseFeatureVector naiveVector = null;
+        SparseFeatureVector flatVector = null;
+        for (int i = 0; i < 100; i++) {
+            naiveVector = naive.newFeatureVector(naiveVector);
+            flatVector = flat.newFeatureVector(flatVector);
+            for (int f = 0; f < nbFeatures; f++) {
+                // leave some features unset to exercise the missing value handling
+                if (random().nextInt(4) != 0) {
+                    float value = nextInt(random(), -1000, 1000) / 100F;
+                    naiveVector.setFeatureScore(f, value);
+                    flatVector.setFeatureScore(f, value);
+                }
+            }
+            assertEquals(Float.floatToIntBits(naive.score(naiveVector)), Float.floatToIntBits(flat.score(flatVector)));
+        }
+    }
+
+    public void testScoreBlock() {
+        FlatAdditiveDecisionTree ranker = FlatAdditiveDecisionTree
+            .fromNodes(
+                new NaiveAdditiveDecisionTree.Node[] {
+                    NaiveAdditiveDecisionTreeTests.randomTree(10, 6),
+                    NaiveAdditiveDecisionTreeTests.randomTree(10, 6),
+                    NaiveAdditiveDecisionTreeTests.randomTree(10, 6) },
+                new float[] { 1F, 0.5F, 2F },
+                10,
+                Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME),
+                random().nextBoolean()
+            );
+        int numPoints = nextInt(random(), 1, 50);
+        float[] points = new float[numPoints * 10];
+        float[] expected = new float[numPoints];
+        SparseFeatureVector vector = null;
+        for (int i = 0; i < numPoints; i++) {
+            vector = ranker.newFeatureVector(vector);
+            NaiveAdditiveDecisionTreeTests.fillRandomWeights(vector.scores);
+            System.arraycopy(vector.scores, 0, points, i * 10, 10);
+            expected[i] = ranker.score(vector);
+        }
+        float[] scores = new float[numPoints];
+        ranker.scoreBlock(points, 10, numPoints, scores);
+        assertArrayEquals(expected, scores, 0F);
+    }
+
+    public void testScoreWithMinScore() {
+        int nbFeatures = nextInt(random(), 1, 50);
+        int nbTrees = nextInt(random(), 1, 500);
+        NaiveAdditiveDecisionTree.Node[] trees = new NaiveAdditiveDecisionTree.Node[nbTrees];
+        for (int i = 0; i < nbTrees; i++) {
+            trees[i] = NaiveAdditiveDecisionTreeTests.randomTree(nbFeatures, nextInt(random(), 0, 6));
+        }
+        float[] weights = LinearRankerTests.generateRandomWeights(nbTrees);
+        Normalizer normalizer = Normalizers
+            .get(random().nextBoolean() ? Normalizers.NOOP_NORMALIZER_NAME : Normalizers.SIGMOID_NORMALIZER_NAME);
+        FlatAdditiveDecisionTree ranker = FlatAdditiveDecisionTree.fromNodes(trees, weights, nbFeatures, normalizer, false);
+
+        SparseFeatureVector vector = null;
+        for (int i = 0; i < 100; i++) {
+            vector = ranker.newFeatureVector(vector);
+            NaiveAdditiveDecisionTreeTests.fillRandomWeights(vector.scores);
+            float exact = ranker.score(vector);
+            assertEquals(Float.floatToIntBits(exact), Float.floatToIntBits(ranker.score(vector, Float.NEGATIVE_INFINITY)));
+            assertEquals(Float.floatToIntBits(exact), Float.floatToIntBits(ranker.score(vector, exact)));
+            float minScore = normalizer.normalize(nextInt(random(), -10000, 10000) / 10F);
+            float score = ranker.score(vector, minScore);
+            if (exact >= minScore) {
+                assertEquals(Float.floatToIntBits(exact), Float.floatToIntBits(score));
+            } else {
+                assertThat(score, lessThan(minScore));
+            }
+        }
+    }
+
+    public void testScoreWithMinScoreStopsEarly() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        for (int i = 0; i < 100; i++) {
+            int split = builder.addSplit(0, 1F, false);
+            builder.setChildren(split, builder.addLeaf(-1F), builder.addLeaf(1F));
+            builder.addTree(split, 1F);
+        }
+        FlatAdditiveDecisionTree ranker = builder.build(1, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+        LtrRanker.FeatureVector vector = ranker.newFeatureVector(null);
+        vector.setFeatureScore(0, 0F);
+        assertEquals(-100F, ranker.score(vector), 0F);
+        // after 8 trees the partial sum is -8 and the remaining trees contribute at most 92
+        float score = ranker.score(vector, 90F);
+        assertThat(score, lessThan(90F));
+        assertThat(score, greaterThan(-100F));
+    }
+
+    public void testLazyFeatures() {
+        // feature 1 is only read when feature 0 is lower than 1
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        int split = builder.addSplit(0, 1F, false);
+        int left = builder.addSplit(1, 2F, false);
+        builder.setChildren(left, builder.addLeaf(1F), builder.addLeaf(2F));
+        builder.setChildren(split, left, builder.addLeaf(3F));
+        builder.addTree(split, 1F);
+        FlatAdditiveDecisionTree ranker = builder.build(2, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+        assertTrue(ranker.supportsLazyFeatures());
+        assertFalse(new QuickScorerAdditiveDecisionTree(ranker).supportsLazyFeatures());
+        assertFalse(TreeEnsembleCompiler.compile(ranker).supportsLazyFeatures());
+
+        CountingLazyVector lazy = new CountingLazyVector(ranker.newFeatureVector(null));
+        lazy.vector.setFeatureScore(0, 5F);
+        lazy.vector.setFeatureScore(1, 0F);
+        assertEquals(3F, ranker.score(lazy), 0F);
+        assertArrayEquals(new int[] { 1, 0 }, lazy.reads);
+        lazy.vector.setFeatureScore(0, 0F);
+        assertEquals(1F, ranker.score(lazy, Float.NEGATIVE_INFINITY), 0F);
+        assertArrayEquals(new int[] { 2, 1 }, lazy.reads);
+    }
+
+    public void testSameScoresWhenLazy() {
+        int nbFeatures = nextInt(random(), 1, 50);
+        int nbTrees = nextInt(random(), 1, 50);
+        NaiveAdditiveDecisionTree.Node[] trees = new NaiveAdditiveDecisionTree.Node[nbTrees];
+        for (int i = 0; i < nbTrees; i++) {
+            trees[i] = NaiveAdditiveDecisionTreeTests.randomTree(nbFeatures, nextInt(random(), 0, 6));
+        }
+        float[] weights = LinearRankerTests.generateRandomWeights(nbTrees);
+        Normalizer normalizer = Normalizers
+            .get(random().nextBoolean() ? Normalizers.NOOP_NORMALIZER_NAME : Normalizers.SIGMOID_NORMALIZER_NAME);
+        FlatAdditiveDecisionTree ranker = FlatAdditiveDecisionTree
+            .fromNodes(trees, weights, nbFeatures, normalizer, random().nextBoolean());
+
+        for (int i = 0; i < 100; i++) {
+            SparseFeatureVector vector = ranker.newFeatureVector(null);
+            for (int f = 0; f < nbFeatures; f++) {
+                if (random().nextInt(4) != 0) {
+                    vector.setFeatureScore(f, nextInt(random(), -1000, 1000) / 100F);
+                }
+            }
+            float expected = ranker.score(vector);
+            assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(ranker.score(new CountingLazyVector(vector))));
+            assertEquals(
+                Float.floatToIntBits(ranker.score(vector, expected)),
+                Float.floatToIntBits(ranker.score(new CountingLazyVector(vector), expected))
+            );
+        }
+    }
+
+    public void testRamSizeSmallerThanNaive() {
+        NaiveAdditiveDecisionTreeTests.SimpleCountRandomTreeGeneratorStatsCollector counts =
+            new NaiveAdditiveDecisionTreeTests.SimpleCountRandomTreeGeneratorStatsCollector();
+        NaiveAdditiveDecisionTree.Node[] trees = new NaiveAdditiveDecisionTree.Node[100];
+        for (int i = 0; i < trees.length; i++) {
+            trees[i] = new NaiveAdditiveDecisionTreeTests.RandomTreeGenerator(100, 5, 20, counts).genTree();
+        }
+        float[] weights = LinearRankerTests.generateRandomWeights(trees.length);
+        Normalizer noop = Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME);
+        NaiveAdditiveDecisionTree naive = new NaiveAdditiveDecisionTree(trees, weights, 100, noop);
+        FlatAdditiveDecisionTree flat = FlatAdditiveDecisionTree.fromNodes(trees, weights, 100, noop, false);
+        assertThat(flat.ramBytesUsed(), lessThan(naive.ramBytesUsed()));
+    }
+
+    /**
+     * Counts the reads of every feature
+     */
+    public static class CountingLazyVector implements LazyFeatureVector {
+        public final LtrRanker.FeatureVector vector;
+        public final int[] reads;
+
+        public CountingLazyVector(SparseFeatureVector vector) {
+            this.vector = vector;
+            this.reads = new int[vector.scores.length];
+        }
+
+        @Override
+        public void setFeatureScore(int featureId, float score) {
+            vector.setFeatureScore(featureId, score);
+        }
+
+        @Override
+        public float getFeatureScore(int featureId) {
+            reads[featureId]++;
+            return vector.getFeatureScore(featureId);
+        }
+
+        @Override
+        public float getDefaultScore() {
+            return vector.getDefaultScore();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import static org.apache.lucene.tests.util.TestUtil.nextInt;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.SparseFeatureVector;
+import com.o19s.es.ltr.ranker.dectree.FlatAdditiveDecisionTreeTests.CountingLazyVector;
+import com.o19s.es.ltr.ranker.linear.LinearRankerTests;
+import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+import com.o19s.es.ltr.ranker.normalizer.Normalizers;
+
+public class MappedAdditiveDecisionTreeTests extends LuceneTestCase {
+    private Path dir;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        dir = createTempDir();
+        MappedAdditiveDecisionTree.setDirectory(dir);
+    }
+
+    public void testName() {
+        FlatAdditiveDecisionTree flat = new FlatAdditiveDecisionTree.Builder()
+            .build(0, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+        MappedAdditiveDecisionTree mapped = new MappedAdditiveDecisionTree(flat);
+        assertEquals("mapped_additive_decision_tree", mapped.name());
+        assertEquals(0, mapped.numTrees());
+        assertEquals(0F, mapped.score(mapped.newFeatureVector(null)), 0F);
+    }
+
+    public void testMissingDirection() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        int split = builder.addSplit(0, 100F, true);
+        builder.setChildren(split, builder.addLeaf(0.5F), builder.addLeaf(0.2F));
+        builder.addTree(split, 1F);
+        Normalizer noop = Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME);
+
+        MappedAdditiveDecisionTree ranker = new MappedAdditiveDecisionTree(builder.build(1, noop, false));
+        LtrRanker.FeatureVector v = ranker.newFeatureVector(null);
+        assertEquals(0.5F, ranker.score(v), 0F);
+        v.setFeatureScore(0, 100F);
+        assertEquals(0.2F, ranker.score(v), 0F);
+        v.setFeatureScore(0, 99F);
+        assertEquals(0.5F, ranker.score(v), 0F);
+
+        MappedAdditiveDecisionTree zero = new MappedAdditiveDecisionTree(builder.build(1, noop, true));
+        assertEquals(0.5F, zero.score(zero.newFeatureVector(null)), 0F);
+    }
+
+    public void testFilesAreSharedByContent() throws IOException {
+        Path leftOver = Files.createFile(dir.resolve("old" + MappedAdditiveDecisionTree.FILE_SUFFIX));
+        Path partial = Files.createFile(dir.resolve("partial" + MappedAdditiveDecisionTree.FILE_SUFFIX + ".tmp"));
+        MappedAdditiveDecisionTree.setDirectory(dir);
+        // kept to be reused after a restart
+        assertTrue(Files.exists(leftOver));
+        assertFalse(Files.exists(partial));
+
+        FlatAdditiveDecisionTree flat = randomFlat(10, 50);
+        MappedAdditiveDecisionTree ranker = new MappedAdditiveDecisionTree(flat);
+        MappedAdditiveDecisionTree same = new MappedAdditiveDecisionTree(flat);
+        assertThat(ranker.mappedBytes(), greaterThan(0L));
+        assertEquals(2, countFiles());
+
+        MappedAdditiveDecisionTree other = new MappedAdditiveDecisionTree(randomFlat(10, 51));
+        assertEquals(3, countFiles());
+
+        MappedAdditiveDecisionTree.deleteUnusedFiles();
+        assertFalse(Files.exists(leftOver));
+        assertEquals(2, countFiles());
+
+        ranker.close();
+        assertEquals(1, countFiles());
+        // the nodes stay readable once the file is deleted
+        SparseFeatureVector vector = same.newFeatureVector(null);
+        assertEquals(flat.score(vector), same.score(vector), 0F);
+        same.close();
+        other.close();
+        assertEquals(0, countFiles());
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.count();
+        }
+    }
+
+    public void testScores() {
+        int nbFeatures = nextInt(random(), 1, 50);
+        FlatAdditiveDecisionTree flat = randomFlat(nbFeatures, nextInt(random(), 1, 200));
+        MappedAdditiveDecisionTree mapped = new MappedAdditiveDecisionTree(flat);
+        assertEquals(flat.numTrees(), mapped.numTrees());
+        assertArrayEquals(flat.usedFeatures(), mapped.usedFeatures());
+        assertTrue(mapped.supportsLazyFeatures());
+
+        SparseFeatureVector vector = null;
+        int numPoints = 100;
+        float[] points = new float[numPoints * nbFeatures];
+        float[] expected = new float[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            vector = mapped.newFeatureVector(vector);
+            for (int f = 0; f < nbFeatures; f++) {
+                int r = random().nextInt(8);
+                if (r > 1) {
+                    vector.setFeatureScore(f, nextInt(random(), -20, 20) / 2F);
+                } else if (r == 1) {
+                    vector.setFeatureScore(f, Float.NaN);
+                }
+            }
+            System.arraycopy(vector.scores, 0, points, i * nbFeatures, nbFeatures);
+            expected[i] = flat.score(vector);
+            assertEquals(expected[i], mapped.score(vector), 0F);
+            assertEquals(expected[i], mapped.score(new CountingLazyVector(vector)), 0F);
+        }
+        float[] scores = new float[numPoints];
+        mapped.scoreBlock(points, nbFeatures, numPoints, scores);
+        assertArrayEquals(expected, scores, 0F);
+    }
+
+    public void testRamSize() {
+        FlatAdditiveDecisionTree flat = randomFlat(20, 100);
+        MappedAdditiveDecisionTree mapped = new MappedAdditiveDecisionTree(flat);
+        // only the roots and weights of the trees stay on-heap
+        assertThat(mapped.ramBytesUsed(), lessThan(flat.ramBytesUsed() / 4));
+    }
+
+    private static FlatAdditiveDecisionTree randomFlat(int nbFeatures, int nbTrees) {
+        NaiveAdditiveDecisionTree.Node[] trees = new NaiveAdditiveDecisionTree.Node[nbTrees];
+        for (int i = 0; i < nbTrees; i++) {
+            trees[i] = NaiveAdditiveDecisionTreeTests.randomTree(nbFeatures, nextInt(random(), 0, 8));
+        }
+        float[] weights = LinearRankerTests.generateRandomWeights(nbTrees);
+        Normalizer normalizer = Normalizers
+            .get(random().nextBoolean() ? Normalizers.NOOP_NORMALIZER_NAME : Normalizers.SIGMOID_NORMALIZER_NAME);
+        return FlatAdditiveDecisionTree.fromNodes(trees, weights, nbFeatures, normalizer, random().nextBoolean());
+    }
+}
@@ -89,6 +89,23 @@ public class NaiveAdditiveDecisionTreeTests extends LuceneTestCase {
         assertEquals(expected, ranker.score(vector), Math.ulp(expected));
     }
 
+    public void testScoreBlock() {
+        NaiveAdditiveDecisionTree ranker = generateRandomDecTree(1, 100, 1, 100, 2, 10, null);
+        int numPoints = TestUtil.nextInt(random(), 1, 50);
+        float[] points = new float[numPoints * ranker.size()];
+        float[] expected = new float[numPoints];
+        SparseFeatureVector vector = null;
+        for (int i = 0; i < numPoints; i++) {
+            vector = ranker.newFeatureVector(vector);
+            fillRandomWeights(vector.scores);
+            System.arraycopy(vector.scores, 0, points, i * ranker.size(), ranker.size());
+            expected[i] = ranker.score(vector);
+        }
+        float[] scores = new float[numPoints];
+        ranker.scoreBlock(points, ranker.size(), numPoints, scores);
+        assertArrayEquals(expected, scores, 0F);
+    }
+
     public void testPerfAndRobustness() {
         SimpleCountRandomTreeGeneratorStatsCollector counts = new SimpleCountRandomTreeGeneratorStatsCollector();
         NaiveAdditiveDecisionTree ranker = generateRandomDecTree(100, 1000, 100, 1000, 5, 50, counts);
@@ -161,6 +178,23 @@ public class NaiveAdditiveDecisionTreeTests extends LuceneTestCase {
         return new NaiveAdditiveDecisionTree(trees, weights, nbFeatures, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME));
     }
 
+    /**
+     * A random tree of at most maxDepth levels of splits, leaves may appear at any depth. Thresholds are picked from
+     * a small set so that several splits share the same one, as in trained models, missing values go to a random side.
+     */
+    public static NaiveAdditiveDecisionTree.Node randomTree(int nbFeatures, int maxDepth) {
+        if (maxDepth == 0 || random().nextInt(5) == 0) {
+            return new NaiveAdditiveDecisionTree.Leaf(nextInt(random(), -1000, 1000) / 100F);
+        }
+        return new NaiveAdditiveDecisionTree.Split(
+            randomTree(nbFeatures, maxDepth - 1),
+            randomTree(nbFeatures, maxDepth - 1),
+            nextInt(random(), 0, nbFeatures - 1),
+            nextInt(random(), -20, 20) / 2F,
+            random().nextBoolean()
+        );
+    }
+
     public void testSize() {
         NaiveAdditiveDecisionTree ranker = new NaiveAdditiveDecisionTree(
             new NaiveAdditiveDecisionTree.Node[0],
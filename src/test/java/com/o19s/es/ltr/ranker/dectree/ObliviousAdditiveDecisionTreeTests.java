@@ -0,0 +1,148 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import static org.apache.lucene.tests.util.TestUtil.nextInt;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+import com.o19s.es.ltr.ranker.normalizer.Normalizers;
+
+public class ObliviousAdditiveDecisionTreeTests extends LuceneTestCase {
+    private static final Normalizer NOOP = Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME);
+
+    public void testLeafIndex() {
+        ObliviousAdditiveDecisionTree ranker = new ObliviousAdditiveDecisionTree.Builder()
+            // the first level sets the lowest bit
+            .addTree(new int[] { 0, 1 }, new float[] { 0.5F, 2F }, new boolean[] { true, false }, new float[] { 1F, 2F, 4F, 8F })
+            .build(2, 0.25F, NOOP);
+        assertArrayEquals(new int[] { 0, 1 }, ranker.usedFeatures());
+        LtrRanker.FeatureVector vector = ranker.newFeatureVector(null);
+        vector.setFeatureScore(0, 0F);
+        vector.setFeatureScore(1, 0F);
+        assertEquals(1.25F, ranker.score(vector), 0F);
+        vector.setFeatureScore(0, 0.5F);
+        assertEquals(2.25F, ranker.score(vector), 0F);
+        vector.setFeatureScore(1, 2F);
+        assertEquals(8.25F, ranker.score(vector), 0F);
+        // missing values go left at the first level, right at the second one
+        vector = ranker.newFeatureVector(vector);
+        assertEquals(4.25F, ranker.score(vector), 0F);
+    }
+
+    public void testSameScoresAsFlat() {
+        int nbFeatures = nextInt(random(), 1, 10);
+        int nbTrees = nextInt(random(), 1, 50);
+        ObliviousAdditiveDecisionTree.Builder builder = new ObliviousAdditiveDecisionTree.Builder();
+        FlatAdditiveDecisionTree.Builder flatBuilder = new FlatAdditiveDecisionTree.Builder();
+        for (int i = 0; i < nbTrees; i++) {
+            int depth = nextInt(random(), 0, 6);
+            int[] features = new int[depth];
+            float[] thresholds = new float[depth];
+            boolean[] defaultLeft = new boolean[depth];
+            float[] leaves = new float[1 << depth];
+            for (int d = 0; d < depth; d++) {
+                features[d] = random().nextInt(nbFeatures);
+                thresholds[d] = nextInt(random(), -10, 10) / 2F;
+                defaultLeft[d] = random().nextBoolean();
+            }
+            for (int l = 0; l < leaves.length; l++) {
+                leaves[l] = nextInt(random(), -1000, 1000) / 100F;
+            }
+            builder.addTree(features, thresholds, defaultLeft, leaves);
+            flatBuilder.addTree(addNode(flatBuilder, features, thresholds, defaultLeft, leaves, depth - 1, 0), 1F);
+        }
+        float bias = nextInt(random(), -10, 10) / 4F;
+        // the bias is a single leaf tree
+        flatBuilder.addTree(flatBuilder.addLeaf(bias), 1F);
+        ObliviousAdditiveDecisionTree ranker = builder.build(nbFeatures, bias, NOOP);
+        FlatAdditiveDecisionTree flat = flatBuilder.build(nbFeatures, NOOP, false);
+        assertEquals(nbTrees, ranker.numTrees());
+
+        int numPoints = nextInt(random(), 1, 20);
+        float[] points = new float[numPoints * nbFeatures];
+        float[] expected = new float[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            LtrRanker.FeatureVector vector = ranker.newFeatureVector(null);
+            LtrRanker.FeatureVector flatVector = flat.newFeatureVector(null);
+            for (int f = 0; f < nbFeatures; f++) {
+                float value = random().nextInt(5) == 0 ? Float.NaN : nextInt(random(), -12, 12) / 2F;
+                points[i * nbFeatures + f] = value;
+                if (!Float.isNaN(value) || random().nextBoolean()) {
+                    vector.setFeatureScore(f, value);
+                    flatVector.setFeatureScore(f, value);
+                }
+            }
+            expected[i] = flat.score(flatVector);
+            assertEquals(expected[i], ranker.score(vector), Math.ulp(expected[i]) * nbTrees);
+        }
+        float[] scores = new float[numPoints];
+        ranker.scoreBlock(points, nbFeatures, numPoints, scores);
+        for (int i = 0; i < numPoints; i++) {
+            assertEquals(expected[i], scores[i], Math.ulp(expected[i]) * nbTrees);
+        }
+    }
+
+    public void testFoldNormalizers() {
+        ObliviousAdditiveDecisionTree ranker = new ObliviousAdditiveDecisionTree.Builder()
+            .addTree(new int[] { 0, 1 }, new float[] { 0.5F, 2F }, new boolean[] { true, false }, new float[] { 1F, 2F, 4F, 8F })
+            .build(2, 0F, NOOP);
+        float[] shifts = { 1F, -2F };
+        float[] scales = { 3F, 0.5F };
+        ObliviousAdditiveDecisionTree folded = ranker.foldNormalizers(shifts, scales);
+        for (int i = 0; i < 100; i++) {
+            LtrRanker.FeatureVector vector = ranker.newFeatureVector(null);
+            LtrRanker.FeatureVector raw = folded.newFeatureVector(null);
+            for (int f = 0; f < 2; f++) {
+                if (random().nextInt(4) != 0) {
+                    float value = nextInt(random(), -40, 40) / 8F;
+                    raw.setFeatureScore(f, value);
+                    vector.setFeatureScore(f, (value - shifts[f]) / scales[f]);
+                }
+            }
+            assertEquals(ranker.score(vector), folded.score(raw), 0F);
+        }
+    }
+
+    public void testBadTrees() {
+        ObliviousAdditiveDecisionTree.Builder builder = new ObliviousAdditiveDecisionTree.Builder();
+        expectThrows(
+            IllegalArgumentException.class,
+            () -> builder.addTree(new int[] { 0 }, new float[] { 0F }, new boolean[] { true }, new float[] { 1F })
+        );
+        expectThrows(
+            IllegalArgumentException.class,
+            () -> builder.addTree(new int[] { 0 }, new float[0], new boolean[] { true }, new float[] { 1F, 2F })
+        );
+        builder.addTree(new int[] { 3 }, new float[] { 0F }, new boolean[] { true }, new float[] { 1F, 2F });
+        expectThrows(IllegalArgumentException.class, () -> builder.build(2, 0F, NOOP));
+    }
+
+    /**
+     * Expand the oblivious tree into a flat one, the node at depth {@code level} covers the leaves whose
+     * bits below {@code level} are the ones of {@code index}
+     */
+    private static int addNode(
+        FlatAdditiveDecisionTree.Builder builder,
+        int[] features,
+        float[] thresholds,
+        boolean[] defaultLeft,
+        float[] leaves,
+        int level,
+        int index
+    ) {
+        if (level < 0) {
+            return builder.addLeaf(leaves[index]);
+        }
+        int split = builder.addSplit(features[level], thresholds[level], defaultLeft[level]);
+        int left = addNode(builder, features, thresholds, defaultLeft, leaves, level - 1, index);
+        int right = addNode(builder, features, thresholds, defaultLeft, leaves, level - 1, index | (1 << level));
+        builder.setChildren(split, left, right);
+        return split;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import static java.util.Collections.singletonMap;
+import static org.apache.lucene.tests.util.TestUtil.nextInt;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.SparseFeatureVector;
+import com.o19s.es.ltr.ranker.dectree.FlatAdditiveDecisionTreeTests.CountingLazyVector;
+import com.o19s.es.ltr.ranker.linear.LinearRanker;
+import com.o19s.es.ltr.ranker.linear.LinearRankerTests;
+import com.o19s.es.ltr.ranker.normalizer.FeatureNormalizingRanker;
+import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+import com.o19s.es.ltr.ranker.normalizer.Normalizers;
+import com.o19s.es.ltr.ranker.normalizer.StandardFeatureNormalizer;
+
+public class QuantizedAdditiveDecisionTreeTests extends LuceneTestCase {
+
+    public void testName() {
+        FlatAdditiveDecisionTree flat = new FlatAdditiveDecisionTree.Builder()
+            .build(0, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+        QuantizedAdditiveDecisionTree quantized = new QuantizedAdditiveDecisionTree(flat);
+        assertEquals("quantized_additive_decision_tree", quantized.name());
+        assertEquals(0, quantized.numTrees());
+        assertEquals(0F, quantized.score(quantized.newFeatureVector(null)), 0F);
+    }
+
+    public void testMissingDirection() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        int split = builder.addSplit(0, 100F, true);
+        builder.setChildren(split, builder.addLeaf(0.5F), builder.addLeaf(0.2F));
+        builder.addTree(split, 1F);
+        // single leaf tree
+        builder.addTree(builder.addLeaf(1F), 2F);
+        Normalizer noop = Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME);
+
+        QuantizedAdditiveDecisionTree ranker = new QuantizedAdditiveDecisionTree(builder.build(1, noop, false));
+        assertThat(ranker.maxDeviation(), lessThan(0.001F));
+        // the scores are rounded to float
+        float delta = ranker.maxDeviation() + Math.ulp(2.5F);
+        LtrRanker.FeatureVector v = ranker.newFeatureVector(null);
+        assertEquals(2.5F, ranker.score(v), delta);
+        v.setFeatureScore(0, 100F);
+        assertEquals(2.2F, ranker.score(v), delta);
+        v.setFeatureScore(0, 99F);
+        assertEquals(2.5F, ranker.score(v), delta);
+
+        QuantizedAdditiveDecisionTree zero = new QuantizedAdditiveDecisionTree(builder.build(1, noop, true));
+        assertEquals(2.5F, zero.score(zero.newFeatureVector(null)), delta);
+    }
+
+    public void testExactThresholds() {
+        // thresholds only one ulp apart must not be merged
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        int split = builder.addSplit(0, 1F, false);
+        int right = builder.addSplit(0, Math.nextUp(1F), false);
+        builder.setChildren(right, builder.addLeaf(2F), builder.addLeaf(3F));
+        builder.setChildren(split, builder.addLeaf(1F), right);
+        builder.addTree(split, 1F);
+        QuantizedAdditiveDecisionTree ranker = new QuantizedAdditiveDecisionTree(
+            builder.build(1, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false)
+        );
+        float delta = ranker.maxDeviation() + Math.ulp(3F);
+        LtrRanker.FeatureVector v = ranker.newFeatureVector(null);
+        v.setFeatureScore(0, Math.nextDown(1F));
+        assertEquals(1F, ranker.score(v), delta);
+        v.setFeatureScore(0, 1F);
+        assertEquals(2F, ranker.score(v), delta);
+        v.setFeatureScore(0, Math.nextUp(1F));
+        assertEquals(3F, ranker.score(v), delta);
+    }
+
+    public void testTooManyLeaves() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        builder.addTree(builder.addNode(completeTree(16)), 1F);
+        FlatAdditiveDecisionTree flat = builder.build(1, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> new QuantizedAdditiveDecisionTree(flat));
+        assertThat(e.getMessage(), containsString("the [quantized] evaluator does not support it"));
+
+        FlatAdditiveDecisionTree.Builder maxBuilder = new FlatAdditiveDecisionTree.Builder();
+        maxBuilder.addTree(maxBuilder.addNode(completeTree(15)), 1F);
+        new QuantizedAdditiveDecisionTree(maxBuilder.build(1, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false));
+    }
+
+    public void testNonFiniteLeaf() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        builder.addTree(builder.addLeaf(Float.POSITIVE_INFINITY), 1F);
+        FlatAdditiveDecisionTree flat = builder.build(1, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> new QuantizedAdditiveDecisionTree(flat));
+        assertEquals("Leaf values must be finite to be quantized but got [Infinity]", e.getMessage());
+    }
+
+    public void testCheckMaxDeviation() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        int split = builder.addSplit(0, 0F, false);
+        builder.setChildren(split, builder.addLeaf(1F), builder.addLeaf(0.1F));
+        builder.addTree(split, 1F);
+        QuantizedAdditiveDecisionTree ranker = new QuantizedAdditiveDecisionTree(
+            builder.build(1, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false)
+        );
+        assertThat(ranker.maxDeviation(), greaterThan(0F));
+        QuantizedAdditiveDecisionTree.checkMaxDeviation(ranker, ranker.maxDeviation());
+        // without tolerance nothing is checked
+        QuantizedAdditiveDecisionTree.checkMaxDeviation(ranker, null);
+        QuantizedAdditiveDecisionTree.checkMaxDeviation(new LinearRanker(new float[1]), null);
+        // the deviation reported when the model is stored
+        assertEquals(ranker.maxDeviation(), QuantizedAdditiveDecisionTree.maxDeviation(ranker), 0F);
+        LtrRanker normalized = new FeatureNormalizingRanker(ranker, singletonMap(0, new StandardFeatureNormalizer(1F, 2F)));
+        assertEquals(ranker.maxDeviation(), QuantizedAdditiveDecisionTree.maxDeviation(normalized), 0F);
+        assertNull(QuantizedAdditiveDecisionTree.maxDeviation(new LinearRanker(new float[1])));
+        IllegalArgumentException e = expectThrows(
+            IllegalArgumentException.class,
+            () -> QuantizedAdditiveDecisionTree.checkMaxDeviation(ranker, 0F)
+        );
+        assertThat(e.getMessage(), containsString("more than the tolerance of [0.0]"));
+        e = expectThrows(
+            IllegalArgumentException.class,
+            () -> QuantizedAdditiveDecisionTree.checkMaxDeviation(new LinearRanker(new float[1]), 1F)
+        );
+        assertEquals("A quantization tolerance requires the [quantized] evaluator", e.getMessage());
+    }
+
+    public void testScoresWithinMaxDeviation() {
+        int nbFeatures = nextInt(random(), 1, 50);
+        int nbTrees = nextInt(random(), 1, 200);
+        NaiveAdditiveDecisionTree.Node[] trees = new NaiveAdditiveDecisionTree.Node[nbTrees];
+        for (int i = 0; i < nbTrees; i++) {
+            trees[i] = NaiveAdditiveDecisionTreeTests.randomTree(nbFeatures, nextInt(random(), 0, 6));
+        }
+        float[] weights = LinearRankerTests.generateRandomWeights(nbTrees);
+        Normalizer normalizer = Normalizers
+            .get(random().nextBoolean() ? Normalizers.NOOP_NORMALIZER_NAME : Normalizers.SIGMOID_NORMALIZER_NAME);
+        FlatAdditiveDecisionTree flat = FlatAdditiveDecisionTree.fromNodes(trees, weights, nbFeatures, normalizer, random().nextBoolean());
+        QuantizedAdditiveDecisionTree quantized = new QuantizedAdditiveDecisionTree(flat);
+        assertEquals(flat.numTrees(), quantized.numTrees());
+        assertArrayEquals(flat.usedFeatures(), quantized.usedFeatures());
+        assertTrue(quantized.supportsLazyFeatures());
+        // the float model accumulates its own rounding errors
+        float delta = quantized.maxDeviation() + 1e-4F;
+
+        SparseFeatureVector vector = null;
+        int numPoints = 100;
+        float[] points = new float[numPoints * nbFeatures];
+        float[] expected = new float[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            vector = quantized.newFeatureVector(vector);
+            for (int f = 0; f < nbFeatures; f++) {
+                // leave some features unset and set some to NaN to exercise the missing value handling
+                int r = random().nextInt(8);
+                if (r > 1) {
+                    vector.setFeatureScore(f, nextInt(random(), -20, 20) / 2F);
+                } else if (r == 1) {
+                    vector.setFeatureScore(f, Float.NaN);
+                }
+            }
+            System.arraycopy(vector.scores, 0, points, i * nbFeatures, nbFeatures);
+            expected[i] = quantized.score(vector);
+            assertEquals(flat.score(vector), expected[i], delta);
+            assertEquals(Float.floatToIntBits(expected[i]), Float.floatToIntBits(quantized.score(new CountingLazyVector(vector))));
+        }
+        float[] scores = new float[numPoints];
+        quantized.scoreBlock(points, nbFeatures, numPoints, scores);
+        assertArrayEquals(expected, scores, 0F);
+    }
+
+    public void testRamSize() {
+        int nbTrees = 100;
+        NaiveAdditiveDecisionTree.Node[] trees = new NaiveAdditiveDecisionTree.Node[nbTrees];
+        for (int i = 0; i < nbTrees; i++) {
+            trees[i] = NaiveAdditiveDecisionTreeTests.randomTree(20, 8);
+        }
+        float[] weights = LinearRankerTests.generateRandomWeights(nbTrees);
+        FlatAdditiveDecisionTree flat = FlatAdditiveDecisionTree
+            .fromNodes(trees, weights, 20, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+        assertThat(2 * new QuantizedAdditiveDecisionTree(flat).ramBytesUsed(), lessThan(flat.ramBytesUsed()));
+    }
+
+    private static NaiveAdditiveDecisionTree.Node completeTree(int depth) {
+        if (depth == 0) {
+            return new NaiveAdditiveDecisionTree.Leaf(1F);
+        }
+        return new NaiveAdditiveDecisionTree.Split(completeTree(depth - 1), completeTree(depth - 1), 0, depth, false);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import static org.apache.lucene.tests.util.TestUtil.nextInt;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.SparseFeatureVector;
+import com.o19s.es.ltr.ranker.linear.LinearRankerTests;
+import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+import com.o19s.es.ltr.ranker.normalizer.Normalizers;
+
+public class QuickScorerAdditiveDecisionTreeTests extends LuceneTestCase {
+
+    public void testName() {
+        FlatAdditiveDecisionTree flat = new FlatAdditiveDecisionTree.Builder()
+            .build(0, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+        assertEquals("quickscorer_additive_decision_tree", new QuickScorerAdditiveDecisionTree(flat).name());
+    }
+
+    public void testMissingDirection() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        int split = builder.addSplit(0, 100F, true);
+        builder.setChildren(split, builder.addLeaf(0.5F), builder.addLeaf(0.2F));
+        builder.addTree(split, 1F);
+        // single leaf tree
+        builder.addTree(builder.addLeaf(1F), 2F);
+        Normalizer noop = Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME);
+
+        QuickScorerAdditiveDecisionTree ranker = new QuickScorerAdditiveDecisionTree(builder.build(1, noop, false));
+        LtrRanker.FeatureVector v = ranker.newFeatureVector(null);
+        assertEquals(2.5F, ranker.score(v), 0F);
+        v.setFeatureScore(0, 100F);
+        assertEquals(2.2F, ranker.score(v), 0F);
+        v.setFeatureScore(0, 99F);
+        assertEquals(2.5F, ranker.score(v), 0F);
+
+        QuickScorerAdditiveDecisionTree zero = new QuickScorerAdditiveDecisionTree(builder.build(1, noop, true));
+        assertEquals(2.5F, zero.score(zero.newFeatureVector(null)), 0F);
+    }
+
+    public void testTooManyLeaves() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        builder.addTree(builder.addNode(completeTree(7)), 1F);
+        FlatAdditiveDecisionTree flat = builder.build(1, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+        assertEquals(128, flat.numLeaves());
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> new QuickScorerAdditiveDecisionTree(flat));
+        assertEquals("Tree [0] has [128] leaves, the [quickscorer] evaluator supports at most [64] leaves per tree", e.getMessage());
+
+        FlatAdditiveDecisionTree.Builder maxBuilder = new FlatAdditiveDecisionTree.Builder();
+        maxBuilder.addTree(maxBuilder.addNode(completeTree(6)), 1F);
+        new QuickScorerAdditiveDecisionTree(maxBuilder.build(1, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false));
+    }
+
+    public void testSameScoresAsFlat() {
+        int nbFeatures = nextInt(random(), 1, 50);
+        int nbTrees = nextInt(random(), 1, 200);
+        NaiveAdditiveDecisionTree.Node[] trees = new NaiveAdditiveDecisionTree.Node[nbTrees];
+        for (int i = 0; i < nbTrees; i++) {
+            trees[i] = NaiveAdditiveDecisionTreeTests.randomTree(nbFeatures, nextInt(random(), 0, 6));
+        }
+        float[] weights = LinearRankerTests.generateRandomWeights(nbTrees);
+        Normalizer normalizer = Normalizers
+            .get(random().nextBoolean() ? Normalizers.NOOP_NORMALIZER_NAME : Normalizers.SIGMOID_NORMALIZER_NAME);
+        FlatAdditiveDecisionTree flat = FlatAdditiveDecisionTree.fromNodes(trees, weights, nbFeatures, normalizer, random().nextBoolean());
+        QuickScorerAdditiveDecisionTree quickScorer = new QuickScorerAdditiveDecisionTree(flat);
+
+        SparseFeatureVector flatVector = null;
+        SparseFeatureVector qsVector = null;
+        int numPoints = 100;
+        float[] points = new float[numPoints * nbFeatures];
+        float[] expected = new float[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            flatVector = flat.newFeatureVector(flatVector);
+            qsVector = quickScorer.newFeatureVector(qsVector);
+            for (int f = 0; f < nbFeatures; f++) {
+                // leave some features unset and set some to NaN to exercise the missing value handling
+                int r = random().nextInt(8);
+                if (r > 1) {
+                    float value = nextInt(random(), -100, 100) / 10F;
+                    flatVector.setFeatureScore(f, value);
+                    qsVector.setFeatureScore(f, value);
+                } else if (r == 1) {
+                    flatVector.setFeatureScore(f, Float.NaN);
+                    qsVector.setFeatureScore(f, Float.NaN);
+                }
+            }
+            System.arraycopy(qsVector.scores, 0, points, i * nbFeatures, nbFeatures);
+            expected[i] = flat.score(flatVector);
+            assertEquals(Float.floatToIntBits(expected[i]), Float.floatToIntBits(quickScorer.score(qsVector)));
+        }
+        float[] scores = new float[numPoints];
+        quickScorer.scoreBlock(points, nbFeatures, numPoints, scores);
+        assertArrayEquals(expected, scores, 0F);
+    }
+
+    private static NaiveAdditiveDecisionTree.Node completeTree(int depth) {
+        if (depth == 0) {
+            return new NaiveAdditiveDecisionTree.Leaf(1F);
+        }
+        return new NaiveAdditiveDecisionTree.Split(completeTree(depth - 1), completeTree(depth - 1), 0, depth, false);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import static org.apache.lucene.tests.util.TestUtil.nextInt;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.SparseFeatureVector;
+import com.o19s.es.ltr.ranker.linear.LinearRankerTests;
+import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+import com.o19s.es.ltr.ranker.normalizer.Normalizers;
+
+public class TreeEnsembleCompilerTests extends LuceneTestCase {
+
+    public void testMissingDirection() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        int split = builder.addSplit(0, 100F, true);
+        builder.setChildren(split, builder.addLeaf(0.5F), builder.addLeaf(0.2F));
+        builder.addTree(split, 1F);
+        split = builder.addSplit(0, Float.NaN, true);
+        builder.setChildren(split, builder.addLeaf(1F), builder.addLeaf(2F));
+        builder.addTree(split, 1F);
+        Normalizer noop = Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME);
+
+        FlatAdditiveDecisionTree ranker = TreeEnsembleCompiler.compile(builder.build(1, noop, false));
+        assertThat(ranker, instanceOf(CompiledAdditiveDecisionTree.class));
+        assertEquals("compiled_additive_decision_tree", ranker.name());
+        LtrRanker.FeatureVector v = ranker.newFeatureVector(null);
+        assertEquals(1.5F, ranker.score(v), 0F);
+        v.setFeatureScore(0, 100F);
+        assertEquals(2.2F, ranker.score(v), 0F);
+        v.setFeatureScore(0, 99F);
+        assertEquals(2.5F, ranker.score(v), 0F);
+    }
+
+    public void testFallbackOnLargeTree() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        builder.addTree(builder.addNode(completeTree(10)), 1F);
+        FlatAdditiveDecisionTree flat = builder.build(1, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+        assertSame(flat, TreeEnsembleCompiler.compile(flat));
+    }
+
+    public void testSameScoresAsFlat() {
+        int nbFeatures = nextInt(random(), 1, 500);
+        // enough trees to span several generated methods
+        int nbTrees = nextInt(random(), 1, 1000);
+        NaiveAdditiveDecisionTree.Node[] trees = new NaiveAdditiveDecisionTree.Node[nbTrees];
+        for (int i = 0; i < nbTrees; i++) {
+            trees[i] = NaiveAdditiveDecisionTreeTests.randomTree(nbFeatures, nextInt(random(), 0, 6));
+        }
+        float[] weights = LinearRankerTests.generateRandomWeights(nbTrees);
+        Normalizer normalizer = Normalizers
+            .get(random().nextBoolean() ? Normalizers.NOOP_NORMALIZER_NAME : Normalizers.SIGMOID_NORMALIZER_NAME);
+        FlatAdditiveDecisionTree flat = FlatAdditiveDecisionTree.fromNodes(trees, weights, nbFeatures, normalizer, random().nextBoolean());
+        FlatAdditiveDecisionTree compiled = TreeEnsembleCompiler.compile(flat);
+        assertThat(compiled, instanceOf(CompiledAdditiveDecisionTree.class));
+        assertThat(compiled.ramBytesUsed(), greaterThan(flat.ramBytesUsed()));
+
+        SparseFeatureVector flatVector = null;
+        SparseFeatureVector compiledVector = null;
+        int numPoints = 100;
+        float[] points = new float[numPoints * nbFeatures];
+        float[] expected = new float[numPoints];
+        for (int i = 0; i < numPoints; i++) {
+            flatVector = flat.newFeatureVector(flatVector);
+            compiledVector = compiled.newFeatureVector(compiledVector);
+            for (int f = 0; f < nbFeatures; f++) {
+                // leave some features unset and set some to NaN to exercise the missing value handling
+                int r = random().nextInt(8);
+                if (r > 1) {
+                    float value = nextInt(random(), -100, 100) / 10F;
+                    flatVector.setFeatureScore(f, value);
+                    compiledVector.setFeatureScore(f, value);
+                } else if (r == 1) {
+                    flatVector.setFeatureScore(f, Float.NaN);
+                    compiledVector.setFeatureScore(f, Float.NaN);
+                }
+            }
+            System.arraycopy(compiledVector.scores, 0, points, i * nbFeatures, nbFeatures);
+            expected[i] = flat.score(flatVector);
+            assertEquals(Float.floatToIntBits(expected[i]), Float.floatToIntBits(compiled.score(compiledVector)));
+        }
+        float[] scores = new float[numPoints];
+        compiled.scoreBlock(points, nbFeatures, numPoints, scores);
+        assertArrayEquals(expected, scores, 0F);
+    }
+
+    private static NaiveAdditiveDecisionTree.Node completeTree(int depth) {
+        if (depth == 0) {
+            return new NaiveAdditiveDecisionTree.Leaf(1F);
+        }
+        return new NaiveAdditiveDecisionTree.Split(completeTree(depth - 1), completeTree(depth - 1), 0, depth, false);
+    }
+}
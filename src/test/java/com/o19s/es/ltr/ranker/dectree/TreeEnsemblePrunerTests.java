@@ -0,0 +1,154 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import static org.apache.lucene.tests.util.TestUtil.nextInt;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+import com.o19s.es.ltr.ranker.normalizer.Normalizers;
+
+public class TreeEnsemblePrunerTests extends LuceneTestCase {
+    private static final Normalizer NOOP = Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME);
+
+    public void testNothingToPrune() {
+        FlatAdditiveDecisionTree tree = ensemble();
+        float[] points = randomPoints(50);
+        TreeEnsemblePruner.Result result = new TreeEnsemblePruner(tree, points, 50).prune(Integer.MAX_VALUE, 0F, 0F);
+        assertEquals(tree.numTrees(), result.getTree().numTrees());
+        assertEquals(tree.numSplits(), result.getTree().numSplits());
+        assertEquals(0, result.getDroppedFeatures().length);
+        assertEquals(0D, result.getMaxScoreDeviation(), 0D);
+        assertEquals(1D, result.getRankCorrelation(), 0D);
+    }
+
+    public void testTrailingTrees() {
+        FlatAdditiveDecisionTree tree = ensemble();
+        // f0 < 0 and f1 < 0, then f0 >= 0 and f1 >= 0
+        float[] points = { -1F, -1F, 1F, 1F };
+        TreeEnsemblePruner.Result result = new TreeEnsemblePruner(tree, points, 2).prune(1, 0F, 0F);
+        FlatAdditiveDecisionTree lite = result.getTree();
+        // the first tree and the mean output of the others
+        assertEquals(2, lite.numTrees());
+        assertArrayEquals(new int[] { 0 }, lite.usedFeatures());
+        assertArrayEquals(new int[] { 1 }, result.getDroppedFeatures());
+        float[] scores = new float[2];
+        lite.scoreBlock(points, 2, 2, scores);
+        // the trees 2 and 3 output 0.1 + 0.5 and 0.2 + 0.5
+        assertEquals(1F + 0.65F, scores[0], 1e-6F);
+        assertEquals(10F + 0.65F, scores[1], 1e-6F);
+        assertEquals(0.05D, result.getMeanScoreDeviation(), 1e-6D);
+        assertEquals(0.05D, result.getMaxScoreDeviation(), 1e-6D);
+        assertEquals(1D, result.getRankCorrelation(), 0D);
+    }
+
+    public void testWeakTrees() {
+        FlatAdditiveDecisionTree tree = ensemble();
+        float[] points = { -1F, 0F, 1F, 1F, 2F, -1F };
+        TreeEnsemblePruner.Result result = new TreeEnsemblePruner(tree, points, 3).prune(Integer.MAX_VALUE, 0.1F, 0F);
+        // the second tree only contributes 0.1 / 0.2, the last one is constant
+        assertEquals(2, result.getTree().numTrees());
+        assertArrayEquals(new int[] { 0 }, result.getTree().usedFeatures());
+        assertTrue(result.getMaxScoreDeviation() < 0.1D);
+        // the last two points are tied in the lite model: ranks 1, 3, 2 and 1, 2.5, 2.5
+        assertEquals(0.8660254D, result.getRankCorrelation(), 1e-6D);
+    }
+
+    public void testWeakFeatures() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        int root = builder.addSplit(0, 0F, true);
+        int right = builder.addSplit(1, 0F, true);
+        builder.setChildren(root, builder.addLeaf(1F), right);
+        builder.setChildren(right, builder.addLeaf(10F), builder.addLeaf(10.01F));
+        FlatAdditiveDecisionTree tree = builder.addTree(root, 1F).build(2, NOOP, false);
+        // f1 is mostly >= 0
+        float[] points = { -1F, 0F, 1F, 1F, 1F, 2F, 1F, -1F };
+        TreeEnsemblePruner.Result result = new TreeEnsemblePruner(tree, points, 4).prune(Integer.MAX_VALUE, 0F, 0.1F);
+        FlatAdditiveDecisionTree lite = result.getTree();
+        assertArrayEquals(new int[] { 0 }, lite.usedFeatures());
+        assertArrayEquals(new int[] { 1 }, result.getDroppedFeatures());
+        assertEquals(1, lite.numSplits());
+        float[] scores = new float[4];
+        lite.scoreBlock(points, 2, 4, scores);
+        // the split on f1 is replaced with its right child, the last point loses 0.01
+        for (int p = 0; p < 4; p++) {
+            assertEquals(p == 0 ? 1F : 10.01F, scores[p], 0.0025F + 1e-6F);
+        }
+        assertEquals(0.0075D, result.getMaxScoreDeviation(), 1e-5D);
+        // the ties of the lite model do not match the order of the full model
+        assertTrue(result.getRankCorrelation() < 1D);
+    }
+
+    public void testDegeneratedTree() {
+        // a chain of splits deep enough to overflow the stack if the tree was copied recursively
+        int depth = 100_000;
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        int[] splits = new int[depth];
+        for (int i = 0; i < depth; i++) {
+            splits[i] = builder.addSplit(i % 2, i, true);
+        }
+        for (int i = 0; i < depth; i++) {
+            builder.setChildren(splits[i], builder.addLeaf(i), i + 1 < depth ? splits[i + 1] : builder.addLeaf(depth));
+        }
+        FlatAdditiveDecisionTree tree = builder.addTree(splits[0], 1F).build(2, NOOP, false);
+        float[] points = { -1F, -1F, 10F, 10F, depth, depth };
+        TreeEnsemblePruner.Result result = new TreeEnsemblePruner(tree, points, 3).prune(Integer.MAX_VALUE, 0F, 0F);
+        assertEquals(depth, result.getTree().numSplits());
+        assertEquals(0D, result.getMaxScoreDeviation(), 0D);
+        float[] scores = new float[3];
+        result.getTree().scoreBlock(points, 2, 3, scores);
+        assertArrayEquals(new float[] { 0F, 11F, depth }, scores, 0F);
+    }
+
+    public void testPruneEverything() {
+        FlatAdditiveDecisionTree tree = ensemble();
+        float[] points = { -1F, 0F, 1F, 1F };
+        TreeEnsemblePruner.Result result = new TreeEnsemblePruner(tree, points, 2).prune(0, 0F, 0F);
+        // a single leaf
+        assertEquals(1, result.getTree().numTrees());
+        assertEquals(0, result.getTree().numSplits());
+        assertArrayEquals(new int[] { 0, 1 }, result.getDroppedFeatures());
+        // a constant score cannot rank anything
+        assertEquals(0D, result.getRankCorrelation(), 0D);
+    }
+
+    public void testRankCorrelation() {
+        assertEquals(1D, TreeEnsemblePruner.rankCorrelation(new float[] { 1F, 2F, 3F }, new float[] { 0F, 5F, 6F }, 3), 0D);
+        assertEquals(-1D, TreeEnsemblePruner.rankCorrelation(new float[] { 1F, 2F, 3F }, new float[] { 3F, 2F, 1F }, 3), 1e-9D);
+        assertEquals(1D, TreeEnsemblePruner.rankCorrelation(new float[] { 1F, 1F }, new float[] { 2F, 2F }, 2), 0D);
+        assertEquals(0D, TreeEnsemblePruner.rankCorrelation(new float[] { 1F, 1F }, new float[] { 1F, 2F }, 2), 0D);
+        // ranks 1.5, 1.5, 3 and 1, 2, 3
+        assertEquals(0.8660254D, TreeEnsemblePruner.rankCorrelation(new float[] { 1F, 1F, 2F }, new float[] { 1F, 2F, 3F }, 3), 1e-6D);
+    }
+
+    public void testBadSamples() {
+        FlatAdditiveDecisionTree tree = ensemble();
+        expectThrows(IllegalArgumentException.class, () -> new TreeEnsemblePruner(tree, new float[0], 0));
+        expectThrows(IllegalArgumentException.class, () -> new TreeEnsemblePruner(tree, new float[3], 2));
+    }
+
+    /**
+     * Three trees over two features: f0 < 0 ? 1 : 10, f1 < 0 ? 0.1 : 0.2 and a single leaf 0.5
+     */
+    private static FlatAdditiveDecisionTree ensemble() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        int first = builder.addSplit(0, 0F, true);
+        builder.setChildren(first, builder.addLeaf(1F), builder.addLeaf(10F));
+        int second = builder.addSplit(1, 0F, true);
+        builder.setChildren(second, builder.addLeaf(0.1F), builder.addLeaf(0.2F));
+        builder.addTree(first, 1F).addTree(second, 1F).addTree(builder.addLeaf(0.5F), 1F);
+        return builder.build(2, NOOP, false);
+    }
+
+    private static float[] randomPoints(int numPoints) {
+        float[] points = new float[numPoints * 2];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = random().nextInt(10) == 0 ? Float.NaN : nextInt(random(), -10, 10) / 4F;
+        }
+        return points;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.dectree;
+
+import static com.o19s.es.ltr.LtrTestUtils.randomFeature;
+import static org.apache.lucene.tests.util.TestUtil.nextInt;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+import com.o19s.es.ltr.feature.store.StoredFeature;
+import com.o19s.es.ltr.feature.store.StoredFeatureSet;
+import com.o19s.es.ltr.ranker.LtrRanker.FeatureVector;
+import com.o19s.es.ltr.ranker.linear.LinearRankerTests;
+import com.o19s.es.ltr.ranker.normalizer.Normalizer;
+import com.o19s.es.ltr.ranker.normalizer.Normalizers;
+import com.o19s.es.ltr.ranker.parser.XGBoostJsonParser;
+
+public class TreeLayoutOptimizerTests extends LuceneTestCase {
+
+    public void testHotChildFirst() throws IOException {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        int root = builder.addSplit(0, 0.5F, true);
+        int cold = builder.addSplit(1, 1.5F, false);
+        builder.setChildren(cold, builder.addLeaf(1F), builder.addLeaf(2F));
+        int hot = builder.addSplit(1, 2.5F, false);
+        builder.setChildren(hot, builder.addLeaf(3F), builder.addLeaf(4F));
+        builder.setChildren(root, cold, hot);
+        builder.addTree(root, 2F);
+        StoredFeatureSet set = set(2);
+        FlatAdditiveDecisionTree flat = builder.build(2, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+
+        TreeLayoutOptimizer optimizer = new TreeLayoutOptimizer(flat);
+        FeatureVector vector = flat.newFeatureVector(null);
+        vector.setFeatureScore(0, 1F);
+        optimizer.record(vector);
+        assertEquals(1, optimizer.samples());
+        assertTrue(optimizer.hotRight(root));
+        assertTrue(optimizer.hotRight(hot));
+        assertFalse(optimizer.hotRight(cold));
+
+        FlatAdditiveDecisionTree optimized = (FlatAdditiveDecisionTree) new XGBoostJsonParser().parse(set, optimizer.toXGBoostJson(set));
+        assertEquals(3, optimized.numSplits());
+        // the hot split follows the root
+        assertEquals(1, optimized.right[0]);
+        assertEquals(2, optimized.left[0]);
+        assertEquals(2.5F, optimized.threshold[1], 0F);
+        // weights are folded into the leaves
+        assertEquals(1F, optimized.weights[0], 0F);
+        assertEquals(8F, optimized.score(vector), 0F);
+        vector.setFeatureScore(0, Float.NaN);
+        assertEquals(4F, optimized.score(vector), 0F);
+    }
+
+    public void testScoresAreNotChanged() throws IOException {
+        int nbFeatures = nextInt(random(), 1, 20);
+        int nbTrees = nextInt(random(), 1, 50);
+        NaiveAdditiveDecisionTree.Node[] trees = new NaiveAdditiveDecisionTree.Node[nbTrees];
+        for (int i = 0; i < nbTrees; i++) {
+            trees[i] = NaiveAdditiveDecisionTreeTests.randomTree(nbFeatures, nextInt(random(), 0, 8));
+        }
+        float[] weights = LinearRankerTests.generateRandomWeights(nbTrees);
+        Normalizer normalizer = Normalizers
+            .get(random().nextBoolean() ? Normalizers.NOOP_NORMALIZER_NAME : Normalizers.SIGMOID_NORMALIZER_NAME);
+        FlatAdditiveDecisionTree flat = FlatAdditiveDecisionTree.fromNodes(trees, weights, nbFeatures, normalizer, random().nextBoolean());
+        StoredFeatureSet set = set(nbFeatures);
+
+        // skewed traffic
+        float[] skew = new float[nbFeatures];
+        for (int f = 0; f < nbFeatures; f++) {
+            skew[f] = nextInt(random(), -10, 10);
+        }
+        List<FeatureVector> samples = new ArrayList<>();
+        TreeLayoutOptimizer optimizer = new TreeLayoutOptimizer(flat);
+        for (int i = 0; i < 100; i++) {
+            FeatureVector vector = flat.newFeatureVector(null);
+            for (int f = 0; f < nbFeatures; f++) {
+                int r = random().nextInt(10);
+                if (r > 1) {
+                    vector.setFeatureScore(f, skew[f] + nextInt(random(), -2, 2) / 2F);
+                } else if (r == 1) {
+                    vector.setFeatureScore(f, Float.NaN);
+                }
+            }
+            samples.add(vector);
+            optimizer.record(vector);
+        }
+
+        FlatAdditiveDecisionTree optimized = (FlatAdditiveDecisionTree) new XGBoostJsonParser().parse(set, optimizer.toXGBoostJson(set));
+        assertEquals(flat.numTrees(), optimized.numTrees());
+        assertEquals(flat.numSplits(), optimized.numSplits());
+        assertEquals(flat.numLeaves(), optimized.numLeaves());
+        assertEquals(flat.missingAsZero, optimized.missingAsZero);
+        TreeLayoutOptimizer profile = new TreeLayoutOptimizer(optimized);
+        for (FeatureVector vector : samples) {
+            assertEquals(Float.floatToIntBits(flat.score(vector)), Float.floatToIntBits(optimized.score(vector)));
+            profile.record(vector);
+        }
+        for (int split = 0; split < optimized.numSplits(); split++) {
+            int hot = profile.hotRight(split) ? optimized.right[split] : optimized.left[split];
+            if (hot >= 0) {
+                assertEquals(split + 1, hot);
+            }
+        }
+    }
+
+    private static StoredFeatureSet set(int nbFeatures) throws IOException {
+        List<StoredFeature> features = new ArrayList<>(nbFeatures);
+        for (int i = 0; i < nbFeatures; i++) {
+            features.add(randomFeature("feature" + i));
+        }
+        return new StoredFeatureSet("set", features);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.ensemble;
+
+import static org.apache.lucene.tests.util.TestUtil.nextInt;
+
+import org.apache.lucene.expressions.Expression;
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.LtrRanker.FeatureVector;
+import com.o19s.es.ltr.ranker.dectree.FlatAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.linear.LinearRanker;
+import com.o19s.es.ltr.ranker.normalizer.Normalizers;
+import com.o19s.es.ltr.utils.Scripting;
+
+public class EnsembleRankerTests extends LuceneTestCase {
+
+    public void testWeightedSum() {
+        LinearRanker linear = new LinearRanker(new float[] { 1F, 0F, 2F });
+        FlatAdditiveDecisionTree tree = tree();
+        EnsembleRanker ranker = new EnsembleRanker(new LtrRanker[] { linear, tree }, new float[] { 0.5F, 2F });
+        assertArrayEquals(new int[] { 0, 1, 2 }, ranker.usedFeatures());
+
+        FeatureVector vector = null;
+        for (int i = 0; i < 20; i++) {
+            vector = ranker.newFeatureVector(vector);
+            FeatureVector linearVector = linear.newFeatureVector(null);
+            FeatureVector treeVector = tree.newFeatureVector(null);
+            for (int f = 0; f < 3; f++) {
+                if (random().nextInt(4) != 0) {
+                    float value = nextInt(random(), -20, 20) / 10F;
+                    vector.setFeatureScore(f, value);
+                    linearVector.setFeatureScore(f, value);
+                    treeVector.setFeatureScore(f, value);
+                }
+            }
+            // every member reads its own kind of vector, missing values are NaN for the tree
+            float expected = 0.5F * linear.score(linearVector) + 2F * tree.score(treeVector);
+            assertEquals(expected, ranker.score(vector), 0F);
+        }
+    }
+
+    public void testExpression() {
+        LinearRanker linear = new LinearRanker(new float[] { 1F, 0F, 2F });
+        FlatAdditiveDecisionTree tree = tree();
+        Expression expression = (Expression) Scripting.compile("max(lin, 0) * trees");
+        EnsembleRanker ranker = new EnsembleRanker(new LtrRanker[] { linear, tree }, new String[] { "lin", "trees" }, expression);
+
+        FeatureVector vector = ranker.newFeatureVector(null);
+        vector.setFeatureScore(0, 1F);
+        vector.setFeatureScore(1, 1F);
+        vector.setFeatureScore(2, 0.5F);
+        assertEquals(2F * 3F, ranker.score(vector), 0F);
+        vector = ranker.newFeatureVector(vector);
+        vector.setFeatureScore(0, -1F);
+        assertEquals(0F, ranker.score(vector), 0F);
+    }
+
+    public void testBadExpression() {
+        LtrRanker[] members = { new LinearRanker(new float[1]), new LinearRanker(new float[1]) };
+        String[] names = { "a", "b" };
+        expectThrows(IllegalArgumentException.class, () -> new EnsembleRanker(members, names, (Expression) Scripting.compile("a + c")));
+        expectThrows(IllegalArgumentException.class, () -> new EnsembleRanker(members, names, (Expression) Scripting.compile("a * 2")));
+        expectThrows(IllegalArgumentException.class, () -> new EnsembleRanker(members, new float[1]));
+        expectThrows(IllegalArgumentException.class, () -> new EnsembleRanker(new LtrRanker[0], new float[0]));
+    }
+
+    public void testFoldNormalizers() {
+        LinearRanker linear = new LinearRanker(new float[] { 1F, 0F, 2F });
+        FlatAdditiveDecisionTree tree = tree();
+        EnsembleRanker ranker = new EnsembleRanker(new LtrRanker[] { linear, tree }, new float[] { 1F, 1F });
+        float[] shifts = { 1F, 2F, 0F };
+        float[] scales = { 2F, 4F, 1F };
+        LtrRanker folded = ranker.foldNormalizers(shifts, scales);
+        assertTrue(folded instanceof EnsembleRanker);
+
+        FeatureVector normalized = ranker.newFeatureVector(null);
+        FeatureVector raw = folded.newFeatureVector(null);
+        for (int f = 0; f < 3; f++) {
+            float value = nextInt(random(), -20, 20) / 4F;
+            raw.setFeatureScore(f, value);
+            normalized.setFeatureScore(f, (value - shifts[f]) / scales[f]);
+        }
+        assertEquals(ranker.score(normalized), folded.score(raw), 1e-5F);
+
+        EnsembleRanker notFoldable = new EnsembleRanker(new LtrRanker[] { linear, new NotFoldable() }, new float[] { 1F, 1F });
+        assertNull(notFoldable.foldNormalizers(shifts, scales));
+        assertNull(notFoldable.usedFeatures());
+    }
+
+    /**
+     * f1 < 0.5 ? (f2 < 1 ? 1 : 2) : 3, with missing values going right
+     */
+    private static FlatAdditiveDecisionTree tree() {
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        int split = builder.addSplit(1, 0.5F, false);
+        int left = builder.addSplit(2, 1F, false);
+        builder.setChildren(left, builder.addLeaf(1F), builder.addLeaf(2F));
+        builder.setChildren(split, left, builder.addLeaf(3F));
+        builder.addTree(split, 1F);
+        return builder.build(3, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+    }
+
+    private static class NotFoldable extends LinearRanker {
+        NotFoldable() {
+            super(new float[3]);
+        }
+
+        @Override
+        public int[] usedFeatures() {
+            return null;
+        }
+
+        @Override
+        public LinearRanker foldNormalizers(float[] shifts, float[] scales) {
+            return null;
+        }
+    }
+}
@@ -50,6 +50,42 @@ public class LinearRankerTests extends LuceneTestCase {
         assertEquals(expected, ranker.score(point), Math.ulp(expected));
     }
 
+    public void testScoreWithIntercept() {
+        LinearRanker ranker = new LinearRanker(new float[] { 1, 2 }, 0.5F);
+        LtrRanker.FeatureVector point = ranker.newFeatureVector(null);
+        assertEquals(0.5F, ranker.score(point), 0F);
+        point.setFeatureScore(0, 2);
+        point.setFeatureScore(1, 3);
+        assertEquals(8.5F, ranker.score(point), 0F);
+        float[] scores = new float[1];
+        ranker.scoreBlock(new float[] { 2, 3 }, 2, 1, scores);
+        assertEquals(8.5F, scores[0], 0F);
+        assertNotEquals(ranker, new LinearRanker(new float[] { 1, 2 }));
+    }
+
+    public void testUsedFeatures() {
+        LinearRanker ranker = new LinearRanker(new float[] { 1, 0, -2, 0F });
+        assertArrayEquals(new int[] { 0, 2 }, ranker.usedFeatures());
+        assertArrayEquals(new int[0], new LinearRanker(new float[2]).usedFeatures());
+    }
+
+    public void testScoreBlock() {
+        LinearRanker ranker = generateRandomRanker(1, 100);
+        int numPoints = nextInt(random(), 1, 50);
+        float[] points = new float[numPoints * ranker.size()];
+        fillRandomWeights(points);
+        float[] expected = new float[numPoints];
+        DenseFeatureVector vector = null;
+        for (int i = 0; i < numPoints; i++) {
+            vector = ranker.newFeatureVector(vector);
+            System.arraycopy(points, i * ranker.size(), vector.scores, 0, ranker.size());
+            expected[i] = ranker.score(vector);
+        }
+        float[] scores = new float[numPoints];
+        ranker.scoreBlock(points, ranker.size(), numPoints, scores);
+        assertArrayEquals(expected, scores, 0F);
+    }
+
     public void testSize() {
         LinearRanker ranker = new LinearRanker(new float[] { 1, 2, 3 });
         assertEquals(ranker.size(), 3);
@@ -0,0 +1,133 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.mlp;
+
+import static org.apache.lucene.tests.util.TestUtil.nextInt;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.mlp.MlpRanker.Activation;
+import com.o19s.es.ltr.ranker.mlp.MlpRanker.Layer;
+
+public class MlpRankerTests extends LuceneTestCase {
+    public void testScore() {
+        // features 2 and 0 feed a relu layer of 2 units and a sigmoid output
+        Layer hidden = new Layer(new float[][] { { 1F, 2F }, { -1F, 1F } }, new float[] { 0.5F, -1F }, Activation.RELU);
+        Layer output = new Layer(new float[][] { { 2F, -3F } }, new float[] { 0.25F }, Activation.SIGMOID);
+        MlpRanker ranker = new MlpRanker(3, new int[] { 2, 0 }, Arrays.asList(hidden, output));
+        assertArrayEquals(new int[] { 0, 2 }, ranker.usedFeatures());
+
+        LtrRanker.FeatureVector vector = ranker.newFeatureVector(null);
+        vector.setFeatureScore(0, 1F);
+        vector.setFeatureScore(1, 100F);
+        vector.setFeatureScore(2, 3F);
+        // hidden: relu(3 + 2 + 0.5) = 5.5, relu(-3 + 1 - 1) = 0
+        float expected = (float) (1 / (1 + Math.exp(-(2 * 5.5 + 0.25))));
+        assertEquals(expected, ranker.score(vector), 1e-6F);
+
+        vector = ranker.newFeatureVector(vector);
+        // missing features are 0
+        expected = (float) (1 / (1 + Math.exp(-(2 * 0.5 + 0.25))));
+        assertEquals(expected, ranker.score(vector), 1e-6F);
+    }
+
+    public void testTanh() {
+        Layer layer = new Layer(new float[][] { { 0.5F } }, new float[] { 0F }, Activation.TANH);
+        MlpRanker ranker = new MlpRanker(1, new int[] { 0 }, Arrays.asList(layer));
+        LtrRanker.FeatureVector vector = ranker.newFeatureVector(null);
+        vector.setFeatureScore(0, 2F);
+        assertEquals((float) Math.tanh(1), ranker.score(vector), 1e-6F);
+    }
+
+    public void testScoreBlock() {
+        int nbFeatures = nextInt(random(), 1, 10);
+        MlpRanker ranker = randomRanker(nbFeatures);
+        // more than a tile
+        int numPoints = nextInt(random(), 1, MlpRanker.TILE_SIZE * 3);
+        float[] points = new float[numPoints * nbFeatures];
+        float[] expected = new float[numPoints];
+        LtrRanker.FeatureVector vector = null;
+        for (int i = 0; i < numPoints; i++) {
+            vector = ranker.newFeatureVector(vector);
+            for (int f = 0; f < nbFeatures; f++) {
+                float value = nextInt(random(), -100, 100) / 10F;
+                points[i * nbFeatures + f] = value;
+                vector.setFeatureScore(f, value);
+            }
+            expected[i] = ranker.score(vector);
+        }
+        float[] scores = new float[numPoints];
+        ranker.scoreBlock(points, nbFeatures, numPoints, scores);
+        assertArrayEquals(expected, scores, 0F);
+    }
+
+    public void testFoldNormalizers() {
+        int nbFeatures = nextInt(random(), 1, 10);
+        MlpRanker ranker = randomRanker(nbFeatures);
+        float[] shifts = new float[nbFeatures];
+        float[] scales = new float[nbFeatures];
+        for (int f = 0; f < nbFeatures; f++) {
+            shifts[f] = nextInt(random(), -10, 10) / 4F;
+            scales[f] = nextInt(random(), 1, 10) / 2F;
+        }
+        MlpRanker folded = ranker.foldNormalizers(shifts, scales);
+        for (int i = 0; i < 20; i++) {
+            LtrRanker.FeatureVector normalized = ranker.newFeatureVector(null);
+            LtrRanker.FeatureVector raw = folded.newFeatureVector(null);
+            for (int f = 0; f < nbFeatures; f++) {
+                float value = nextInt(random(), -100, 100) / 10F;
+                raw.setFeatureScore(f, value);
+                normalized.setFeatureScore(f, (value - shifts[f]) / scales[f]);
+            }
+            float expected = ranker.score(normalized);
+            assertEquals(expected, folded.score(raw), 1e-3F * Math.max(1F, Math.abs(expected)));
+        }
+    }
+
+    public void testBadShapes() {
+        Layer twoInputs = new Layer(new float[][] { { 1F, 1F } }, new float[] { 0F }, Activation.IDENTITY);
+        Layer twoOutputs = new Layer(new float[][] { { 1F }, { 1F } }, new float[] { 0F, 0F }, Activation.RELU);
+        expectThrows(IllegalArgumentException.class, () -> new MlpRanker(2, new int[] { 0, 1 }, new ArrayList<>()));
+        expectThrows(IllegalArgumentException.class, () -> new MlpRanker(2, new int[] { 0 }, Arrays.asList(twoInputs)));
+        expectThrows(IllegalArgumentException.class, () -> new MlpRanker(2, new int[] { 0, 2 }, Arrays.asList(twoInputs)));
+        expectThrows(IllegalArgumentException.class, () -> new MlpRanker(2, new int[] { 0 }, Arrays.asList(twoOutputs)));
+        expectThrows(IllegalArgumentException.class, () -> new Layer(new float[][] { { 1F } }, new float[2], Activation.RELU));
+        expectThrows(IllegalArgumentException.class, () -> new Layer(new float[][] { { 1F }, { 1F, 2F } }, new float[2], Activation.RELU));
+        expectThrows(IllegalArgumentException.class, () -> Activation.fromString("softmax"));
+        assertEquals(Activation.TANH, Activation.fromString("tanh"));
+    }
+
+    private static MlpRanker randomRanker(int nbFeatures) {
+        int nbInputs = nextInt(random(), 1, nbFeatures);
+        int[] inputs = new int[nbInputs];
+        for (int i = 0; i < nbInputs; i++) {
+            inputs[i] = random().nextInt(nbFeatures);
+        }
+        List<Layer> layers = new ArrayList<>();
+        int size = nbInputs;
+        int nbHidden = nextInt(random(), 0, 3);
+        for (int l = 0; l <= nbHidden; l++) {
+            int outputs = l == nbHidden ? 1 : nextInt(random(), 1, 20);
+            float[][] weights = new float[outputs][size];
+            float[] bias = new float[outputs];
+            for (int j = 0; j < outputs; j++) {
+                for (int i = 0; i < size; i++) {
+                    weights[j][i] = nextInt(random(), -10, 10) / 10F;
+                }
+                bias[j] = nextInt(random(), -10, 10) / 10F;
+            }
+            Activation activation = l == nbHidden ? Activation.SIGMOID : random().nextBoolean() ? Activation.RELU : Activation.TANH;
+            layers.add(new Layer(weights, bias, activation));
+            size = outputs;
+        }
+        return new MlpRanker(nbFeatures, inputs, layers);
+    }
+}
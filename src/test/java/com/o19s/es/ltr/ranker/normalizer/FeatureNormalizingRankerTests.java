@@ -0,0 +1,202 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.normalizer;
+
+import static org.apache.lucene.tests.util.TestUtil.nextInt;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.NullRanker;
+import com.o19s.es.ltr.ranker.SparseFeatureVector;
+import com.o19s.es.ltr.ranker.dectree.FlatAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.FlatAdditiveDecisionTreeTests.CountingLazyVector;
+import com.o19s.es.ltr.ranker.dectree.NaiveAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.NaiveAdditiveDecisionTreeTests;
+import com.o19s.es.ltr.ranker.dectree.TreeEvaluator;
+import com.o19s.es.ltr.ranker.linear.LinearRanker;
+import com.o19s.es.ltr.ranker.linear.LinearRankerTests;
+
+public class FeatureNormalizingRankerTests extends LuceneTestCase {
+
+    public void testAffineNormalizers() {
+        assertEquals(1F, new MinMaxFeatureNormalizer(1F, 3F).shift(), 0F);
+        assertEquals(2F, new MinMaxFeatureNormalizer(1F, 3F).scale(), 0F);
+        assertEquals(1F, new StandardFeatureNormalizer(1F, 3F).shift(), 0F);
+        assertEquals(3F, new StandardFeatureNormalizer(1F, 3F).scale(), 0F);
+    }
+
+    public void testScore() {
+        // only some features are normalized, some with a non affine normalizer
+        for (boolean affineOnly : new boolean[] { true, false }) {
+            int size = nextInt(random(), 1, 300);
+            float[] weights = LinearRankerTests.generateRandomWeights(size);
+            Map<Integer, Normalizer> ftrNorms = randomNormalizers(size, affineOnly);
+            LinearRanker linear = new LinearRanker(weights);
+            FeatureNormalizingRanker ranker = new FeatureNormalizingRanker(linear, ftrNorms);
+
+            int numPoints = nextInt(random(), 1, 20);
+            float[] points = new float[numPoints * size];
+            float[] expected = new float[numPoints];
+            for (int i = 0; i < numPoints; i++) {
+                LtrRanker.FeatureVector expectedVector = linear.newFeatureVector(null);
+                for (int f = 0; f < size; f++) {
+                    float value = nextInt(random(), -1000, 1000) / 10F;
+                    points[i * size + f] = value;
+                    Normalizer norm = ftrNorms.get(f);
+                    expectedVector.setFeatureScore(f, norm == null ? value : norm.normalize(value));
+                }
+                expected[i] = linear.score(expectedVector);
+
+                LtrRanker.FeatureVector vector = ranker.newFeatureVector(null);
+                for (int f = 0; f < size; f++) {
+                    vector.setFeatureScore(f, points[i * size + f]);
+                }
+                assertEquals(expected[i], ranker.score(vector), 0F);
+            }
+
+            float[] scores = new float[numPoints];
+            ranker.scoreBlock(points, size, numPoints, scores);
+            assertArrayEquals(expected, scores, 0F);
+        }
+    }
+
+    public void testLazyFeatures() {
+        // feature 1 is only read when feature 0 is lower than 0.5 once normalized
+        FlatAdditiveDecisionTree.Builder builder = new FlatAdditiveDecisionTree.Builder();
+        int split = builder.addSplit(0, 0.5F, false);
+        int left = builder.addSplit(1, 0.5F, false);
+        builder.setChildren(left, builder.addLeaf(1F), builder.addLeaf(2F));
+        builder.setChildren(split, left, builder.addLeaf(3F));
+        builder.addTree(split, 1F);
+        FlatAdditiveDecisionTree flat = builder.build(2, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), false);
+        Map<Integer, Normalizer> ftrNorms = randomNormalizers(2, random().nextBoolean());
+        FeatureNormalizingRanker ranker = new FeatureNormalizingRanker(flat, ftrNorms);
+        assertTrue(ranker.supportsLazyFeatures());
+        assertFalse(new FeatureNormalizingRanker(new LinearRanker(new float[2]), ftrNorms).supportsLazyFeatures());
+
+        for (int i = 0; i < 20; i++) {
+            SparseFeatureVector expectedVector = flat.newFeatureVector(null);
+            SparseFeatureVector vector = flat.newFeatureVector(null);
+            for (int f = 0; f < 2; f++) {
+                float value = nextInt(random(), -100, 100) / 10F;
+                expectedVector.setFeatureScore(f, value);
+                vector.setFeatureScore(f, value);
+            }
+            float expected = ranker.score(expectedVector);
+            CountingLazyVector lazy = new CountingLazyVector(vector);
+            assertEquals(expected, ranker.score(lazy), 0F);
+            assertEquals(expected, ranker.score(lazy, Float.NEGATIVE_INFINITY), 0F);
+            assertEquals(2, lazy.reads[0]);
+            assertEquals(expectedVector.getFeatureScore(0) < 0.5F ? 2 : 0, lazy.reads[1]);
+        }
+    }
+
+    public void testFoldLinear() {
+        int size = nextInt(random(), 1, 50);
+        float[] weights = LinearRankerTests.generateRandomWeights(size);
+        Map<Integer, Normalizer> ftrNorms = randomNormalizers(size, true);
+        LinearRanker linear = new LinearRanker(weights, random().nextFloat());
+        FeatureNormalizingRanker expectedRanker = new FeatureNormalizingRanker(linear, ftrNorms);
+        LtrRanker ranker = FeatureNormalizingRanker.wrapOrFold(linear, ftrNorms);
+        assertTrue(ranker instanceof LinearRanker);
+
+        for (int i = 0; i < 20; i++) {
+            LtrRanker.FeatureVector expectedVector = expectedRanker.newFeatureVector(null);
+            LtrRanker.FeatureVector vector = ranker.newFeatureVector(null);
+            // bound of the rounding errors
+            double magnitude = 1;
+            for (int f = 0; f < size; f++) {
+                float value = nextInt(random(), -1000, 1000) / 10F;
+                expectedVector.setFeatureScore(f, value);
+                vector.setFeatureScore(f, value);
+                Normalizer norm = ftrNorms.get(f);
+                magnitude += Math.abs(weights[f]) * (norm == null ? Math.abs(value) : Math.abs(norm.normalize(value)) + 1000);
+            }
+            float raw = vector.getFeatureScore(0);
+            float expected = expectedRanker.score(expectedVector);
+            assertEquals(expected, ranker.score(vector), magnitude * 1e-5);
+            // the vector is not normalized
+            assertEquals(raw, vector.getFeatureScore(0), 0F);
+        }
+    }
+
+    public void testFoldTrees() {
+        int nbFeatures = nextInt(random(), 1, 10);
+        int nbTrees = nextInt(random(), 1, 20);
+        NaiveAdditiveDecisionTree.Node[] trees = new NaiveAdditiveDecisionTree.Node[nbTrees];
+        for (int i = 0; i < nbTrees; i++) {
+            trees[i] = NaiveAdditiveDecisionTreeTests.randomTree(nbFeatures, nextInt(random(), 0, 6));
+        }
+        float[] weights = LinearRankerTests.generateRandomWeights(nbTrees);
+        FlatAdditiveDecisionTree flat = FlatAdditiveDecisionTree
+            .fromNodes(trees, weights, nbFeatures, Normalizers.get(Normalizers.NOOP_NORMALIZER_NAME), random().nextBoolean());
+        Map<Integer, Normalizer> ftrNorms = randomNormalizers(nbFeatures, true);
+
+        for (TreeEvaluator evaluator : new TreeEvaluator[] { TreeEvaluator.FLAT, TreeEvaluator.QUICKSCORER, TreeEvaluator.COMPILED }) {
+            LtrRanker engine = evaluator.apply(flat);
+            FeatureNormalizingRanker expectedRanker = new FeatureNormalizingRanker(engine, ftrNorms);
+            LtrRanker ranker = FeatureNormalizingRanker.wrapOrFold(engine, ftrNorms);
+            assertEquals(engine.getClass(), ranker.getClass());
+            assertArrayEquals(engine.usedFeatures(), ranker.usedFeatures());
+
+            for (int i = 0; i < 100; i++) {
+                LtrRanker.FeatureVector expectedVector = expectedRanker.newFeatureVector(null);
+                LtrRanker.FeatureVector vector = ranker.newFeatureVector(null);
+                for (int f = 0; f < nbFeatures; f++) {
+                    if (random().nextInt(5) == 0) {
+                        // missing
+                        continue;
+                    }
+                    float value;
+                    if (random().nextBoolean() && ftrNorms.get(f) instanceof AffineNormalizer norm) {
+                        // around the raw value of a threshold
+                        value = (nextInt(random(), -20, 20) / 2F) * norm.scale() + norm.shift();
+                        for (int ulps = nextInt(random(), -2, 2); ulps != 0; ulps -= Integer.signum(ulps)) {
+                            value = ulps > 0 ? Math.nextUp(value) : Math.nextDown(value);
+                        }
+                    } else {
+                        value = nextInt(random(), -200, 200) / 10F;
+                    }
+                    expectedVector.setFeatureScore(f, value);
+                    vector.setFeatureScore(f, value);
+                }
+                assertEquals(expectedRanker.score(expectedVector), ranker.score(vector), 0F);
+            }
+        }
+    }
+
+    public void testNotFolded() {
+        Map<Integer, Normalizer> ftrNorms = new HashMap<>();
+        ftrNorms.put(0, new StandardFeatureNormalizer(1F, 2F));
+        assertTrue(FeatureNormalizingRanker.wrapOrFold(new NullRanker(2), ftrNorms) instanceof FeatureNormalizingRanker);
+        ftrNorms.put(1, Normalizers.get(Normalizers.SIGMOID_NORMALIZER_NAME));
+        assertTrue(FeatureNormalizingRanker.wrapOrFold(new LinearRanker(new float[2]), ftrNorms) instanceof FeatureNormalizingRanker);
+    }
+
+    private static Map<Integer, Normalizer> randomNormalizers(int size, boolean affineOnly) {
+        Map<Integer, Normalizer> ftrNorms = new HashMap<>();
+        for (int f = 0; f < size; f++) {
+            switch (random().nextInt(affineOnly ? 3 : 4)) {
+                case 0:
+                    ftrNorms.put(f, new MinMaxFeatureNormalizer(-10F, nextInt(random(), 1, 1000) / 10F));
+                    break;
+                case 1:
+                    ftrNorms.put(f, new StandardFeatureNormalizer(nextInt(random(), -100, 100) / 10F, nextInt(random(), 1, 100) / 10F));
+                    break;
+                case 3:
+                    ftrNorms.put(f, Normalizers.get(Normalizers.SIGMOID_NORMALIZER_NAME));
+                    break;
+                default:
+                    // not normalized
+            }
+        }
+        return ftrNorms;
+    }
+}
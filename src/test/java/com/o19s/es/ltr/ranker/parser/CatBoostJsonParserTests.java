@@ -0,0 +1,113 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.parser;
+
+import static com.o19s.es.ltr.LtrTestUtils.randomFeature;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.opensearch.core.common.ParsingException;
+
+import com.o19s.es.ltr.feature.store.StoredFeature;
+import com.o19s.es.ltr.feature.store.StoredFeatureSet;
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.LtrRanker.FeatureVector;
+import com.o19s.es.ltr.ranker.dectree.ObliviousAdditiveDecisionTree;
+
+public class CatBoostJsonParserTests extends LuceneTestCase {
+    private static final String FEATURES_INFO = "\"features_info\": {\"float_features\": ["
+        + "{\"feature_index\": 0, \"flat_feature_index\": 0, \"feature_id\": \"bm25\", \"nan_value_treatment\": \"AsFalse\","
+        + " \"borders\": [0.5]},"
+        + "{\"feature_index\": 1, \"flat_feature_index\": 1, \"feature_id\": \"recency\", \"nan_value_treatment\": \"AsTrue\","
+        + " \"borders\": [2.0]},"
+        + "{\"feature_index\": 2, \"flat_feature_index\": 2, \"feature_id\": \"unused\", \"nan_value_treatment\": \"AsIs\"}"
+        + "]}";
+    private static final String TREES = "\"oblivious_trees\": ["
+        + "{\"leaf_values\": [1.0, 2.0, 4.0, 8.0], \"leaf_weights\": [1, 1, 1, 1], \"splits\": ["
+        + "{\"border\": 0.5, \"float_feature_index\": 0, \"split_index\": 0, \"split_type\": \"FloatFeature\"},"
+        + "{\"border\": 2.0, \"float_feature_index\": 1, \"split_index\": 1, \"split_type\": \"FloatFeature\"}]},"
+        + "{\"leaf_values\": [0.5, -0.5], \"splits\": [{\"border\": 1.0, \"float_feature_index\": 1, \"split_type\": \"FloatFeature\"}]}"
+        + "]";
+
+    private final CatBoostJsonParser parser = new CatBoostJsonParser();
+
+    public void testParse() throws IOException {
+        StoredFeatureSet set = set("recency", "bm25");
+        LtrRanker ranker = parser
+            .parse(set, "{\"model_info\": {\"params\": {}}, " + FEATURES_INFO + ", " + TREES + ", \"scale_and_bias\": [2.0, [0.25]]}");
+        assertTrue(ranker instanceof ObliviousAdditiveDecisionTree);
+        assertArrayEquals(new int[] { 0, 1 }, ranker.usedFeatures());
+        FeatureVector vector = ranker.newFeatureVector(null);
+        vector.setFeatureScore(1, 0.5F);
+        vector.setFeatureScore(0, 1F);
+        // borders are exclusive
+        assertEquals(2F * (1F + 0.5F) + 0.25F, ranker.score(vector), 0F);
+        vector.setFeatureScore(1, Math.nextUp(0.5F));
+        vector.setFeatureScore(0, 2.5F);
+        assertEquals(2F * (8F - 0.5F) + 0.25F, ranker.score(vector), 0F);
+        // bm25 is missing as false, recency as true
+        vector = ranker.newFeatureVector(vector);
+        assertEquals(2F * (4F - 0.5F) + 0.25F, ranker.score(vector), 0F);
+    }
+
+    public void testScaleAndBiasFormats() throws IOException {
+        StoredFeatureSet set = set("recency", "bm25");
+        for (String scaleAndBias : new String[] { "", ", \"scale_and_bias\": [1.0, 0.0]", ", \"scale_and_bias\": [1, []]" }) {
+            LtrRanker ranker = parser.parse(set, "{" + FEATURES_INFO + ", " + TREES + scaleAndBias + "}");
+            FeatureVector vector = ranker.newFeatureVector(null);
+            vector.setFeatureScore(0, 0F);
+            vector.setFeatureScore(1, 0F);
+            assertEquals(1.5F, ranker.score(vector), 0F);
+        }
+        expectThrows(
+            ParsingException.class,
+            () -> parser.parse(set, "{" + FEATURES_INFO + ", " + TREES + ", \"scale_and_bias\": [1.0, [0.0, 1.0]]}")
+        );
+        expectThrows(ParsingException.class, () -> parser.parse(set, "{" + FEATURES_INFO + ", \"scale_and_bias\": [1.0, [0.0]]}"));
+    }
+
+    public void testFeaturesByIndex() throws IOException {
+        StoredFeatureSet set = set("recency", "bm25");
+        String model = "{\"features_info\": {\"float_features\": ["
+            + "{\"feature_index\": 0, \"flat_feature_index\": 1, \"feature_id\": \"\"}]},"
+            + " \"oblivious_trees\": [{\"leaf_values\": [1.0, 2.0], \"splits\": [{\"border\": 0.0, \"float_feature_index\": 0}]}]}";
+        LtrRanker ranker = parser.parse(set, model);
+        assertArrayEquals(new int[] { 1 }, ranker.usedFeatures());
+        StoredFeatureSet small = set("bm25");
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> parser.parse(small, model));
+        assertEquals("Unknown features in model: [1]", e.getMessage());
+    }
+
+    public void testUnknownFeature() throws IOException {
+        StoredFeatureSet small = set("bm25");
+        IllegalArgumentException e = expectThrows(
+            IllegalArgumentException.class,
+            () -> parser.parse(small, "{" + FEATURES_INFO + ", " + TREES + "}")
+        );
+        assertEquals("Unknown features in model: [recency]", e.getMessage());
+    }
+
+    public void testUnsupportedSplit() throws IOException {
+        StoredFeatureSet set = set("recency", "bm25");
+        String model = "{"
+            + FEATURES_INFO
+            + ", \"oblivious_trees\": [{\"leaf_values\": [1.0, 2.0], \"splits\": ["
+            + "{\"border\": 0.5, \"split_index\": 0, \"split_type\": \"OnlineCtr\"}]}]}";
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> parser.parse(set, model));
+        assertEquals("Split type [OnlineCtr] of tree [0] is not supported", e.getMessage());
+    }
+
+    private static StoredFeatureSet set(String... names) throws IOException {
+        List<StoredFeature> features = new ArrayList<>(names.length);
+        for (String name : names) {
+            features.add(randomFeature(name));
+        }
+        return new StoredFeatureSet("set", features);
+    }
+}
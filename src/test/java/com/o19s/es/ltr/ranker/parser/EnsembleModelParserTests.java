@@ -0,0 +1,99 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.parser;
+
+import static com.o19s.es.ltr.LtrTestUtils.randomFeature;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.opensearch.core.common.ParsingException;
+
+import com.o19s.es.ltr.feature.store.StoredFeatureSet;
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.LtrRanker.FeatureVector;
+import com.o19s.es.ltr.ranker.ensemble.EnsembleRanker;
+
+public class EnsembleModelParserTests extends LuceneTestCase {
+    private static final String LINEAR = "{\"type\": \"model/linear\", \"definition\": {\"f0\": 1.0, \"f1\": 2.0}}";
+    private static final String TREES = "{\"type\": \"model/xgboost+json\", \"definition\": "
+        + "[{\"nodeid\": 0, \"split\": \"f2\", \"split_condition\": 0.5, \"yes\": 1, \"no\": 2, \"missing\": 2, \"children\": ["
+        + "{\"nodeid\": 1, \"leaf\": 1.0}, {\"nodeid\": 2, \"leaf\": 3.0}]}]}";
+
+    private final LtrRankerParserFactory factory = factory();
+
+    public void testWeightedSum() throws IOException {
+        LtrRanker ranker = parse("{\"models\": [{\"weight\": 0.5, \"model\": " + LINEAR + "}, {\"model\": " + TREES + "}]}");
+        assertTrue(ranker instanceof EnsembleRanker);
+        assertArrayEquals(new int[] { 0, 1, 2 }, ranker.usedFeatures());
+        FeatureVector vector = ranker.newFeatureVector(null);
+        vector.setFeatureScore(0, 2F);
+        vector.setFeatureScore(2, 0F);
+        assertEquals(0.5F * 2F + 1F, ranker.score(vector), 0F);
+    }
+
+    public void testExpression() throws IOException {
+        LtrRanker ranker = parse(
+            "{\"expression\": \"lin * trees\", \"models\": [{\"name\": \"lin\", \"model\": "
+                + LINEAR
+                + "}, {\"name\": \"trees\", \"model\": "
+                + TREES
+                + "}]}"
+        );
+        FeatureVector vector = ranker.newFeatureVector(null);
+        vector.setFeatureScore(1, 2F);
+        vector.setFeatureScore(2, 1F);
+        assertEquals(4F * 3F, ranker.score(vector), 0F);
+    }
+
+    public void testMemberNormalizers() throws IOException {
+        String normalized = "{\"type\": \"model/linear\", \"definition\": {\"f0\": 1.0}, "
+            + "\"feature_normalizers\": {\"f0\": {\"standard\": {\"mean\": 1.0, \"standard_deviation\": 2.0}}}}";
+        LtrRanker ranker = parse("{\"models\": [{\"model\": " + normalized + "}, {\"model\": " + LINEAR + "}]}");
+        FeatureVector vector = ranker.newFeatureVector(null);
+        vector.setFeatureScore(0, 5F);
+        // only the first model normalizes the feature
+        assertEquals(2F + 5F, ranker.score(vector), 1e-6F);
+    }
+
+    public void testBadDefinitions() throws IOException {
+        expectThrows(ParsingException.class, () -> parse("{\"models\": []}"));
+        expectThrows(ParsingException.class, () -> parse("{\"models\": [{\"weight\": 1.0}]}"));
+        expectThrows(
+            ParsingException.class,
+            () -> parse("{\"expression\": \"a\", \"models\": [{\"name\": \"a\", \"weight\": 2.0, \"model\": " + LINEAR + "}]}")
+        );
+        expectThrows(ParsingException.class, () -> parse("{\"expression\": \"a\", \"models\": [{\"model\": " + LINEAR + "}]}"));
+        expectThrows(
+            ParsingException.class,
+            () -> parse("{\"models\": [{\"name\": \"a\", \"model\": " + LINEAR + "}, {\"name\": \"a\", \"model\": " + LINEAR + "}]}")
+        );
+        expectThrows(
+            IllegalArgumentException.class,
+            () -> parse("{\"expression\": \"b\", \"models\": [{\"name\": \"a\", \"model\": " + LINEAR + "}]}")
+        );
+        expectThrows(
+            IllegalArgumentException.class,
+            () -> parse("{\"models\": [{\"model\": {\"type\": \"model/unknown\", \"definition\": {}}}]}")
+        );
+    }
+
+    private LtrRanker parse(String model) throws IOException {
+        StoredFeatureSet set = new StoredFeatureSet("set", Arrays.asList(randomFeature("f0"), randomFeature("f1"), randomFeature("f2")));
+        return factory.getParser(EnsembleModelParser.TYPE).parse(set, model);
+    }
+
+    private static LtrRankerParserFactory factory() {
+        LtrRankerParserFactory[] factory = new LtrRankerParserFactory[1];
+        factory[0] = new LtrRankerParserFactory.Builder()
+            .register(LinearRankerParser.TYPE, LinearRankerParser::new)
+            .register(XGBoostJsonParser.TYPE, XGBoostJsonParser::new)
+            .register(EnsembleModelParser.TYPE, () -> new EnsembleModelParser(factory[0]))
+            .build();
+        return factory[0];
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.parser;
+
+import static com.o19s.es.ltr.LtrTestUtils.randomFeature;
+import static java.util.Arrays.asList;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+import com.o19s.es.ltr.feature.FeatureSet;
+import com.o19s.es.ltr.feature.store.StoredFeatureSet;
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.LtrRanker.FeatureVector;
+import com.o19s.es.ltr.ranker.dectree.FlatAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.QuickScorerAdditiveDecisionTree;
+
+public class LightGBMModelParserTests extends LuceneTestCase {
+    private final LightGBMModelParser parser = new LightGBMModelParser();
+    // feature order differs from the model to check the remapping
+    private final FeatureSet set = new StoredFeatureSet("set", asList(randomFeature("f2"), randomFeature("f1")));
+
+    // f1 <= 0.5 ? (f2 <= 1.5 ? 1 : 2) : 3, missing f1 follow default_left, zero and missing f2 go left
+    private static final String TEXT_MODEL = "tree\n"
+        + "version=v4\n"
+        + "num_class=1\n"
+        + "num_tree_per_iteration=1\n"
+        + "label_index=0\n"
+        + "max_feature_idx=1\n"
+        + "objective=lambdarank\n"
+        + "feature_names=f1 f2\n"
+        + "feature_infos=[0:1] [0:3]\n"
+        + "tree_sizes=400 200\n"
+        + "\n"
+        + "Tree=0\n"
+        + "num_leaves=3\n"
+        + "num_cat=0\n"
+        + "split_feature=0 1\n"
+        + "split_gain=10 5\n"
+        + "threshold=0.50000000000000011 1.5000000000000002\n"
+        + "decision_type=10 6\n"
+        + "left_child=1 -1\n"
+        + "right_child=-3 -2\n"
+        + "leaf_value=1 2 3\n"
+        + "leaf_weight=1 1 1\n"
+        + "leaf_count=1 1 1\n"
+        + "internal_value=0 0\n"
+        + "internal_weight=0 0\n"
+        + "internal_count=3 2\n"
+        + "is_linear=0\n"
+        + "shrinkage=1\n"
+        + "\n"
+        + "\n"
+        + "Tree=1\n"
+        + "num_leaves=1\n"
+        + "num_cat=0\n"
+        + "split_feature=\n"
+        + "split_gain=\n"
+        + "threshold=\n"
+        + "decision_type=\n"
+        + "left_child=\n"
+        + "right_child=\n"
+        + "leaf_value=0.5\n"
+        + "leaf_weight=\n"
+        + "leaf_count=\n"
+        + "internal_value=\n"
+        + "internal_weight=\n"
+        + "internal_count=\n"
+        + "is_linear=0\n"
+        + "shrinkage=1\n"
+        + "\n"
+        + "\n"
+        + "end of trees\n"
+        + "\n"
+        + "feature_importances:\n"
+        + "f1=1\n"
+        + "f2=1\n"
+        + "\n"
+        + "parameters:\n"
+        + "[boosting: gbdt]\n"
+        + "end of parameters\n";
+
+    private static final String JSON_MODEL = "{"
+        + "  \"name\":\"tree\","
+        + "  \"version\":\"v4\","
+        + "  \"num_class\":1,"
+        + "  \"num_tree_per_iteration\":1,"
+        + "  \"label_index\":0,"
+        + "  \"max_feature_idx\":1,"
+        + "  \"objective\":\"lambdarank\","
+        + "  \"average_output\":false,"
+        + "  \"feature_names\":[\"f1\",\"f2\"],"
+        + "  \"monotone_constraints\":[],"
+        + "  \"feature_infos\":{\"f1\":{\"min_value\":0,\"max_value\":1,\"values\":[]}},"
+        + "  \"tree_info\":[{"
+        + "    \"tree_index\":0,"
+        + "    \"num_leaves\":3,"
+        + "    \"num_cat\":0,"
+        + "    \"shrinkage\":1,"
+        + "    \"tree_structure\":{"
+        + "      \"split_index\":0,"
+        + "      \"split_feature\":0,"
+        + "      \"split_gain\":10,"
+        + "      \"threshold\":0.50000000000000011,"
+        + "      \"decision_type\":\"<=\","
+        + "      \"default_left\":true,"
+        + "      \"missing_type\":\"NaN\","
+        + "      \"internal_value\":0,"
+        + "      \"left_child\":{"
+        + "        \"split_index\":1,"
+        + "        \"split_feature\":1,"
+        + "        \"threshold\":1.5000000000000002,"
+        + "        \"decision_type\":\"<=\","
+        + "        \"default_left\":true,"
+        + "        \"missing_type\":\"Zero\","
+        + "        \"left_child\":{\"leaf_index\":0,\"leaf_value\":1,\"leaf_count\":1},"
+        + "        \"right_child\":{\"leaf_index\":1,\"leaf_value\":2,\"leaf_count\":1}"
+        + "      },"
+        + "      \"right_child\":{\"leaf_index\":2,\"leaf_value\":3,\"leaf_count\":1}"
+        + "    }"
+        + "  },{"
+        + "    \"tree_index\":1,"
+        + "    \"num_leaves\":1,"
+        + "    \"num_cat\":0,"
+        + "    \"shrinkage\":1,"
+        + "    \"tree_structure\":{\"leaf_value\":0.5}"
+        + "  }],"
+        + "  \"feature_importances\":{\"f1\":1,\"f2\":1},"
+        + "  \"pandas_categorical\":null"
+        + "}";
+
+    public void testTextModel() {
+        assertModel(parser.parse(set, TEXT_MODEL));
+    }
+
+    public void testJsonModel() {
+        assertModel(parser.parse(set, JSON_MODEL));
+    }
+
+    private void assertModel(LtrRanker ranker) {
+        assertTrue(ranker instanceof FlatAdditiveDecisionTree);
+        assertEquals(2, ((FlatAdditiveDecisionTree) ranker).numTrees());
+        assertEquals(1.5F, score(ranker, 1F, 0.5F), 0F);
+        assertEquals(2.5F, score(ranker, 1.6F, 0.2F), 0F);
+        assertEquals(3.5F, score(ranker, 1F, 0.6F), 0F);
+        // values equal to the threshold go left
+        assertEquals(1.5F, score(ranker, 1.5F, 0.5F), 0F);
+        assertEquals(2.5F, score(ranker, Math.nextUp(1.5F), 0.5F), 0F);
+        // NaN and zeros are missing values of f2
+        assertEquals(1.5F, score(ranker, Float.NaN, 0.5F), 0F);
+        assertEquals(1.5F, score(ranker, 0F, 0.5F), 0F);
+        // missing f1 goes left
+        assertEquals(2.5F, score(ranker, 2F, Float.NaN), 0F);
+    }
+
+    public void testSigmoidAndAverageOutput() {
+        String model = TEXT_MODEL.replace("objective=lambdarank", "objective=binary sigmoid:2")
+            .replace("feature_names=", "average_output\nfeature_names=");
+        LtrRanker ranker = parser.parse(set, model);
+        float raw = (3F + 0.5F) / 2F;
+        assertEquals(1 / (1 + Math.exp(-2 * raw)), score(ranker, 1F, 0.6F), 1e-6F);
+    }
+
+    public void testEvaluator() {
+        String model = JSON_MODEL.replace("\"average_output\":false,", "\"average_output\":false,\"evaluator\":\"quickscorer\",");
+        LtrRanker ranker = parser.parse(set, model);
+        assertTrue(ranker instanceof QuickScorerAdditiveDecisionTree);
+        assertEquals(2.5F, score(ranker, 1.6F, 0.2F), 0F);
+    }
+
+    public void testMissingTypeNone() {
+        // None replaces missing values with zero, which goes left of 0.5 whatever default_left
+        String model = TEXT_MODEL.replace("decision_type=10 6", "decision_type=0 6");
+        LtrRanker ranker = parser.parse(set, model);
+        assertEquals(2.5F, score(ranker, 2F, Float.NaN), 0F);
+        model = TEXT_MODEL.replace("decision_type=10 6", "decision_type=0 6").replace("threshold=0.50000000000000011", "threshold=-0.5");
+        ranker = parser.parse(set, model);
+        assertEquals(3.5F, score(ranker, 2F, Float.NaN), 0F);
+    }
+
+    public void testZeroAsMissingMismatch() {
+        // zeros are sent right by default_left but left by the threshold
+        String model = TEXT_MODEL.replace("decision_type=10 6", "decision_type=10 4");
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> parser.parse(set, model));
+        assertTrue(e.getMessage().contains("sends zeros to the [right] as missing values but to the [left]"));
+    }
+
+    public void testUnknownFeature() {
+        FeatureSet other = new StoredFeatureSet("set", asList(randomFeature("f1"), randomFeature("f3")));
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> parser.parse(other, TEXT_MODEL));
+        assertEquals("Unknown features in model: [f2]", e.getMessage());
+        e = expectThrows(IllegalArgumentException.class, () -> parser.parse(other, JSON_MODEL));
+        assertEquals("Unknown features in model: [f2]", e.getMessage());
+    }
+
+    public void testCategoricalSplit() {
+        IllegalArgumentException e = expectThrows(
+            IllegalArgumentException.class,
+            () -> parser.parse(set, TEXT_MODEL.replace("decision_type=10 6", "decision_type=11 6"))
+        );
+        assertEquals("Tree [0] has categorical splits, they are not supported", e.getMessage());
+        e = expectThrows(
+            IllegalArgumentException.class,
+            () -> parser.parse(set, TEXT_MODEL.replace("num_leaves=3\nnum_cat=0", "num_leaves=3\nnum_cat=1"))
+        );
+        assertEquals("Tree [0] has categorical splits, they are not supported", e.getMessage());
+        Exception je = expectThrows(
+            Exception.class,
+            () -> parser.parse(set, JSON_MODEL.replace("\"threshold\":1.5000000000000002", "\"threshold\":\"1||2\""))
+        );
+        assertTrue(hasCause(je, "Tree [0] has categorical splits, they are not supported"));
+    }
+
+    public void testLinearTree() {
+        IllegalArgumentException e = expectThrows(
+            IllegalArgumentException.class,
+            () -> parser.parse(set, TEXT_MODEL.replace("is_linear=0", "is_linear=1"))
+        );
+        assertEquals("Tree [0] is a linear tree, linear trees are not supported", e.getMessage());
+    }
+
+    public void testMulticlass() {
+        IllegalArgumentException e = expectThrows(
+            IllegalArgumentException.class,
+            () -> parser.parse(set, TEXT_MODEL.replace("num_class=1", "num_class=3").replace("lambdarank", "regression"))
+        );
+        assertEquals("Multiclass LightGBM models are not supported", e.getMessage());
+    }
+
+    public void testUnsupportedObjective() {
+        IllegalArgumentException e = expectThrows(
+            IllegalArgumentException.class,
+            () -> parser.parse(set, TEXT_MODEL.replace("objective=lambdarank", "objective=poisson"))
+        );
+        assertEquals("Objective [poisson] is not a supported LightGBM objective", e.getMessage());
+    }
+
+    public void testInvalidChildReference() {
+        IllegalArgumentException e = expectThrows(
+            IllegalArgumentException.class,
+            () -> parser.parse(set, TEXT_MODEL.replace("right_child=-3 -2", "right_child=-4 -2"))
+        );
+        assertEquals("Tree [0] has an invalid child reference [-4]", e.getMessage());
+        e = expectThrows(IllegalArgumentException.class, () -> parser.parse(set, TEXT_MODEL.replace("left_child=1 -1", "left_child=0 -1")));
+        assertEquals("Tree [0] is invalid, a node has several parents", e.getMessage());
+    }
+
+    public void testMissingTrees() {
+        IllegalArgumentException e = expectThrows(
+            IllegalArgumentException.class,
+            () -> parser.parse(set, TEXT_MODEL.substring(0, TEXT_MODEL.indexOf("Tree=0")))
+        );
+        assertEquals("LightGBM model must define at least one tree", e.getMessage());
+        Exception je = expectThrows(Exception.class, () -> parser.parse(set, "{\"objective\":\"lambdarank\",\"feature_names\":[\"f1\"]}"));
+        assertTrue(hasCause(je, "LightGBM model missing required field [tree_info]"));
+    }
+
+    private static boolean hasCause(Throwable e, String message) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (message.equals(t.getMessage())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static float score(LtrRanker ranker, float f2, float f1) {
+        FeatureVector vector = ranker.newFeatureVector(null);
+        vector.setFeatureScore(0, f2);
+        vector.setFeatureScore(1, f1);
+        return ranker.score(vector);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.parser;
+
+import static com.o19s.es.ltr.LtrTestUtils.randomFeature;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+import org.opensearch.core.common.ParsingException;
+
+import com.o19s.es.ltr.feature.store.StoredFeature;
+import com.o19s.es.ltr.feature.store.StoredFeatureSet;
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.LtrRanker.FeatureVector;
+import com.o19s.es.ltr.ranker.mlp.MlpRanker;
+
+public class MlpModelParserTests extends LuceneTestCase {
+    private final MlpModelParser parser = new MlpModelParser();
+
+    public void testParse() throws IOException {
+        StoredFeatureSet set = set("bm25", "unused", "recency");
+        String model = "{\"features\": [\"recency\", \"bm25\"], \"layers\": ["
+            + "{\"weights\": [[1.0, 2.0], [-1.0, 1.0]], \"bias\": [0.5, -1.0], \"activation\": \"relu\"},"
+            + "{\"weights\": [[2.0, -3.0]], \"bias\": [0.25]}]}";
+        LtrRanker ranker = parser.parse(set, model);
+        assertTrue(ranker instanceof MlpRanker);
+        assertArrayEquals(new int[] { 0, 2 }, ranker.usedFeatures());
+        FeatureVector vector = ranker.newFeatureVector(null);
+        vector.setFeatureScore(0, 1F);
+        vector.setFeatureScore(2, 3F);
+        // the output layer has no activation
+        assertEquals(2F * 5.5F + 0.25F, ranker.score(vector), 1e-6F);
+    }
+
+    public void testAllFeaturesByDefault() throws IOException {
+        StoredFeatureSet set = set("f0", "f1");
+        LtrRanker ranker = parser.parse(set, "{\"layers\": [{\"weights\": [[1.0, 10.0]], \"activation\": \"sigmoid\"}]}");
+        assertArrayEquals(new int[] { 0, 1 }, ranker.usedFeatures());
+        FeatureVector vector = ranker.newFeatureVector(null);
+        vector.setFeatureScore(0, 2F);
+        vector.setFeatureScore(1, -0.1F);
+        assertEquals((float) (1 / (1 + Math.exp(-1))), ranker.score(vector), 1e-6F);
+    }
+
+    public void testUnknownFeature() throws IOException {
+        StoredFeatureSet set = set("f0");
+        IllegalArgumentException e = expectThrows(
+            IllegalArgumentException.class,
+            () -> parser.parse(set, "{\"features\": [\"f0\", \"f1\"], \"layers\": [{\"weights\": [[1.0, 1.0]]}]}")
+        );
+        assertEquals("Unknown features in model: [f1]", e.getMessage());
+    }
+
+    public void testBadDefinitions() throws IOException {
+        StoredFeatureSet set = set("f0", "f1");
+        expectThrows(ParsingException.class, () -> parser.parse(set, "{\"layers\": []}"));
+        expectThrows(ParsingException.class, () -> parser.parse(set, "{\"layers\": [{\"weights\": [1.0, 2.0]}]}"));
+        expectThrows(ParsingException.class, () -> parser.parse(set, "{\"layers\": [{\"weights\": [[1.0, \"a\"]]}]}"));
+        expectThrows(
+            ParsingException.class,
+            () -> parser.parse(set, "{\"layers\": [{\"weights\": [[1.0, 1.0]], \"activation\": \"softmax\"}]}")
+        );
+        expectThrows(IllegalArgumentException.class, () -> parser.parse(set, "{\"layers\": [{\"bias\": [1.0]}]}"));
+        // the first layer must have an input per feature
+        expectThrows(IllegalArgumentException.class, () -> parser.parse(set, "{\"layers\": [{\"weights\": [[1.0]]}]}"));
+        // the last layer must have a single output
+        expectThrows(
+            IllegalArgumentException.class,
+            () -> parser.parse(set, "{\"layers\": [{\"weights\": [[1.0, 1.0], [1.0, 1.0]]}]}")
+        );
+    }
+
+    private static StoredFeatureSet set(String... names) throws IOException {
+        List<StoredFeature> features = new ArrayList<>(names.length);
+        for (String name : names) {
+            features.add(randomFeature(name));
+        }
+        return new StoredFeatureSet("set", features);
+    }
+}
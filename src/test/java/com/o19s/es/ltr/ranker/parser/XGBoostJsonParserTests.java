@@ -36,9 +36,14 @@ import com.o19s.es.ltr.LtrTestUtils;
 import com.o19s.es.ltr.feature.FeatureSet;
 import com.o19s.es.ltr.feature.store.StoredFeature;
 import com.o19s.es.ltr.feature.store.StoredFeatureSet;
+import com.o19s.es.ltr.ranker.LtrRanker;
 import com.o19s.es.ltr.ranker.LtrRanker.FeatureVector;
 import com.o19s.es.ltr.ranker.SparseFeatureVector;
-import com.o19s.es.ltr.ranker.dectree.NaiveAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.CompiledAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.FlatAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.MappedAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.QuantizedAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.QuickScorerAdditiveDecisionTree;
 import com.o19s.es.ltr.ranker.linear.LinearRankerTests;
 
 public class XGBoostJsonParserTests extends LuceneTestCase {
@@ -47,7 +52,7 @@ public class XGBoostJsonParserTests extends LuceneTestCase {
     public void testReadLeaf() throws IOException {
         String model = "[ {\"nodeid\": 0, \"leaf\": 0.234}]";
         FeatureSet set = randomFeatureSet();
-        NaiveAdditiveDecisionTree tree = parser.parse(set, model);
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model);
         assertEquals(0.234F, tree.score(tree.newFeatureVector(null)), Math.ulp(0.234F));
     }
 
@@ -66,7 +71,7 @@ public class XGBoostJsonParserTests extends LuceneTestCase {
             + "]}]";
 
         FeatureSet set = new StoredFeatureSet("set", singletonList(randomFeature("feat1")));
-        NaiveAdditiveDecisionTree tree = parser.parse(set, model);
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model);
         FeatureVector v = tree.newFeatureVector(null);
         v.setFeatureScore(0, 0.124F);
         assertEquals(0.2F, tree.score(v), Math.ulp(0.2F));
@@ -76,6 +81,30 @@ public class XGBoostJsonParserTests extends LuceneTestCase {
         assertEquals(0.2F, tree.score(v), Math.ulp(0.2F));
     }
 
+    public void testReadSplitWithNoChildFirst() throws IOException {
+        String model = "[{"
+            + "\"nodeid\": 0,"
+            + "\"split\":\"feat1\","
+            + "\"depth\":0,"
+            + "\"split_condition\":0.123,"
+            + "\"yes\":1,"
+            + "\"no\": 2,"
+            + "\"missing\":1,"
+            + "\"children\": ["
+            + "   {\"nodeid\": 2, \"depth\": 1, \"leaf\": 0.2},"
+            + "   {\"nodeid\": 1, \"depth\": 1, \"leaf\": 0.5}"
+            + "]}]";
+
+        FeatureSet set = new StoredFeatureSet("set", singletonList(randomFeature("feat1")));
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model);
+        FeatureVector v = tree.newFeatureVector(null);
+        assertEquals(0.5F, tree.score(v), Math.ulp(0.5F));
+        v.setFeatureScore(0, 0.124F);
+        assertEquals(0.2F, tree.score(v), Math.ulp(0.2F));
+        v.setFeatureScore(0, 0.122F);
+        assertEquals(0.5F, tree.score(v), Math.ulp(0.5F));
+    }
+
     public void testMissingFeatureRoutedToYesChild() throws IOException {
         // "missing" points at the "yes" child (leaf 0.5), which differs from the "no" child.
         // A missing (NaN) feature must therefore be routed to the yes leaf, mirroring XGBoost.
@@ -93,7 +122,7 @@ public class XGBoostJsonParserTests extends LuceneTestCase {
             + "]}]";
 
         FeatureSet set = new StoredFeatureSet("set", singletonList(randomFeature("feat1")));
-        NaiveAdditiveDecisionTree tree = parser.parse(set, model);
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model);
         // A fresh vector leaves feat1 unset (NaN), i.e. the feature is missing.
         FeatureVector v = tree.newFeatureVector(null);
         assertEquals(0.5F, tree.score(v), Math.ulp(0.5F));
@@ -121,7 +150,7 @@ public class XGBoostJsonParserTests extends LuceneTestCase {
             + "]}]";
 
         FeatureSet set = new StoredFeatureSet("set", singletonList(randomFeature("feat1")));
-        NaiveAdditiveDecisionTree tree = parser.parse(set, model);
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model);
         FeatureVector v = tree.newFeatureVector(null);
         assertEquals(0.2F, tree.score(v), Math.ulp(0.2F));
     }
@@ -164,12 +193,12 @@ public class XGBoostJsonParserTests extends LuceneTestCase {
             + "]}]";
         FeatureSet set = new StoredFeatureSet("set", singletonList(randomFeature("feat1")));
 
-        NaiveAdditiveDecisionTree defaultTree = parser.parse(set, "{" + splits + "}");
+        FlatAdditiveDecisionTree defaultTree = (FlatAdditiveDecisionTree) parser.parse(set, "{" + splits + "}");
         assertFalse(defaultTree.isMissingAsZero());
         assertTrue(Float.isNaN(defaultTree.newFeatureVector(null).getDefaultScore()));
         assertEquals(0.2F, defaultTree.score(defaultTree.newFeatureVector(null)), Math.ulp(0.2F));
 
-        NaiveAdditiveDecisionTree zeroTree = parser.parse(set, "{\"missing_as_zero\": true, " + splits + "}");
+        FlatAdditiveDecisionTree zeroTree = (FlatAdditiveDecisionTree) parser.parse(set, "{\"missing_as_zero\": true, " + splits + "}");
         assertTrue(zeroTree.isMissingAsZero());
         assertEquals(0.0F, zeroTree.newFeatureVector(null).getDefaultScore(), 0.0F);
         // Missing feature scores identically to an explicit 0.0, and both differ from the default (NaN) tree.
@@ -196,7 +225,7 @@ public class XGBoostJsonParserTests extends LuceneTestCase {
             + "]}]}";
 
         FeatureSet set = new StoredFeatureSet("set", singletonList(randomFeature("feat1")));
-        NaiveAdditiveDecisionTree tree = parser.parse(set, model);
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model);
         FeatureVector v = tree.newFeatureVector(null);
         v.setFeatureScore(0, 0.124F);
         assertEquals(0.2F, tree.score(v), Math.ulp(0.2F));
@@ -223,7 +252,7 @@ public class XGBoostJsonParserTests extends LuceneTestCase {
             + "]}]}";
 
         FeatureSet set = new StoredFeatureSet("set", singletonList(randomFeature("feat1")));
-        NaiveAdditiveDecisionTree tree = parser.parse(set, model);
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model);
         FeatureVector v = tree.newFeatureVector(null);
         v.setFeatureScore(0, 0.124F);
         assertEquals(0.2F, tree.score(v), Math.ulp(0.2F));
@@ -250,7 +279,7 @@ public class XGBoostJsonParserTests extends LuceneTestCase {
             + "]}]}";
 
         FeatureSet set = new StoredFeatureSet("set", singletonList(randomFeature("feat1")));
-        NaiveAdditiveDecisionTree tree = parser.parse(set, model);
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model);
         FeatureVector v = tree.newFeatureVector(null);
         v.setFeatureScore(0, 0.124F);
         assertEquals(0.2F, tree.score(v), Math.ulp(0.2F));
@@ -277,7 +306,7 @@ public class XGBoostJsonParserTests extends LuceneTestCase {
             + "]}]}";
 
         FeatureSet set = new StoredFeatureSet("set", singletonList(randomFeature("feat1")));
-        NaiveAdditiveDecisionTree tree = parser.parse(set, model);
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model);
         FeatureVector v = tree.newFeatureVector(null);
         v.setFeatureScore(0, 0.124F);
         assertEquals(0.2F, tree.score(v), Math.ulp(0.2F));
@@ -310,6 +339,70 @@ public class XGBoostJsonParserTests extends LuceneTestCase {
         );
     }
 
+    public void testEvaluator() throws IOException {
+        String splits = "\"splits\": [{"
+            + "\"nodeid\": 0,"
+            + "\"split\":\"feat1\","
+            + "\"depth\":0,"
+            + "\"split_condition\":100.0,"
+            + "\"yes\":1,"
+            + "\"no\": 2,"
+            + "\"missing\":1,"
+            + "\"children\": ["
+            + "   {\"nodeid\": 1, \"depth\": 1, \"leaf\": 0.5},"
+            + "   {\"nodeid\": 2, \"depth\": 1, \"leaf\": 0.2}"
+            + "]}]";
+        FeatureSet set = new StoredFeatureSet("set", singletonList(randomFeature("feat1")));
+
+        assertFalse(parser.parse(set, "{\"evaluator\": \"flat\", " + splits + "}") instanceof QuickScorerAdditiveDecisionTree);
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, "{\"evaluator\": \"quickscorer\", " + splits + "}");
+        assertThat(tree, CoreMatchers.instanceOf(QuickScorerAdditiveDecisionTree.class));
+        FeatureVector v = tree.newFeatureVector(null);
+        assertEquals(0.5F, tree.score(v), 0F);
+        v.setFeatureScore(0, 100F);
+        assertEquals(0.2F, tree.score(v), 0F);
+
+        tree = (FlatAdditiveDecisionTree) parser.parse(set, "{\"evaluator\": \"compiled\", " + splits + "}");
+        assertThat(tree, CoreMatchers.instanceOf(CompiledAdditiveDecisionTree.class));
+        v = tree.newFeatureVector(null);
+        assertEquals(0.5F, tree.score(v), 0F);
+        v.setFeatureScore(0, 100F);
+        assertEquals(0.2F, tree.score(v), 0F);
+
+        LtrRanker quantized = parser.parse(set, "{\"evaluator\": \"quantized\", \"quantization_tolerance\": 0.001, " + splits + "}");
+        assertThat(quantized, CoreMatchers.instanceOf(QuantizedAdditiveDecisionTree.class));
+        v = quantized.newFeatureVector(null);
+        assertEquals(0.5F, quantized.score(v), 0.001F);
+        v.setFeatureScore(0, 100F);
+        assertEquals(0.2F, quantized.score(v), 0.001F);
+        assertThat(
+            expectThrows(IllegalArgumentException.class, () -> parser.parse(set, "{\"quantization_tolerance\": 0.001, " + splits + "}"))
+                .getMessage(),
+            CoreMatchers.containsString("requires the [quantized] evaluator")
+        );
+        assertThat(
+            expectThrows(
+                IllegalArgumentException.class,
+                () -> parser.parse(set, "{\"evaluator\": \"quantized\", \"quantization_tolerance\": 0, " + splits + "}")
+            ).getMessage(),
+            CoreMatchers.containsString("more than the tolerance of [0.0]")
+        );
+
+        MappedAdditiveDecisionTree.setDirectory(createTempDir());
+        LtrRanker mapped = parser.parse(set, "{\"evaluator\": \"mapped\", " + splits + "}");
+        assertThat(mapped, CoreMatchers.instanceOf(MappedAdditiveDecisionTree.class));
+        v = mapped.newFeatureVector(null);
+        assertEquals(0.5F, mapped.score(v), 0F);
+        v.setFeatureScore(0, 100F);
+        assertEquals(0.2F, mapped.score(v), 0F);
+        ((MappedAdditiveDecisionTree) mapped).close();
+
+        assertThat(
+            expectThrows(ParsingException.class, () -> parser.parse(set, "{\"evaluator\": \"unknown\", " + splits + "}")).getMessage(),
+            CoreMatchers.containsString("Unable to parse XGBoost object")
+        );
+    }
+
     public void testBadObjectiveParam() throws IOException {
         String model = "{"
             + "\"objective\": \"reg:invalid\","
@@ -350,7 +443,7 @@ public class XGBoostJsonParserTests extends LuceneTestCase {
             + "]}]}";
 
         FeatureSet set = new StoredFeatureSet("set", singletonList(randomFeature("feat1")));
-        NaiveAdditiveDecisionTree tree = parser.parse(set, model);
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model);
         FeatureVector v = tree.newFeatureVector(null);
         v.setFeatureScore(0, 0.124F);
         assertEquals(0.45016602F, tree.score(v), Math.ulp(0.45016602F));
@@ -418,6 +511,45 @@ public class XGBoostJsonParserTests extends LuceneTestCase {
         );
     }
 
+    public void testDeepTree() throws IOException {
+        // trees are parsed without recursion, each split sends feat1 values lower than its depth to a leaf
+        int depth = 400;
+        StringBuilder model = new StringBuilder("[");
+        for (int i = 0; i < depth; i++) {
+            model
+                .append("{\"nodeid\": ")
+                .append(2 * i)
+                .append(", \"depth\": ")
+                .append(i)
+                .append(", \"split\": \"feat1\", \"split_condition\": ")
+                .append(i)
+                .append(", \"yes\": ")
+                .append(2 * i + 1)
+                .append(", \"no\": ")
+                .append(2 * i + 2)
+                .append(", \"children\": [{\"nodeid\": ")
+                .append(2 * i + 1)
+                .append(", \"leaf\": ")
+                .append(i)
+                .append("}, ");
+        }
+        model.append("{\"nodeid\": ").append(2 * depth).append(", \"leaf\": -1}");
+        for (int i = 0; i < depth; i++) {
+            model.append("]}");
+        }
+        model.append("]");
+
+        FeatureSet set = new StoredFeatureSet("set", singletonList(randomFeature("feat1")));
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model.toString());
+        assertEquals(depth, tree.numSplits());
+        assertEquals(depth + 1, tree.numLeaves());
+        FeatureVector v = tree.newFeatureVector(null);
+        v.setFeatureScore(0, 200.5F);
+        assertEquals(201F, tree.score(v), 0F);
+        v.setFeatureScore(0, depth);
+        assertEquals(-1F, tree.score(v), 0F);
+    }
+
     public void testComplexModel() throws Exception {
         String model = readModel("/models/xgboost-wmf.json");
         List<StoredFeature> features = new ArrayList<>();
@@ -437,7 +569,7 @@ public class XGBoostJsonParserTests extends LuceneTestCase {
         }
 
         StoredFeatureSet set = new StoredFeatureSet("set", features);
-        NaiveAdditiveDecisionTree tree = parser.parse(set, model);
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model);
         SparseFeatureVector v = tree.newFeatureVector(null);
         assertEquals(v.scores.length, features.size());
 
@@ -31,7 +31,8 @@ import org.opensearch.core.common.ParsingException;
 import com.o19s.es.ltr.feature.FeatureSet;
 import com.o19s.es.ltr.feature.store.StoredFeatureSet;
 import com.o19s.es.ltr.ranker.LtrRanker.FeatureVector;
-import com.o19s.es.ltr.ranker.dectree.NaiveAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.FlatAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.dectree.QuickScorerAdditiveDecisionTree;
 
 public class XGBoostRawJsonParserTests extends LuceneTestCase {
     private final XGBoostRawJsonParser parser = new XGBoostRawJsonParser();
@@ -93,7 +94,7 @@ public class XGBoostRawJsonParserTests extends LuceneTestCase {
             + "}";
 
         FeatureSet set = new StoredFeatureSet("set", singletonList(randomFeature("feat1")));
-        NaiveAdditiveDecisionTree tree = parser.parse(set, model);
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model);
         FeatureVector featureVector = tree.newFeatureVector(null);
         featureVector.setFeatureScore(0, 2);
         assertEquals(0.0, tree.score(featureVector), Math.ulp(0.1F));
@@ -156,7 +157,7 @@ public class XGBoostRawJsonParserTests extends LuceneTestCase {
             + "}";
 
         FeatureSet set = new StoredFeatureSet("set", singletonList(randomFeature("feat1")));
-        NaiveAdditiveDecisionTree tree = parser.parse(set, model);
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model);
         // A fresh vector leaves feat1 missing (NaN) -> default_left routes it to node 2 (score 0.0).
         FeatureVector featureVector = tree.newFeatureVector(null);
         assertEquals(0.0, tree.score(featureVector), Math.ulp(0.1F));
@@ -205,13 +206,17 @@ public class XGBoostRawJsonParserTests extends LuceneTestCase {
             + "}";
         FeatureSet set = new StoredFeatureSet("set", singletonList(randomFeature("feat1")));
 
-        NaiveAdditiveDecisionTree defaultTree = parser.parse(set, "{" + body);
+        FlatAdditiveDecisionTree defaultTree = (FlatAdditiveDecisionTree) parser.parse(set, "{" + body);
         assertFalse(defaultTree.isMissingAsZero());
         assertEquals(10.0F, defaultTree.score(defaultTree.newFeatureVector(null)), Math.ulp(10.0F));
 
-        NaiveAdditiveDecisionTree zeroTree = parser.parse(set, "{\"missing_as_zero\": true," + body);
+        FlatAdditiveDecisionTree zeroTree = (FlatAdditiveDecisionTree) parser.parse(set, "{\"missing_as_zero\": true," + body);
         assertTrue(zeroTree.isMissingAsZero());
         assertEquals(0.0F, zeroTree.score(zeroTree.newFeatureVector(null)), Math.ulp(0.1F));
+
+        FlatAdditiveDecisionTree quickScorer = (FlatAdditiveDecisionTree) parser.parse(set, "{\"evaluator\": \"quickscorer\"," + body);
+        assertThat(quickScorer, CoreMatchers.instanceOf(QuickScorerAdditiveDecisionTree.class));
+        assertEquals(10.0F, quickScorer.score(quickScorer.newFeatureVector(null)), Math.ulp(10.0F));
     }
 
     public void testReadWithLogisticObjective() throws IOException {
@@ -268,7 +273,7 @@ public class XGBoostRawJsonParserTests extends LuceneTestCase {
             + "}";
 
         FeatureSet set = new StoredFeatureSet("set", singletonList(randomFeature("feat1")));
-        NaiveAdditiveDecisionTree tree = parser.parse(set, model);
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model);
         FeatureVector v = tree.newFeatureVector(null);
         v.setFeatureScore(0, 2);
         assertEquals(0.62245935F, tree.score(v), Math.ulp(0.62245935F));
@@ -784,7 +789,7 @@ public class XGBoostRawJsonParserTests extends LuceneTestCase {
             + "}";
 
         FeatureSet set = new StoredFeatureSet("set", List.of(randomFeature("feat1"), randomFeature("feat2")));
-        NaiveAdditiveDecisionTree tree = parser.parse(set, model);
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model);
         FeatureVector featureVector = tree.newFeatureVector(null);
         featureVector.setFeatureScore(0, 2);
         featureVector.setFeatureScore(1, 2);
@@ -849,17 +854,79 @@ public class XGBoostRawJsonParserTests extends LuceneTestCase {
             + "}";
 
         FeatureSet set = new StoredFeatureSet("set", List.of(randomFeature("feat2"), randomFeature("feat1")));
-        NaiveAdditiveDecisionTree tree = parser.parse(set, model);
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model);
         FeatureVector featureVector = tree.newFeatureVector(null);
         featureVector.setFeatureScore(0, 4); // feat2
         featureVector.setFeatureScore(1, 2); // feat1
         assertEquals(0.0, tree.score(featureVector), Math.ulp(0.1F));
 
         FeatureSet setNoReorder = new StoredFeatureSet("set", List.of(randomFeature("feat1"), randomFeature("feat2")));
-        NaiveAdditiveDecisionTree treeNoReorder = parser.parse(setNoReorder, model);
+        FlatAdditiveDecisionTree treeNoReorder = (FlatAdditiveDecisionTree) parser.parse(setNoReorder, model);
         FeatureVector featureVectorNoReorder = treeNoReorder.newFeatureVector(null);
         featureVectorNoReorder.setFeatureScore(0, 2); // feat1
         featureVectorNoReorder.setFeatureScore(1, 4); // feat2
         assertEquals(0.0, treeNoReorder.score(featureVectorNoReorder), Math.ulp(0.1F));
     }
+
+    public void testFeatureNamesAfterTrees() throws IOException {
+        // features are remapped once the whole learner is parsed
+        String model = "{"
+            + "    \"learner\":{"
+            + "        \"gradient_booster\":{"
+            + "        \"model\":{"
+            + "            \"trees\":[{"
+            + "                \"base_weights\":[1E0, 10E0, 0E0, 5E0, 6E0],"
+            + "                \"default_left\":[0, 0, 0, 0, 0],"
+            + "                \"id\":0,"
+            + "                \"left_children\":[2, 3, -1, -1, -1],"
+            + "                \"right_children\":[1, 4, -1, -1, -1],"
+            + "                \"split_conditions\":[3E0, 1E0, -1E0, -1E0, -1E0],"
+            + "                \"split_indices\":[0, 1, 0, 0, 0]"
+            + "            }]},"
+            + "            \"name\":\"gbtree\""
+            + "        },"
+            + "        \"feature_names\":[\"feat1\", \"feat2\"],"
+            + "        \"feature_types\":[\"float\", \"float\"],"
+            + "        \"objective\":{\"name\":\"reg:linear\"}"
+            + "    }"
+            + "}";
+
+        FeatureSet set = new StoredFeatureSet("set", List.of(randomFeature("feat2"), randomFeature("feat1")));
+        FlatAdditiveDecisionTree tree = (FlatAdditiveDecisionTree) parser.parse(set, model);
+        assertEquals(2, tree.numSplits());
+        assertEquals(3, tree.numLeaves());
+        FeatureVector featureVector = tree.newFeatureVector(null);
+        featureVector.setFeatureScore(1, 2); // feat1
+        assertEquals(0F, tree.score(featureVector), 0F);
+        featureVector.setFeatureScore(1, 4); // feat1
+        featureVector.setFeatureScore(0, 0); // feat2
+        assertEquals(5F, tree.score(featureVector), 0F);
+        featureVector.setFeatureScore(0, 1); // feat2
+        assertEquals(6F, tree.score(featureVector), 0F);
+    }
+
+    public void testNodeWithSeveralParents() throws IOException {
+        String model = "{"
+            + "    \"learner\":{"
+            + "        \"feature_names\":[\"feat1\"],"
+            + "        \"feature_types\":[\"float\"],"
+            + "        \"gradient_booster\":{\"model\":{\"trees\":[{"
+            + "            \"base_weights\":[1E0, 10E0, 0E0],"
+            + "            \"id\":3,"
+            + "            \"left_children\":[1, 2, -1],"
+            + "            \"right_children\":[1, 2, -1],"
+            + "            \"split_conditions\":[3E0, 1E0, -1E0],"
+            + "            \"split_indices\":[0, 0, 0]"
+            + "        }]}},"
+            + "        \"objective\":{\"name\":\"reg:linear\"}"
+            + "    }"
+            + "}";
+        FeatureSet set = new StoredFeatureSet("set", singletonList(randomFeature("feat1")));
+        ParsingException e = expectThrows(ParsingException.class, () -> parser.parse(set, model));
+        Throwable rootCause = e;
+        while (rootCause.getCause() != null) {
+            rootCause = rootCause.getCause();
+        }
+        assertThat(rootCause.getMessage(), CoreMatchers.containsString("Tree [3] is invalid, a node has several parents"));
+    }
 }
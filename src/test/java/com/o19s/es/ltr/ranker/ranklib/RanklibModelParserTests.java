@@ -0,0 +1,166 @@
+/*
+ * Copyright OpenSearch Contributors
+ * SPDX-License-Identifier: Apache-2.0
+ */
+
+package com.o19s.es.ltr.ranker.ranklib;
+
+import static com.o19s.es.ltr.LtrTestUtils.randomFeature;
+import static org.apache.lucene.tests.util.TestUtil.nextInt;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.tests.util.LuceneTestCase;
+
+import com.o19s.es.ltr.feature.store.StoredFeature;
+import com.o19s.es.ltr.feature.store.StoredFeatureSet;
+import com.o19s.es.ltr.ranker.LtrRanker;
+import com.o19s.es.ltr.ranker.LtrRanker.FeatureVector;
+import com.o19s.es.ltr.ranker.dectree.FlatAdditiveDecisionTree;
+import com.o19s.es.ltr.ranker.linear.LinearRanker;
+
+import ciir.umass.edu.learning.RankerFactory;
+
+public class RanklibModelParserTests extends LuceneTestCase {
+    private static final String SIMPLE_MODEL = "## LambdaMART\n"
+        + "## No. of trees = 1\n"
+        + "## No. of leaves = 3\n"
+        + "\n"
+        + "<ensemble>\n"
+        + " <tree id=\"1\" weight=\"0.5\">\n"
+        + "  <split>\n"
+        + "   <feature> 2 </feature>\n"
+        + "   <threshold> 0.5 </threshold>\n"
+        + "   <split pos=\"left\">\n"
+        + "    <output> 1.0 </output>\n"
+        + "   </split>\n"
+        + "   <split pos=\"right\">\n"
+        + "    <feature> 1 </feature>\n"
+        + "    <threshold> -1.0 </threshold>\n"
+        + "    <split pos=\"left\">\n"
+        + "     <output> 2.0 </output>\n"
+        + "    </split>\n"
+        + "    <split pos=\"right\">\n"
+        + "     <output> 4.0 </output>\n"
+        + "    </split>\n"
+        + "   </split>\n"
+        + "  </split>\n"
+        + " </tree>\n"
+        + "</ensemble>\n";
+
+    private final RankerFactory factory = new RankerFactory();
+    private final RanklibModelParser parser = new RanklibModelParser(factory);
+
+    public void testLambdaMART() throws IOException {
+        StoredFeatureSet set = set(2);
+        LtrRanker ranker = parser.parse(set, SIMPLE_MODEL);
+        assertTrue(ranker instanceof FlatAdditiveDecisionTree);
+        assertArrayEquals(new int[] { 0, 1 }, ranker.usedFeatures());
+        FeatureVector vector = ranker.newFeatureVector(null);
+        // unset features are 0
+        assertEquals(0.5F, ranker.score(vector), 0F);
+        // thresholds are inclusive
+        vector.setFeatureScore(1, 0.5F);
+        assertEquals(0.5F, ranker.score(vector), 0F);
+        vector.setFeatureScore(1, Math.nextUp(0.5F));
+        assertEquals(2F, ranker.score(vector), 0F);
+        vector.setFeatureScore(0, -1F);
+        assertEquals(1F, ranker.score(vector), 0F);
+        // unknown values are read as 0
+        vector.setFeatureScore(0, Float.NaN);
+        assertEquals(2F, ranker.score(vector), 0F);
+        vector.setFeatureScore(1, Float.NaN);
+        assertEquals(0.5F, ranker.score(vector), 0F);
+    }
+
+    public void testUnknownFeatureIsLeftToRanklib() throws IOException {
+        LtrRanker ranker = parser.parse(set(1), SIMPLE_MODEL);
+        assertTrue(ranker instanceof RanklibRanker);
+    }
+
+    public void testTreeEnsembles() throws IOException {
+        int nbFeatures = nextInt(random(), 1, 10);
+        StoredFeatureSet set = set(nbFeatures);
+        String[] headers = { "## LambdaMART\n", "## MART\n" };
+        assertSameScores(set, headers[random().nextInt(headers.length)] + randomEnsemble(nbFeatures));
+
+        StringBuilder forest = new StringBuilder("## Random Forests\n## No. of bags = 3\n");
+        for (int i = 0; i < 3; i++) {
+            forest.append(randomEnsemble(nbFeatures));
+        }
+        assertSameScores(set, forest.toString());
+    }
+
+    public void testLinearModels() throws IOException {
+        StoredFeatureSet set = set(3);
+        LtrRanker ranker = assertSameScores(set, "## Coordinate Ascent\n## Restart = 5\n1:0.5 3:-0.25\n");
+        assertTrue(ranker instanceof LinearRanker);
+        assertArrayEquals(new int[] { 0, 2 }, ranker.usedFeatures());
+
+        ranker = assertSameScores(set, "## Linear Regression\n## Lambda = 1.0E-10\n0:0.3 1:0.2 2:-0.1 3:0.7\n");
+        assertTrue(ranker instanceof LinearRanker);
+        assertEquals("Linear Regression", ((LinearRanker) ranker).foldNormalizers(new float[] { 1F }, new float[] { 2F }).name());
+    }
+
+    /**
+     * @return the converted ranker, after checking it scores like the RankLib model
+     */
+    private LtrRanker assertSameScores(StoredFeatureSet set, String model) throws IOException {
+        LtrRanker converted = parser.parse(set, model);
+        assertFalse(converted instanceof RanklibRanker);
+        LtrRanker ranklib = new RanklibRanker(factory.loadRankerFromString(model), set.size());
+        // explain output reports the name of the RankLib model
+        assertEquals(ranklib.name(), converted.name());
+        FeatureVector convertedVector = null;
+        FeatureVector ranklibVector = null;
+        for (int i = 0; i < 100; i++) {
+            convertedVector = converted.newFeatureVector(convertedVector);
+            ranklibVector = ranklib.newFeatureVector(ranklibVector);
+            for (int f = 0; f < set.size(); f++) {
+                if (random().nextInt(4) != 0) {
+                    // thresholds are multiples of 0.25
+                    float value = nextInt(random(), -8, 8) / (random().nextBoolean() ? 4F : 3F);
+                    convertedVector.setFeatureScore(f, value);
+                    ranklibVector.setFeatureScore(f, value);
+                }
+            }
+            float expected = ranklib.score(ranklibVector);
+            assertEquals(expected, converted.score(convertedVector), Math.max(1e-5F, Math.abs(expected) * 1e-5F));
+        }
+        return converted;
+    }
+
+    private static String randomEnsemble(int nbFeatures) {
+        StringBuilder ensemble = new StringBuilder("<ensemble>\n");
+        int nbTrees = nextInt(random(), 1, 20);
+        for (int i = 0; i < nbTrees; i++) {
+            ensemble.append("<tree id=\"").append(i + 1).append("\" weight=\"").append(random().nextFloat()).append("\">\n");
+            randomNode(ensemble, nbFeatures, nextInt(random(), 0, 6), null);
+            ensemble.append("</tree>\n");
+        }
+        return ensemble.append("</ensemble>\n").toString();
+    }
+
+    private static void randomNode(StringBuilder builder, int nbFeatures, int depth, String pos) {
+        builder.append(pos == null ? "<split>\n" : "<split pos=\"" + pos + "\">\n");
+        if (depth == 0 || random().nextInt(5) == 0) {
+            builder.append("<output> ").append(nextInt(random(), -1000, 1000) / 100F).append(" </output>\n");
+        } else {
+            builder.append("<feature> ").append(nextInt(random(), 1, nbFeatures)).append(" </feature>\n");
+            builder.append("<threshold> ").append(nextInt(random(), -8, 8) / 4F).append(" </threshold>\n");
+            randomNode(builder, nbFeatures, depth - 1, "left");
+            randomNode(builder, nbFeatures, depth - 1, "right");
+        }
+        builder.append("</split>\n");
+    }
+
+    private static StoredFeatureSet set(int nbFeatures) throws IOException {
+        List<StoredFeature> features = new ArrayList<>(nbFeatures);
+        for (int i = 0; i < nbFeatures; i++) {
+            features.add(randomFeature("feature" + i));
+        }
+        return new StoredFeatureSet("set", features);
+    }
+}
@@ -24,12 +24,15 @@ import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.opensearch.common.cache.Cache;
+import org.opensearch.core.common.unit.ByteSizeValue;
 import org.opensearch.test.OpenSearchTestCase;
 
 import com.o19s.es.ltr.feature.Feature;
 import com.o19s.es.ltr.feature.FeatureSet;
 import com.o19s.es.ltr.feature.store.CompiledLtrModel;
 import com.o19s.es.ltr.feature.store.index.Caches;
+import com.o19s.es.ltr.feature.store.index.FeatureVectorCache;
+import com.o19s.es.ltr.feature.store.index.InternTable;
 
 public class CacheStatsOnNodeSupplierTests extends OpenSearchTestCase {
     @Mock
@@ -53,6 +56,8 @@ public class CacheStatsOnNodeSupplierTests extends OpenSearchTestCase {
         when(caches.featureCache()).thenReturn(featureCache);
         when(caches.featureSetCache()).thenReturn(featureSetCache);
         when(caches.modelCache()).thenReturn(modelCache);
+        when(caches.internTable()).thenReturn(new InternTable());
+        when(caches.featureVectorCache()).thenReturn(new FeatureVectorCache(ByteSizeValue.ZERO));
 
         cacheStatsOnNodeSupplier = new CacheStatsOnNodeSupplier(caches);
     }
@@ -78,6 +83,10 @@ public class CacheStatsOnNodeSupplierTests extends OpenSearchTestCase {
                 2, 2, 1, 2, 600);
         assertCacheStats(values.get("model"),
                 1, 1, 0, 1, 800);
+        assertEquals(0L, values.get("interned").get("hit_count"));
+        assertEquals(0, values.get("interned").get("entry_count"));
+        assertEquals(0L, values.get("interned").get("memory_usage_in_bytes"));
+        assertCacheStats(values.get("feature_vector"), 0, 0, 0, 0, 0);
     }
 
     private void assertCacheStats(Map<String, Object> stat, long hits, long misses, long evictions, int entries, long memUsage) {